@@ -43,6 +43,9 @@ public class CRAMFileReader extends SamReader.ReaderImplementation {
     private final ReferenceSource referenceSource;
     private InputStream is;
     private CRAMIterator it;
+    // whether it has been handed out rather than only used to read the header:
+    private boolean iteratorInUse = false;
+    private boolean closed = false;
     private BAMIndex mIndex;
     private File mIndexFile;
     private boolean mEnableIndexCaching;
@@ -82,7 +85,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation {
         this.is = is;
         this.referenceSource = referenceSource;
 
-        getIterator();
+        openIterator();
     }
 
     /**
@@ -103,7 +106,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation {
         this.mIndexFile = indexFile;
         this.referenceSource = referenceSource;
 
-        getIterator();
+        openIterator();
     }
 
     public CRAMFileReader(final File file, final ReferenceSource referenceSource) {
@@ -114,7 +117,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation {
         this.file = file;
         this.referenceSource = referenceSource;
 
-        getIterator();
+        openIterator();
     }
 
     public SAMRecordIterator iterator() {
@@ -169,6 +172,12 @@ public class CRAMFileReader extends SamReader.ReaderImplementation {
 
     @Override
     public SAMRecordIterator getIterator() {
+        final SAMRecordIterator iterator = openIterator();
+        iteratorInUse = true;
+        return iterator;
+    }
+
+    private CRAMIterator openIterator() {
         if (it != null && file == null)
             return it;
         try {
@@ -251,6 +260,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation {
             si = new CRAMIterator(s, referenceSource);
             si.setValidationStringency(validationStringency);
             it = si;
+            iteratorInUse = true;
         } catch (final IOException e) {
             throw new RuntimeEOFException(e);
         }
@@ -284,6 +294,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation {
             si.setValidationStringency(validationStringency);
             s.seek(startOfLastLinearBin);
             it = si;
+            iteratorInUse = true;
         } catch (final IOException e) {
             throw new RuntimeEOFException(e);
         }
@@ -306,6 +317,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation {
 
     @Override
     public void close() {
+        closed = true;
         CloserUtil.close(it);
         CloserUtil.close(is);
         CloserUtil.close(mIndex);
@@ -324,17 +336,36 @@ public class CRAMFileReader extends SamReader.ReaderImplementation {
     @Override
     public CloseableIterator<SAMRecord> query(final QueryInterval[] intervals,
                                               final boolean contained) {
-        if (is == null) {
+        if (closed) {
             throw new IllegalStateException("File reader is closed");
         }
-        if (it != null) {
+        if (iteratorInUse && !it.isClosed()) {
             throw new IllegalStateException("Iteration in progress");
         }
-        if (mIndex == null && mIndexFile == null) {
-            throw new UnsupportedOperationException(
-                    "Cannot query stream-based BAM file");
+        // No index is needed: container headers are enough to skip the data
+        // that cannot overlap the intervals.
+        final CRAMIterator si;
+        try {
+            if (file != null) {
+                CloserUtil.close(it);
+                si = new CRAMIterator(new FileInputStream(file),
+                        referenceSource);
+            } else if (is instanceof SeekableStream) {
+                ((SeekableStream) is).seek(0);
+                si = new CRAMIterator(is, referenceSource);
+            } else {
+                throw new UnsupportedOperationException(
+                        "Cannot query a CRAM stream that is not seekable");
+            }
+        } catch (final IOException e) {
+            throw new RuntimeEOFException(e);
         }
-        throw new SAMException("Multiple interval queries not implemented.");
+
+        si.setValidationStringency(validationStringency);
+        si.setQueryIntervals(intervals, contained);
+        it = si;
+        iteratorInUse = true;
+        return it;
     }
 
     @Override
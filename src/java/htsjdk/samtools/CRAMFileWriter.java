@@ -16,6 +16,7 @@
 package htsjdk.samtools;
 
 import htsjdk.samtools.cram.build.ContainerFactory;
+import htsjdk.samtools.cram.build.ContainerSizePolicy;
 import htsjdk.samtools.cram.build.Cram2SamRecordFactory;
 import htsjdk.samtools.cram.build.CramIO;
 import htsjdk.samtools.cram.build.Sam2CramRecordFactory;
@@ -23,8 +24,12 @@ import htsjdk.samtools.cram.common.CramVersions;
 import htsjdk.samtools.cram.common.Version;
 import htsjdk.samtools.cram.lossy.PreservationPolicy;
 import htsjdk.samtools.cram.lossy.QualityScorePreservation;
+import htsjdk.samtools.cram.ref.ConsensusReference;
+import htsjdk.samtools.cram.ref.ReferenceRegion;
 import htsjdk.samtools.cram.ref.ReferenceSource;
 import htsjdk.samtools.cram.ref.ReferenceTracks;
+import htsjdk.samtools.cram.ref.ReferenceWindow;
+import htsjdk.samtools.cram.structure.BlockCompressionMethod;
 import htsjdk.samtools.cram.structure.Container;
 import htsjdk.samtools.cram.structure.CramCompressionRecord;
 import htsjdk.samtools.cram.structure.CramHeader;
@@ -35,6 +40,7 @@ import htsjdk.samtools.util.StringLineReader;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,16 +49,23 @@ import java.util.TreeSet;
 
 public class CRAMFileWriter extends SAMFileWriterImpl {
     private static final int REF_SEQ_INDEX_NOT_INITED = -2;
-    private static final int DEFAULT_RECORDS_PER_SLICE = 10000;
-    private static final int DEFAULT_SLICES_PER_CONTAINER = 1;
     private static final Version cramVersion = CramVersions.CRAM_v2_1;
 
     private String fileName;
     private List<SAMRecord> samRecords = new ArrayList<SAMRecord>();
     private ContainerFactory containerFactory;
-    protected int recordsPerSlice = DEFAULT_RECORDS_PER_SLICE;
-    protected int containerSize = recordsPerSlice
-            * DEFAULT_SLICES_PER_CONTAINER;
+    private ReferenceWindow referenceWindow;
+    private ContainerSizePolicy sizePolicy = ContainerSizePolicy.DEFAULT;
+
+    /*
+     * The slices of the current container: the record counts of the closed
+     * slices and the size and reference span of the open one.
+     */
+    private List<Integer> sliceSizes = new ArrayList<Integer>();
+    private int sliceRecordCount = 0;
+    private long sliceByteCount = 0;
+    private int sliceAlignmentStart = SAMRecord.NO_ALIGNMENT_START;
+    private int sliceAlignmentEnd = SAMRecord.NO_ALIGNMENT_START;
 
     private Sam2CramRecordFactory sam2CramRecordFactory;
     private OutputStream os;
@@ -63,6 +76,10 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
 
     private SAMFileHeader samFileHeader;
     private boolean preserveReadNames = true;
+    private boolean tokeniseReadNames = false;
+    private boolean rangeCoding = false;
+    private boolean embedReference = false;
+    private boolean referenceless = false;
     private QualityScorePreservation preservation = null;
     private boolean captureAllTags = true;
     private Set<String> captureTags = new TreeSet<String>();
@@ -80,27 +97,67 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
         if (this.source == null)
             this.source = new ReferenceSource(Defaults.REFERENCE_FASTA);
 
-        containerFactory = new ContainerFactory(samFileHeader, recordsPerSlice);
+        containerFactory = new ContainerFactory(samFileHeader, sizePolicy.getMaxRecordsPerSlice());
+        referenceWindow = new ReferenceWindow(this.source);
     }
 
     /**
      * Decide if the current container should be completed and flushed. The
-     * decision is based on a) number of records and b) if the reference
-     * sequence id has changed.
+     * decision is based on a) the container size policy and b) if the
+     * reference sequence id has changed.
      *
      * @param nextRecord the record to be added into the current or next container
      * @return true if the current container should be flushed and the following
      * records should go into a new container; false otherwise.
      */
     protected boolean shouldFlushContainer(SAMRecord nextRecord) {
-        if (samRecords.size() >= containerSize)
-            return true;
-
         if (refSeqIndex != REF_SEQ_INDEX_NOT_INITED
                 && refSeqIndex != nextRecord.getReferenceIndex())
             return true;
 
-        return false;
+        return isSliceFull(nextRecord)
+                && sliceSizes.size() + 1 >= sizePolicy.getSlicesPerContainer();
+    }
+
+    /**
+     * @return true if the next record should start a new slice according to
+     * the container size policy
+     */
+    private boolean isSliceFull(SAMRecord nextRecord) {
+        int span = sliceAlignmentEnd - sliceAlignmentStart + 1;
+        if (nextRecord.getAlignmentStart() != SAMRecord.NO_ALIGNMENT_START) {
+            if (sliceAlignmentStart == SAMRecord.NO_ALIGNMENT_START)
+                span = nextRecord.getAlignmentEnd() - nextRecord.getAlignmentStart() + 1;
+            else
+                span = Math.max(sliceAlignmentEnd, nextRecord.getAlignmentEnd())
+                        - Math.min(sliceAlignmentStart, nextRecord.getAlignmentStart()) + 1;
+        }
+        return sizePolicy.isSliceFull(sliceRecordCount, sliceByteCount, span);
+    }
+
+    private void addToSlice(SAMRecord record) {
+        sliceRecordCount++;
+        // roughly the uncompressed BAM size without the tags:
+        sliceByteCount += 32 + record.getReadNameLength() + 4 * record.getCigarLength()
+                + 2 * record.getReadLength();
+        if (record.getAlignmentStart() != SAMRecord.NO_ALIGNMENT_START) {
+            if (sliceAlignmentStart == SAMRecord.NO_ALIGNMENT_START) {
+                sliceAlignmentStart = record.getAlignmentStart();
+                sliceAlignmentEnd = record.getAlignmentEnd();
+            } else {
+                sliceAlignmentStart = Math.min(sliceAlignmentStart, record.getAlignmentStart());
+                sliceAlignmentEnd = Math.max(sliceAlignmentEnd, record.getAlignmentEnd());
+            }
+        }
+    }
+
+    private void closeSlice() {
+        if (sliceRecordCount > 0)
+            sliceSizes.add(sliceRecordCount);
+        sliceRecordCount = 0;
+        sliceByteCount = 0;
+        sliceAlignmentStart = SAMRecord.NO_ALIGNMENT_START;
+        sliceAlignmentEnd = SAMRecord.NO_ALIGNMENT_START;
     }
 
     private static void updateTracks(List<SAMRecord> samRecords,
@@ -150,12 +207,11 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
     protected void flushContainer() throws IllegalArgumentException,
             IllegalAccessException, IOException {
 
-        byte[] refs;
-        if (refSeqIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX)
-            refs = new byte[0];
-        else
-            refs = source.getReferenceBases(
-                    samFileHeader.getSequence(refSeqIndex), true);
+        closeSlice();
+        int[] sizes = new int[sliceSizes.size()];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = sliceSizes.get(i);
+        sliceSizes.clear();
 
         int start = SAMRecord.NO_ALIGNMENT_START;
         int stop = SAMRecord.NO_ALIGNMENT_START;
@@ -170,10 +226,33 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
             stop = Math.max(r.getAlignmentEnd(), stop);
         }
 
+        boolean tracksRequired = preservation != null
+                && preservation.areReferenceTracksRequired();
+        byte[] refs;
+        int refsOffset = 0;
+        if (refSeqIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX
+                || start == SAMRecord.NO_ALIGNMENT_START)
+            refs = new byte[0];
+        else if (referenceless) {
+            // a consensus of the part of the reference spanned by the container:
+            refs = ConsensusReference.build(samRecords, start, stop);
+            refsOffset = start - 1;
+        } else if (tracksRequired)
+            refs = source.getReferenceBases(
+                    samFileHeader.getSequence(refSeqIndex), true);
+        else {
+            // only the part of the reference spanned by the container:
+            ReferenceRegion region = referenceWindow.getRegion(
+                    samFileHeader.getSequence(refSeqIndex), start, stop);
+            refs = region == null ? null : region.bases;
+            if (region != null)
+                refsOffset = region.offset;
+        }
+
         ReferenceTracks tracks = null;
-        if (preservation != null && preservation.areReferenceTracksRequired()) {
+        if (tracksRequired) {
             if (tracks == null || tracks.getSequenceId() != refSeqIndex)
-                tracks = new ReferenceTracks(refSeqIndex, refs);
+                tracks = new ReferenceTracks(refSeqIndex, refs, refsOffset, 1000000);
             tracks.ensureRange(start, stop - start + 1);
             updateTracks(samRecords, tracks);
         }
@@ -183,11 +262,15 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
 
         sam2CramRecordFactory = new Sam2CramRecordFactory(refSeqIndex, refs,
                 samFileHeader);
+        sam2CramRecordFactory.setRefOffset(refsOffset);
         sam2CramRecordFactory.preserveReadNames = preserveReadNames;
         sam2CramRecordFactory.captureAllTags = captureAllTags;
         sam2CramRecordFactory.captureTags.addAll(captureTags);
         sam2CramRecordFactory.ignoreTags.addAll(ignoreTags);
         containerFactory.setPreserveReadNames(preserveReadNames);
+        containerFactory.setTokeniseReadNames(tokeniseReadNames);
+        containerFactory.setExternalCompressionMethod(rangeCoding ? BlockCompressionMethod.RANGE
+                : BlockCompressionMethod.GZIP);
 
         int index = 0;
         int prevAlStart = start;
@@ -214,55 +297,61 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
                 .getFeatureCount())
             log.warn("Abnormally high number of mismatches, possibly wrong reference.");
 
-        // mating:
-        Map<String, CramCompressionRecord> primaryMateMap = new TreeMap<String, CramCompressionRecord>();
-        Map<String, CramCompressionRecord> secondaryMateMap = new TreeMap<String, CramCompressionRecord>();
-        for (CramCompressionRecord r : cramRecords) {
-            if (!r.isMultiFragment()) {
+        // mating, within slices only:
+        int sliceStart = 0;
+        for (int size : sizes) {
+            List<CramCompressionRecord> sliceRecords = cramRecords.subList(sliceStart, sliceStart + size);
+            sliceStart += size;
+
+            Map<String, CramCompressionRecord> primaryMateMap = new TreeMap<String, CramCompressionRecord>();
+            Map<String, CramCompressionRecord> secondaryMateMap = new TreeMap<String, CramCompressionRecord>();
+            for (CramCompressionRecord r : sliceRecords) {
+                if (!r.isMultiFragment()) {
+                    r.setDetached(true);
+
+                    r.setHasMateDownStream(false);
+                    r.recordsToNextFragment = -1;
+                    r.next = null;
+                    r.previous = null;
+                } else {
+                    String name = r.readName;
+                    Map<String, CramCompressionRecord> mateMap = r
+                            .isSecondaryAlignment() ? secondaryMateMap
+                            : primaryMateMap;
+                    CramCompressionRecord mate = mateMap.get(name);
+                    if (mate == null) {
+                        mateMap.put(name, r);
+                    } else {
+                        mate.recordsToNextFragment = r.index - mate.index - 1;
+                        mate.next = r;
+                        r.previous = mate;
+                        r.previous.setHasMateDownStream(true);
+                        r.setHasMateDownStream(false);
+                        r.setDetached(false);
+                        r.previous.setDetached(false);
+
+                        mateMap.remove(name);
+                    }
+                }
+            }
+
+            for (CramCompressionRecord r : primaryMateMap.values()) {
                 r.setDetached(true);
 
                 r.setHasMateDownStream(false);
                 r.recordsToNextFragment = -1;
                 r.next = null;
                 r.previous = null;
-            } else {
-                String name = r.readName;
-                Map<String, CramCompressionRecord> mateMap = r
-                        .isSecondaryAlignment() ? secondaryMateMap
-                        : primaryMateMap;
-                CramCompressionRecord mate = mateMap.get(name);
-                if (mate == null) {
-                    mateMap.put(name, r);
-                } else {
-                    mate.recordsToNextFragment = r.index - mate.index - 1;
-                    mate.next = r;
-                    r.previous = mate;
-                    r.previous.setHasMateDownStream(true);
-                    r.setHasMateDownStream(false);
-                    r.setDetached(false);
-                    r.previous.setDetached(false);
-
-                    mateMap.remove(name);
-                }
             }
-        }
 
-        for (CramCompressionRecord r : primaryMateMap.values()) {
-            r.setDetached(true);
-
-            r.setHasMateDownStream(false);
-            r.recordsToNextFragment = -1;
-            r.next = null;
-            r.previous = null;
-        }
-
-        for (CramCompressionRecord r : secondaryMateMap.values()) {
-            r.setDetached(true);
+            for (CramCompressionRecord r : secondaryMateMap.values()) {
+                r.setDetached(true);
 
-            r.setHasMateDownStream(false);
-            r.recordsToNextFragment = -1;
-            r.next = null;
-            r.previous = null;
+                r.setHasMateDownStream(false);
+                r.recordsToNextFragment = -1;
+                r.next = null;
+                r.previous = null;
+            }
         }
 
         Cram2SamRecordFactory f = new Cram2SamRecordFactory(samFileHeader);
@@ -273,9 +362,22 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
             assert (s1.equals(s2));
         }
 
-        Container container = containerFactory.buildContainer(cramRecords);
-        for (Slice slice : container.slices)
-            slice.setRefMD5(refs);
+        Container container = containerFactory.buildContainer(cramRecords, null, sizes);
+        boolean embed = (embedReference || referenceless)
+                && refSeqIndex != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+        if (embed)
+            container.h.referenceRequired = false;
+        int embeddedRefContentId = embed ? Collections.max(container.h.externalIds) + 1 : -1;
+        for (Slice slice : container.slices) {
+            if (referenceless)
+                // a consensus must not pass for the reference:
+                slice.refMD5 = new byte[16];
+            else
+                slice.setRefMD5(refs, refsOffset);
+            if (embed && slice.sequenceId >= 0 && slice.alignmentStart > 0)
+                slice.setEmbeddedReference(refs, refsOffset,
+                        embeddedRefContentId);
+        }
         CramIO.writeContainer(container, os);
         samRecords.clear();
     }
@@ -288,10 +390,13 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
+        else if (isSliceFull(alignment))
+            closeSlice();
 
         updateReferenceContext(alignment.getReferenceIndex());
 
         samRecords.add(alignment);
+        addToSlice(alignment);
     }
 
     /**
@@ -318,7 +423,7 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
                 new StringLineReader(textHeader), (fileName != null ? fileName
                         : null));
 
-        containerFactory = new ContainerFactory(header, recordsPerSlice);
+        containerFactory = new ContainerFactory(header, sizePolicy.getMaxRecordsPerSlice());
 
         CramHeader cramHeader = new CramHeader(cramVersion.major,
                 cramVersion.minor, fileName, header);
@@ -346,6 +451,20 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
         return fileName;
     }
 
+    public ContainerSizePolicy getContainerSizePolicy() {
+        return sizePolicy;
+    }
+
+    /**
+     * Set the limits on the size of slices and containers, for example
+     * {@link ContainerSizePolicy#RANDOM_ACCESS} for fast region queries or
+     * {@link ContainerSizePolicy#ARCHIVAL} for the best compression. Applies
+     * from the next container on.
+     */
+    public void setContainerSizePolicy(ContainerSizePolicy sizePolicy) {
+        this.sizePolicy = sizePolicy;
+    }
+
     public boolean isPreserveReadNames() {
         return preserveReadNames;
     }
@@ -354,6 +473,61 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
         this.preserveReadNames = preserveReadNames;
     }
 
+    public boolean isTokeniseReadNames() {
+        return tokeniseReadNames;
+    }
+
+    /**
+     * Store read names split into tokens that are matched against the
+     * previous read name, which compresses structured (e.g. Illumina) names
+     * much better. The resulting files can only be read by CRAM readers that
+     * support the read name tokeniser encoding, so this is off by default.
+     */
+    public void setTokeniseReadNames(boolean tokeniseReadNames) {
+        this.tokeniseReadNames = tokeniseReadNames;
+    }
+
+    public boolean isRangeCoding() {
+        return rangeCoding;
+    }
+
+    /**
+     * Compress the external data blocks with an adaptive range coder instead
+     * of gzip, which usually compresses quality scores better. The
+     * resulting files can only be read by CRAM readers that support the range
+     * coder, so this is off by default.
+     */
+    public void setRangeCoding(boolean rangeCoding) {
+        this.rangeCoding = rangeCoding;
+    }
+
+    public boolean isEmbedReference() {
+        return embedReference;
+    }
+
+    /**
+     * Store the reference bases spanned by each slice in the slice itself,
+     * so that the file can be read without the reference.
+     */
+    public void setEmbedReference(boolean embedReference) {
+        this.embedReference = embedReference;
+    }
+
+    public boolean isReferenceless() {
+        return referenceless;
+    }
+
+    /**
+     * Write without a reference: reads are compressed against a consensus of
+     * the reads in each container, which is embedded in the slices instead
+     * of a reference. Useful for reads of contigs missing from any reference.
+     * The slices carry no reference MD5, so MD and NM tags are not restored
+     * when reading.
+     */
+    public void setReferenceless(boolean referenceless) {
+        this.referenceless = referenceless;
+    }
+
     public List<PreservationPolicy> getPreservationPolicies() {
         if (preservation == null) {
             // set up greedy policy by default:
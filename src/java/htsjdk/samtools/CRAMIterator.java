@@ -21,11 +21,14 @@ import htsjdk.samtools.cram.build.Cram2SamRecordFactory;
 import htsjdk.samtools.cram.build.CramIO;
 import htsjdk.samtools.cram.build.CramNormalizer;
 import htsjdk.samtools.cram.io.CountingInputStream;
+import htsjdk.samtools.cram.ref.ReferenceRegion;
 import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.cram.ref.ReferenceWindow;
 import htsjdk.samtools.cram.structure.Container;
 import htsjdk.samtools.cram.structure.CramCompressionRecord;
 import htsjdk.samtools.cram.structure.CramHeader;
 import htsjdk.samtools.cram.structure.Slice;
+import htsjdk.samtools.util.CoordMath;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.RuntimeEOFException;
 import htsjdk.samtools.util.SequenceUtil;
@@ -49,16 +52,23 @@ public class CRAMIterator implements SAMRecordIterator {
     private ArrayList<SAMRecord> records;
     private int recordCounter = 0;
     private SAMRecord nextRecord = null;
+    private boolean closed = false;
     private boolean restoreNMTag = true;
     private boolean restoreMDTag = false;
     private CramNormalizer normalizer;
     private byte[] refs;
-    private int prevSeqId = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+    private int refsOffset = 0;
+    private ReferenceWindow referenceWindow;
     private Container container;
     private long containerOffset = 0;
     private SamReader mReader;
 
+    private QueryInterval[] intervals;
+    private boolean contained;
+    private boolean intervalsExhausted = false;
+
     private ContainerParser parser;
+    private Cram2SamRecordFactory c2sFactory;
     private ReferenceSource referenceSource;
 
     private ValidationStringency validationStringency = ValidationStringency.SILENT;
@@ -79,23 +89,177 @@ public class CRAMIterator implements SAMRecordIterator {
             throws IOException {
         this.is = new CountingInputStream(is);
         this.referenceSource = referenceSource;
+        this.referenceWindow = new ReferenceWindow(referenceSource);
         cramHeader = CramIO.readCramHeader(this.is);
         records = new ArrayList<SAMRecord>(10000);
         normalizer = new CramNormalizer(cramHeader.getSamFileHeader(),
                 referenceSource);
         parser = new ContainerParser(cramHeader.getSamFileHeader());
+        parser.setRecordPooling(true);
+        c2sFactory = new Cram2SamRecordFactory(cramHeader.getSamFileHeader(), true);
     }
 
     public CramHeader getCramHeader() {
         return cramHeader;
     }
 
+    /**
+     * Restrict the iteration to records overlapping or contained in the given
+     * intervals. Container headers are checked first and the bodies of
+     * containers that cannot overlap any of the intervals are skipped without
+     * being decompressed, so no index is needed. For coordinate sorted data
+     * the iteration stops after the last interval.
+     *
+     * @param intervals intervals to query, need not be sorted or merged
+     * @param contained if true only records fully contained in an interval are returned
+     */
+    public void setQueryIntervals(final QueryInterval[] intervals, final boolean contained) {
+        this.intervals = QueryInterval.optimizeIntervals(intervals);
+        this.contained = contained;
+        this.intervalsExhausted = false;
+    }
+
+    private Container readNextContainer() throws IOException {
+        while (true) {
+            containerOffset = is.getCount();
+            if (intervalsExhausted)
+                return null;
+            final Container c = CramIO.readContainerHeader(is);
+            if (c == null || c.isEOF())
+                return c;
+            if (intervals == null || overlapsIntervals(c))
+                return CramIO.readContainerBody(c, is);
+            if (isPastIntervals(c)) {
+                intervalsExhausted = true;
+                return null;
+            }
+            CramIO.skipContainerBody(c, is);
+        }
+    }
+
+    private static boolean hasEmbeddedReference(final Container c) {
+        for (final Slice slice : c.slices)
+            if (slice.embeddedRefBlock != null)
+                return true;
+        return false;
+    }
+
+    /**
+     * Restore the bases of the records slice by slice from the reference
+     * embedded in each slice, so that no external reference is read.
+     */
+    private void normalizeWithEmbeddedReference() {
+        int from = 0;
+        for (final Slice s : container.slices) {
+            final ArrayList<CramCompressionRecord> sliceRecords = new ArrayList<CramCompressionRecord>(
+                    cramRecords.subList(from, from + s.nofRecords));
+            from += s.nofRecords;
+
+            byte[] ref = s.getEmbeddedReference();
+            int refOffset = s.alignmentStart - 1;
+            if (ref == null) {
+                refOffset = 0;
+                if (s.sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX)
+                    ref = new byte[]{};
+                else if (s.sequenceId >= 0) {
+                    final ReferenceRegion region = getReferenceRegion(cramHeader.getSamFileHeader()
+                            .getSequence(s.sequenceId));
+                    if (region != null) {
+                        ref = region.bases;
+                        refOffset = region.offset;
+                    }
+                }
+            }
+
+            if (s.sequenceId >= 0 && !(s.embeddedRefBlock != null && s.isRefMD5Empty()))
+                validateRefMD5(s, ref, refOffset);
+
+            normalizer.normalize(sliceRecords, true, ref, refOffset, s.alignmentStart,
+                    container.h.substitutionMatrix, container.h.AP_seriesDelta);
+        }
+    }
+
+    private static void validateRefMD5(final Slice s, final byte[] ref, final int refOffset) {
+        try {
+            if (!s.validateRefMD5(ref, refOffset)) {
+                log.error(String
+                        .format("Reference sequence MD5 mismatch for slice: seq id %d, start %d, span %d, expected MD5 %s",
+                                s.sequenceId, s.alignmentStart, s.alignmentSpan,
+                                String.format("%032x", new BigInteger(1, s.refMD5))));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the reference bases spanned by the slices of the current container,
+     * reading only that part of the reference if possible.
+     */
+    private ReferenceRegion getReferenceRegion(final SAMSequenceRecord sequence) {
+        int start = Integer.MAX_VALUE;
+        int end = 0;
+        for (final Slice slice : container.slices) {
+            if (slice.sequenceId < 0 || slice.alignmentStart < 1)
+                continue;
+            start = Math.min(start, slice.alignmentStart);
+            end = Math.max(end, slice.alignmentStart + slice.alignmentSpan - 1);
+        }
+        if (start > end) {
+            start = Math.max(1, container.alignmentStart);
+            end = start + Math.max(0, container.alignmentSpan - 1);
+        }
+        return referenceWindow.getRegion(sequence, start, end);
+    }
+
+    private boolean overlapsIntervals(final Container c) {
+        if (c.sequenceId == Slice.MUTLIREF)
+            return true;
+        if (c.sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX)
+            return false;
+
+        final int end = c.alignmentStart + Math.max(c.alignmentSpan, 1) - 1;
+        for (final QueryInterval interval : intervals) {
+            final int intervalEnd = interval.end <= 0 ? Integer.MAX_VALUE : interval.end;
+            if (interval.referenceIndex == c.sequenceId
+                    && CoordMath.overlaps(interval.start, intervalEnd, c.alignmentStart, end))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isPastIntervals(final Container c) {
+        if (cramHeader.getSamFileHeader().getSortOrder() != SortOrder.coordinate)
+            return false;
+        if (intervals.length == 0 || c.sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX)
+            return true;
+        if (c.sequenceId == Slice.MUTLIREF)
+            return false;
+
+        final QueryInterval last = intervals[intervals.length - 1];
+        return c.sequenceId > last.referenceIndex
+                || (c.sequenceId == last.referenceIndex && last.end > 0 && c.alignmentStart > last.end);
+    }
+
+    private boolean matchesIntervals(final SAMRecord record) {
+        final int start = record.getAlignmentStart();
+        final int end = record.getReadUnmappedFlag() ? start : record.getAlignmentEnd();
+        for (final QueryInterval interval : intervals) {
+            if (interval.referenceIndex != record.getReferenceIndex())
+                continue;
+            final int intervalEnd = interval.end <= 0 ? Integer.MAX_VALUE : interval.end;
+            if (contained ? CoordMath.encloses(interval.start, intervalEnd, start, end)
+                    : CoordMath.overlaps(interval.start, intervalEnd, start, end))
+                return true;
+        }
+        return false;
+    }
+
     private void nextContainer() throws IOException, IllegalArgumentException,
             IllegalAccessException {
         recordCounter = 0;
 
-        containerOffset = is.getCount();
-        container = CramIO.readContainer(is);
+        container = readNextContainer();
         if (container == null || container.isEOF()) {
             records.clear();
             nextRecord = null;
@@ -118,47 +282,54 @@ public class CRAMIterator implements SAMRecordIterator {
             throw e;
         }
 
-        if (container.sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-            refs = new byte[]{};
-        } else if (container.sequenceId == -2) {
-            refs = null;
-            prevSeqId = -2;
-        } else if (prevSeqId < 0 || prevSeqId != container.sequenceId) {
-            SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
-                    .getSequence(container.sequenceId);
-            refs = referenceSource.getReferenceBases(sequence, true);
-            prevSeqId = container.sequenceId;
-        }
+        refs = null;
+        refsOffset = 0;
+        final boolean embeddedReference = hasEmbeddedReference(container);
+        if (embeddedReference)
+            normalizeWithEmbeddedReference();
+        else {
+            if (container.sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                refs = new byte[]{};
+            } else if (container.sequenceId != -2) {
+                SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
+                        .getSequence(container.sequenceId);
+                ReferenceRegion region = getReferenceRegion(sequence);
+                refs = region == null ? null : region.bases;
+                if (region != null)
+                    refsOffset = region.offset;
+            }
 
-        try {
             for (int i = 0; i < container.slices.length; i++) {
                 Slice s = container.slices[i];
                 if (s.sequenceId < 0)
                     continue;
-                if (!s.validateRefMD5(refs)) {
-                    log.error(String
-                            .format("Reference sequence MD5 mismatch for slice: seq id %d, start %d, span %d, expected MD5 %s",
-                                    s.sequenceId, s.alignmentStart, s.alignmentSpan,
-                                    String.format("%032x", new BigInteger(1, s.refMD5))));
-                }
+                validateRefMD5(s, refs, refsOffset);
             }
-        } catch (NoSuchAlgorithmException e1) {
-            throw new RuntimeException(e1);
-        }
-
-        normalizer.normalize(cramRecords, true, refs, container.alignmentStart,
-                container.h.substitutionMatrix, container.h.AP_seriesDelta);
 
-        Cram2SamRecordFactory c2sFactory = new Cram2SamRecordFactory(
-                cramHeader.getSamFileHeader());
+            normalizer.normalize(cramRecords, true, refs, refsOffset, container.alignmentStart,
+                    container.h.substitutionMatrix, container.h.AP_seriesDelta);
+        }
 
         for (CramCompressionRecord r : cramRecords) {
             SAMRecord s = c2sFactory.create(r);
-            if (!r.isSegmentUnmapped()) {
-                SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
-                        .getSequence(r.sequenceId);
-                refs = referenceSource.getReferenceBases(sequence, true);
-                SequenceUtil.calculateMdAndNmTags(s, refs, restoreMDTag, restoreNMTag);
+            if (intervals != null && !matchesIntervals(s))
+                continue;
+
+            if (!r.isSegmentUnmapped() && (restoreMDTag || restoreNMTag)) {
+                if (embeddedReference) {
+                    Slice slice = container.slices[r.sliceIndex - container.slices[0].index];
+                    // a consensus is not the reference the tags refer to:
+                    if (slice.getEmbeddedReference() != null && !slice.isRefMD5Empty())
+                        SequenceUtil.calculateMdAndNmTags(s, slice.getEmbeddedReference(),
+                                slice.alignmentStart - 1, restoreMDTag, restoreNMTag);
+                } else if (refs != null)
+                    SequenceUtil.calculateMdAndNmTags(s, refs, refsOffset, restoreMDTag, restoreNMTag);
+                else {
+                    SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
+                            .getSequence(r.sequenceId);
+                    SequenceUtil.calculateMdAndNmTags(s, referenceSource.getReferenceBases(sequence, true),
+                            restoreMDTag, restoreNMTag);
+                }
             }
 
             s.setValidationStringency(validationStringency);
@@ -186,7 +357,9 @@ public class CRAMIterator implements SAMRecordIterator {
         if (container != null && container.isEOF()) return false;
         if (container == null || recordCounter >= records.size()) {
             try {
-                nextContainer();
+                do {
+                    nextContainer();
+                } while (records.isEmpty() && container != null && !container.isEOF());
                 if (records.isEmpty())
                     return false;
             } catch (Exception e) {
@@ -210,6 +383,7 @@ public class CRAMIterator implements SAMRecordIterator {
 
     @Override
     public void close() {
+        closed = true;
         records.clear();
         try {
             is.close();
@@ -217,6 +391,10 @@ public class CRAMIterator implements SAMRecordIterator {
         }
     }
 
+    boolean isClosed() {
+        return closed;
+    }
+
     public static class CramFileIterable implements Iterable<SAMRecord> {
         private ReferenceSource referenceSource;
         private File cramFile;
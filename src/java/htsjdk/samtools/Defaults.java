@@ -58,6 +58,24 @@ public class Defaults {
      */
     public static final String EBI_REFERENCE_SEVICE_URL_MASK;
 
+    /**
+     * Maximum number of bytes of reference bases kept in memory by the cache shared between CRAM readers and
+     * writers. Default = -1, meaning a quarter of the maximum heap size.
+     */
+    public static final long REFERENCE_CACHE_SIZE;
+
+    /**
+     * Path pattern of the local on-disk reference cache, in the samtools REF_CACHE format
+     * (e.g. /data/ref_cache/%2s/%2s/%s). If this is not set, no disk cache is used.
+     */
+    public static final String REF_CACHE;
+
+    /**
+     * Maximum number of bytes of Tribble indexes kept in memory by the cache shared between feature readers, measured
+     * as the uncompressed size of the index files. Default = 0, meaning each reader loads its own index.
+     */
+    public static final long INDEX_CACHE_SIZE;
+
 
     static {
         CREATE_INDEX = getBooleanProperty("create_index", false);
@@ -75,6 +93,9 @@ public class Defaults {
         REFERENCE_FASTA = getFileProperty("reference_fasta", null);
         EBI_REFERENCE_SEVICE_URL_MASK = "http://www.ebi.ac.uk/ena/cram/md5/%s";
         CUSTOM_READER_FACTORY = getStringProperty("custom_reader", "");
+        REFERENCE_CACHE_SIZE = getLongProperty("reference_cache_size", -1);
+        REF_CACHE = getStringProperty("ref_cache", null);
+        INDEX_CACHE_SIZE = getLongProperty("index_cache_size", 0);
     }
 
     /** Gets a string system property, prefixed with "samjdk." using the default if the property does not exist. */
@@ -94,6 +115,12 @@ public class Defaults {
         return Integer.parseInt(value);
     }
 
+    /** Gets a long system property, prefixed with "samjdk." using the default if the property does not exist. */
+    private static long getLongProperty(final String name, final long def) {
+        final String value = getStringProperty(name, Long.toString(def));
+        return Long.parseLong(value);
+    }
+
     /** Gets a File system property, prefixed with "samdjk." using the default if the property does not exist. */
     private static File getFileProperty(final String name, final String def) {
         final String value = getStringProperty(name, def);
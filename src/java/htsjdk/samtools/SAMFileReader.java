@@ -25,7 +25,7 @@ package htsjdk.samtools;
 
 
 import htsjdk.samtools.seekablestream.SeekableBufferedStream;
-import htsjdk.samtools.seekablestream.SeekableHTTPStream;
+import htsjdk.samtools.seekablestream.SeekableCachingHTTPStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.BlockCompressedStreamConstants;
@@ -180,7 +180,7 @@ public class SAMFileReader implements SamReader, SamReader.Indexing {
      * @param eagerDecode eagerDecode if true, decode SAM record entirely when reading it.
      */
     public SAMFileReader(final URL url, final File indexFile, final boolean eagerDecode) {
-        init(new SeekableBufferedStream(new SeekableHTTPStream(url)),
+        init(new SeekableBufferedStream(new SeekableCachingHTTPStream(url)),
                 indexFile, eagerDecode, defaultValidationStringency);
     }
 
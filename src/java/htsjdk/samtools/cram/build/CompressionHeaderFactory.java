@@ -15,6 +15,8 @@
  ******************************************************************************/
 package htsjdk.samtools.cram.build;
 
+import htsjdk.samtools.cram.common.IntHashMap;
+import htsjdk.samtools.cram.common.IntHistogram;
 import htsjdk.samtools.cram.common.MutableInt;
 import htsjdk.samtools.cram.encoding.BetaIntegerEncoding;
 import htsjdk.samtools.cram.encoding.BitCodec;
@@ -28,9 +30,9 @@ import htsjdk.samtools.cram.encoding.GammaIntegerEncoding;
 import htsjdk.samtools.cram.encoding.HuffmanByteEncoding;
 import htsjdk.samtools.cram.encoding.HuffmanIntegerEncoding;
 import htsjdk.samtools.cram.encoding.NullEncoding;
+import htsjdk.samtools.cram.encoding.ReadNameTokenEncoding;
 import htsjdk.samtools.cram.encoding.SubexpIntegerEncoding;
 import htsjdk.samtools.cram.encoding.huffman.HuffmanCode;
-import htsjdk.samtools.cram.encoding.huffman.HuffmanTree;
 import htsjdk.samtools.cram.encoding.read_features.Deletion;
 import htsjdk.samtools.cram.encoding.read_features.HardClip;
 import htsjdk.samtools.cram.encoding.read_features.Padding;
@@ -60,6 +62,74 @@ public class CompressionHeaderFactory {
     private static final int oqz = ReadTag.nameType3BytesToInt("OQ", 'Z');
     private static final int bqz = ReadTag.nameType3BytesToInt("OQ", 'Z');
 
+    /**
+     * Encodings are reused when the value distribution of a data series is
+     * within this total variation distance of the one the encoding was built
+     * for.
+     */
+    private static final double REUSE_DISTANCE = 0.05;
+
+    private int samplingStep = 1;
+    private boolean reuseEncodings = false;
+    private boolean tokeniseReadNames = false;
+    private final Map<String, ReusableEncoding> previousEncodings = new HashMap<String, ReusableEncoding>();
+
+    private static class ReusableEncoding {
+        private final IntHistogram histogram;
+        private final EncodingParams params;
+
+        private ReusableEncoding(IntHistogram histogram, EncodingParams params) {
+            this.histogram = histogram;
+            this.params = params;
+        }
+    }
+
+    public int getSamplingStep() {
+        return samplingStep;
+    }
+
+    /**
+     * Take value frequencies from every n-th record only. The values of the
+     * other records are still registered, so that every value in the
+     * container can be encoded, but they do not add to the frequencies.
+     *
+     * @param samplingStep 1 to count all records
+     */
+    public void setSamplingStep(int samplingStep) {
+        if (samplingStep < 1)
+            throw new IllegalArgumentException("Sampling step must be positive: " + samplingStep);
+        this.samplingStep = samplingStep;
+    }
+
+    public boolean isReuseEncodings() {
+        return reuseEncodings;
+    }
+
+    /**
+     * Keep the encodings of a data series from one container to the next as
+     * long as no new values appear and the value distribution stays close to
+     * the one the encoding was built for. This saves building Huffman codes
+     * and evaluating integer encodings for every container.
+     */
+    public void setReuseEncodings(boolean reuseEncodings) {
+        this.reuseEncodings = reuseEncodings;
+        if (!reuseEncodings)
+            previousEncodings.clear();
+    }
+
+    public boolean isTokeniseReadNames() {
+        return tokeniseReadNames;
+    }
+
+    /**
+     * Encode read names with {@link ReadNameTokenEncoding}, which stores each
+     * name as tokens matched against the previous name instead of as a whole.
+     * Only readers aware of the encoding can decode such containers.
+     */
+    public void setTokeniseReadNames(boolean tokeniseReadNames) {
+        this.tokeniseReadNames = tokeniseReadNames;
+    }
+
     public CompressionHeader build(List<CramCompressionRecord> records, SubstitutionMatrix substitutionMatrix) {
         CompressionHeader h = new CompressionHeader();
         h.externalIds = new ArrayList<Integer>();
@@ -92,140 +162,189 @@ public class CompressionHeaderFactory {
 
         h.tMap = new TreeMap<Integer, EncodingParams>();
 
-        { // bit flags encoding:
-            getOptimalIntegerEncoding(h, EncodingKey.BF_BitFlags, 0, records);
-        }
-
-        { // compression bit flags encoding:
-            getOptimalIntegerEncoding(h, EncodingKey.CF_CompressionBitFlags, 0, records);
-        }
-
-        { // ref id:
-
-            getOptimalIntegerEncoding(h, EncodingKey.RI_RefId, -2, records);
-        }
-
-        { // read length encoding:
-            getOptimalIntegerEncoding(h, EncodingKey.RL_ReadLength, 0, records);
-        }
-
-        { // alignment offset:
-            getOptimalIntegerEncoding(h, EncodingKey.AP_AlignmentPositionOffset, 0, records);
-        }
-
-        { // read group
-            getOptimalIntegerEncoding(h, EncodingKey.RG_ReadGroup, -1, records);
-        }
-
-        { // read name encoding:
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                calculator.add(r.readName.length());
-            calculator.calculate();
-
-            h.eMap.put(EncodingKey.RN_ReadName, ByteArrayLenEncoding.toParam(
-                    HuffmanIntegerEncoding.toParam(calculator.values(), calculator.bitLens()),
-                    ExternalByteArrayEncoding.toParam(readNameID)));
-            // h.eMap.put(EncodingKey.RN_ReadName,
-            // ByteArrayStopEncoding.toParam((byte) 0, readNameID));
-        }
-
-        { // records to next fragment
-            IntegerEncodingCalculator calc = new IntegerEncodingCalculator(EncodingKey.NF_RecordsToNextFragment.name(),
-                    0);
-            for (CramCompressionRecord r : records) {
-                if (r.isHasMateDownStream())
-                    calc.addValue(r.recordsToNextFragment);
+        IntegerEncodingCalculator bitFlags = new IntegerEncodingCalculator(EncodingKey.BF_BitFlags.name(), 0);
+        IntegerEncodingCalculator compressionFlags = new IntegerEncodingCalculator(
+                EncodingKey.CF_CompressionBitFlags.name(), 0);
+        IntegerEncodingCalculator refId = new IntegerEncodingCalculator(EncodingKey.RI_RefId.name(), -2);
+        IntegerEncodingCalculator readLength = new IntegerEncodingCalculator(EncodingKey.RL_ReadLength.name(), 0);
+        IntegerEncodingCalculator alignmentOffset = new IntegerEncodingCalculator(
+                EncodingKey.AP_AlignmentPositionOffset.name(), 0);
+        IntegerEncodingCalculator readGroup = new IntegerEncodingCalculator(EncodingKey.RG_ReadGroup.name(), -1);
+        IntegerEncodingCalculator nextFragment = new IntegerEncodingCalculator(
+                EncodingKey.NF_RecordsToNextFragment.name(), 0);
+        IntegerEncodingCalculator featurePosition = new IntegerEncodingCalculator("read feature position", 0);
+        IntegerEncodingCalculator hardClip = new IntegerEncodingCalculator(EncodingKey.HC_HardClip.name(), 1);
+        IntegerEncodingCalculator padding = new IntegerEncodingCalculator(EncodingKey.PD_padding.name(), 1);
+
+        HuffmanParamsCalculator readNameLength = new HuffmanParamsCalculator();
+        HuffmanParamsCalculator tagCount = new HuffmanParamsCalculator();
+        HuffmanParamsCalculator tagNameAndType = new HuffmanParamsCalculator();
+        HuffmanParamsCalculator featureCount = new HuffmanParamsCalculator();
+        HuffmanParamsCalculator featureCode = new HuffmanParamsCalculator();
+        HuffmanParamsCalculator deletionLength = new HuffmanParamsCalculator();
+        HuffmanParamsCalculator refSkip = new HuffmanParamsCalculator();
+        HuffmanParamsCalculator mappingQuality = new HuffmanParamsCalculator();
+        HuffmanParamsCalculator mateFlags = new HuffmanParamsCalculator();
+        HuffmanParamsCalculator mateRefId = new HuffmanParamsCalculator();
+
+        IntHashMap<HuffmanParamsCalculator> tagValueLengths = new IntHashMap<HuffmanParamsCalculator>();
+        List<Integer> tagKeys = new ArrayList<Integer>();
+
+        long[][] substitutionFreqs = substitutionMatrix == null ? new long[200][200] : null;
+        boolean hasSubstitutions = false;
+
+        Comparator<ReadTag> comparator = new Comparator<ReadTag>() {
+
+            @Override
+            public int compare(ReadTag o1, ReadTag o2) {
+                return o1.keyType3BytesAsInt - o2.keyType3BytesAsInt;
             }
+        };
 
-            Encoding<Integer> bestEncoding = calc.getBestEncoding();
-            h.eMap.put(EncodingKey.NF_RecordsToNextFragment,
-                    new EncodingParams(bestEncoding.id(), bestEncoding.toByteArray()));
-        }
+        Comparator<byte[]> baComparator = new Comparator<byte[]>() {
 
-        { // tag count
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                calculator.add(r.tags == null ? 0 : r.tags.length);
-            calculator.calculate();
+            @Override
+            public int compare(byte[] o1, byte[] o2) {
+                if (o1.length - o2.length != 0)
+                    return o1.length - o2.length;
 
-            h.eMap.put(EncodingKey.TC_TagCount,
-                    HuffmanIntegerEncoding.toParam(calculator.values(), calculator.bitLens()));
-        }
+                for (int i = 0; i < o1.length; i++)
+                    if (o1[i] != o2[i])
+                        return o1[i] - o2[i];
 
-        { // tag name and type
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records) {
-                if (r.tags == null)
-                    continue;
-                for (ReadTag tag : r.tags)
-                    calculator.add(tag.keyType3BytesAsInt);
+                return 0;
             }
-            calculator.calculate();
-
-            h.eMap.put(EncodingKey.TN_TagNameAndType,
-                    HuffmanIntegerEncoding.toParam(calculator.values(), calculator.bitLens()));
-        }
-
-        {
+        };
 
-            Comparator<ReadTag> comparator = new Comparator<ReadTag>() {
+        Map<byte[], MutableInt> tagIdLists = new TreeMap<byte[], MutableInt>(baComparator);
+        MutableInt noTagCounter = new MutableInt();
+        tagIdLists.put(new byte[0], noTagCounter);
 
-                @Override
-                public int compare(ReadTag o1, ReadTag o2) {
-                    return o1.keyType3BytesAsInt - o2.keyType3BytesAsInt;
-                }
-            };
-
-            Comparator<byte[]> baComparator = new Comparator<byte[]>() {
-
-                @Override
-                public int compare(byte[] o1, byte[] o2) {
-                    if (o1.length - o2.length != 0)
-                        return o1.length - o2.length;
-
-                    for (int i = 0; i < o1.length; i++)
-                        if (o1[i] != o2[i])
-                            return o1[i] - o2[i];
+        // a single pass collecting the statistics of all data series:
+        int recordIndex = 0;
+        for (CramCompressionRecord r : records) {
+            int weight = recordIndex++ % samplingStep == 0 ? samplingStep : 0;
+
+            bitFlags.addValue(r.flags, weight);
+            compressionFlags.addValue(r.compressionFlags, weight);
+            refId.addValue(r.sequenceId, weight);
+            readLength.addValue(r.readLength, weight);
+            alignmentOffset.addValue(r.alignmentDelta, weight);
+            readGroup.addValue(r.readGroupID, weight);
+            readNameLength.add(r.readName.length(), weight);
+            if (r.isHasMateDownStream())
+                nextFragment.addValue(r.recordsToNextFragment, weight);
+
+            tagCount.add(r.tags == null ? 0 : r.tags.length, weight);
+            if (r.tags == null) {
+                noTagCounter.value++;
+                r.tagIdsIndex = noTagCounter;
+            } else {
+                for (ReadTag tag : r.tags) {
+                    tagNameAndType.add(tag.keyType3BytesAsInt, weight);
 
-                    return 0;
-                }
-            };
-
-            Map<byte[], MutableInt> map = new TreeMap<byte[], MutableInt>(baComparator);
-            MutableInt noTagCounter = new MutableInt();
-            map.put(new byte[0], noTagCounter);
-            for (CramCompressionRecord r : records) {
-                if (r.tags == null) {
-                    noTagCounter.value++;
-                    r.tagIdsIndex = noTagCounter;
-                    continue;
+                    HuffmanParamsCalculator c = tagValueLengths.get(tag.keyType3BytesAsInt);
+                    if (c == null) {
+                        c = new HuffmanParamsCalculator();
+                        tagValueLengths.put(tag.keyType3BytesAsInt, c);
+                        tagKeys.add(tag.keyType3BytesAsInt);
+                    }
+                    c.add(tag.getValueAsByteArray().length, weight);
                 }
 
                 Arrays.sort(r.tags, comparator);
                 r.tagIds = new byte[r.tags.length * 3];
-
-                int tagIndex = 0;
                 for (int i = 0; i < r.tags.length; i++) {
-                    r.tagIds[i * 3] = (byte) r.tags[tagIndex].keyType3Bytes.charAt(0);
-                    r.tagIds[i * 3 + 1] = (byte) r.tags[tagIndex].keyType3Bytes.charAt(1);
-                    r.tagIds[i * 3 + 2] = (byte) r.tags[tagIndex].keyType3Bytes.charAt(2);
-                    tagIndex++;
+                    r.tagIds[i * 3] = (byte) r.tags[i].keyType3Bytes.charAt(0);
+                    r.tagIds[i * 3 + 1] = (byte) r.tags[i].keyType3Bytes.charAt(1);
+                    r.tagIds[i * 3 + 2] = (byte) r.tags[i].keyType3Bytes.charAt(2);
                 }
 
-                MutableInt count = map.get(r.tagIds);
+                MutableInt count = tagIdLists.get(r.tagIds);
                 if (count == null) {
                     count = new MutableInt();
-                    map.put(r.tagIds, count);
+                    tagIdLists.put(r.tagIds, count);
                 }
                 count.value++;
                 r.tagIdsIndex = count;
             }
 
-            byte[][][] dic = new byte[map.size()][][];
+            featureCount.add(r.readFeatures == null ? 0 : r.readFeatures.size(), weight);
+            if (r.readFeatures != null) {
+                int prevPos = 0;
+                for (ReadFeature rf : r.readFeatures) {
+                    featurePosition.addValue(rf.getPosition() - prevPos, weight);
+                    prevPos = rf.getPosition();
+                    featureCode.add(rf.getOperator(), weight);
+
+                    switch (rf.getOperator()) {
+                        case Substitution.operator:
+                            hasSubstitutions = true;
+                            if (substitutionFreqs != null) {
+                                Substitution s = ((Substitution) rf);
+                                substitutionFreqs[s.getRefernceBase()][s.getBase()] += weight;
+                            }
+                            break;
+                        case Deletion.operator:
+                            deletionLength.add(((Deletion) rf).getLength(), weight);
+                            break;
+                        case HardClip.operator:
+                            hardClip.addValue(((HardClip) rf).getLength(), weight);
+                            break;
+                        case Padding.operator:
+                            padding.addValue(((Padding) rf).getLength(), weight);
+                            break;
+                        case RefSkip.operator:
+                            refSkip.add(((RefSkip) rf).getLength(), weight);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+
+            if (!r.isSegmentUnmapped())
+                mappingQuality.add(r.mappingQuality, weight);
+            mateFlags.add(r.getMateFlags(), weight);
+            if (r.isDetached())
+                mateRefId.add(r.mateSequenceID, weight);
+        }
+
+        h.eMap.put(EncodingKey.BF_BitFlags, integerParams(bitFlags));
+        h.eMap.put(EncodingKey.CF_CompressionBitFlags, integerParams(compressionFlags));
+        h.eMap.put(EncodingKey.RI_RefId, integerParams(refId));
+        h.eMap.put(EncodingKey.RL_ReadLength, integerParams(readLength));
+        h.eMap.put(EncodingKey.AP_AlignmentPositionOffset, integerParams(alignmentOffset));
+        h.eMap.put(EncodingKey.RG_ReadGroup, integerParams(readGroup));
+
+        { // read name encoding:
+            if (tokeniseReadNames) {
+                int deltaID = exCounter++;
+                h.externalIds.add(deltaID);
+                int digitsID = exCounter++;
+                h.externalIds.add(digitsID);
+                int stringID = exCounter++;
+                h.externalIds.add(stringID);
+                h.eMap.put(EncodingKey.RN_ReadName,
+                        ReadNameTokenEncoding.toParam(readNameID, deltaID, digitsID, stringID));
+            } else
+                h.eMap.put(EncodingKey.RN_ReadName, ByteArrayLenEncoding.toParam(
+                        huffmanParams(EncodingKey.RN_ReadName.name(), readNameLength),
+                        ExternalByteArrayEncoding.toParam(readNameID)));
+            // h.eMap.put(EncodingKey.RN_ReadName,
+            // ByteArrayStopEncoding.toParam((byte) 0, readNameID));
+        }
+
+        h.eMap.put(EncodingKey.NF_RecordsToNextFragment, integerParams(nextFragment));
+        h.eMap.put(EncodingKey.TC_TagCount, huffmanParams(EncodingKey.TC_TagCount.name(), tagCount));
+        h.eMap.put(EncodingKey.TN_TagNameAndType,
+                huffmanParams(EncodingKey.TN_TagNameAndType.name(), tagNameAndType));
+
+        { // tag id lists, the dictionary is specific to the container:
+            byte[][][] dic = new byte[tagIdLists.size()][][];
             int i = 0;
             HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (byte[] idsAsBytes : map.keySet()) {
+            for (byte[] idsAsBytes : tagIdLists.keySet()) {
                 int nofIds = idsAsBytes.length / 3;
                 dic[i] = new byte[nofIds][];
                 for (int j = 0; j < idsAsBytes.length; ) {
@@ -235,8 +354,10 @@ public class CompressionHeaderFactory {
                     dic[i][idIndex][1] = idsAsBytes[j++];
                     dic[i][idIndex][2] = idsAsBytes[j++];
                 }
-                calculator.add(i, map.get(idsAsBytes).value);
-                map.get(idsAsBytes).value = i++;
+                MutableInt count = tagIdLists.get(idsAsBytes);
+                if (count.value > 0)
+                    calculator.add(i, count.value);
+                count.value = i++;
             }
 
             calculator.calculate();
@@ -246,104 +367,29 @@ public class CompressionHeaderFactory {
         }
 
         { // tag values
-            Map<Integer, HuffmanParamsCalculator> cc = new TreeMap<Integer, HuffmanParamsCalculator>();
-
-            for (CramCompressionRecord r : records) {
-                if (r.tags == null)
-                    continue;
-
-                for (ReadTag tag : r.tags) {
-                    switch (tag.keyType3BytesAsInt) {
-                        // case ReadTag.OQZ:
-                        // case ReadTag.BQZ:
-                        // EncodingParams params = h.tMap
-                        // .get(tag.keyType3BytesAsInt);
-                        // if (params == null) {
-                        // h.tMap.put(tag.keyType3BytesAsInt,
-                        // ByteArrayStopEncoding.toParam((byte) 1,
-                        // tagValueExtID));
-                        // }
-                        // break;
-
-                        default:
-                            HuffmanParamsCalculator c = cc.get(tag.keyType3BytesAsInt);
-                            if (c == null) {
-                                c = new HuffmanParamsCalculator();
-                                cc.put(tag.keyType3BytesAsInt, c);
-                            }
-                            c.add(tag.getValueAsByteArray().length);
-                            break;
-                    }
-                }
+            for (Integer key : tagKeys) {
+                h.tMap.put(key, ByteArrayLenEncoding.toParam(
+                        huffmanParams("tag " + key, tagValueLengths.get(key)),
+                        ExternalByteArrayEncoding.toParam(tagValueExtID)));
             }
 
-            if (!cc.isEmpty())
-                for (Integer key : cc.keySet()) {
-                    HuffmanParamsCalculator c = cc.get(key);
-                    c.calculate();
-
-                    h.tMap.put(key, ByteArrayLenEncoding.toParam(
-                            HuffmanIntegerEncoding.toParam(c.values(), c.bitLens()),
-                            ExternalByteArrayEncoding.toParam(tagValueExtID)));
-                }
-
             for (Integer key : h.tMap.keySet()) {
                 log.debug(String.format("TAG ENCODING: %d, %s", key, h.tMap.get(key)));
             }
-
-            // for (CramRecord r : records) {
-            // if (r.tags == null || r.tags.isEmpty())
-            // continue;
-            // for (ReadTag tag : r.tags) {
-            // EncodingParams params = h.tMap.get(tag.keyType3BytesAsInt);
-            // if (params == null) {
-            // h.tMap.put(tag.keyType3BytesAsInt,
-            // ByteArrayStopEncoding.toParam((byte) 0,
-            // tagValueExtID));
-            // }
-            // }
-            // }
-        }
-
-        { // number of read features
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                calculator.add(r.readFeatures == null ? 0 : r.readFeatures.size());
-            calculator.calculate();
-
-            h.eMap.put(EncodingKey.FN_NumberOfReadFeatures,
-                    HuffmanIntegerEncoding.toParam(calculator.values(), calculator.bitLens()));
         }
 
-        { // feature position
-            IntegerEncodingCalculator calc = new IntegerEncodingCalculator("read feature position", 0);
-            for (CramCompressionRecord r : records) {
-                int prevPos = 0;
-                if (r.readFeatures == null)
-                    continue;
-                for (ReadFeature rf : r.readFeatures) {
-                    calc.addValue(rf.getPosition() - prevPos);
-                    prevPos = rf.getPosition();
-                }
-            }
-
-            Encoding<Integer> bestEncoding = calc.getBestEncoding();
-            h.eMap.put(EncodingKey.FP_FeaturePosition,
-                    new EncodingParams(bestEncoding.id(), bestEncoding.toByteArray()));
-        }
+        h.eMap.put(EncodingKey.FN_NumberOfReadFeatures,
+                huffmanParams(EncodingKey.FN_NumberOfReadFeatures.name(), featureCount));
+        h.eMap.put(EncodingKey.FP_FeaturePosition, integerParams(featurePosition));
 
         { // feature code
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                if (r.readFeatures == null)
-                    continue;
-                else
-                    for (ReadFeature rf : r.readFeatures)
-                        calculator.add(rf.getOperator());
-            calculator.calculate();
-
-            h.eMap.put(EncodingKey.FC_FeatureCode,
-                    HuffmanByteEncoding.toParam(calculator.valuesAsBytes(), calculator.bitLens));
+            EncodingParams params = reusableParams(EncodingKey.FC_FeatureCode.name(), featureCode.getHistogram());
+            if (params == null) {
+                featureCode.calculate();
+                params = HuffmanByteEncoding.toParam(featureCode.valuesAsBytes(), featureCode.bitLens());
+                keepParams(EncodingKey.FC_FeatureCode.name(), featureCode.getHistogram(), params);
+            }
+            h.eMap.put(EncodingKey.FC_FeatureCode, params);
         }
 
         { // bases:
@@ -351,59 +397,23 @@ public class CompressionHeaderFactory {
         }
 
         { // quality scores:
-            // HuffmanParamsCalculator calculator = new
-            // HuffmanParamsCalculator();
-            // for (CramRecord r : records) {
-            // if (r.getQualityScores() == null) {
-            // if (r.getReadFeatures() != null) {
-            // for (ReadFeature f:r.getReadFeatures()) {
-            // switch (f.getOperator()) {
-            // case BaseQualityScore.operator:
-            // calculator.add(((BaseQualityScore)f).getQualityScore()) ;
-            // break;
-            // default:
-            // break;
-            // }
-            // }
-            // }
-            // } else {
-            // for (byte s:r.getQualityScores()) calculator.add(s) ;
-            // }
-            // }
-            // calculator.calculate();
-            //
-            // h.eMap.put(EncodingKey.QS_QualityScore,
-            // HuffmanByteEncoding.toParam(
-            // calculator.valuesAsBytes(), calculator.bitLens));
-
             h.eMap.put(EncodingKey.QS_QualityScore, ExternalByteEncoding.toParam(qualityScoreID));
         }
 
         { // base substitution code
-            if (substitutionMatrix == null) {
-                long[][] freqs = new long[200][200];
+            if (substitutionMatrix == null)
+                h.substitutionMatrix = new SubstitutionMatrix(substitutionFreqs);
+            else
+                h.substitutionMatrix = substitutionMatrix;
+
+            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
+            if (hasSubstitutions) {
+                recordIndex = 0;
                 for (CramCompressionRecord r : records) {
+                    int weight = recordIndex++ % samplingStep == 0 ? samplingStep : 0;
                     if (r.readFeatures == null)
                         continue;
-                    else
-                        for (ReadFeature rf : r.readFeatures)
-                            if (rf.getOperator() == Substitution.operator) {
-                                Substitution s = ((Substitution) rf);
-                                byte refBase = s.getRefernceBase();
-                                byte base = s.getBase();
-                                freqs[refBase][base]++;
-                            }
-                }
 
-                h.substitutionMatrix = new SubstitutionMatrix(freqs);
-            } else
-                h.substitutionMatrix = substitutionMatrix;
-
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                if (r.readFeatures == null)
-                    continue;
-                else
                     for (ReadFeature rf : r.readFeatures) {
                         if (rf.getOperator() == Substitution.operator) {
                             Substitution s = ((Substitution) rf);
@@ -412,13 +422,14 @@ public class CompressionHeaderFactory {
                                 byte base = s.getBase();
                                 s.setCode(h.substitutionMatrix.code(refBase, base));
                             }
-                            calculator.add(s.getCode());
+                            calculator.add(s.getCode(), weight);
                         }
                     }
-            calculator.calculate();
+                }
+            }
 
             h.eMap.put(EncodingKey.BS_BaseSubstitutionCode,
-                    HuffmanIntegerEncoding.toParam(calculator.values, calculator.bitLens));
+                    huffmanParams(EncodingKey.BS_BaseSubstitutionCode.name(), calculator));
         }
 
         { // insertion bases
@@ -429,97 +440,18 @@ public class CompressionHeaderFactory {
             h.eMap.put(EncodingKey.SC_SoftClip, ByteArrayStopEncoding.toParam((byte) 0, baseID));
         }
 
-        { // deletion length
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                if (r.readFeatures == null)
-                    continue;
-                else
-                    for (ReadFeature rf : r.readFeatures)
-                        if (rf.getOperator() == Deletion.operator)
-                            calculator.add(((Deletion) rf).getLength());
-            calculator.calculate();
-
-            h.eMap.put(EncodingKey.DL_DeletionLength,
-                    HuffmanIntegerEncoding.toParam(calculator.values, calculator.bitLens));
-        }
-
-        { // hard clip length
-            IntegerEncodingCalculator calculator = new IntegerEncodingCalculator(EncodingKey.HC_HardClip.name(), 1);
-            for (CramCompressionRecord r : records)
-                if (r.readFeatures == null)
-                    continue;
-                else
-                    for (ReadFeature rf : r.readFeatures)
-                        if (rf.getOperator() == HardClip.operator)
-                            calculator.addValue(((HardClip) rf).getLength());
-
-            Encoding<Integer> bestEncoding = calculator.getBestEncoding();
-            h.eMap.put(EncodingKey.HC_HardClip, new EncodingParams(bestEncoding.id(), bestEncoding.toByteArray()));
-        }
-
-        { // padding length
-            IntegerEncodingCalculator calculator = new IntegerEncodingCalculator(EncodingKey.PD_padding.name(), 1);
-            for (CramCompressionRecord r : records)
-                if (r.readFeatures == null)
-                    continue;
-                else
-                    for (ReadFeature rf : r.readFeatures)
-                        if (rf.getOperator() == Padding.operator)
-                            calculator.addValue(((Padding) rf).getLength());
-
-            Encoding<Integer> bestEncoding = calculator.getBestEncoding();
-            h.eMap.put(EncodingKey.PD_padding, new EncodingParams(bestEncoding.id(), bestEncoding.toByteArray()));
-
-        }
-
-        { // ref skip length
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                if (r.readFeatures == null)
-                    continue;
-                else
-                    for (ReadFeature rf : r.readFeatures)
-                        if (rf.getOperator() == RefSkip.operator)
-                            calculator.add(((RefSkip) rf).getLength());
-            calculator.calculate();
-
-            h.eMap.put(EncodingKey.RS_RefSkip, HuffmanIntegerEncoding.toParam(calculator.values, calculator.bitLens));
-        }
-
-        { // mapping quality score
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                if (!r.isSegmentUnmapped())
-                    calculator.add(r.mappingQuality);
-            calculator.calculate();
-
-            h.eMap.put(EncodingKey.MQ_MappingQualityScore,
-                    HuffmanIntegerEncoding.toParam(calculator.values(), calculator.bitLens));
-        }
-
-        { // mate bit flags
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                calculator.add(r.getMateFlags());
-            calculator.calculate();
-
-            h.eMap.put(EncodingKey.MF_MateBitFlags,
-                    HuffmanIntegerEncoding.toParam(calculator.values, calculator.bitLens));
-        }
+        h.eMap.put(EncodingKey.DL_DeletionLength,
+                huffmanParams(EncodingKey.DL_DeletionLength.name(), deletionLength));
+        h.eMap.put(EncodingKey.HC_HardClip, integerParams(hardClip));
+        h.eMap.put(EncodingKey.PD_padding, integerParams(padding));
+        h.eMap.put(EncodingKey.RS_RefSkip, huffmanParams(EncodingKey.RS_RefSkip.name(), refSkip));
+        h.eMap.put(EncodingKey.MQ_MappingQualityScore,
+                huffmanParams(EncodingKey.MQ_MappingQualityScore.name(), mappingQuality));
+        h.eMap.put(EncodingKey.MF_MateBitFlags, huffmanParams(EncodingKey.MF_MateBitFlags.name(), mateFlags));
 
         { // next fragment ref id:
-            HuffmanParamsCalculator calculator = new HuffmanParamsCalculator();
-            for (CramCompressionRecord r : records)
-                if (r.isDetached())
-                    calculator.add(r.mateSequenceID);
-            calculator.calculate();
-
-            if (calculator.values.length == 0)
-                h.eMap.put(EncodingKey.NS_NextFragmentReferenceSequenceID, NullEncoding.toParam());
-
             h.eMap.put(EncodingKey.NS_NextFragmentReferenceSequenceID,
-                    HuffmanIntegerEncoding.toParam(calculator.values(), calculator.bitLens()));
+                    huffmanParams(EncodingKey.NS_NextFragmentReferenceSequenceID.name(), mateRefId));
             log.debug("NS: " + h.eMap.get(EncodingKey.NS_NextFragmentReferenceSequenceID));
         }
 
@@ -539,102 +471,71 @@ public class CompressionHeaderFactory {
         return h;
     }
 
-    // private static final int getValue(EncodingKey key, ReadFeature f) {
-    // switch (key) {
-    // case BS_BaseSubstitutionCode:
-    //
-    // break;
-    //
-    // default:
-    // break;
-    // }
-    // }
-
-    private static final int getValue(EncodingKey key, CramCompressionRecord r) {
-        switch (key) {
-            case AP_AlignmentPositionOffset:
-                return r.alignmentDelta;
-            case BF_BitFlags:
-                return r.flags;
-            case CF_CompressionBitFlags:
-                return r.compressionFlags;
-            case FN_NumberOfReadFeatures:
-                return r.readFeatures == null ? 0 : r.readFeatures.size();
-            case MF_MateBitFlags:
-                return r.mateFlags;
-            case MQ_MappingQualityScore:
-                return r.mappingQuality;
-            case NF_RecordsToNextFragment:
-                return r.recordsToNextFragment;
-            case NP_NextFragmentAlignmentStart:
-                return r.mateAlignmentStart;
-            case NS_NextFragmentReferenceSequenceID:
-                return r.mateSequenceID;
-            case RG_ReadGroup:
-                return r.readGroupID;
-            case RI_RefId:
-                return r.sequenceId;
-            case RL_ReadLength:
-                return r.readLength;
-            case TC_TagCount:
-                return r.tags == null ? 0 : r.tags.length;
-
-            default:
-                throw new RuntimeException("Unexpected encoding key: " + key.name());
-        }
+    /**
+     * @return the encoding previously built for the data series if it can
+     *         encode all the values in the histogram and their distribution has
+     *         not changed much, null otherwise
+     */
+    private EncodingParams reusableParams(String series, IntHistogram histogram) {
+        if (!reuseEncodings)
+            return null;
+
+        ReusableEncoding previous = previousEncodings.get(series);
+        if (previous == null || !histogram.isSubsetOf(previous.histogram)
+                || histogram.distance(previous.histogram) > REUSE_DISTANCE)
+            return null;
+
+        log.debug("Reusing encoding for " + series);
+        return previous.params;
     }
 
-    private static final void getOptimalIntegerEncoding(CompressionHeader h, EncodingKey key, int minValue,
-                                                        List<CramCompressionRecord> records) {
-        IntegerEncodingCalculator calc = new IntegerEncodingCalculator(key.name(), minValue);
-        for (CramCompressionRecord r : records) {
-            int value = getValue(key, r);
-            calc.addValue(value);
-        }
-
-        Encoding<Integer> bestEncoding = calc.getBestEncoding();
-        h.eMap.put(key, new EncodingParams(bestEncoding.id(), bestEncoding.toByteArray()));
+    private void keepParams(String series, IntHistogram histogram, EncodingParams params) {
+        if (reuseEncodings)
+            previousEncodings.put(series, new ReusableEncoding(histogram, params));
     }
 
-    private static class BitCode implements Comparable<BitCode> {
-        int value;
-        int len;
-
-        public BitCode(int value, int len) {
-            this.value = value;
-            this.len = len;
+    private EncodingParams integerParams(IntegerEncodingCalculator calculator) {
+        EncodingParams params = reusableParams(calculator.name, calculator.getHistogram());
+        if (params == null) {
+            Encoding<Integer> bestEncoding = calculator.getBestEncoding();
+            params = new EncodingParams(bestEncoding.id(), bestEncoding.toByteArray());
+            keepParams(calculator.name, calculator.getHistogram(), params);
         }
+        return params;
+    }
 
-        @Override
-        public int compareTo(BitCode o) {
-            int result = value - o.value;
-            if (result != 0)
-                return result;
-            return len - o.len;
+    private EncodingParams huffmanParams(String series, HuffmanParamsCalculator calculator) {
+        EncodingParams params = reusableParams(series, calculator.getHistogram());
+        if (params == null) {
+            calculator.calculate();
+            params = HuffmanIntegerEncoding.toParam(calculator.values(), calculator.bitLens());
+            keepParams(series, calculator.getHistogram(), params);
         }
+        return params;
     }
 
     public static class HuffmanParamsCalculator {
-        private HashMap<Integer, MutableInt> countMap = new HashMap<Integer, MutableInt>();
+        private IntHistogram histogram = new IntHistogram();
         private int[] values = new int[]{};
         private int[] bitLens = new int[]{};
 
         public void add(int value) {
-            MutableInt counter = countMap.get(value);
-            if (counter == null) {
-                counter = new MutableInt();
-                countMap.put(value, counter);
-            }
-            counter.value++;
+            histogram.add(value);
         }
 
-        public void add(Integer value, int inc) {
-            MutableInt counter = countMap.get(value);
-            if (counter == null) {
-                counter = new MutableInt();
-                countMap.put(value, counter);
-            }
-            counter.value += inc;
+        /**
+         * @param inc number of occurrences, 0 only makes sure the value gets a
+         *            code
+         */
+        public void add(int value, int inc) {
+            if (inc > 0)
+                histogram.add(value, inc);
+            else
+                histogram.addIfAbsent(value);
+        }
+
+        public IntHistogram getHistogram() {
+            return histogram;
         }
 
         public int[] bitLens() {
@@ -670,50 +571,11 @@ public class CompressionHeaderFactory {
         }
 
         public void calculate() {
-            HuffmanTree<Integer> tree = null;
-            {
-                int size = countMap.size();
-                int[] freqs = new int[size];
-                int[] values = new int[size];
-
-                int i = 0;
-                for (Integer v : countMap.keySet()) {
-                    values[i] = v;
-                    freqs[i] = countMap.get(v).value;
-                    i++;
-                }
-                tree = HuffmanCode.buildTree(freqs, autobox(values));
-            }
-
-            List<Integer> valueList = new ArrayList<Integer>();
-            List<Integer> lens = new ArrayList<Integer>();
-            HuffmanCode.getValuesAndBitLengths(valueList, lens, tree);
-
-            // the following sorting is not really required, but whatever:
-            BitCode[] codes = new BitCode[valueList.size()];
-            for (int i = 0; i < valueList.size(); i++) {
-                codes[i] = new BitCode(valueList.get(i), lens.get(i));
-            }
-            Arrays.sort(codes);
-
-            values = new int[codes.length];
-            bitLens = new int[codes.length];
-
-            for (int i = 0; i < codes.length; i++) {
-                BitCode code = codes[i];
-                bitLens[i] = code.len;
-                values[i] = code.value;
-            }
+            values = histogram.values();
+            bitLens = HuffmanCode.codeLengths(histogram.counts(values));
         }
     }
 
-    private static Integer[] autobox(int[] array) {
-        Integer[] newArray = new Integer[array.length];
-        for (int i = 0; i < array.length; i++)
-            newArray[i] = array[i];
-        return newArray;
-    }
-
     public static class EncodingLengthCalculator {
         private BitCodec<Integer> codec;
         private Encoding<Integer> encoding;
@@ -742,8 +604,10 @@ public class CompressionHeaderFactory {
         private int max = 0;
         private int count = 0;
         private String name;
-        private HashMap<Integer, MutableInt> dictionary = new HashMap<Integer, MutableInt>();
+        private IntHistogram histogram = new IntHistogram();
+        private boolean useDictionary;
         private int dictionaryThreshold = 100;
+        private boolean evaluated = false;
 
         public IntegerEncodingCalculator(String name, int dictionaryThreshold, int minValue) {
             this.name = name;
@@ -760,16 +624,7 @@ public class CompressionHeaderFactory {
             for (int i = 2; i < 5; i++)
                 calcs.add(new EncodingLengthCalculator(new SubexpIntegerEncoding(0 - minValue, i)));
 
-            if (dictionaryThreshold < 1)
-                dictionary = null;
-            else {
-                dictionary = new HashMap<Integer, MutableInt>();
-                // int pow = (int) Math.ceil(Math.log(dictionaryThreshold)
-                // / Math.log(2f));
-                // dictionaryThreshold = 1 << pow ;
-                // dictionary = new HashMap<Integer,
-                // MutableInt>(dictionaryThreshold, 1);
-            }
+            useDictionary = dictionaryThreshold >= 1;
         }
 
         public IntegerEncodingCalculator(String name, int minValue) {
@@ -777,38 +632,51 @@ public class CompressionHeaderFactory {
         }
 
         public void addValue(int value) {
-            count++;
+            addValue(value, 1);
+        }
+
+        /**
+         * @param weight number of occurrences, 0 only makes sure the value can
+         *               be encoded
+         */
+        public void addValue(int value, int weight) {
+            if (weight < 1) {
+                if (histogram.contains(value))
+                    return;
+                weight = 1;
+            }
+
+            count += weight;
             if (value > max)
                 max = value;
+            histogram.add(value, weight);
+        }
 
-            for (EncodingLengthCalculator c : calcs)
-                c.add(value);
-
-            if (dictionary != null) {
-                if (dictionary.size() >= dictionaryThreshold - 1)
-                    dictionary = null;
-                else {
-                    MutableInt m = dictionary.get(value);
-                    if (m == null) {
-                        m = new MutableInt();
-                        dictionary.put(value, m);
-                    }
-                    m.value++;
-                }
-
-            }
-
+        public IntHistogram getHistogram() {
+            return histogram;
         }
 
         public Encoding<Integer> getBestEncoding() {
-            if (dictionary != null && dictionary.size() == 1) {
-                int value = dictionary.keySet().iterator().next();
-                EncodingParams param = HuffmanIntegerEncoding.toParam(new int[]{value}, new int[]{0});
+            final int[] values = histogram.values();
+            final int[] counts = histogram.counts(values);
+            final boolean dictionary = useDictionary && values.length < dictionaryThreshold - 1;
+
+            if (dictionary && values.length == 1) {
+                EncodingParams param = HuffmanIntegerEncoding.toParam(new int[]{values[0]}, new int[]{0});
                 HuffmanIntegerEncoding he = new HuffmanIntegerEncoding();
                 he.fromByteArray(param.params);
                 return he;
             }
 
+            // the encoded length only depends on the value, so evaluate each
+            // distinct value once:
+            if (!evaluated) {
+                for (EncodingLengthCalculator c : calcs)
+                    for (int i = 0; i < values.length; i++)
+                        c.add(values[i], counts[i]);
+                evaluated = true;
+            }
+
             EncodingLengthCalculator bestC = calcs.get(0);
 
             for (EncodingLengthCalculator c : calcs) {
@@ -829,10 +697,10 @@ public class CompressionHeaderFactory {
             }
 
             { // try huffman:
-                if (dictionary != null) {
+                if (dictionary) {
                     HuffmanParamsCalculator c = new HuffmanParamsCalculator();
-                    for (Integer value : dictionary.keySet())
-                        c.add(value, dictionary.get(value).value);
+                    for (int i = 0; i < values.length; i++)
+                        c.add(values[i], counts[i]);
 
                     c.calculate();
 
@@ -840,8 +708,8 @@ public class CompressionHeaderFactory {
                     HuffmanIntegerEncoding he = new HuffmanIntegerEncoding();
                     he.fromByteArray(param.params);
                     EncodingLengthCalculator lc = new EncodingLengthCalculator(he);
-                    for (Integer value : dictionary.keySet())
-                        lc.add(value, dictionary.get(value).value);
+                    for (int i = 0; i < values.length; i++)
+                        lc.add(values[i], counts[i]);
 
                     if (lc.len() < bits) {
                         bestEncoding = he;
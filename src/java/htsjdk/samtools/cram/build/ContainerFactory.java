@@ -19,7 +19,7 @@ import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.cram.encoding.writer.DataWriterFactory;
 import htsjdk.samtools.cram.encoding.writer.Writer;
-import htsjdk.samtools.cram.io.DefaultBitOutputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitOutputStream;
 import htsjdk.samtools.cram.io.ExposedByteArrayOutputStream;
 import htsjdk.samtools.cram.structure.Block;
 import htsjdk.samtools.cram.structure.BlockCompressionMethod;
@@ -42,10 +42,21 @@ public class ContainerFactory {
 	boolean preserveReadNames = true;
 	long globalRecordCounter = 0;
 	boolean AP_delta = true;
+	BlockCompressionMethod externalCompressionMethod = BlockCompressionMethod.GZIP;
+	private final CompressionHeaderFactory compressionHeaderFactory = new CompressionHeaderFactory();
 
 	public ContainerFactory(SAMFileHeader samFileHeader, int recordsPerSlice) {
 		this.samFileHeader = samFileHeader;
 		this.recordsPerSlice = recordsPerSlice;
+		compressionHeaderFactory.setReuseEncodings(true);
+	}
+
+	/**
+	 * @return the factory used for the compression headers of all containers,
+	 *         which keeps stable encodings from one container to the next
+	 */
+	public CompressionHeaderFactory getCompressionHeaderFactory() {
+		return compressionHeaderFactory;
 	}
 
 	public Container buildContainer(List<CramCompressionRecord> records)
@@ -58,9 +69,36 @@ public class ContainerFactory {
 			SubstitutionMatrix substitutionMatrix)
 			throws IllegalArgumentException, IllegalAccessException,
 			IOException {
+		int[] sliceSizes = new int[(records.size() + recordsPerSlice - 1)
+				/ recordsPerSlice];
+		for (int i = 0; i < sliceSizes.length; i++)
+			sliceSizes[i] = Math.min(recordsPerSlice, records.size() - i
+					* recordsPerSlice);
+		return buildContainer(records, substitutionMatrix, sliceSizes);
+	}
+
+	/**
+	 * Build a container with slices of the given numbers of records.
+	 * 
+	 * @param sliceSizes
+	 *            the number of records in each slice, adding up to the number
+	 *            of records
+	 */
+	public Container buildContainer(List<CramCompressionRecord> records,
+			SubstitutionMatrix substitutionMatrix, int[] sliceSizes)
+			throws IllegalArgumentException, IllegalAccessException,
+			IOException {
+		int total = 0;
+		for (int size : sliceSizes)
+			total += size;
+		if (total != records.size())
+			throw new IllegalArgumentException("Slice sizes add up to "
+					+ total + " instead of " + records.size() + " records.");
+
 		// get stats, create compression header and slices
 		long time1 = System.nanoTime();
-		CompressionHeader h = new CompressionHeaderFactory().build(records,
+		setAlignmentDeltas(records, sliceSizes);
+		CompressionHeader h = compressionHeaderFactory.build(records,
 				substitutionMatrix);
 		h.AP_seriesDelta = AP_delta;
 		long time2 = System.nanoTime();
@@ -79,18 +117,22 @@ public class ContainerFactory {
 
 		long time3 = System.nanoTime();
 		long lastGlobalRecordCounter = c.globalRecordCounter;
-		for (int i = 0; i < records.size(); i += recordsPerSlice) {
-			List<CramCompressionRecord> sliceRecords = records.subList(i,
-					Math.min(records.size(), i + recordsPerSlice));
-			Slice slice = buildSlice(sliceRecords, h, samFileHeader);
+		int from = 0;
+		for (int size : sliceSizes) {
+			List<CramCompressionRecord> sliceRecords = records.subList(from,
+					from + size);
+			from += size;
+			Slice slice = buildSlice(sliceRecords, h, samFileHeader,
+					externalCompressionMethod);
 			slice.globalRecordCounter = lastGlobalRecordCounter;
 			lastGlobalRecordCounter += slice.nofRecords;
 			c.bases += slice.bases;
 			slices.add(slice);
 
-			// assuming one sequence per container max:
 			if (c.sequenceId == -1 && slice.sequenceId != -1)
 				c.sequenceId = slice.sequenceId;
+			else if (slice.sequenceId != -1 && slice.sequenceId != c.sequenceId)
+				c.sequenceId = Slice.MUTLIREF;
 		}
 
 		long time4 = System.nanoTime();
@@ -121,8 +163,77 @@ public class ContainerFactory {
 		}
 	}
 
+	/**
+	 * Decide if the slice is single ref, unmapped or multiref and detect the
+	 * alignment boundaries for the slice if not multiref.
+	 */
+	private static void setAlignmentBoundaries(Slice slice,
+			List<CramCompressionRecord> records) {
+		slice.sequenceId = Slice.UNMAPPED_OR_NOREF;
+		int minAlStart = Integer.MAX_VALUE;
+		int maxAlEnd = SAMRecord.NO_ALIGNMENT_START;
+		for (CramCompressionRecord r : records) {
+			if (slice.sequenceId != Slice.MUTLIREF
+					&& r.alignmentStart != SAMRecord.NO_ALIGNMENT_START
+					&& r.sequenceId != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+				switch (slice.sequenceId) {
+				case Slice.UNMAPPED_OR_NOREF:
+					slice.sequenceId = r.sequenceId;
+					break;
+				case Slice.MUTLIREF:
+					break;
+
+				default:
+					if (slice.sequenceId != r.sequenceId)
+						slice.sequenceId = Slice.MUTLIREF;
+					break;
+				}
+
+				minAlStart = Math.min(r.alignmentStart, minAlStart);
+				maxAlEnd = Math.max(r.getAlignmentEnd(), maxAlEnd);
+			}
+		}
+
+		/*
+		 * Set the slice boundaries if the slice have records mapped to a
+		 * single ref.
+		 */
+		if (slice.sequenceId == Slice.MUTLIREF
+				|| minAlStart == Integer.MAX_VALUE) {
+			slice.alignmentStart = SAMRecord.NO_ALIGNMENT_START;
+			slice.alignmentSpan = 0;
+		} else {
+			slice.alignmentStart = minAlStart;
+			slice.alignmentSpan = maxAlEnd - minAlStart + 1;
+		}
+	}
+
+	/**
+	 * Set the alignment deltas of the records the way they will be written,
+	 * relative to the previous record in the slice or to the slice alignment
+	 * start for the first one, so that the compression header is built for
+	 * the actual values.
+	 */
+	private static void setAlignmentDeltas(List<CramCompressionRecord> records,
+			int[] sliceSizes) {
+		int from = 0;
+		for (int size : sliceSizes) {
+			List<CramCompressionRecord> sliceRecords = records.subList(from,
+					from + size);
+			from += size;
+			Slice slice = new Slice();
+			setAlignmentBoundaries(slice, sliceRecords);
+			int prevAlStart = slice.alignmentStart;
+			for (CramCompressionRecord r : sliceRecords) {
+				r.alignmentDelta = r.alignmentStart - prevAlStart;
+				prevAlStart = r.alignmentStart;
+			}
+		}
+	}
+
 	private static Slice buildSlice(List<CramCompressionRecord> records,
-			CompressionHeader h, SAMFileHeader fileHeader)
+			CompressionHeader h, SAMFileHeader fileHeader,
+			BlockCompressionMethod externalCompressionMethod)
 			throws IllegalArgumentException, IllegalAccessException,
 			IOException {
 		Map<Integer, ExposedByteArrayOutputStream> map = new HashMap<Integer, ExposedByteArrayOutputStream>();
@@ -131,61 +242,14 @@ public class ContainerFactory {
 		}
 
 		DataWriterFactory f = new DataWriterFactory();
-		ExposedByteArrayOutputStream bitBAOS = new ExposedByteArrayOutputStream();
-		DefaultBitOutputStream bos = new DefaultBitOutputStream(bitBAOS);
+		ByteArrayBitOutputStream bos = new ByteArrayBitOutputStream();
 
 		Slice slice = new Slice();
 		slice.nofRecords = records.size();
 
-		{
-
-			// @formatter:off
-			/*
-			 * 1) Count slice bases. 
-			 * 2) Decide if the slice is single ref, unmapped or multiref. 
-			 * 3) Detect alignment boundaries for the slice if not multiref.
-			 */
-			// @formatter:on
-			slice.sequenceId = Slice.UNMAPPED_OR_NOREF;
-			int minAlStart = Integer.MAX_VALUE;
-			int maxAlEnd = SAMRecord.NO_ALIGNMENT_START;
-			for (CramCompressionRecord r : records) {
-				slice.bases += r.readLength;
-
-				if (slice.sequenceId != Slice.MUTLIREF
-						&& r.alignmentStart != SAMRecord.NO_ALIGNMENT_START
-						&& r.sequenceId != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-					switch (slice.sequenceId) {
-					case Slice.UNMAPPED_OR_NOREF:
-						slice.sequenceId = r.sequenceId;
-						break;
-					case Slice.MUTLIREF:
-						break;
-
-					default:
-						if (slice.sequenceId != r.sequenceId)
-							slice.sequenceId = Slice.UNMAPPED_OR_NOREF;
-						break;
-					}
-
-					minAlStart = Math.min(r.alignmentStart, minAlStart);
-					maxAlEnd = Math.max(r.getAlignmentEnd(), maxAlEnd);
-				}
-			}
-
-			/*
-			 * Set the slice boundaries if the slice have records mapped to a
-			 * single ref.
-			 */
-			if (slice.sequenceId == Slice.MUTLIREF
-					|| minAlStart == Integer.MAX_VALUE) {
-				slice.alignmentStart = SAMRecord.NO_ALIGNMENT_START;
-				slice.alignmentSpan = 0;
-			} else {
-				slice.alignmentStart = minAlStart;
-				slice.alignmentSpan = maxAlEnd - minAlStart + 1;
-			}
-		}
+		for (CramCompressionRecord r : records)
+			slice.bases += r.readLength;
+		setAlignmentBoundaries(slice, records);
 
 		Writer writer = f.buildWriter(bos, map, h, slice.sequenceId);
 		int prevAlStart = slice.alignmentStart;
@@ -201,7 +265,7 @@ public class ContainerFactory {
 		bos.close();
 		slice.coreBlock = new Block();
 		slice.coreBlock.method = BlockCompressionMethod.RAW;
-		slice.coreBlock.setRawContent(bitBAOS.toByteArray());
+		slice.coreBlock.setRawContent(bos.toByteArray());
 		slice.coreBlock.contentType = BlockContentType.CORE;
 
 		slice.external = new HashMap<Integer, Block>();
@@ -210,7 +274,7 @@ public class ContainerFactory {
 
 			Block externalBlock = new Block();
 			externalBlock.contentType = BlockContentType.EXTERNAL;
-			externalBlock.method = BlockCompressionMethod.GZIP;
+			externalBlock.method = externalCompressionMethod;
 			externalBlock.contentId = i;
 
 			externalBlock.setRawContent(os.toByteArray());
@@ -227,4 +291,25 @@ public class ContainerFactory {
 	public void setPreserveReadNames(boolean preserveReadNames) {
 		this.preserveReadNames = preserveReadNames;
 	}
+
+	public BlockCompressionMethod getExternalCompressionMethod() {
+		return externalCompressionMethod;
+	}
+
+	/**
+	 * @param externalCompressionMethod
+	 *            the compression of the external data blocks of the slices
+	 */
+	public void setExternalCompressionMethod(
+			BlockCompressionMethod externalCompressionMethod) {
+		this.externalCompressionMethod = externalCompressionMethod;
+	}
+
+	public boolean isTokeniseReadNames() {
+		return compressionHeaderFactory.isTokeniseReadNames();
+	}
+
+	public void setTokeniseReadNames(boolean tokeniseReadNames) {
+		compressionHeaderFactory.setTokeniseReadNames(tokeniseReadNames);
+	}
 }
@@ -18,10 +18,11 @@ package htsjdk.samtools.cram.build;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.encoding.reader.CramRecordPool;
 import htsjdk.samtools.cram.encoding.reader.CramRecordReader;
 import htsjdk.samtools.cram.encoding.reader.DataReaderFactory;
 import htsjdk.samtools.cram.encoding.reader.DataReaderFactory.DataReaderWithStats;
-import htsjdk.samtools.cram.io.DefaultBitInputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitInputStream;
 import htsjdk.samtools.cram.structure.CompressionHeader;
 import htsjdk.samtools.cram.structure.Container;
 import htsjdk.samtools.cram.structure.CramCompressionRecord;
@@ -45,10 +46,40 @@ public class ContainerParser {
 	private SAMFileHeader samFileHeader;
 	private Map<String, Long> nanoMap = new TreeMap<String, Long>();
 
+	private boolean recordPooling = false;
+	private List<CramRecordPool> slicePools = new ArrayList<CramRecordPool>();
+
 	public ContainerParser(SAMFileHeader samFileHeader) {
 		this.samFileHeader = samFileHeader;
 	}
 
+	public boolean isRecordPooling() {
+		return recordPooling;
+	}
+
+	/**
+	 * Reuse record and read feature objects from per-slice pools instead of
+	 * allocating new ones for every read. Records returned for a slice are
+	 * then only valid until the slice with the same index of the next
+	 * container is parsed, and the read bases and quality score arrays of the
+	 * records are reused as buffers.
+	 */
+	public void setRecordPooling(boolean recordPooling) {
+		this.recordPooling = recordPooling;
+		if (!recordPooling)
+			slicePools.clear();
+	}
+
+	private CramRecordPool getSlicePool(int sliceIndex) {
+		if (sliceIndex < 0)
+			sliceIndex = 0;
+		while (slicePools.size() <= sliceIndex)
+			slicePools.add(new CramRecordPool());
+		CramRecordPool pool = slicePools.get(sliceIndex);
+		pool.reset();
+		return pool;
+	}
+
 	public List<CramCompressionRecord> getRecords(Container container,
 			ArrayList<CramCompressionRecord> records) throws IllegalArgumentException,
 			IllegalAccessException, IOException {
@@ -101,16 +132,20 @@ public class ContainerParser {
 
 		long time = 0;
 		CramRecordReader reader = new CramRecordReader();
-		f.buildReader(reader, new DefaultBitInputStream(
-				new ByteArrayInputStream(s.coreBlock.getRawContent())),
+		CramRecordPool pool = recordPooling ? getSlicePool(s.index) : null;
+		reader.pool = pool;
+		f.buildReader(reader,
+				new ByteArrayBitInputStream(s.coreBlock.getRawContent()),
 				inputMap, h, s.sequenceId);
 
-		List<CramCompressionRecord> records = new ArrayList<CramCompressionRecord>();
+		List<CramCompressionRecord> records = new ArrayList<CramCompressionRecord>(
+				s.nofRecords);
 
 		long readNanos = 0;
 		int prevStart = s.alignmentStart;
 		for (int i = 0; i < s.nofRecords; i++) {
-			CramCompressionRecord r = new CramCompressionRecord();
+			CramCompressionRecord r = pool == null ? new CramCompressionRecord()
+					: pool.record();
 			r.sliceIndex = s.index ;
 			r.index = i;
 
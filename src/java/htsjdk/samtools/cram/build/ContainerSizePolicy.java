@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.build;
+
+/**
+ * Limits on the size of CRAM slices and containers. A slice is closed when
+ * it reaches any of its limits and a container is flushed once it holds the
+ * given number of slices, so the memory needed to write or read a container
+ * stays bounded whatever the read lengths or the depth of the data. A limit
+ * of 0 means no limit.
+ */
+public class ContainerSizePolicy {
+	private static final int MB = 1024 * 1024;
+
+	/**
+	 * Single slice containers of 10000 records, also bounded by 64 MB of
+	 * uncompressed data so that long reads do not make giant containers.
+	 */
+	public static final ContainerSizePolicy DEFAULT = new ContainerSizePolicy(10000, 64 * MB, 0, 1);
+
+	/**
+	 * Small single slice containers covering at most 100 kb of the reference,
+	 * so that a region query decodes little more than the region itself.
+	 */
+	public static final ContainerSizePolicy RANDOM_ACCESS = new ContainerSizePolicy(10000, 4 * MB, 100000, 1);
+
+	/**
+	 * Large containers of several slices sharing one compression header, for
+	 * the best compression of data that is rarely queried by region.
+	 */
+	public static final ContainerSizePolicy ARCHIVAL = new ContainerSizePolicy(25000, 16 * MB, 0, 4);
+
+	private final int maxRecordsPerSlice;
+	private final long maxSliceBytes;
+	private final int maxSliceSpan;
+	private final int slicesPerContainer;
+
+	/**
+	 * @param maxRecordsPerSlice
+	 *            maximum number of records in a slice
+	 * @param maxSliceBytes
+	 *            maximum estimated uncompressed size of the records of a
+	 *            slice, 0 for no limit
+	 * @param maxSliceSpan
+	 *            maximum number of reference bases spanned by the records of a
+	 *            slice, 0 for no limit
+	 * @param slicesPerContainer
+	 *            number of slices in a container
+	 */
+	public ContainerSizePolicy(int maxRecordsPerSlice, long maxSliceBytes, int maxSliceSpan, int slicesPerContainer) {
+		if (maxRecordsPerSlice < 1)
+			throw new IllegalArgumentException("At least one record per slice is required: " + maxRecordsPerSlice);
+		if (slicesPerContainer < 1)
+			throw new IllegalArgumentException("At least one slice per container is required: " + slicesPerContainer);
+		if (maxSliceBytes < 0 || maxSliceSpan < 0)
+			throw new IllegalArgumentException("Negative slice limit.");
+
+		this.maxRecordsPerSlice = maxRecordsPerSlice;
+		this.maxSliceBytes = maxSliceBytes;
+		this.maxSliceSpan = maxSliceSpan;
+		this.slicesPerContainer = slicesPerContainer;
+	}
+
+	public int getMaxRecordsPerSlice() {
+		return maxRecordsPerSlice;
+	}
+
+	public long getMaxSliceBytes() {
+		return maxSliceBytes;
+	}
+
+	public int getMaxSliceSpan() {
+		return maxSliceSpan;
+	}
+
+	public int getSlicesPerContainer() {
+		return slicesPerContainer;
+	}
+
+	/**
+	 * Decide if a slice must be closed before the next record is added to it.
+	 * 
+	 * @param records
+	 *            number of records in the slice
+	 * @param bytes
+	 *            estimated uncompressed size of the records in the slice
+	 * @param spanWithNextRecord
+	 *            reference span of the slice if the next record were added
+	 * @return true if the next record should start a new slice
+	 */
+	public boolean isSliceFull(int records, long bytes, int spanWithNextRecord) {
+		if (records == 0)
+			return false;
+		if (records >= maxRecordsPerSlice)
+			return true;
+		if (maxSliceBytes > 0 && bytes >= maxSliceBytes)
+			return true;
+		return maxSliceSpan > 0 && spanWithNextRecord > maxSliceSpan;
+	}
+}
@@ -42,11 +42,21 @@ import java.util.List;
 public class Cram2SamRecordFactory {
 
     private SAMFileHeader header;
+    private boolean copyArrays = false;
 
     public Cram2SamRecordFactory(SAMFileHeader header) {
         this.header = header;
     }
 
+    /**
+     * @param copyArrays copy read bases and quality scores into new arrays, required when the CRAM records are
+     *                   pooled and their arrays will be reused
+     */
+    public Cram2SamRecordFactory(SAMFileHeader header, boolean copyArrays) {
+        this.header = header;
+        this.copyArrays = copyArrays;
+    }
+
     public SAMRecord create(CramCompressionRecord cramRecord) {
         SAMRecord samRecord = new SAMRecord(header);
 
@@ -82,8 +92,13 @@ public class Cram2SamRecordFactory {
         }
 
         samRecord.setInferredInsertSize(cramRecord.templateSize);
-        samRecord.setReadBases(cramRecord.readBases);
-        samRecord.setBaseQualities(cramRecord.qualityScores);
+        if (copyArrays) {
+            samRecord.setReadBases(copyOf(cramRecord.readBases));
+            samRecord.setBaseQualities(copyOf(cramRecord.qualityScores));
+        } else {
+            samRecord.setReadBases(cramRecord.readBases);
+            samRecord.setBaseQualities(cramRecord.qualityScores);
+        }
 
         if (cramRecord.tags != null)
             for (ReadTag tag : cramRecord.tags)
@@ -98,6 +113,10 @@ public class Cram2SamRecordFactory {
         return samRecord;
     }
 
+    private static byte[] copyOf(byte[] array) {
+        return array == null ? null : Arrays.copyOf(array, array.length);
+    }
+
     private static final void copyFlags(CramCompressionRecord cr, SAMRecord sr) {
         sr.setReadPairedFlag(cr.isMultiFragment());
         sr.setProperPairFlag(cr.isProperPair());
@@ -106,6 +125,7 @@ public class Cram2SamRecordFactory {
         sr.setFirstOfPairFlag(cr.isFirstSegment());
         sr.setSecondOfPairFlag(cr.isLastSegment());
         sr.setNotPrimaryAlignmentFlag(cr.isSecondaryAlignment());
+        sr.setSupplementaryAlignmentFlag(cr.isSupplementary());
         sr.setReadFailsVendorQualityCheckFlag(cr.isVendorFiltered());
         sr.setDuplicateReadFlag(cr.isDuplicate());
     }
@@ -0,0 +1,450 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.build;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.encoding.fastq.Template;
+import htsjdk.samtools.cram.encoding.fastq.Template.Segment;
+import htsjdk.samtools.cram.encoding.fastq.Template.TemplateAssembler;
+import htsjdk.samtools.cram.encoding.reader.AbstractFastqReader;
+import htsjdk.samtools.cram.encoding.reader.DataReaderFactory;
+import htsjdk.samtools.cram.io.ByteArrayBitInputStream;
+import htsjdk.samtools.cram.ref.ReferenceRegion;
+import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.cram.ref.ReferenceWindow;
+import htsjdk.samtools.cram.structure.CompressionHeader;
+import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.cram.structure.CramCompressionRecord;
+import htsjdk.samtools.cram.structure.CramHeader;
+import htsjdk.samtools.cram.structure.Slice;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts a CRAM stream into FASTQ without building {@link SAMRecord}
+ * objects. Only the data series needed for FASTQ are decoded from each slice:
+ * read names, bases restored against the reference, quality scores and the
+ * pairing flags; everything else is skipped. Slices can be decoded in parallel
+ * while the reads are written in the order they appear in the stream, mates
+ * are paired by name within and across containers.
+ * <p>
+ * Reads mapped to the reverse strand are reverse complemented back to their
+ * sequenced orientation. Paired reads are written to the first and second
+ * output streams, reads without a mate to the unpaired stream. Passing the
+ * same stream for all three gives an interleaved FASTQ file. To compress the
+ * output pass a GZIP or BGZF stream, see {@link #openOutput(File)}.
+ */
+public class CramFastqExporter {
+	private final InputStream is;
+	private final ReferenceSource referenceSource;
+	private final ReferenceWindow referenceWindow;
+	private final CramHeader cramHeader;
+
+	private int threads = 1;
+	private int maxPendingTemplates = Integer.MAX_VALUE;
+	private boolean appendSegmentIndexToReadNames = true;
+	private boolean reverseNegativeReads = true;
+	private int defaultQualityScore = '?';
+
+	private OutputStream firstOut, secondOut, unpairedOut;
+	private long readCount = 0;
+
+	/**
+	 * @param is
+	 *            the CRAM stream positioned at the start of the file
+	 * @param referenceSource
+	 *            source of the reference sequences, may be null if all slices
+	 *            are unmapped or carry an embedded reference
+	 * @throws IOException
+	 */
+	public CramFastqExporter(InputStream is, ReferenceSource referenceSource) throws IOException {
+		this.is = is;
+		this.referenceSource = referenceSource;
+		this.referenceWindow = referenceSource == null ? null : new ReferenceWindow(referenceSource);
+		cramHeader = CramIO.readCramHeader(is);
+	}
+
+	public CramHeader getCramHeader() {
+		return cramHeader;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads
+	 *            number of threads decoding slices, 1 decodes in the calling
+	 *            thread
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Expecting a positive number of threads: " + threads);
+		this.threads = threads;
+	}
+
+	public int getMaxPendingTemplates() {
+		return maxPendingTemplates;
+	}
+
+	/**
+	 * Limit the number of reads kept in memory while waiting for their mates.
+	 * When the limit is exceeded the older half of the waiting reads is
+	 * written out as unpaired. Unlimited by default, which pairs all mates
+	 * but for coordinate sorted files may hold many reads at a time.
+	 */
+	public void setMaxPendingTemplates(int maxPendingTemplates) {
+		this.maxPendingTemplates = maxPendingTemplates;
+	}
+
+	public boolean isAppendSegmentIndexToReadNames() {
+		return appendSegmentIndexToReadNames;
+	}
+
+	/**
+	 * Append /1 and /2 to the names of the first and the second reads of
+	 * pairs.
+	 */
+	public void setAppendSegmentIndexToReadNames(boolean appendSegmentIndexToReadNames) {
+		this.appendSegmentIndexToReadNames = appendSegmentIndexToReadNames;
+	}
+
+	public boolean isReverseNegativeReads() {
+		return reverseNegativeReads;
+	}
+
+	public void setReverseNegativeReads(boolean reverseNegativeReads) {
+		this.reverseNegativeReads = reverseNegativeReads;
+	}
+
+	public int getDefaultQualityScore() {
+		return defaultQualityScore;
+	}
+
+	/**
+	 * @param defaultQualityScore
+	 *            the printable quality score character used for bases whose
+	 *            scores were not preserved
+	 */
+	public void setDefaultQualityScore(int defaultQualityScore) {
+		this.defaultQualityScore = defaultQualityScore;
+	}
+
+	/**
+	 * @return the number of reads written by the last export
+	 */
+	public long getReadCount() {
+		return readCount;
+	}
+
+	/**
+	 * Opens a file for FASTQ output, BGZF compressed if the file name ends
+	 * with .gz. BGZF files can be read by any gzip decompressor.
+	 */
+	public static OutputStream openOutput(File file) throws FileNotFoundException {
+		if (file.getName().endsWith(".gz"))
+			return new BlockCompressedOutputStream(file);
+		return new BufferedOutputStream(new FileOutputStream(file));
+	}
+
+	/**
+	 * Writes all reads into one interleaved FASTQ stream with the mates of
+	 * each pair next to each other.
+	 */
+	public void export(OutputStream os) throws IOException {
+		export(os, os, os);
+	}
+
+	/**
+	 * Writes the reads to the given streams. The streams are flushed but not
+	 * closed.
+	 * 
+	 * @param first
+	 *            the stream for the first reads of pairs
+	 * @param second
+	 *            the stream for the second reads of pairs
+	 * @param unpaired
+	 *            the stream for reads without a mate, may be null to drop
+	 *            them
+	 * @throws IOException
+	 */
+	public void export(OutputStream first, OutputStream second, OutputStream unpaired) throws IOException {
+		firstOut = new BufferedOutputStream(first);
+		secondOut = second == first ? firstOut : new BufferedOutputStream(second);
+		if (unpaired == null)
+			unpairedOut = null;
+		else if (unpaired == first)
+			unpairedOut = firstOut;
+		else if (unpaired == second)
+			unpairedOut = secondOut;
+		else
+			unpairedOut = new BufferedOutputStream(unpaired);
+		readCount = 0;
+
+		TemplateAssembler assembler = new TemplateAssembler(maxPendingTemplates) {
+
+			@Override
+			protected boolean isComplete(Template t) {
+				return t.size > 1;
+			}
+
+			@Override
+			protected void templateComplete(Template t) {
+				try {
+					writeTemplate(t, true);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			@Override
+			protected void giveupIncomplete(List<Template> list) {
+				try {
+					for (Template t : list)
+						writeTemplate(t, false);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		LinkedList<Future<List<FastqRead>>> pending = new LinkedList<Future<List<FastqRead>>>();
+		try {
+			Container c;
+			while ((c = CramIO.readContainer(is)) != null && !c.isEOF()) {
+				for (Slice s : c.slices) {
+					SliceDecoder decoder = createDecoder(c.h, s);
+					if (executor == null) {
+						addReads(decoder.call(), assembler);
+						continue;
+					}
+					pending.add(executor.submit(decoder));
+					while (pending.size() > 2 * threads)
+						addReads(pending.removeFirst().get(), assembler);
+				}
+			}
+			while (!pending.isEmpty())
+				addReads(pending.removeFirst().get(), assembler);
+			assembler.finish();
+		} catch (IOException e) {
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (executor != null)
+				executor.shutdownNow();
+		}
+
+		firstOut.flush();
+		secondOut.flush();
+		if (unpairedOut != null)
+			unpairedOut.flush();
+	}
+
+	private SliceDecoder createDecoder(CompressionHeader h, Slice s) {
+		byte[] ref = null;
+		int refOffset = 0;
+		if (s.embeddedRefBlock != null) {
+			ref = s.getEmbeddedReference();
+			refOffset = s.alignmentStart - 1;
+		} else if (s.sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+			ref = new byte[0];
+		} else if (s.sequenceId >= 0) {
+			SAMSequenceRecord sequence = getSequence(s.sequenceId);
+			if (referenceWindow == null)
+				throw new IllegalArgumentException("A reference is required to restore the bases of slice on sequence "
+						+ sequence.getSequenceName());
+			ReferenceRegion region = referenceWindow.getRegion(sequence, s.alignmentStart, s.alignmentStart
+					+ Math.max(0, s.alignmentSpan - 1));
+			if (region == null)
+				throw new RuntimeException("Reference sequence not found: " + sequence.getSequenceName());
+			ref = region.bases;
+			refOffset = region.offset;
+		}
+		return new SliceDecoder(h, s, ref, refOffset);
+	}
+
+	private SAMSequenceRecord getSequence(int sequenceId) {
+		SAMFileHeader header = cramHeader.getSamFileHeader();
+		SAMSequenceRecord sequence = header.getSequence(sequenceId);
+		if (sequence == null)
+			throw new RuntimeException("Sequence not found in the header: " + sequenceId);
+		return sequence;
+	}
+
+	private void addReads(List<FastqRead> reads, TemplateAssembler assembler) throws IOException {
+		for (FastqRead read : reads) {
+			if (read.segmentIndex == 0)
+				writeRead(unpairedOut, read.name, 0, read.bases, read.scores);
+			else
+				assembler.addSegment(read.name, read.bases, read.scores, read.segmentIndex);
+		}
+	}
+
+	private void writeTemplate(Template t, boolean complete) throws IOException {
+		for (Segment s = t.getFirstSegment(); s != null; s = s.next) {
+			OutputStream os;
+			if (!complete)
+				os = unpairedOut;
+			else
+				os = s.index == 1 ? firstOut : secondOut;
+			writeRead(os, t.name, s.index, s.bases, s.scores);
+		}
+	}
+
+	private void writeRead(OutputStream os, byte[] name, int segmentIndex, byte[] bases, byte[] scores)
+			throws IOException {
+		if (os == null)
+			return;
+		os.write('@');
+		os.write(name);
+		if (appendSegmentIndexToReadNames && segmentIndex > 0) {
+			os.write('/');
+			os.write('0' + segmentIndex);
+		}
+		os.write('\n');
+		os.write(bases);
+		os.write('\n');
+		os.write('+');
+		os.write('\n');
+		os.write(scores);
+		os.write('\n');
+		readCount++;
+	}
+
+	private static class FastqRead {
+		final byte[] name;
+		final int segmentIndex;
+		final byte[] bases;
+		final byte[] scores;
+
+		FastqRead(byte[] name, int segmentIndex, byte[] bases, byte[] scores) {
+			this.name = name;
+			this.segmentIndex = segmentIndex;
+			this.bases = bases;
+			this.scores = scores;
+		}
+	}
+
+	/**
+	 * Decodes the reads of one slice, independent of any other slice.
+	 */
+	private class SliceDecoder implements Callable<List<FastqRead>> {
+		private final CompressionHeader h;
+		private final Slice s;
+		private final byte[] ref;
+		private final int refOffset;
+
+		SliceDecoder(CompressionHeader h, Slice s, byte[] ref, int refOffset) {
+			this.h = h;
+			this.s = s;
+			this.ref = ref;
+			this.refOffset = refOffset;
+		}
+
+		@Override
+		public List<FastqRead> call() throws IOException, IllegalAccessException {
+			Map<Integer, InputStream> inputMap = new HashMap<Integer, InputStream>();
+			for (Integer exId : s.external.keySet())
+				inputMap.put(exId, new ByteArrayInputStream(s.external.get(exId).getRawContent()));
+
+			SliceReader reader = new SliceReader(s.nofRecords);
+			new DataReaderFactory().buildReader(reader, new ByteArrayBitInputStream(s.coreBlock.getRawContent()),
+					inputMap, h, s.sequenceId);
+			reader.substitutionMatrix = h.substitutionMatrix;
+			reader.referenceSequence = ref;
+			reader.referenceOffset = refOffset;
+			reader.prevAlStart = s.alignmentStart;
+			reader.counterOffset = Math.max(0, s.globalRecordCounter);
+			reader.reverseNegativeReads = reverseNegativeReads;
+			reader.defaultQS = defaultQualityScore;
+
+			for (int i = 0; i < s.nofRecords; i++)
+				reader.read();
+			reader.finish();
+			return reader.reads;
+		}
+	}
+
+	private class SliceReader extends AbstractFastqReader {
+		private final List<FastqRead> reads;
+		private final Map<Integer, byte[]> references = new HashMap<Integer, byte[]>();
+
+		SliceReader(int size) {
+			reads = new ArrayList<FastqRead>(size);
+		}
+
+		@Override
+		protected byte[] refSeqChanged(int seqID) {
+			byte[] bases = references.get(seqID);
+			if (bases == null) {
+				SAMSequenceRecord sequence = getSequence(seqID);
+				if (referenceSource == null)
+					throw new IllegalArgumentException("A reference is required to restore the bases of reads on sequence "
+							+ sequence.getSequenceName());
+				bases = referenceSource.getReferenceBases(sequence, true);
+				if (bases == null)
+					throw new RuntimeException("Reference sequence not found: " + sequence.getSequenceName());
+				references.put(seqID, bases);
+			}
+			return bases;
+		}
+
+		@Override
+		protected void writeRead(byte[] name, int flags, byte[] bases, byte[] scores) {
+			// only primary alignments make reads, as in SamToFastq:
+			if ((flags & (CramCompressionRecord.SECONDARY_ALIGNMENT_FLAG | CramCompressionRecord.SUPPLEMENTARY_FLAG)) != 0)
+				return;
+			byte[] readBases = Arrays.copyOf(bases, readLength);
+			for (int i = 0; i < readBases.length; i++)
+				readBases[i] = Utils.normalizeBase(readBases[i]);
+			reads.add(new FastqRead(name, getSegmentIndexInTemplate(flags), readBases, Arrays.copyOf(scores,
+					readLength)));
+		}
+
+		@Override
+		public void finish() {
+		}
+	}
+}
@@ -31,9 +31,9 @@ import htsjdk.samtools.cram.structure.CramHeader;
 import htsjdk.samtools.cram.structure.Slice;
 import htsjdk.samtools.cram.structure.SliceIO;
 import htsjdk.samtools.seekablestream.SeekableBufferedStream;
+import htsjdk.samtools.seekablestream.SeekableCachingHTTPStream;
 import htsjdk.samtools.seekablestream.SeekableFTPStream;
 import htsjdk.samtools.seekablestream.SeekableFileStream;
-import htsjdk.samtools.seekablestream.SeekableHTTPStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.seekablestream.UserPasswordInput;
 import htsjdk.samtools.util.BufferedLineReader;
@@ -95,7 +95,7 @@ public class CramIO {
 			return new SeekableBufferedStream(new NamedSeekableFTPStream(url));
 
 		if ("http".equalsIgnoreCase(protocol))
-			return new SeekableBufferedStream(new SeekableHTTPStream(url));
+			return new SeekableBufferedStream(new SeekableCachingHTTPStream(url));
 
 		if ("file".equalsIgnoreCase(protocol)) {
 			File file = new File(url.toURI());
@@ -311,8 +311,6 @@ public class CramIO {
 			sio.write(s, baos);
 			c.blockCount++;
 			c.blockCount++;
-			if (s.embeddedRefBlock != null)
-				c.blockCount++;
 			c.blockCount += s.external.size();
 		}
 		c.landmarks = new int[landmarks.size()];
@@ -355,13 +353,98 @@ public class CramIO {
 		return c;
 	}
 
-	private static Container readContainer(InputStream is, int fromSlice, int howManySlices) throws IOException {
+	/**
+	 * Reads the compression header and the slices of a container whose header
+	 * has already been read with {@link #readContainerHeader(InputStream)}.
+	 * 
+	 * @param c
+	 *            the container header
+	 * @param is
+	 *            the stream positioned right after the container header
+	 * @return the same container object with the compression header and slices
+	 *         populated
+	 * @throws IOException
+	 */
+	public static Container readContainerBody(Container c, InputStream is) throws IOException {
+		return readContainerBody(c, is, 0, Integer.MAX_VALUE);
+	}
 
-		long time1 = System.nanoTime();
+	/**
+	 * Skips the compression header and the slices of a container whose header
+	 * has already been read, so that the stream is positioned at the next
+	 * container. Nothing is decompressed.
+	 * 
+	 * @param c
+	 *            the container header
+	 * @param is
+	 *            the stream positioned right after the container header
+	 * @throws IOException
+	 */
+	public static void skipContainerBody(Container c, InputStream is) throws IOException {
+		ByteBufferUtils.skipFully(c.containerByteSize, is);
+	}
+
+	/**
+	 * Reads the next container header and the slice header blocks of the
+	 * container. The compression header and the slice data blocks are skipped
+	 * without decompressing them, which is all that is needed to index a CRAM
+	 * file.
+	 * 
+	 * @param is
+	 *            the stream to read from
+	 * @return CRAM container with header-only slices or null if no more data
+	 * @throws IOException
+	 */
+	public static Container readContainerSliceHeaders(InputStream is) throws IOException {
+		Container c = readContainerHeader(is);
+		if (c == null)
+			return null;
+
+		return readContainerSliceHeaders(c, is);
+	}
+
+	/**
+	 * Reads the slice header blocks of a container whose header has already
+	 * been read with {@link #readContainerHeader(InputStream)} and skips the
+	 * rest of the container.
+	 * 
+	 * @param c
+	 *            the container header
+	 * @param is
+	 *            the stream positioned right after the container header
+	 * @return the same container object with header-only slices
+	 * @throws IOException
+	 */
+	public static Container readContainerSliceHeaders(Container c, InputStream is) throws IOException {
+		CountingInputStream cis = new CountingInputStream(is);
+		SliceIO sio = new SliceIO();
+		Slice[] slices = new Slice[c.landmarks.length];
+		for (int i = 0; i < slices.length; i++) {
+			ByteBufferUtils.skipFully(c.landmarks[i] - cis.getCount(), cis);
+			Slice slice = new Slice();
+			slice.index = i;
+			sio.readSliceHeadBlock(slice, cis);
+			slices[i] = slice;
+		}
+		ByteBufferUtils.skipFully(c.containerByteSize - cis.getCount(), cis);
+
+		c.slices = slices;
+		calculateSliceOffsetsAndSizes(c);
+		return c;
+	}
+
+	private static Container readContainer(InputStream is, int fromSlice, int howManySlices) throws IOException {
 		Container c = readContainerHeader(is);
 		if (c == null)
 			return null;
 
+		return readContainerBody(c, is, fromSlice, howManySlices);
+	}
+
+	private static Container readContainerBody(Container c, InputStream is, int fromSlice, int howManySlices)
+			throws IOException {
+
+		long time1 = System.nanoTime();
 		CompressionHeaderBLock chb = new CompressionHeaderBLock(is);
 		c.h = chb.getCompressionHeader();
 		howManySlices = Math.min(c.landmarks.length, howManySlices);
@@ -55,6 +55,18 @@ public class CramNormalizer {
     public void normalize(ArrayList<CramCompressionRecord> records, boolean resetPairing,
                           byte[] ref, int alignmentStart,
                           SubstitutionMatrix substitutionMatrix, boolean AP_delta) {
+        normalize(records, resetPairing, referenceSource == null ? ref : null, 0, alignmentStart,
+                substitutionMatrix, AP_delta);
+    }
+
+    /**
+     * @param ref       the reference bases for all mapped records or null to
+     *                  fetch them from the reference source record by record
+     * @param refOffset 0-based reference position of the first base in ref
+     */
+    public void normalize(ArrayList<CramCompressionRecord> records, boolean resetPairing,
+                          byte[] ref, int refOffset, int alignmentStart,
+                          SubstitutionMatrix substitutionMatrix, boolean AP_delta) {
 
         int startCounter = readCounter;
 
@@ -129,11 +141,13 @@ public class CramNormalizer {
             if (r.isSegmentUnmapped())
                 continue;
 
-            byte[] refBases = ref;
-            if (referenceSource != null)
-                refBases = referenceSource.getReferenceBases(header.getSequence(r.sequenceId), true);
-
-            byte[] bases = restoreReadBases(r, refBases, substitutionMatrix);
+            byte[] bases;
+            if (ref != null)
+                bases = restoreReadBases(r, ref, refOffset, substitutionMatrix);
+            else
+                bases = restoreReadBases(r,
+                        referenceSource.getReferenceBases(header.getSequence(r.sequenceId), true), 0,
+                        substitutionMatrix);
             r.readBases = bases;
         }
 
@@ -150,7 +164,9 @@ public class CramNormalizer {
     public static byte[] restoreQualityScores(byte defaultQualityScore,
                                               CramCompressionRecord record) {
         if (!record.isForcePreserveQualityScores()) {
-            byte[] scores = new byte[record.readLength];
+            byte[] scores = record.qualityScores;
+            if (scores == null || scores.length != record.readLength)
+                scores = new byte[record.readLength];
             Arrays.fill(scores, defaultQualityScore);
             if (record.readFeatures != null)
                 for (ReadFeature f : record.readFeatures) {
@@ -217,13 +233,15 @@ public class CramNormalizer {
         return len;
     }
 
-    private static final byte[] restoreReadBases(CramCompressionRecord record, byte[] ref,
+    private static final byte[] restoreReadBases(CramCompressionRecord record, byte[] ref, int refOffset,
                                                  SubstitutionMatrix substitutionMatrix) {
         int readLength = record.readLength;
-        byte[] bases = new byte[readLength];
+        byte[] bases = record.readBases;
+        if (bases == null || bases.length != readLength)
+            bases = new byte[readLength];
 
         int posInRead = 1;
-        int alignmentStart = record.alignmentStart - 1;
+        int alignmentStart = record.alignmentStart - 1 - refOffset;
 
         int posInSeq = 0;
         if (record.readFeatures == null || record.readFeatures.isEmpty()) {
@@ -56,6 +56,7 @@ public class Sam2CramRecordFactory {
     public final static byte ignorePositionsWithQualityScore = -1;
 
     private byte[] refBases;
+    private int refOffset = 0;
     private byte[] refSNPs;
     private RefMaskUtils.RefMask refPile;
 
@@ -121,6 +122,7 @@ public class Sam2CramRecordFactory {
         cramRecord.setLastSegment(record.getReadPairedFlag()
                 && record.getSecondOfPairFlag());
         cramRecord.setSecondaryAlignment(record.getNotPrimaryAlignmentFlag());
+        cramRecord.setSupplementary(record.getSupplementaryAlignmentFlag());
         cramRecord.setVendorFiltered(record
                 .getReadFailsVendorQualityCheckFlag());
         cramRecord.setDuplicate(record.getDuplicateReadFlag());
@@ -320,10 +322,10 @@ public class Sam2CramRecordFactory {
             oneBasedPositionInRead = i + fromPosInRead + 1;
             int refCoord = (int) (cramRecord.alignmentStart + i + alignmentStartOffset) - 1;
             qualityAdded = false;
-            if (refCoord >= refBases.length)
+            if (refCoord - refOffset >= refBases.length)
                 refBase = 'N';
             else
-                refBase = refBases[refCoord];
+                refBase = refBases[refCoord - refOffset];
             refBase = Utils.normalizeBase(refBase);
 
             if (bases[i + fromPosInRead] != refBase) {
@@ -390,6 +392,19 @@ public class Sam2CramRecordFactory {
         this.refBases = refBases;
     }
 
+    public int getRefOffset() {
+        return refOffset;
+    }
+
+    /**
+     * @param refOffset 0-based reference position of the first of the
+     *                  reference bases, if they are only a part of the
+     *                  sequence
+     */
+    public void setRefOffset(int refOffset) {
+        this.refOffset = refOffset;
+    }
+
     public byte[] getRefSNPs() {
         return refSNPs;
     }
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.common;
+
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of int values in an open addressing hash table of
+ * primitive arrays, so that counting neither boxes the values nor allocates
+ * per distinct value.
+ */
+public class IntHistogram {
+	private int[] keys;
+	private int[] counts;
+	private int size = 0;
+	private long total = 0;
+
+	public IntHistogram() {
+		this(16);
+	}
+
+	public IntHistogram(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+		keys = new int[capacity];
+		counts = new int[capacity];
+	}
+
+	private static int hash(int value) {
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int slot(int value) {
+		final int mask = keys.length - 1;
+		int i = hash(value) & mask;
+		while (counts[i] != 0 && keys[i] != value)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private void grow() {
+		final int[] oldKeys = keys;
+		final int[] oldCounts = counts;
+		keys = new int[oldKeys.length << 1];
+		counts = new int[oldKeys.length << 1];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldCounts[i] != 0) {
+				int j = slot(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				counts[j] = oldCounts[i];
+			}
+		}
+	}
+
+	public void add(int value) {
+		add(value, 1);
+	}
+
+	/**
+	 * @param count
+	 *            a positive number of occurrences to add
+	 */
+	public void add(int value, int count) {
+		if (count < 1)
+			throw new IllegalArgumentException("Expecting a positive count: " + count);
+
+		int i = slot(value);
+		if (counts[i] == 0) {
+			keys[i] = value;
+			size++;
+		}
+		counts[i] += count;
+		total += count;
+		if (size * 2 > keys.length)
+			grow();
+	}
+
+	/**
+	 * Adds a single occurrence of the value unless it has already been
+	 * counted.
+	 */
+	public void addIfAbsent(int value) {
+		if (counts[slot(value)] == 0)
+			add(value, 1);
+	}
+
+	/**
+	 * @return the number of occurrences of the value, 0 if never added
+	 */
+	public int get(int value) {
+		return counts[slot(value)];
+	}
+
+	public boolean contains(int value) {
+		return get(value) != 0;
+	}
+
+	/**
+	 * @return the number of distinct values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the sum of all counts
+	 */
+	public long total() {
+		return total;
+	}
+
+	/**
+	 * @return the distinct values in ascending order
+	 */
+	public int[] values() {
+		final int[] values = new int[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++)
+			if (counts[i] != 0)
+				values[n++] = keys[i];
+		Arrays.sort(values);
+		return values;
+	}
+
+	/**
+	 * @return the counts of the given values
+	 */
+	public int[] counts(int[] values) {
+		final int[] result = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			result[i] = get(values[i]);
+		return result;
+	}
+
+	/**
+	 * @return true if every value counted here has also been counted in the
+	 *         other histogram
+	 */
+	public boolean isSubsetOf(IntHistogram other) {
+		if (size > other.size)
+			return false;
+		for (int i = 0; i < keys.length; i++)
+			if (counts[i] != 0 && !other.contains(keys[i]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return the total variation distance between the value distributions of
+	 *         the two histograms, a number between 0 for identical and 1 for
+	 *         disjoint distributions
+	 */
+	public double distance(IntHistogram other) {
+		if (total == 0 || other.total == 0)
+			return total == other.total ? 0 : 1;
+
+		double sum = 0;
+		for (int i = 0; i < keys.length; i++)
+			if (counts[i] != 0)
+				sum += Math.abs((double) counts[i] / total - (double) other.get(keys[i]) / other.total);
+		for (int i = 0; i < other.keys.length; i++)
+			if (other.counts[i] != 0 && !contains(other.keys[i]))
+				sum += (double) other.counts[i] / other.total;
+		return sum / 2;
+	}
+}
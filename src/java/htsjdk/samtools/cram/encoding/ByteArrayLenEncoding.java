@@ -45,11 +45,11 @@ public class ByteArrayLenEncoding implements Encoding<byte[]> {
 			EncodingParams byteParams) {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream() ;
 		try {
-			baos.write((byte) lenParams.id.ordinal());
+			baos.write(lenParams.id.getId());
 			ByteBufferUtils.writeUnsignedITF8(lenParams.params.length, baos);
 			baos.write(lenParams.params);
 			
-			baos.write((byte) byteParams.id.ordinal());
+			baos.write(byteParams.id.getId());
 			ByteBufferUtils.writeUnsignedITF8(byteParams.params.length, baos);
 			baos.write(byteParams.params);
 		} catch (IOException e) {
@@ -76,12 +76,12 @@ public class ByteArrayLenEncoding implements Encoding<byte[]> {
 	public byte[] toByteArray() {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream() ;
 		try {
-			baos.write((byte) lenEncoding.id().ordinal());
+			baos.write(lenEncoding.id().getId());
 			byte[] lenBytes = lenEncoding.toByteArray() ;
 			ByteBufferUtils.writeUnsignedITF8(lenBytes.length, baos);
 			baos.write(lenBytes);
 			
-			baos.write((byte) byteEncoding.id().ordinal());
+			baos.write(byteEncoding.id().getId());
 			byte[] byteBytes = byteEncoding.toByteArray() ;
 			ByteBufferUtils.writeUnsignedITF8(byteBytes.length, baos);
 			baos.write(byteBytes);
@@ -113,14 +113,14 @@ public class ByteArrayLenEncoding implements Encoding<byte[]> {
 
 		EncodingFactory f = new EncodingFactory();
 
-		EncodingID lenID = EncodingID.values()[buf.get()];
+		EncodingID lenID = EncodingID.byId(buf.get() & 0xFF);
 		lenEncoding = f.createEncoding(DataSeriesType.INT, lenID);
 		int len = ByteBufferUtils.readUnsignedITF8(buf);
 		byte[] bytes = new byte[len];
 		buf.get(bytes);
 		lenEncoding.fromByteArray(bytes);
 
-		EncodingID byteID = EncodingID.values()[buf.get()];
+		EncodingID byteID = EncodingID.byId(buf.get() & 0xFF);
 		byteEncoding = f.createEncoding(DataSeriesType.BYTE_ARRAY, byteID);
 		len = ByteBufferUtils.readUnsignedITF8(buf);
 		bytes = new byte[len];
@@ -83,6 +83,8 @@ public class EncodingFactory {
 				return (Encoding<T>) new ByteArrayLenEncoding();
 			case BYTE_ARRAY_STOP:
 				return (Encoding<T>) new ByteArrayStopEncoding();
+			case NAME_TOKENISER:
+				return (Encoding<T>) new ReadNameTokenEncoding();
 			case EXTERNAL:
 				return (Encoding<T>) new ExternalByteArrayEncoding();
 
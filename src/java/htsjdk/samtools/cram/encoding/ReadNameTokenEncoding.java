@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.encoding;
+
+import htsjdk.samtools.cram.io.BitInputStream;
+import htsjdk.samtools.cram.io.BitOutputStream;
+import htsjdk.samtools.cram.io.ByteBufferUtils;
+import htsjdk.samtools.cram.io.ExposedByteArrayOutputStream;
+import htsjdk.samtools.cram.structure.EncodingID;
+import htsjdk.samtools.cram.structure.EncodingParams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Read name encoding that splits each name into alternating runs of digits
+ * and non-digits and encodes every token against the token at the same
+ * position in the previous name. Token types, numeric deltas, numbers and
+ * literal strings go to four separate external blocks, so that each of them
+ * compresses well on its own.
+ */
+public class ReadNameTokenEncoding implements Encoding<byte[]> {
+	public final static EncodingID ID = EncodingID.NAME_TOKENISER;
+
+	/**
+	 * Marks the end of a name.
+	 */
+	static final int TYPE_END = 0;
+	/**
+	 * The whole name is the same as the previous one.
+	 */
+	static final int TYPE_DUP = 1;
+	/**
+	 * The token is the same as the previous name's token.
+	 */
+	static final int TYPE_MATCH = 2;
+	/**
+	 * A number that exceeds the previous name's number by 0..255, the
+	 * difference is written as a single byte to the delta block.
+	 */
+	static final int TYPE_DELTA = 3;
+	/**
+	 * A number written as ITF8 to the digits block.
+	 */
+	static final int TYPE_DIGITS = 4;
+	/**
+	 * A literal zero terminated string written to the string block.
+	 */
+	static final int TYPE_STRING = 5;
+
+	private static final int MAX_DELTA = 255;
+	private static final int MAX_NUMBER_LENGTH = 9;
+
+	private int typeExternalId;
+	private int deltaExternalId;
+	private int digitsExternalId;
+	private int stringExternalId;
+
+	public ReadNameTokenEncoding() {
+	}
+
+	public ReadNameTokenEncoding(int typeExternalId, int deltaExternalId,
+			int digitsExternalId, int stringExternalId) {
+		this.typeExternalId = typeExternalId;
+		this.deltaExternalId = deltaExternalId;
+		this.digitsExternalId = digitsExternalId;
+		this.stringExternalId = stringExternalId;
+	}
+
+	@Override
+	public EncodingID id() {
+		return ID;
+	}
+
+	public static EncodingParams toParam(int typeExternalId,
+			int deltaExternalId, int digitsExternalId, int stringExternalId) {
+		ReadNameTokenEncoding e = new ReadNameTokenEncoding(typeExternalId,
+				deltaExternalId, digitsExternalId, stringExternalId);
+		EncodingParams params = new EncodingParams(ID, e.toByteArray());
+		return params;
+	}
+
+	public byte[] toByteArray() {
+		ByteBuffer buf = ByteBuffer.allocate(1024);
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		ByteBufferUtils.writeUnsignedITF8(typeExternalId, buf);
+		ByteBufferUtils.writeUnsignedITF8(deltaExternalId, buf);
+		ByteBufferUtils.writeUnsignedITF8(digitsExternalId, buf);
+		ByteBufferUtils.writeUnsignedITF8(stringExternalId, buf);
+
+		buf.flip();
+		byte[] array = new byte[buf.limit()];
+		buf.get(array);
+
+		return array;
+	}
+
+	public void fromByteArray(byte[] data) {
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		typeExternalId = ByteBufferUtils.readUnsignedITF8(buf);
+		deltaExternalId = ByteBufferUtils.readUnsignedITF8(buf);
+		digitsExternalId = ByteBufferUtils.readUnsignedITF8(buf);
+		stringExternalId = ByteBufferUtils.readUnsignedITF8(buf);
+	}
+
+	@Override
+	public BitCodec<byte[]> buildCodec(Map<Integer, InputStream> inputMap,
+			Map<Integer, ExposedByteArrayOutputStream> outputMap) {
+		if (inputMap != null)
+			return new ReadNameTokenCodec(inputMap.get(typeExternalId),
+					inputMap.get(deltaExternalId),
+					inputMap.get(digitsExternalId),
+					inputMap.get(stringExternalId), null, null, null, null);
+
+		return new ReadNameTokenCodec(null, null, null, null,
+				outputMap.get(typeExternalId), outputMap.get(deltaExternalId),
+				outputMap.get(digitsExternalId),
+				outputMap.get(stringExternalId));
+	}
+
+	/**
+	 * Token boundaries and numeric values of a single name.
+	 */
+	static class Tokens {
+		byte[] name = new byte[64];
+		int length = 0;
+		int count = 0;
+		int[] start = new int[16];
+		int[] end = new int[16];
+		int[] value = new int[16];
+		boolean[] numeric = new boolean[16];
+
+		void clear() {
+			length = 0;
+			count = 0;
+		}
+
+		void append(byte[] bytes, int from, int to) {
+			int len = to - from;
+			if (length + len > name.length)
+				name = Arrays.copyOf(name, Math.max(name.length * 2, length + len));
+			System.arraycopy(bytes, from, name, length, len);
+			length += len;
+		}
+
+		void appendNumber(int number) {
+			if (length + MAX_NUMBER_LENGTH + 1 > name.length)
+				name = Arrays.copyOf(name, name.length * 2 + MAX_NUMBER_LENGTH);
+			int digits = 1;
+			for (int n = number; n >= 10; n /= 10)
+				digits++;
+			for (int i = length + digits - 1; i >= length; i--) {
+				name[i] = (byte) ('0' + number % 10);
+				number /= 10;
+			}
+			length += digits;
+		}
+
+		/**
+		 * Record a token covering the name bytes from the given position to
+		 * the current end of the name.
+		 */
+		void addToken(int from, boolean isNumeric, int number) {
+			if (count == start.length) {
+				start = Arrays.copyOf(start, count * 2);
+				end = Arrays.copyOf(end, count * 2);
+				value = Arrays.copyOf(value, count * 2);
+				numeric = Arrays.copyOf(numeric, count * 2);
+			}
+			start[count] = from;
+			end[count] = length;
+			numeric[count] = isNumeric;
+			value[count] = number;
+			count++;
+		}
+
+		/**
+		 * Split the name into maximal runs of digits and non-digits. Digit
+		 * runs are numeric tokens unless they have leading zeros or are too
+		 * long to be restored exactly from an int.
+		 */
+		void tokenise(byte[] bytes) {
+			clear();
+			int i = 0;
+			while (i < bytes.length) {
+				int from = i;
+				boolean digits = isDigit(bytes[i]);
+				while (i < bytes.length && isDigit(bytes[i]) == digits)
+					i++;
+
+				boolean isNumeric = digits
+						&& i - from <= MAX_NUMBER_LENGTH
+						&& (i - from == 1 || bytes[from] != '0');
+				int number = 0;
+				if (isNumeric)
+					for (int j = from; j < i; j++)
+						number = number * 10 + bytes[j] - '0';
+
+				int tokenStart = length;
+				append(bytes, from, i);
+				addToken(tokenStart, isNumeric, number);
+			}
+		}
+
+		boolean sameToken(int index, Tokens other) {
+			int len = end[index] - start[index];
+			if (len != other.end[index] - other.start[index])
+				return false;
+			for (int i = 0; i < len; i++)
+				if (name[start[index] + i] != other.name[other.start[index] + i])
+					return false;
+			return true;
+		}
+
+		boolean sameName(byte[] bytes) {
+			if (bytes.length != length)
+				return false;
+			for (int i = 0; i < length; i++)
+				if (bytes[i] != name[i])
+					return false;
+			return true;
+		}
+
+		private static boolean isDigit(byte b) {
+			return b >= '0' && b <= '9';
+		}
+	}
+
+	public static class ReadNameTokenCodec extends AbstractBitCodec<byte[]> {
+		private InputStream typeInputStream;
+		private InputStream deltaInputStream;
+		private InputStream digitsInputStream;
+		private InputStream stringInputStream;
+		private OutputStream typeOutputStream;
+		private OutputStream deltaOutputStream;
+		private OutputStream digitsOutputStream;
+		private OutputStream stringOutputStream;
+
+		private Tokens previous = new Tokens();
+		private Tokens current = new Tokens();
+		private byte[] singleByte = new byte[1];
+
+		public ReadNameTokenCodec(InputStream typeInputStream,
+				InputStream deltaInputStream, InputStream digitsInputStream,
+				InputStream stringInputStream, OutputStream typeOutputStream,
+				OutputStream deltaOutputStream,
+				OutputStream digitsOutputStream,
+				OutputStream stringOutputStream) {
+			this.typeInputStream = typeInputStream;
+			this.deltaInputStream = deltaInputStream;
+			this.digitsInputStream = digitsInputStream;
+			this.stringInputStream = stringInputStream;
+			this.typeOutputStream = typeOutputStream;
+			this.deltaOutputStream = deltaOutputStream;
+			this.digitsOutputStream = digitsOutputStream;
+			this.stringOutputStream = stringOutputStream;
+		}
+
+		@Override
+		public byte[] read(BitInputStream bis) throws IOException {
+			int type = readByte(typeInputStream);
+			if (type == TYPE_DUP)
+				return Arrays.copyOf(previous.name, previous.length);
+
+			current.clear();
+			for (int index = 0; type != TYPE_END; index++) {
+				int from = current.length;
+				switch (type) {
+				case TYPE_MATCH:
+					current.append(previous.name, previous.start[index],
+							previous.end[index]);
+					current.addToken(from, previous.numeric[index],
+							previous.value[index]);
+					break;
+				case TYPE_DELTA:
+					int number = previous.value[index]
+							+ readByte(deltaInputStream);
+					current.appendNumber(number);
+					current.addToken(from, true, number);
+					break;
+				case TYPE_DIGITS:
+					number = ByteBufferUtils.readUnsignedITF8(digitsInputStream);
+					current.appendNumber(number);
+					current.addToken(from, true, number);
+					break;
+				case TYPE_STRING:
+					int b;
+					while ((b = readByte(stringInputStream)) != 0) {
+						singleByte[0] = (byte) b;
+						current.append(singleByte, 0, 1);
+					}
+					current.addToken(from, false, 0);
+					break;
+				default:
+					throw new RuntimeException("Unknown read name token type: "
+							+ type);
+				}
+				type = readByte(typeInputStream);
+			}
+
+			swap();
+			return Arrays.copyOf(previous.name, previous.length);
+		}
+
+		@Override
+		public byte[] read(BitInputStream bis, int len) throws IOException {
+			throw new RuntimeException("Not implemented.");
+		}
+
+		@Override
+		public long write(BitOutputStream bos, byte[] name) throws IOException {
+			if (previous.count > 0 && previous.sameName(name)) {
+				typeOutputStream.write(TYPE_DUP);
+				return 8;
+			}
+
+			current.tokenise(name);
+			long bytes = 1;
+			for (int index = 0; index < current.count; index++) {
+				boolean hasPrevious = index < previous.count;
+				if (hasPrevious && current.sameToken(index, previous)) {
+					typeOutputStream.write(TYPE_MATCH);
+					bytes++;
+				} else if (current.numeric[index] && hasPrevious
+						&& previous.numeric[index]
+						&& current.value[index] >= previous.value[index]
+						&& current.value[index] - previous.value[index] <= MAX_DELTA) {
+					typeOutputStream.write(TYPE_DELTA);
+					deltaOutputStream.write(current.value[index]
+							- previous.value[index]);
+					bytes += 2;
+				} else if (current.numeric[index]) {
+					typeOutputStream.write(TYPE_DIGITS);
+					bytes += 1 + ByteBufferUtils.writeUnsignedITF8(
+							current.value[index], digitsOutputStream);
+				} else {
+					typeOutputStream.write(TYPE_STRING);
+					int len = current.end[index] - current.start[index];
+					stringOutputStream.write(current.name,
+							current.start[index], len);
+					stringOutputStream.write(0);
+					bytes += len + 2;
+				}
+			}
+			typeOutputStream.write(TYPE_END);
+
+			swap();
+			return bytes * 8;
+		}
+
+		@Override
+		public long numberOfBits(byte[] name) {
+			return (name.length + 1) * 8;
+		}
+
+		private void swap() {
+			Tokens tokens = previous;
+			previous = current;
+			current = tokens;
+		}
+
+		private static int readByte(InputStream is) throws IOException {
+			int b = is.read();
+			if (b == -1)
+				throw new RuntimeException("Unexpected end of read name stream.");
+			return b;
+		}
+	}
+}
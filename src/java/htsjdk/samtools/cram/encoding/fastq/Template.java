@@ -36,7 +36,10 @@ public class Template {
 	}
 
 	public void append(byte[] bases, byte[] scores) {
-		Segment appendix = new Segment(bases, scores);
+		append(new Segment(bases, scores));
+	}
+
+	private void append(Segment appendix) {
 
 		Segment lastSegment = getLastSegment();
 		if (lastSegment == null)
@@ -49,15 +52,17 @@ public class Template {
 	}
 
 	public void prepend(byte[] bases, byte[] scores) {
-		Segment appendix = new Segment(bases, scores);
+		prepend(new Segment(bases, scores));
+	}
+
+	private void prepend(Segment appendix) {
 
 		Segment firstSegment = getFirstSegment();
-		if (firstSegment == null)
-			segment = appendix;
-		else {
+		if (firstSegment != null) {
 			firstSegment.prev = appendix;
 			appendix.next = firstSegment;
 		}
+		segment = appendix;
 		size++;
 	}
 
@@ -94,16 +99,34 @@ public class Template {
 	}
 
 	protected int calculateHashCode() {
-		for (int i = 0; i < 4 && i < name.length; i++) {
-			hashCode <<= 8;
-			hashCode |= name[name.length - 1 - i];
-		}
-		return 0;
+		hashCode = Arrays.hashCode(name);
+		return hashCode;
+	}
+
+	/**
+	 * Adds a segment keeping the segments ordered by their index in the
+	 * template, segments without an index go last.
+	 * 
+	 * @param index
+	 *            1-based index of the segment in the template or 0 if unknown
+	 */
+	public void add(byte[] bases, byte[] scores, int index) {
+		Segment s = new Segment(bases, scores);
+		s.index = index;
+		Segment first = getFirstSegment();
+		if (index > 0 && first != null && (first.index == 0 || first.index > index))
+			prepend(s);
+		else
+			append(s);
 	}
 
 	public static class Segment {
 		public byte[] bases, scores;
 		public Segment prev, next;
+		/**
+		 * 1-based index of the segment in the template, 0 if unknown.
+		 */
+		public int index = 0;
 
 		public Segment(byte[] bases, byte[] scores) {
 			this.bases = bases;
@@ -126,11 +149,8 @@ public class Template {
 		}
 
 		protected int calculateHashCode() {
-			for (int i = 0; i < 4 && i < array.length; i++) {
-				hashcode <<= 8;
-				hashcode |= array[array.length - 1 - i];
-			}
-			return 0;
+			hashcode = Arrays.hashCode(array);
+			return hashcode;
 		}
 
 		@Override
@@ -164,6 +184,22 @@ public class Template {
 			return t;
 		}
 
+		/**
+		 * Same as {@link #add(byte[], byte[], byte[])} but orders the segments
+		 * of the template by their index.
+		 */
+		public Template add(byte[] name, byte[] bases, byte[] scores, int index) {
+			ByteArrayHashWrapper w = new ByteArrayHashWrapper(name);
+			Template t = map.get(w);
+			if (t == null) {
+				t = new Template(name);
+				t.counter = ++counter;
+				map.put(w, t);
+			}
+			t.add(bases, scores, index);
+			return t;
+		}
+
 		public List<Template> purgeUpto(long max) {
 			List<Template> list = new LinkedList<Template>();
 			for (Template t : map.values())
@@ -200,16 +236,20 @@ public class Template {
 		protected abstract void giveupIncomplete(List<Template> list);
 
 		public void addSegment(byte[] name, byte[] bases, byte[] scores) {
-			System.out.println("Template.TemplateAssembler.addSegment()");
-			System.out.println(hash.map.size());
-			Template t = hash.add(name, bases, scores);
-			System.out.println(hash.map.size());
+			addSegment(name, bases, scores, 0);
+		}
+
+		/**
+		 * @param index
+		 *            1-based index of the segment in the template or 0 if
+		 *            unknown
+		 */
+		public void addSegment(byte[] name, byte[] bases, byte[] scores, int index) {
+			Template t = index > 0 ? hash.add(name, bases, scores, index) : hash.add(name, bases, scores);
 			if (isComplete(t)) {
-				System.out.println("complete");
 				hash.remove(t.name);
 				templateComplete(t);
 			} else {
-				System.out.println("incomplete");
 				if (hash.map.size() > maxHashMapSize) {
 					List<Template> list = hash
 							.purgeUpto((hash.counter - hash.min) / 2 + hash.min
@@ -218,7 +258,6 @@ public class Template {
 						giveupIncomplete(list);
 				}
 			}
-			System.out.println(hash.map.size());
 		}
 
 		public void finish() {
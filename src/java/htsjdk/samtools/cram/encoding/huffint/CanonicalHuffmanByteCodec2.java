@@ -31,6 +31,7 @@ import java.util.TreeSet;
 
 public class CanonicalHuffmanByteCodec2 extends AbstractBitCodec<Byte> {
 	private final HelperByte helper;
+	private final HuffmanDecodingTable table;
 
 	/*
 	 * values[]: the alphabet (provided as Integers) bitLengths[]: the number of
@@ -38,11 +39,19 @@ public class CanonicalHuffmanByteCodec2 extends AbstractBitCodec<Byte> {
 	 */
 	public CanonicalHuffmanByteCodec2(byte[] values, int[] bitLengths) {
 		helper = new HelperByte(values, bitLengths);
+		table = new HuffmanDecodingTable(helper.sortedCodes);
 	}
 
 	@Override
 	public Byte read(BitInputStream bis) throws IOException {
-		return helper.read(bis);
+		return (byte) table.read(bis);
+	}
+
+	/**
+	 * Same as {@link #read(BitInputStream)} but without boxing the value.
+	 */
+	public byte readByte(BitInputStream bis) throws IOException {
+		return (byte) table.read(bis);
 	}
 
 	@Override
@@ -70,6 +79,6 @@ public class CanonicalHuffmanByteCodec2 extends AbstractBitCodec<Byte> {
 	public void readInto(BitInputStream bis, byte[] array, int offset,
 			int valueLen) throws IOException {
 		for (int i = 0; i < valueLen; i++)
-			array[offset + i] = helper.read(bis);
+			array[offset + i] = (byte) table.read(bis);
 	}
 }
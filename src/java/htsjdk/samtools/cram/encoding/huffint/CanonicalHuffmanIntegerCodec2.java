@@ -32,6 +32,7 @@ import java.util.TreeSet;
 
 public class CanonicalHuffmanIntegerCodec2 extends AbstractBitCodec<Integer> {
 	private final Helper helper ;
+	private final HuffmanDecodingTable table;
 
 	/*
 	 * values[]: the alphabet (provided as Integers) bitLengths[]: the number of
@@ -39,11 +40,19 @@ public class CanonicalHuffmanIntegerCodec2 extends AbstractBitCodec<Integer> {
 	 */
 	public CanonicalHuffmanIntegerCodec2(int[] values, int[] bitLengths) {
 		helper = new Helper(values, bitLengths) ;
+		table = new HuffmanDecodingTable(helper.sortedCodes);
 	}
 	
 	@Override
 	public Integer read(BitInputStream bis) throws IOException {
-		return helper.read(bis) ;
+		return table.read(bis) ;
+	}
+
+	/**
+	 * Same as {@link #read(BitInputStream)} but without boxing the value.
+	 */
+	public int readInt(BitInputStream bis) throws IOException {
+		return table.read(bis);
 	}
 
 	@Override
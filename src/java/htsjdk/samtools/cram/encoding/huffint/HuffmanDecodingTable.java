@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.encoding.huffint;
+
+import htsjdk.samtools.cram.io.BitInputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitInputStream;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Lookup table decoder for canonical Huffman codes. The next
+ * {@link #tableBits} bits of the stream are peeked and resolved with a single
+ * table lookup for all codes that are not longer than that. Longer codes, and
+ * streams that cannot peek, are decoded with the usual canonical first-code
+ * per length walk.
+ */
+class HuffmanDecodingTable {
+	static final int MAX_TABLE_BITS = 10;
+
+	private final int tableBits;
+	/**
+	 * Symbol index shifted left by 8 bits or'ed with the code length, or -1
+	 * for prefixes of codes longer than {@link #tableBits}.
+	 */
+	private final int[] table;
+
+	private final int maxLength;
+	private final int[] symbols;
+	private final int[] firstCode;
+	private final int[] firstIndex;
+	private final int[] count;
+
+	/**
+	 * @param sortedCodes
+	 *            the codes sorted by bit length and then by bit code
+	 */
+	HuffmanDecodingTable(HuffmanBitCode[] sortedCodes) {
+		symbols = new int[sortedCodes.length];
+		int maxLength = 0;
+		for (int i = 0; i < sortedCodes.length; i++) {
+			symbols[i] = sortedCodes[i].value;
+			maxLength = Math.max(maxLength, sortedCodes[i].bitLentgh);
+		}
+		this.maxLength = maxLength;
+
+		firstCode = new int[maxLength + 1];
+		firstIndex = new int[maxLength + 1];
+		count = new int[maxLength + 1];
+		for (int i = sortedCodes.length - 1; i >= 0; i--) {
+			int len = sortedCodes[i].bitLentgh;
+			firstCode[len] = sortedCodes[i].bitCode;
+			firstIndex[len] = i;
+			count[len]++;
+		}
+
+		tableBits = Math.min(maxLength, MAX_TABLE_BITS);
+		table = new int[1 << tableBits];
+		Arrays.fill(table, -1);
+		for (int i = 0; i < sortedCodes.length; i++) {
+			int len = sortedCodes[i].bitLentgh;
+			if (len == 0 || len > tableBits)
+				continue;
+			int from = sortedCodes[i].bitCode << (tableBits - len);
+			int to = from + (1 << (tableBits - len));
+			Arrays.fill(table, from, to, (i << 8) | len);
+		}
+	}
+
+	final int read(final BitInputStream bis) throws IOException {
+		if (maxLength == 0)
+			return symbols[0];
+
+		if (bis instanceof ByteArrayBitInputStream) {
+			final ByteArrayBitInputStream bais = (ByteArrayBitInputStream) bis;
+			final int entry = table[bais.peekBits(tableBits)];
+			if (entry >= 0) {
+				bais.skipBits(entry & 0xFF);
+				return symbols[entry >>> 8];
+			}
+		}
+
+		int code = 0;
+		for (int len = 1; len <= maxLength; len++) {
+			code = (code << 1) | (bis.readBit() ? 1 : 0);
+			int offset = code - firstCode[len];
+			if (count[len] > 0 && offset >= 0 && offset < count[len])
+				return symbols[firstIndex[len] + offset];
+		}
+
+		throw new RuntimeException("Not found.");
+	}
+}
@@ -16,6 +16,7 @@
 package htsjdk.samtools.cram.encoding.huffman;
 
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
@@ -68,6 +69,57 @@ public class HuffmanCode {
 		return list.isEmpty() ? null : list.remove();
 	}
 
+	/**
+	 * Calculates Huffman code lengths for the given symbol frequencies using
+	 * primitive arrays only. Symbols are merged in the same order as
+	 * {@link #buildTree(int[], Object[])} merges them: the two least frequent
+	 * subtrees first, preferring older subtrees on ties.
+	 * 
+	 * @param freqs
+	 *            positive symbol frequencies
+	 * @return the code length for each symbol, 0 if there is only one symbol
+	 */
+	public static int[] codeLengths(int[] freqs) {
+		final int n = freqs.length;
+		final int[] lens = new int[n];
+		if (n < 2)
+			return lens;
+
+		// sort leaves by frequency keeping the input order on ties:
+		final long[] sorted = new long[n];
+		for (int i = 0; i < n; i++)
+			sorted[i] = ((long) freqs[i] << 32) | i;
+		Arrays.sort(sorted);
+
+		// nodes 0..n-1 are the sorted leaves, n..2n-2 the merged subtrees
+		// which are created in non-decreasing frequency order:
+		final long[] weight = new long[2 * n - 1];
+		final int[] parent = new int[2 * n - 1];
+		for (int i = 0; i < n; i++)
+			weight[i] = sorted[i] >>> 32;
+
+		int nextLeaf = 0, nextNode = n;
+		for (int node = n; node < weight.length; node++) {
+			for (int child = 0; child < 2; child++) {
+				int pick;
+				if (nextLeaf < n && (nextNode >= node || weight[nextLeaf] <= weight[nextNode]))
+					pick = nextLeaf++;
+				else
+					pick = nextNode++;
+				weight[node] += weight[pick];
+				parent[pick] = node;
+			}
+		}
+
+		final int[] depth = new int[weight.length];
+		for (int node = weight.length - 2; node >= 0; node--)
+			depth[node] = depth[parent[node]] + 1;
+
+		for (int i = 0; i < n; i++)
+			lens[(int) (sorted[i] & 0xFFFFFFFFL)] = depth[i];
+		return lens;
+	}
+
 	public static <T> void getValuesAndBitLengths(List<T> values,
 			List<Integer> lens, HuffmanTree<T> tree) {
 		TreeMap<T, HuffmanBitCode<T>> codes = new TreeMap<T, HuffmanBitCode<T>>();
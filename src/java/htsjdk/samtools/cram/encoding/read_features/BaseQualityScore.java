@@ -24,6 +24,9 @@ public class BaseQualityScore implements Serializable, ReadFeature {
 
 	public static final byte operator = 'Q';
 
+	public BaseQualityScore() {
+	}
+
 	public BaseQualityScore(int position, byte qualityScore) {
 		this.position = position;
 		this.qualityScore = qualityScore;
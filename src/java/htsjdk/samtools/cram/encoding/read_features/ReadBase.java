@@ -25,6 +25,9 @@ public class ReadBase implements Serializable, ReadFeature {
 
 	public static final byte operator = 'B';
 	
+	public ReadBase() {
+	}
+
 	public ReadBase(int position, byte base, byte qualityScore) {
 		this.position = position;
 		this.base = base;
@@ -31,6 +31,12 @@ public abstract class AbstractFastqReader extends AbstractReader {
 	public boolean appendSegmentIndexToReadNames = true;
 
 	public byte[] referenceSequence;
+	/**
+	 * 0-based position of the first base of {@link #referenceSequence} in the
+	 * reference sequence, allows to restore reads against a region of the
+	 * reference.
+	 */
+	public int referenceOffset = 0;
 	public int flags;
 	public int compressionFlags;
 	public int mateFlags;
@@ -128,10 +134,13 @@ public abstract class AbstractFastqReader extends AbstractReader {
 
 			if ((flags & CramCompressionRecord.SEGMENT_UNMAPPED_FLAG) == 0) {
 				byte[] refBases = referenceSequence;
-				if (seqId != refId)
+				int refOffset = referenceOffset;
+				if (seqId != refId) {
 					refBases = refSeqChanged(seqId);
+					refOffset = 0;
+				}
 				rfBuf.readReadFeatures(this);
-				rfBuf.restoreReadBases(readLength, prevAlStart, refBases, substitutionMatrix, bases);
+				rfBuf.restoreReadBases(readLength, prevAlStart - refOffset, refBases, substitutionMatrix, bases);
 
 				mqc.skip();
 			} else {
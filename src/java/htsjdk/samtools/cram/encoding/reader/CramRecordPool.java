@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.encoding.reader;
+
+import htsjdk.samtools.cram.encoding.read_features.BaseQualityScore;
+import htsjdk.samtools.cram.encoding.read_features.Deletion;
+import htsjdk.samtools.cram.encoding.read_features.HardClip;
+import htsjdk.samtools.cram.encoding.read_features.InsertBase;
+import htsjdk.samtools.cram.encoding.read_features.Insertion;
+import htsjdk.samtools.cram.encoding.read_features.Padding;
+import htsjdk.samtools.cram.encoding.read_features.ReadBase;
+import htsjdk.samtools.cram.encoding.read_features.ReadFeature;
+import htsjdk.samtools.cram.encoding.read_features.RefSkip;
+import htsjdk.samtools.cram.encoding.read_features.SoftClip;
+import htsjdk.samtools.cram.encoding.read_features.Substitution;
+import htsjdk.samtools.cram.structure.CramCompressionRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of CRAM records and read features reused for decoding one slice
+ * after another. Everything handed out by the pool stays valid only until
+ * the next {@link #reset()}, so consumers that retain records must copy what
+ * they need before that.
+ */
+public class CramRecordPool {
+
+	private static abstract class Pool<T> {
+		private final List<T> items = new ArrayList<T>();
+		private int used = 0;
+
+		abstract T create();
+
+		final T next() {
+			if (used < items.size())
+				return items.get(used++);
+			T item = create();
+			items.add(item);
+			used++;
+			return item;
+		}
+
+		final void reset() {
+			used = 0;
+		}
+	}
+
+	private final Pool<CramCompressionRecord> records = new Pool<CramCompressionRecord>() {
+		@Override
+		CramCompressionRecord create() {
+			return new CramCompressionRecord();
+		}
+	};
+
+	private final Pool<List<ReadFeature>> featureLists = new Pool<List<ReadFeature>>() {
+		@Override
+		List<ReadFeature> create() {
+			return new ArrayList<ReadFeature>();
+		}
+	};
+
+	private final Pool<ReadBase> readBases = new Pool<ReadBase>() {
+		@Override
+		ReadBase create() {
+			return new ReadBase();
+		}
+	};
+
+	private final Pool<Substitution> substitutions = new Pool<Substitution>() {
+		@Override
+		Substitution create() {
+			return new Substitution();
+		}
+	};
+
+	private final Pool<Insertion> insertions = new Pool<Insertion>() {
+		@Override
+		Insertion create() {
+			return new Insertion();
+		}
+	};
+
+	private final Pool<SoftClip> softClips = new Pool<SoftClip>() {
+		@Override
+		SoftClip create() {
+			return new SoftClip();
+		}
+	};
+
+	private final Pool<HardClip> hardClips = new Pool<HardClip>() {
+		@Override
+		HardClip create() {
+			return new HardClip();
+		}
+	};
+
+	private final Pool<Padding> paddings = new Pool<Padding>() {
+		@Override
+		Padding create() {
+			return new Padding();
+		}
+	};
+
+	private final Pool<Deletion> deletions = new Pool<Deletion>() {
+		@Override
+		Deletion create() {
+			return new Deletion();
+		}
+	};
+
+	private final Pool<RefSkip> refSkips = new Pool<RefSkip>() {
+		@Override
+		RefSkip create() {
+			return new RefSkip();
+		}
+	};
+
+	private final Pool<InsertBase> insertBases = new Pool<InsertBase>() {
+		@Override
+		InsertBase create() {
+			return new InsertBase();
+		}
+	};
+
+	private final Pool<BaseQualityScore> qualityScores = new Pool<BaseQualityScore>() {
+		@Override
+		BaseQualityScore create() {
+			return new BaseQualityScore();
+		}
+	};
+
+	/**
+	 * Make all pooled objects available for reuse.
+	 */
+	public void reset() {
+		records.reset();
+		featureLists.reset();
+		readBases.reset();
+		substitutions.reset();
+		insertions.reset();
+		softClips.reset();
+		hardClips.reset();
+		paddings.reset();
+		deletions.reset();
+		refSkips.reset();
+		insertBases.reset();
+		qualityScores.reset();
+	}
+
+	public CramCompressionRecord record() {
+		CramCompressionRecord record = records.next();
+		record.reset();
+		return record;
+	}
+
+	public List<ReadFeature> featureList() {
+		List<ReadFeature> list = featureLists.next();
+		list.clear();
+		return list;
+	}
+
+	public ReadBase readBase(int position, byte base, byte qualityScore) {
+		ReadBase rb = readBases.next();
+		rb.setPosition(position);
+		rb.setBase(base);
+		rb.setQualityScore(qualityScore);
+		return rb;
+	}
+
+	public Substitution substitution(int position, byte code) {
+		Substitution sv = substitutions.next();
+		sv.setPosition(position);
+		sv.setCode(code);
+		sv.setBase((byte) -1);
+		sv.setRefernceBase((byte) -1);
+		sv.setBaseChange(null);
+		return sv;
+	}
+
+	public Insertion insertion(int position, byte[] sequence) {
+		Insertion iv = insertions.next();
+		iv.setPosition(position);
+		iv.setSequence(sequence);
+		return iv;
+	}
+
+	public SoftClip softClip(int position, byte[] sequence) {
+		SoftClip sc = softClips.next();
+		sc.setPosition(position);
+		sc.setSequence(sequence);
+		return sc;
+	}
+
+	public HardClip hardClip(int position, int length) {
+		HardClip hc = hardClips.next();
+		hc.setPosition(position);
+		hc.setLength(length);
+		return hc;
+	}
+
+	public Padding padding(int position, int length) {
+		Padding pv = paddings.next();
+		pv.setPosition(position);
+		pv.setLength(length);
+		return pv;
+	}
+
+	public Deletion deletion(int position, int length) {
+		Deletion dv = deletions.next();
+		dv.setPosition(position);
+		dv.setLength(length);
+		return dv;
+	}
+
+	public RefSkip refSkip(int position, int length) {
+		RefSkip rs = refSkips.next();
+		rs.setPosition(position);
+		rs.setLength(length);
+		return rs;
+	}
+
+	public InsertBase insertBase(int position, byte base) {
+		InsertBase ib = insertBases.next();
+		ib.setPosition(position);
+		ib.setBase(base);
+		return ib;
+	}
+
+	public BaseQualityScore baseQualityScore(int position, byte qualityScore) {
+		BaseQualityScore bqs = qualityScores.next();
+		bqs.setPosition(position);
+		bqs.setQualityScore(qualityScore);
+		return bqs;
+	}
+}
@@ -36,6 +36,12 @@ import java.util.LinkedList;
 public class CramRecordReader extends AbstractReader {
 	private CramCompressionRecord prevRecord;
 
+	/**
+	 * If set, read features are taken from the pool instead of being
+	 * allocated for every record.
+	 */
+	public CramRecordPool pool;
+
 	public void read(CramCompressionRecord r) throws IOException {
 		try {
 			// int mark = testC.readData();
@@ -45,37 +51,37 @@ public class CramRecordReader extends AbstractReader {
 			// throw new RuntimeException("Test mark not found.");
 			// }
 
-			r.flags = bitFlagsC.readData();
-			r.compressionFlags = compBitFlagsC.readData();
+			r.flags = bitFlagsC.readInt();
+			r.compressionFlags = compBitFlagsC.readByte();
 			if (refId == -2)
-				r.sequenceId = refIdCodec.readData();
+				r.sequenceId = refIdCodec.readInt();
 			else
 				r.sequenceId = refId;
 
-			r.readLength = readLengthC.readData();
+			r.readLength = readLengthC.readInt();
 			if (AP_delta)
-				r.alignmentDelta = alStartC.readData();
+				r.alignmentDelta = alStartC.readInt();
 			else
-				r.alignmentStart = alStartC.readData();
-			r.readGroupID = readGroupC.readData();
+				r.alignmentStart = alStartC.readInt();
+			r.readGroupID = readGroupC.readInt();
 
 			if (captureReadNames)
 				r.readName = new String(readNameC.readData(), charset);
 
 			// mate record:
 			if (r.isDetached()) {
-				r.mateFlags = mbfc.readData();
+				r.mateFlags = mbfc.readByte();
 				if (!captureReadNames)
 					r.readName = new String(readNameC.readData(), charset);
 
-                r.mateSequenceID = mrc.readData();
-                r.mateAlignmentStart = malsc.readData();
-				r.templateSize = tsc.readData();
+                r.mateSequenceID = mrc.readInt();
+                r.mateAlignmentStart = malsc.readInt();
+				r.templateSize = tsc.readInt();
 				detachedCount++;
 			} else if (r.isHasMateDownStream())
-				r.recordsToNextFragment = distanceC.readData();
+				r.recordsToNextFragment = distanceC.readInt();
 
-			Integer tagIdList = tagIdListCodec.readData();
+			int tagIdList = tagIdListCodec.readInt();
 			byte[][] ids = tagIdDictionary[tagIdList];
 			if (ids.length > 0) {
 				int tagCount = ids.length;
@@ -96,59 +102,74 @@ public class CramRecordReader extends AbstractReader {
 
 			if (!r.isSegmentUnmapped()) {
 				// writing read features:
-				int size = nfc.readData();
+				int size = nfc.readInt();
 				int prevPos = 0;
-				java.util.List<ReadFeature> rf = new LinkedList<ReadFeature>();
+				java.util.List<ReadFeature> rf = pool == null ? new LinkedList<ReadFeature>()
+						: pool.featureList();
 				r.readFeatures = rf;
 				for (int i = 0; i < size; i++) {
-					Byte operator = fc.readData();
+					byte operator = fc.readByte();
 
-					int pos = prevPos + fp.readData();
+					int pos = prevPos + fp.readInt();
 					prevPos = pos;
 
 					switch (operator) {
 					case ReadBase.operator:
-						ReadBase rb = new ReadBase(pos, bc.readData(), qc.readData());
-						rf.add(rb);
+						byte base = bc.readByte();
+						byte score = qc.readByte();
+						rf.add(pool == null ? new ReadBase(pos, base, score) : pool
+								.readBase(pos, base, score));
 						break;
 					case Substitution.operator:
-						Substitution sv = new Substitution();
-						sv.setPosition(pos);
-						byte code = bsc.readData();
-						sv.setCode(code);
-						rf.add(sv);
+						byte code = bsc.readByte();
+						if (pool == null) {
+							Substitution sv = new Substitution();
+							sv.setPosition(pos);
+							sv.setCode(code);
+							rf.add(sv);
+						} else
+							rf.add(pool.substitution(pos, code));
 						break;
 					case Insertion.operator:
-						Insertion iv = new Insertion(pos, inc.readData());
-						rf.add(iv);
+						byte[] insertion = inc.readData();
+						rf.add(pool == null ? new Insertion(pos, insertion) : pool
+								.insertion(pos, insertion));
 						break;
 					case SoftClip.operator:
-						SoftClip fv = new SoftClip(pos, softClipCodec.readData());
-						rf.add(fv);
+						byte[] softClip = softClipCodec.readData();
+						rf.add(pool == null ? new SoftClip(pos, softClip) : pool
+								.softClip(pos, softClip));
 						break;
 					case HardClip.operator:
-						HardClip hv = new HardClip(pos, hardClipCodec.readData());
-						rf.add(hv);
+						int hardClip = hardClipCodec.readInt();
+						rf.add(pool == null ? new HardClip(pos, hardClip) : pool
+								.hardClip(pos, hardClip));
 						break;
 					case Padding.operator:
-						Padding pv = new Padding(pos, dlc.readData());
-						rf.add(pv);
+						int padding = dlc.readInt();
+						rf.add(pool == null ? new Padding(pos, padding) : pool
+								.padding(pos, padding));
 						break;
 					case Deletion.operator:
-						Deletion dv = new Deletion(pos, dlc.readData());
-						rf.add(dv);
+						int deletion = dlc.readInt();
+						rf.add(pool == null ? new Deletion(pos, deletion) : pool
+								.deletion(pos, deletion));
 						break;
 					case RefSkip.operator:
-						RefSkip rsv = new RefSkip(pos, refSkipCodec.readData());
-						rf.add(rsv);
+						int refSkip = refSkipCodec.readInt();
+						rf.add(pool == null ? new RefSkip(pos, refSkip) : pool
+								.refSkip(pos, refSkip));
 						break;
 					case InsertBase.operator:
-						InsertBase ib = new InsertBase(pos, bc.readData());
-						rf.add(ib);
+						byte insertBase = bc.readByte();
+						rf.add(pool == null ? new InsertBase(pos, insertBase) : pool
+								.insertBase(pos, insertBase));
 						break;
 					case BaseQualityScore.operator:
-						BaseQualityScore bqs = new BaseQualityScore(pos, qc.readData());
-						rf.add(bqs);
+						byte qualityScore = qc.readByte();
+						rf.add(pool == null ? new BaseQualityScore(pos,
+								qualityScore) : pool.baseQualityScore(pos,
+								qualityScore));
 						break;
 					default:
 						throw new RuntimeException("Unknown read feature operator: " + operator);
@@ -156,15 +177,17 @@ public class CramRecordReader extends AbstractReader {
 				}
 
 				// mapping quality:
-				r.mappingQuality = mqc.readData();
+				r.mappingQuality = mqc.readInt();
 				if (r.isForcePreserveQualityScores()) {
 					byte[] qs = qcArray.readDataArray(r.readLength);
 					r.qualityScores = qs;
 				}
 			} else {
-				byte[] bases = new byte[r.readLength];
+				byte[] bases = r.readBases;
+				if (bases == null || bases.length != r.readLength)
+					bases = new byte[r.readLength];
 				for (int i = 0; i < bases.length; i++)
-					bases[i] = bc.readData();
+					bases[i] = bc.readByte();
 				r.readBases = bases;
 
 				if (r.isForcePreserveQualityScores()) {
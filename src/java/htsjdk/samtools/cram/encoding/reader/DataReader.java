@@ -21,6 +21,18 @@ public interface DataReader<T> {
 
 	public T readData() throws IOException;
 
+	/**
+	 * Read an integer value without boxing it, for readers of
+	 * {@link htsjdk.samtools.cram.encoding.DataSeriesType#INT INT} series.
+	 */
+	public int readInt() throws IOException;
+
+	/**
+	 * Read a byte value without boxing it, for readers of
+	 * {@link htsjdk.samtools.cram.encoding.DataSeriesType#BYTE BYTE} series.
+	 */
+	public byte readByte() throws IOException;
+
 	public T readDataArray(int len) throws IOException;
 
 	public void skip() throws IOException;
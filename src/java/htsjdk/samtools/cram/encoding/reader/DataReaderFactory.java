@@ -22,6 +22,8 @@ import htsjdk.samtools.cram.encoding.DataSeriesMap;
 import htsjdk.samtools.cram.encoding.DataSeriesType;
 import htsjdk.samtools.cram.encoding.Encoding;
 import htsjdk.samtools.cram.encoding.EncodingFactory;
+import htsjdk.samtools.cram.encoding.huffint.CanonicalHuffmanByteCodec2;
+import htsjdk.samtools.cram.encoding.huffint.CanonicalHuffmanIntegerCodec2;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.structure.CompressionHeader;
 import htsjdk.samtools.cram.structure.EncodingID;
@@ -56,7 +58,7 @@ public class DataReaderFactory {
 					System.err.println("Encoding not found for key: " + key);
 				}
 				f.set(reader,
-						createReader(type, h.eMap.get(key), bis, inputMap));
+						createReader(type, h.eMap.get(key), bis, inputMap, h));
 			}
 
 			if (f.isAnnotationPresent(DataSeriesMap.class)) {
@@ -68,7 +70,7 @@ public class DataReaderFactory {
 						EncodingParams params = h.tMap.get(key);
 						DataReader<byte[]> tagReader = createReader(
 								DataSeriesType.BYTE_ARRAY, params, bis,
-								inputMap);
+								inputMap, h);
 						map.put(key, tagReader);
 					}
 					f.set(reader, map);
@@ -82,22 +84,34 @@ public class DataReaderFactory {
 
 	private <T> DataReader<T> createReader(DataSeriesType valueType,
 			EncodingParams params, BitInputStream bis,
-			Map<Integer, InputStream> inputMap) {
+			Map<Integer, InputStream> inputMap, CompressionHeader h) {
 		if (params.id == EncodingID.NULL)
 			return collectStats ? new DataReaderWithStats(
 					buildNullReader(valueType)) : buildNullReader(valueType);
 
-		EncodingFactory f = new EncodingFactory();
-		Encoding<T> encoding = f.createEncoding(valueType, params.id);
-		if (encoding == null)
-			throw new RuntimeException("Encoding not found for value type "
-					+ valueType.name() + ", id=" + params.id);
-		encoding.fromByteArray(params.params);
+		BitCodec<T> codec = null;
+		/*
+		 * Huffman codecs keep no state of their own, so their decoding tables
+		 * can be built once per container and shared by all its slices:
+		 */
+		boolean shareable = params.id == EncodingID.HUFFMAN;
+		if (shareable)
+			codec = h.<T> getSharedCodec(valueType, params);
+
+		if (codec == null) {
+			EncodingFactory f = new EncodingFactory();
+			Encoding<T> encoding = f.createEncoding(valueType, params.id);
+			if (encoding == null)
+				throw new RuntimeException("Encoding not found for value type "
+						+ valueType.name() + ", id=" + params.id);
+			encoding.fromByteArray(params.params);
+			codec = encoding.buildCodec(inputMap, null);
+			if (shareable)
+				h.putSharedCodec(valueType, params, codec);
+		}
 
 		return collectStats ? new DataReaderWithStats(new DefaultDataReader<T>(
-				encoding.buildCodec(inputMap, null), bis))
-				: new DefaultDataReader<T>(encoding.buildCodec(inputMap, null),
-						bis);
+				codec, bis)) : new DefaultDataReader<T>(codec, bis);
 	}
 
 	private static <T> DataReader<T> buildNullReader(DataSeriesType valueType) {
@@ -121,10 +135,16 @@ public class DataReaderFactory {
 	private static class DefaultDataReader<T> implements DataReader<T> {
 		private BitCodec<T> codec;
 		private BitInputStream bis;
+		private CanonicalHuffmanIntegerCodec2 intHuffmanCodec;
+		private CanonicalHuffmanByteCodec2 byteHuffmanCodec;
 
 		public DefaultDataReader(BitCodec<T> codec, BitInputStream bis) {
 			this.codec = codec;
 			this.bis = bis;
+			if (codec instanceof CanonicalHuffmanIntegerCodec2)
+				intHuffmanCodec = (CanonicalHuffmanIntegerCodec2) codec;
+			if (codec instanceof CanonicalHuffmanByteCodec2)
+				byteHuffmanCodec = (CanonicalHuffmanByteCodec2) codec;
 		}
 
 		@Override
@@ -132,6 +152,20 @@ public class DataReaderFactory {
 			return codec.read(bis);
 		}
 
+		@Override
+		public int readInt() throws IOException {
+			if (intHuffmanCodec != null)
+				return intHuffmanCodec.readInt(bis);
+			return ((Number) codec.read(bis)).intValue();
+		}
+
+		@Override
+		public byte readByte() throws IOException {
+			if (byteHuffmanCodec != null)
+				return byteHuffmanCodec.readByte(bis);
+			return ((Number) codec.read(bis)).byteValue();
+		}
+
 		@Override
 		public T readDataArray(int len) throws IOException {
 			return codec.read(bis, len);
@@ -166,6 +200,16 @@ public class DataReaderFactory {
 			return value;
 		}
 
+		@Override
+		public int readInt() throws IOException {
+			return ((Number) value).intValue();
+		}
+
+		@Override
+		public byte readByte() throws IOException {
+			return ((Number) value).byteValue();
+		}
+
 		@Override
 		public T readDataArray(int len) {
 			return value;
@@ -203,6 +247,22 @@ public class DataReaderFactory {
 			return value;
 		}
 
+		@Override
+		public int readInt() throws IOException {
+			long time = System.nanoTime();
+			int value = delegate.readInt();
+			nanos += System.nanoTime() - time;
+			return value;
+		}
+
+		@Override
+		public byte readByte() throws IOException {
+			long time = System.nanoTime();
+			byte value = delegate.readByte();
+			nanos += System.nanoTime() - time;
+			return value;
+		}
+
 		@Override
 		public T readDataArray(int len) throws IOException {
 			long time = System.nanoTime();
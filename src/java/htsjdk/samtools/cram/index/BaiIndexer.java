@@ -17,9 +17,13 @@ package htsjdk.samtools.cram.index;
 
 import htsjdk.samtools.CRAMIndexer;
 import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.cram.build.ContainerParser;
 import htsjdk.samtools.cram.build.CramIO;
 import htsjdk.samtools.cram.io.CountingInputStream;
+import htsjdk.samtools.cram.structure.CompressionHeader;
 import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.cram.structure.CramCompressionRecord;
 import htsjdk.samtools.cram.structure.CramHeader;
 import htsjdk.samtools.cram.structure.Slice;
 import htsjdk.samtools.util.Log;
@@ -27,14 +31,32 @@ import htsjdk.samtools.util.Log;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-class BaiIndexer {
+/**
+ * Builds a BAI index for a CRAM file. Slices mapped to a single reference are
+ * indexed from their headers. Only multi-reference slices are decoded to find
+ * the span of the records on each reference, several of them in parallel if
+ * more than one thread is allowed.
+ */
+public class BaiIndexer {
 	private static Log log = Log.getInstance(BaiIndexer.class);
 
 	public CountingInputStream is;
 	public SAMFileHeader samFileHeader;
 	public CRAMIndexer indexer;
 
+	private int threads = 1;
+	private ExecutorService executor;
+
 	public BaiIndexer(InputStream is, SAMFileHeader samFileHeader, File output) {
 		this.is = new CountingInputStream(is);
 		this.samFileHeader = samFileHeader;
@@ -50,24 +72,129 @@ class BaiIndexer {
 		indexer = new CRAMIndexer(output, samFileHeader);
 	}
 
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads
+	 *            number of threads decoding multi-reference slices, 1 decodes
+	 *            in the calling thread
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Expecting a positive number of threads: " + threads);
+		this.threads = threads;
+	}
+
 	private boolean nextContainer() throws IOException {
 		long offset = is.getCount();
-		Container c = CramIO.readContainer(is);
+		Container c = CramIO.readContainerHeader(is);
 		if (c == null)
 			return false;
 		c.offset = offset;
 
-		int i = 0;
-		for (Slice slice : c.slices) {
-			slice.containerOffset = offset;
-			slice.index = i++;
-			indexer.processAlignment(slice);
+		if (c.sequenceId == Slice.MUTLIREF) {
+			CramIO.readContainerBody(c, is);
+			for (Slice slice : splitMultiRefSlices(c))
+				indexer.processAlignment(slice);
+		} else {
+			CramIO.readContainerSliceHeaders(c, is);
+			int i = 0;
+			for (Slice slice : c.slices) {
+				slice.containerOffset = offset;
+				slice.index = i++;
+				indexer.processAlignment(slice);
+			}
 		}
 
 		log.info("INDEXED: " + c.toString());
 		return true;
 	}
 
+	/**
+	 * @return the slices of the container with every multi-reference slice
+	 *         replaced by one slice per reference spanning the records mapped
+	 *         to it
+	 */
+	private List<Slice> splitMultiRefSlices(Container c) throws IOException {
+		List<Callable<Collection<Slice>>> tasks = new ArrayList<Callable<Collection<Slice>>>();
+		for (int i = 0; i < c.slices.length; i++) {
+			final Slice slice = c.slices[i];
+			slice.containerOffset = c.offset;
+			slice.index = i;
+			tasks.add(new SliceSplitter(slice, c.h));
+		}
+
+		List<Slice> slices = new ArrayList<Slice>();
+		try {
+			if (executor == null) {
+				for (Callable<Collection<Slice>> task : tasks)
+					slices.addAll(task.call());
+			} else {
+				for (Future<Collection<Slice>> future : executor.invokeAll(tasks))
+					slices.addAll(future.get());
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		return slices;
+	}
+
+	private class SliceSplitter implements Callable<Collection<Slice>> {
+		private final Slice slice;
+		private final CompressionHeader h;
+
+		SliceSplitter(Slice slice, CompressionHeader h) {
+			this.slice = slice;
+			this.h = h;
+		}
+
+		@Override
+		public Collection<Slice> call() throws IOException, IllegalAccessException {
+			TreeMap<Integer, Slice> map = new TreeMap<Integer, Slice>();
+			if (slice.sequenceId != Slice.MUTLIREF) {
+				map.put(slice.sequenceId, slice);
+				return map.values();
+			}
+
+			List<CramCompressionRecord> records = new ContainerParser(samFileHeader).getRecords(slice, h);
+			for (CramCompressionRecord r : records) {
+				int sequenceId = r.alignmentStart == SAMRecord.NO_ALIGNMENT_START ? SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX
+						: r.sequenceId;
+				Slice s = map.get(sequenceId);
+				if (s == null) {
+					s = new Slice();
+					s.sequenceId = sequenceId;
+					s.alignmentStart = r.alignmentStart;
+					s.alignmentSpan = 0;
+					s.nofRecords = 0;
+					s.containerOffset = slice.containerOffset;
+					s.index = slice.index;
+					s.offset = slice.offset;
+					s.size = slice.size;
+					map.put(sequenceId, s);
+				}
+				s.nofRecords++;
+				if (sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX)
+					continue;
+
+				int end = Math.max(s.alignmentStart + s.alignmentSpan - 1, r.getAlignmentEnd());
+				s.alignmentStart = Math.min(s.alignmentStart, r.alignmentStart);
+				s.alignmentSpan = end - s.alignmentStart + 1;
+			}
+			return map.values();
+		}
+	}
+
 	private void index() throws IOException {
 		while (true) {
 			if (!nextContainer())
@@ -76,7 +203,16 @@ class BaiIndexer {
 	}
 
 	public void run() throws IOException {
-		index();
+		if (threads > 1)
+			executor = Executors.newFixedThreadPool(threads);
+		try {
+			index();
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
 		indexer.finish();
 	}
 }
@@ -17,40 +17,72 @@ package htsjdk.samtools.cram.index;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.cram.build.CramIO;
+import htsjdk.samtools.cram.io.ByteBufferUtils;
 import htsjdk.samtools.cram.io.CountingInputStream;
 import htsjdk.samtools.cram.structure.Container;
 import htsjdk.samtools.cram.structure.CramHeader;
 import htsjdk.samtools.util.Log;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
 import java.util.zip.GZIPOutputStream;
 
-class CraiIndexer {
+/**
+ * Builds a CRAI index from the container and slice headers only, no records
+ * are decoded.
+ */
+public class CraiIndexer {
 	private static Log log = Log.getInstance(CraiIndexer.class);
 
 	private CountingInputStream is;
 	private SAMFileHeader samFileHeader;
 	private CramIndex index;
+	// position of the stream start in the CRAM file:
+	private long streamOffset = 0;
 
 	public CraiIndexer(InputStream is, File output)
 			throws FileNotFoundException, IOException {
+		this(is, new BufferedOutputStream(new FileOutputStream(output)));
+	}
+
+	/**
+	 * @param is
+	 *            the CRAM stream positioned at the start of the file
+	 * @param os
+	 *            the stream to write the gzipped index to, closed by
+	 *            {@link #run()}
+	 * @throws IOException
+	 */
+	public CraiIndexer(InputStream is, OutputStream os) throws IOException {
 		this.is = new CountingInputStream(is);
 		CramHeader cramHeader = CramIO.readCramHeader(this.is);
 		samFileHeader = cramHeader.getSamFileHeader();
 
-		index = new CramIndex(new GZIPOutputStream(new BufferedOutputStream(
-				new FileOutputStream(output))));
+		index = new CramIndex(new GZIPOutputStream(os));
+	}
+
+	private CraiIndexer(InputStream is, long streamOffset, OutputStream os)
+			throws IOException {
+		this.is = new CountingInputStream(is);
+		this.streamOffset = streamOffset;
+		index = new CramIndex(new GZIPOutputStream(os));
+	}
 
+	public SAMFileHeader getSamFileHeader() {
+		return samFileHeader;
 	}
 
 	private boolean nextContainer() throws IOException {
-		long offset = is.getCount();
-		Container c = CramIO.readContainer(is);
+		long offset = streamOffset + is.getCount();
+		Container c = CramIO.readContainerSliceHeaders(is);
 		if (c == null)
 			return false;
 		c.offset = offset;
@@ -70,4 +102,44 @@ class CraiIndexer {
 		index();
 		index.close();
 	}
+
+	/**
+	 * Brings a CRAI index up to date with a CRAM file that has grown since the
+	 * index was built. The file is read from the last container in the index
+	 * and entries for the following containers are appended to the index as a
+	 * new gzip member, the existing entries are left as they are. An index
+	 * without entries is rebuilt.
+	 * 
+	 * @param cramFile
+	 *            the CRAM file
+	 * @param craiFile
+	 *            an existing CRAI index of an earlier state of the CRAM file
+	 * @throws IOException
+	 */
+	public static void update(File cramFile, File craiFile) throws IOException {
+		List<CramIndex.Entry> entries = CramIndex.readIndexFromCraiFile(craiFile);
+		long lastContainerOffset = -1;
+		for (CramIndex.Entry e : entries)
+			lastContainerOffset = Math.max(lastContainerOffset, e.containerStartOffset);
+
+		InputStream is = new BufferedInputStream(new FileInputStream(cramFile));
+		try {
+			if (lastContainerOffset < 0) {
+				new CraiIndexer(is, new BufferedOutputStream(new FileOutputStream(craiFile))).run();
+				return;
+			}
+
+			ByteBufferUtils.skipFully(lastContainerOffset, is);
+			CountingInputStream cis = new CountingInputStream(is);
+			Container last = CramIO.readContainerHeader(cis);
+			if (last == null)
+				throw new RuntimeException("No container found at the last indexed offset " + lastContainerOffset
+						+ " of " + cramFile.getAbsolutePath());
+			CramIO.skipContainerBody(last, cis);
+			new CraiIndexer(is, lastContainerOffset + cis.getCount(), new BufferedOutputStream(
+					new FileOutputStream(craiFile, true))).run();
+		} finally {
+			is.close();
+		}
+	}
 }
@@ -137,7 +137,7 @@ public class CramIndex {
 		List<Entry> index = new ArrayList<CramIndex.Entry>() ;
 		while (true) {
 			long offset = cis.getCount();
-			Container c = CramIO.readContainer(cis); 
+			Container c = CramIO.readContainerSliceHeaders(cis);
 			if (c == null || c.isEOF())
 				break;
 			c.offset = offset;
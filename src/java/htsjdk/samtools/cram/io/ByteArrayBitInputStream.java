@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BitInputStream} reading bits from an in-memory byte array through
+ * a 64-bit accumulator. The accumulator is refilled with a whole 8-byte word
+ * whenever that many bytes are left, which guarantees at least 57 buffered
+ * bits, so any read of up to 57 bits costs a single bounds check and no
+ * per-byte branching.
+ *
+ * The valid bits are kept left-aligned in the accumulator, bits below them
+ * are either zero or the correct following bits of the stream.
+ */
+public class ByteArrayBitInputStream implements BitInputStream {
+	/**
+	 * The maximum number of bits that can be read with a single refill.
+	 */
+	public static final int MAX_FAST_BITS = 57;
+
+	private final byte[] buf;
+	private final int start;
+	private final int end;
+	private int pos;
+
+	private long accumulator = 0;
+	private int nofBufferedBits = 0;
+
+	public ByteArrayBitInputStream(byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	public ByteArrayBitInputStream(byte[] data, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > data.length)
+			throw new IndexOutOfBoundsException();
+		this.buf = data;
+		this.start = offset;
+		this.pos = offset;
+		this.end = offset + length;
+	}
+
+	/**
+	 * Read the remaining bytes of the buffer. The array backing the buffer
+	 * is used directly if there is one.
+	 */
+	public ByteArrayBitInputStream(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			this.buf = buffer.array();
+			this.start = buffer.arrayOffset() + buffer.position();
+			this.pos = start;
+			this.end = start + buffer.remaining();
+		} else {
+			this.buf = new byte[buffer.remaining()];
+			buffer.duplicate().get(buf);
+			this.start = 0;
+			this.pos = 0;
+			this.end = buf.length;
+		}
+	}
+
+	private void refill() {
+		if (end - pos >= 8) {
+			final byte[] b = buf;
+			final int p = pos;
+			final long word = ((long) b[p] << 56)
+					| ((long) (b[p + 1] & 0xFF) << 48)
+					| ((long) (b[p + 2] & 0xFF) << 40)
+					| ((long) (b[p + 3] & 0xFF) << 32)
+					| ((long) (b[p + 4] & 0xFF) << 24)
+					| ((b[p + 5] & 0xFF) << 16) | ((b[p + 6] & 0xFF) << 8)
+					| (b[p + 7] & 0xFF);
+			accumulator |= word >>> nofBufferedBits;
+			final int bytes = (64 - nofBufferedBits) >>> 3;
+			pos += bytes;
+			nofBufferedBits += bytes << 3;
+		} else {
+			while (nofBufferedBits <= 56 && pos < end) {
+				accumulator |= (long) (buf[pos++] & 0xFF) << (56 - nofBufferedBits);
+				nofBufferedBits += 8;
+			}
+		}
+	}
+
+	private void ensure(int n) throws EOFException {
+		if (nofBufferedBits < n) {
+			refill();
+			if (nofBufferedBits < n)
+				throw new EOFException("End of stream.");
+		}
+	}
+
+	/**
+	 * Return the next n bits without consuming them. Bits past the end of
+	 * the stream are read as zeros.
+	 *
+	 * @param n
+	 *            number of bits, 1 to 32
+	 */
+	public final int peekBits(int n) {
+		if (nofBufferedBits < n)
+			refill();
+		return (int) (accumulator >>> (64 - n));
+	}
+
+	/**
+	 * Consume n bits that have already been examined with
+	 * {@link #peekBits(int)}.
+	 */
+	public final void skipBits(int n) throws IOException {
+		ensure(n);
+		accumulator <<= n;
+		nofBufferedBits -= n;
+	}
+
+	@Override
+	public final boolean readBit() throws IOException {
+		ensure(1);
+		final boolean bit = accumulator < 0;
+		accumulator <<= 1;
+		nofBufferedBits--;
+		return bit;
+	}
+
+	@Override
+	public final int readBits(int n) throws IOException {
+		if (n == 0)
+			return 0;
+		if (n > 32)
+			throw new RuntimeException(
+					"More then 32 bits are requested in one read from bit stream.");
+		ensure(n);
+		final int x = (int) (accumulator >>> (64 - n));
+		accumulator <<= n;
+		nofBufferedBits -= n;
+		return x;
+	}
+
+	@Override
+	public final long readLongBits(int n) throws IOException {
+		if (n == 0)
+			return 0;
+		if (n > 64)
+			throw new RuntimeException(
+					"More then 64 bits are requested in one read from bit stream.");
+		if (n > MAX_FAST_BITS)
+			return (readLongBits(n - 32) << 32)
+					| (readLongBits(32) & 0xFFFFFFFFL);
+
+		ensure(n);
+		final long x = accumulator >>> (64 - n);
+		accumulator <<= n;
+		nofBufferedBits -= n;
+		return x;
+	}
+
+	@Override
+	public boolean endOfStream() throws IOException {
+		return nofBufferedBits == 0 && pos >= end;
+	}
+
+	@Override
+	public boolean putBack(long b, int numBits) {
+		return false;
+	}
+
+	@Override
+	public void alignToByte() throws IOException {
+		final int n = nofBufferedBits & 7;
+		accumulator <<= n;
+		nofBufferedBits -= n;
+	}
+
+	@Override
+	public int readAlignedBytes(byte[] array) throws IOException {
+		alignToByte();
+		int i = 0;
+		while (i < array.length && nofBufferedBits > 0) {
+			array[i++] = (byte) (accumulator >>> 56);
+			accumulator <<= 8;
+			nofBufferedBits -= 8;
+		}
+		if (i < array.length) {
+			// whatever is left in the accumulator is ahead of pos:
+			accumulator = 0;
+			final int len = array.length - i;
+			if (end - pos < len)
+				throw new EOFException("End of stream.");
+			System.arraycopy(buf, pos, array, i, len);
+			pos += len;
+		}
+		return array.length * 8;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return (byte) readBits(8);
+	}
+
+	@Override
+	public boolean ensureMarker(long marker, int nofBits) throws IOException {
+		return readLongBits(nofBits) == marker;
+	}
+
+	/**
+	 * @return the number of bits consumed from the stream so far
+	 */
+	public long getBitPosition() {
+		return (pos - start) * 8L - nofBufferedBits;
+	}
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link BitOutputStream} collecting bits in a 64-bit accumulator and
+ * spilling whole bytes into a growable in-memory byte array only when the
+ * accumulator is about to overflow. Writes of up to 57 bits are a shift and
+ * an or in the common case.
+ */
+public class ByteArrayBitOutputStream implements BitOutputStream {
+	private static final int MAX_FAST_BITS = 57;
+
+	private byte[] buf;
+	private int count = 0;
+
+	private long accumulator = 0;
+	private int nofBufferedBits = 0;
+
+	public ByteArrayBitOutputStream() {
+		this(1024);
+	}
+
+	public ByteArrayBitOutputStream(int initialCapacity) {
+		buf = new byte[Math.max(initialCapacity, 8)];
+	}
+
+	private void spill() {
+		if (count + 8 > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + 8));
+		while (nofBufferedBits >= 8) {
+			nofBufferedBits -= 8;
+			buf[count++] = (byte) (accumulator >>> nofBufferedBits);
+		}
+	}
+
+	private void writeBits(long value, int n) {
+		if (nofBufferedBits + n > 64)
+			spill();
+		accumulator = (accumulator << n) | (value & ((1L << n) - 1));
+		nofBufferedBits += n;
+	}
+
+	@Override
+	public void write(long value, int nofBitsToWrite) throws IOException {
+		if (nofBitsToWrite == 0)
+			return;
+
+		if (nofBitsToWrite < 1 || nofBitsToWrite > 64)
+			throw new IOException("Expecting 1 to 64 bits, got: value="
+					+ value + ", nofBits=" + nofBitsToWrite);
+
+		if (nofBitsToWrite > MAX_FAST_BITS) {
+			writeBits(value >>> 32, nofBitsToWrite - 32);
+			writeBits(value, 32);
+		} else
+			writeBits(value, nofBitsToWrite);
+	}
+
+	@Override
+	public void write(int value, int nofBitsToWrite) throws IOException {
+		if (nofBitsToWrite == 0)
+			return;
+
+		if (nofBitsToWrite < 1 || nofBitsToWrite > 32)
+			throw new IOException("Expecting 1 to 32 bits.");
+
+		writeBits(value, nofBitsToWrite);
+	}
+
+	@Override
+	public void write(byte value, int nofBitsToWrite) throws IOException {
+		if (nofBitsToWrite < 0 || nofBitsToWrite > 8)
+			throw new IOException("Expecting 0 to 8 bits.");
+
+		if (nofBitsToWrite > 0)
+			writeBits(value, nofBitsToWrite);
+	}
+
+	@Override
+	public void write(boolean bit) throws IOException {
+		writeBits(bit ? 1 : 0, 1);
+	}
+
+	@Override
+	public void write(boolean bit, long repeat) throws IOException {
+		final long word = bit ? -1L : 0L;
+		for (; repeat >= 32; repeat -= 32)
+			writeBits(word, 32);
+		if (repeat > 0)
+			writeBits(word, (int) repeat);
+	}
+
+	@Override
+	public void write(byte[] data) throws IOException {
+		if (nofBufferedBits % 8 == 0) {
+			spill();
+			if (count + data.length > buf.length)
+				buf = Arrays.copyOf(buf,
+						Math.max(buf.length << 1, count + data.length + 8));
+			System.arraycopy(data, 0, buf, count, data.length);
+			count += data.length;
+		} else
+			for (byte b : data)
+				writeBits(b, 8);
+	}
+
+	@Override
+	public void write(byte b) throws IOException {
+		writeBits(b, 8);
+	}
+
+	@Override
+	public int alignToByte() throws IOException {
+		final int bitsFlushed = nofBufferedBits % 8;
+		if (bitsFlushed > 0)
+			writeBits(0, 8 - bitsFlushed);
+		spill();
+		return bitsFlushed;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		alignToByte();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	/**
+	 * @return the number of bits written so far
+	 */
+	public long getBitCount() {
+		return count * 8L + nofBufferedBits;
+	}
+
+	/**
+	 * @return a copy of the bytes written so far, the last byte padded with
+	 *         zero bits if necessary
+	 */
+	public byte[] toByteArray() throws IOException {
+		flush();
+		return Arrays.copyOf(buf, count);
+	}
+}
@@ -299,6 +299,80 @@ public class ByteBufferUtils {
 				| (15 & buf.get());
 	}
 
+	/**
+	 * Reads an LTF8 value from the current position of the buffer. The buffer
+	 * is expected to hold the whole value, so no end of stream checks are
+	 * done.
+	 */
+	public static final long readUnsignedLTF8(ByteBuffer buf) {
+		int b1 = 0xFF & buf.get();
+
+		if ((b1 & 128) == 0)
+			return b1;
+
+		if ((b1 & 64) == 0)
+			return ((b1 & 127) << 8) | (0xFF & buf.get());
+
+		if ((b1 & 32) == 0)
+			return ((b1 & 63) << 16) | (0xFF & buf.get()) << 8 | (0xFF & buf.get());
+
+		if ((b1 & 16) == 0)
+			return ((long) (b1 & 31) << 24) | (0xFF & buf.get()) << 16 | (0xFF & buf.get()) << 8
+					| (0xFF & buf.get());
+
+		long result;
+		int bytes;
+		if ((b1 & 8) == 0) {
+			result = b1 & 15;
+			bytes = 4;
+		} else if ((b1 & 4) == 0) {
+			result = b1 & 7;
+			bytes = 5;
+		} else if ((b1 & 2) == 0) {
+			result = b1 & 3;
+			bytes = 6;
+		} else if ((b1 & 1) == 0) {
+			result = 0;
+			bytes = 7;
+		} else {
+			result = 0;
+			bytes = 8;
+		}
+
+		for (int i = 0; i < bytes; i++)
+			result = (result << 8) | (0xFF & buf.get());
+		return result;
+	}
+
+	/**
+	 * @param firstByte
+	 *            the first byte of an ITF8 value
+	 * @return the total number of bytes the ITF8 value occupies
+	 */
+	public static final int sizeOfITF8(int firstByte) {
+		if ((firstByte & 128) == 0)
+			return 1;
+		if ((firstByte & 64) == 0)
+			return 2;
+		if ((firstByte & 32) == 0)
+			return 3;
+		if ((firstByte & 16) == 0)
+			return 4;
+		return 5;
+	}
+
+	/**
+	 * @param firstByte
+	 *            the first byte of an LTF8 value
+	 * @return the total number of bytes the LTF8 value occupies
+	 */
+	public static final int sizeOfLTF8(int firstByte) {
+		int size = 1;
+		for (int mask = 128; mask != 0 && (firstByte & mask) != 0; mask >>= 1)
+			size++;
+		return size;
+	}
+
 	public static final void writeUnsignedITF8(int value, ByteBuffer buf) {
 		if ((value >>> 7) == 0) {
 			buf.put((byte) value);
@@ -559,7 +633,7 @@ public class ByteBufferUtils {
 	 * @throws IOException
 	 */
 	public static int int32(ByteBuffer buf) throws IOException {
-		return buf.get() | buf.get() << 8 | buf.get() << 16 | buf.get() << 24;
+		return (0xFF & buf.get()) | (0xFF & buf.get()) << 8 | (0xFF & buf.get()) << 16 | (0xFF & buf.get()) << 24;
 	}
 
 	public static int[] array(InputStream is) throws IOException {
@@ -571,6 +645,15 @@ public class ByteBufferUtils {
 		return array;
 	}
 
+	public static int[] array(ByteBuffer buf) {
+		int size = readUnsignedITF8(buf);
+		int[] array = new int[size];
+		for (int i = 0; i < size; i++)
+			array[i] = readUnsignedITF8(buf);
+
+		return array;
+	}
+
 	public static int write(int[] array, OutputStream os) throws IOException {
 		int len = writeUnsignedITF8(array.length, os);
 		for (int i = 0; i < array.length; i++)
@@ -596,6 +679,27 @@ public class ByteBufferUtils {
 		return n;
 	}
 
+	/**
+	 * Skips exactly the given number of bytes, unlike
+	 * {@link InputStream#skip(long)} which is allowed to skip less.
+	 * 
+	 * @throws EOFException
+	 *             if the stream ends before that many bytes have been skipped
+	 */
+	public static void skipFully(long n, InputStream is) throws IOException {
+		if (n < 0)
+			throw new IllegalArgumentException("Negative number of bytes to skip: " + n);
+		while (n > 0) {
+			long skipped = is.skip(n);
+			if (skipped > 0)
+				n -= skipped;
+			else if (is.read() < 0)
+				throw new EOFException();
+			else
+				n--;
+		}
+	}
+
 	public static long copyLarge(InputStream input, OutputStream output) throws IOException {
 		byte[] buffer = new byte[1024 * 4];
 		long count = 0;
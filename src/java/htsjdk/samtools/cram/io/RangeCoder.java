@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.io;
+
+import htsjdk.samtools.cram.encoding.ArithCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An adaptive range coder compressing whole byte arrays with an order-0 or
+ * an order-1 context model. Unlike {@link ArithCodec} it codes a symbol at a
+ * time with integer arithmetic on a byte-aligned buffer, renormalising the
+ * 32 bit range a byte at a time (Subbotin's carryless range coder).
+ * <p>
+ * The compressed data starts with the order, the raw length as a little
+ * endian int and a 32 byte bitmap of the symbols present, followed by the
+ * range coded symbols. The models only cover the symbols present, which keeps
+ * the frequency tables short for data like quality scores.
+ */
+public class RangeCoder {
+	private static final long MASK = 0xFFFFFFFFL;
+	private static final long TOP = 1L << 24;
+	private static final long BOT = 1L << 16;
+
+	private static final int INCREMENT = 24;
+	private static final int MAX_TOTAL = (int) BOT - 1;
+	private static final int HEADER_SIZE = 1 + 4 + 32;
+
+	/**
+	 * Compress with the order-1 model if the data looks like it pays off,
+	 * order-0 otherwise.
+	 */
+	public static byte[] compress(byte[] data) {
+		return compress(data, chooseOrder(data));
+	}
+
+	/**
+	 * @param order
+	 *            0 for a single model, 1 for a model per preceding symbol
+	 */
+	public static byte[] compress(byte[] data, int order) {
+		if (order != 0 && order != 1)
+			throw new IllegalArgumentException("Unsupported order: " + order);
+
+		int[] index = new int[256];
+		byte[] alphabet = new byte[32];
+		int n = alphabet(data, index, alphabet);
+
+		Encoder encoder = new Encoder(data.length + data.length / 16 + HEADER_SIZE + 16);
+		encoder.out[0] = (byte) order;
+		encoder.out[1] = (byte) data.length;
+		encoder.out[2] = (byte) (data.length >> 8);
+		encoder.out[3] = (byte) (data.length >> 16);
+		encoder.out[4] = (byte) (data.length >> 24);
+		System.arraycopy(alphabet, 0, encoder.out, 5, alphabet.length);
+		encoder.pos = HEADER_SIZE;
+
+		if (n > 1) {
+			Model[] models = new Model[order == 0 ? 1 : n];
+			int context = 0;
+			for (int i = 0; i < data.length; i++) {
+				Model model = models[context];
+				if (model == null)
+					model = models[context] = new Model(n);
+
+				int symbol = index[0xFF & data[i]];
+				int rank = model.ranks[symbol];
+				encoder.encode(model.cumulative(rank), model.freqs[rank], model.total);
+				model.update(rank);
+				if (order == 1)
+					context = symbol;
+			}
+			encoder.flush();
+		}
+
+		return Arrays.copyOf(encoder.out, encoder.pos);
+	}
+
+	public static byte[] uncompress(byte[] compressed) {
+		int order = compressed[0];
+		int length = (0xFF & compressed[1]) | (0xFF & compressed[2]) << 8 | (0xFF & compressed[3]) << 16
+				| (0xFF & compressed[4]) << 24;
+
+		byte[] symbols = new byte[256];
+		int n = 0;
+		for (int i = 0; i < 256; i++)
+			if ((compressed[5 + (i >> 3)] & (1 << (i & 7))) != 0)
+				symbols[n++] = (byte) i;
+
+		byte[] data = new byte[length];
+		if (n == 1)
+			Arrays.fill(data, symbols[0]);
+		if (n <= 1)
+			return data;
+
+		Decoder decoder = new Decoder(compressed, HEADER_SIZE);
+		Model[] models = new Model[order == 0 ? 1 : n];
+		int context = 0;
+		for (int i = 0; i < length; i++) {
+			Model model = models[context];
+			if (model == null)
+				model = models[context] = new Model(n);
+
+			int target = decoder.getFreq(model.total);
+			int[] freqs = model.freqs;
+			int rank = 0;
+			int cumulative = 0;
+			while (cumulative + freqs[rank] <= target)
+				cumulative += freqs[rank++];
+			decoder.decode(cumulative, freqs[rank]);
+			int symbol = model.symbols[rank];
+			model.update(rank);
+
+			data[i] = symbols[symbol];
+			if (order == 1)
+				context = symbol;
+		}
+
+		return data;
+	}
+
+	/**
+	 * Map the symbols present in the data to consecutive indexes.
+	 * 
+	 * @return the number of distinct symbols
+	 */
+	private static int alphabet(byte[] data, int[] index, byte[] bitmap) {
+		boolean[] present = new boolean[256];
+		for (int i = 0; i < data.length; i++)
+			present[0xFF & data[i]] = true;
+
+		int n = 0;
+		for (int i = 0; i < 256; i++) {
+			if (present[i]) {
+				index[i] = n++;
+				bitmap[i >> 3] |= 1 << (i & 7);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Compare the order-0 entropy of the data with its order-1 conditional
+	 * entropy, charging the order-1 model for the extra frequencies it has
+	 * to learn.
+	 */
+	static int chooseOrder(byte[] data) {
+		if (data.length < 1024)
+			return 0;
+
+		int[] counts0 = new int[256];
+		int[] counts1 = new int[256 * 256];
+		int context = 0;
+		for (int i = 0; i < data.length; i++) {
+			int symbol = 0xFF & data[i];
+			counts0[symbol]++;
+			counts1[context << 8 | symbol]++;
+			context = symbol;
+		}
+
+		double bits0 = 0;
+		for (int c : counts0)
+			if (c > 0)
+				bits0 -= c * Math.log((double) c / data.length);
+
+		double bits1 = 0;
+		for (int ctx = 0; ctx < 256; ctx++) {
+			int total = 0;
+			for (int s = 0; s < 256; s++)
+				total += counts1[ctx << 8 | s];
+			for (int s = 0; s < 256; s++) {
+				int c = counts1[ctx << 8 | s];
+				if (c > 0)
+					bits1 += 16 * Math.log(2) - c * Math.log((double) c / total);
+			}
+		}
+
+		return bits1 < bits0 ? 1 : 0;
+	}
+
+	/**
+	 * Adaptive symbol frequencies, halved whenever the total would exceed
+	 * the precision of the coder. The symbols are kept roughly in descending
+	 * order of frequency, so that the linear searches for cumulative
+	 * frequencies mostly stop after the first few symbols.
+	 */
+	private static class Model {
+		/**
+		 * Frequencies by rank.
+		 */
+		final int[] freqs;
+		final int[] symbols;
+		final int[] ranks;
+		int total;
+
+		Model(int n) {
+			freqs = new int[n];
+			symbols = new int[n];
+			ranks = new int[n];
+			for (int i = 0; i < n; i++) {
+				freqs[i] = 1;
+				symbols[i] = i;
+				ranks[i] = i;
+			}
+			total = n;
+		}
+
+		int cumulative(int rank) {
+			int cumulative = 0;
+			for (int i = 0; i < rank; i++)
+				cumulative += freqs[i];
+			return cumulative;
+		}
+
+		void update(int rank) {
+			freqs[rank] += INCREMENT;
+			total += INCREMENT;
+			if (rank > 0 && freqs[rank] > freqs[rank - 1]) {
+				int f = freqs[rank];
+				freqs[rank] = freqs[rank - 1];
+				freqs[rank - 1] = f;
+
+				int s = symbols[rank];
+				symbols[rank] = symbols[rank - 1];
+				symbols[rank - 1] = s;
+				ranks[symbols[rank]] = rank;
+				ranks[s] = rank - 1;
+			}
+
+			if (total > MAX_TOTAL) {
+				total = 0;
+				for (int i = 0; i < freqs.length; i++) {
+					freqs[i] -= freqs[i] >> 1;
+					total += freqs[i];
+				}
+			}
+		}
+	}
+
+	private static class Encoder {
+		byte[] out;
+		int pos = 0;
+		long low = 0;
+		long range = MASK;
+
+		Encoder(int capacity) {
+			out = new byte[capacity];
+		}
+
+		void encode(int cumulative, int freq, int total) {
+			range /= total;
+			low += cumulative * range;
+			range *= freq;
+			while (true) {
+				if ((low ^ (low + range)) >= TOP) {
+					if (range >= BOT)
+						break;
+					range = -low & (BOT - 1);
+				}
+				write();
+			}
+		}
+
+		void flush() {
+			for (int i = 0; i < 4; i++)
+				write();
+		}
+
+		private void write() {
+			if (pos == out.length)
+				out = Arrays.copyOf(out, out.length * 2);
+			out[pos++] = (byte) (low >>> 24);
+			low = (low << 8) & MASK;
+			range = (range << 8) & MASK;
+		}
+	}
+
+	private static class Decoder {
+		final byte[] in;
+		int pos;
+		long low = 0;
+		long range = MASK;
+		long code = 0;
+
+		Decoder(byte[] in, int pos) {
+			this.in = in;
+			this.pos = pos;
+			for (int i = 0; i < 4; i++)
+				code = (code << 8) | next();
+		}
+
+		int getFreq(int total) {
+			range /= total;
+			return (int) ((code - low) / range);
+		}
+
+		void decode(int cumulative, int freq) {
+			low += cumulative * range;
+			range *= freq;
+			while (true) {
+				if ((low ^ (low + range)) >= TOP) {
+					if (range >= BOT)
+						break;
+					range = -low & (BOT - 1);
+				}
+				code = ((code << 8) | next()) & MASK;
+				low = (low << 8) & MASK;
+				range = (range << 8) & MASK;
+			}
+		}
+
+		private int next() {
+			return pos < in.length ? 0xFF & in[pos++] : 0;
+		}
+	}
+
+	/**
+	 * Compare speed and size with gzip and {@link ArithCodec} on simulated
+	 * quality scores.
+	 */
+	public static void main(String[] args) throws IOException {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024 * 1024;
+		Random random = new Random(0);
+		byte[] data = new byte[size];
+		int q = 30;
+		for (int i = 0; i < data.length; i++) {
+			q = Math.max(2, Math.min(40, q + random.nextInt(7) - 3));
+			data[i] = (byte) (33 + q);
+		}
+
+		// warm up:
+		for (int i = 0; i < 3; i++)
+			uncompress(compress(data, i % 2));
+
+		for (int order = 0; order < 2; order++) {
+			byte[] compressed = null;
+			long time = System.nanoTime();
+			for (int i = 0; i < 10; i++)
+				compressed = compress(data, order);
+			long encode = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			for (int i = 0; i < 10; i++)
+				if (!Arrays.equals(data, uncompress(compressed)))
+					throw new RuntimeException("Round trip failed.");
+			long decode = System.nanoTime() - time;
+			report("range order-" + order, data.length * 10L, compressed.length, encode, decode);
+		}
+
+		byte[] gzipped = null;
+		long time = System.nanoTime();
+		for (int i = 0; i < 10; i++)
+			gzipped = ByteBufferUtils.gzip(data);
+		long encode = System.nanoTime() - time;
+		time = System.nanoTime();
+		for (int i = 0; i < 10; i++)
+			ByteBufferUtils.gunzip(gzipped);
+		report("gzip", data.length * 10L, gzipped.length, encode, System.nanoTime() - time);
+
+		// the bitwise arithmetic coder codes a record at a time and is much
+		// slower, so only a part of the data is coded once:
+		byte[] sample = Arrays.copyOf(data, Math.min(data.length, 64 * 1024));
+		int[] counts = new int[256];
+		for (byte b : sample)
+			counts[0xFF & b]++;
+		int n = 0;
+		for (int c : counts)
+			if (c > 0)
+				n++;
+		int[] freqs = new int[n];
+		int[] map = new int[n];
+		n = 0;
+		for (int i = 0; i < 256; i++) {
+			if (counts[i] > 0) {
+				freqs[n] = counts[i];
+				map[n++] = i;
+			}
+		}
+		ArithCodec codec = new ArithCodec(freqs, map);
+		byte[][] chunks = new byte[sample.length / 100][];
+		long compressedSize = 0;
+		encode = 0;
+		long decode = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			byte[] chunk = Arrays.copyOfRange(sample, i * 100, i * 100 + 100);
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			time = System.nanoTime();
+			codec.write(new DefaultBitOutputStream(baos), chunk);
+			encode += System.nanoTime() - time;
+			compressedSize += baos.size();
+
+			time = System.nanoTime();
+			codec.read(new DefaultBitInputStream(new ByteArrayInputStream(baos.toByteArray())));
+			decode += System.nanoTime() - time;
+		}
+		report("arith", chunks.length * 100, compressedSize * data.length / (chunks.length * 100), encode, decode);
+	}
+
+	private static void report(String name, long bytes, long compressedSize, long encodeNanos, long decodeNanos) {
+		System.out.printf("%s:\tsize %d,\tencode %.1f MB/s,\tdecode %.1f MB/s\n", name, compressedSize, bytes * 1000.0
+				/ encodeNanos, bytes * 1000.0 / decodeNanos);
+	}
+}
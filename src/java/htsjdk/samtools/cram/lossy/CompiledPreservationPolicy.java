@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.lossy;
+
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.cram.ref.ReferenceTracks;
+
+import java.util.List;
+
+/**
+ * A {@link PreservationPolicy} prepared for applying to many reads: the
+ * treatment becomes a 256-entry table mapping every quality score to its
+ * replacement and the base categories select positions in a bit mask.
+ */
+class CompiledPreservationPolicy {
+	private static final byte DROPPED = -1;
+
+	final QualityScoreTreatmentType treatment;
+	final byte[] table;
+	private final ReadCategoryType readCategory;
+	private final int readCategoryParam;
+	private final BaseCategoryType[] baseCategories;
+	private final int[] baseCategoryParams;
+
+	CompiledPreservationPolicy(PreservationPolicy policy) {
+		treatment = policy.treatment.type;
+		table = treatmentTable(policy.treatment);
+		readCategory = policy.readCategory == null ? null : policy.readCategory.type;
+		readCategoryParam = policy.readCategory == null ? 0 : policy.readCategory.param;
+
+		List<BaseCategory> categories = policy.baseCategories;
+		int size = categories == null ? 0 : categories.size();
+		baseCategories = new BaseCategoryType[size];
+		baseCategoryParams = new int[size];
+		for (int i = 0; i < size; i++) {
+			baseCategories[i] = categories.get(i).type;
+			baseCategoryParams[i] = categories.get(i).param;
+		}
+	}
+
+	/**
+	 * @return a table of the treated score for every quality score value,
+	 *         to be indexed with the score as an unsigned byte
+	 */
+	static byte[] treatmentTable(QualityScoreTreatment t) {
+		byte[] table = new byte[256];
+		for (int score = 0; score < table.length; score++) {
+			switch (t.type) {
+			case BIN:
+				table[score] = Binning.Illumina_binning_matrix[Math.min(score,
+						Binning.Illumina_binning_matrix.length - 1)];
+				break;
+			case DROP:
+				table[score] = DROPPED;
+				break;
+			case PRESERVE:
+				table[score] = (byte) score;
+				break;
+
+			default:
+				throw new RuntimeException("Unknown quality score treatment type: " + t.type.name());
+			}
+		}
+		return table;
+	}
+
+	boolean hasBaseCategories() {
+		return baseCategories.length > 0;
+	}
+
+	boolean appliesTo(SAMRecord s) {
+		if (readCategory == null)
+			return true;
+
+		switch (readCategory) {
+		case ALL:
+			return true;
+		case UNPLACED:
+			return s.getReadUnmappedFlag();
+		case LOWER_MAPPING_SCORE:
+			return s.getMappingQuality() < readCategoryParam;
+		case HIGHER_MAPPING_SCORE:
+			return s.getMappingQuality() > readCategoryParam;
+
+		default:
+			throw new RuntimeException("Unknown read category: " + readCategory.name());
+		}
+	}
+
+	/**
+	 * Replaces every score of the read by its treated value.
+	 */
+	void applyToAll(byte[] qs, byte[] scores) {
+		for (int i = 0; i < scores.length; i++)
+			scores[i] = table[qs[i] & 0xFF];
+	}
+
+	/**
+	 * Replaces the scores of the bases selected by the mask by their treated
+	 * values.
+	 * 
+	 * @param words
+	 *            the number of mask words covering the read, the mask may be
+	 *            longer and hold stale bits beyond them
+	 * @return the number of bases treated
+	 */
+	int applyToMasked(byte[] qs, byte[] scores, long[] mask, int words) {
+		int count = 0;
+		for (int w = 0; w < words; w++) {
+			long bits = mask[w];
+			count += Long.bitCount(bits);
+			while (bits != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+				scores[i] = table[qs[i] & 0xFF];
+				bits &= bits - 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Sets the bits of the mask for the bases of a mapped read falling into
+	 * the base categories of the policy. Match, mismatch and coverage
+	 * categories decide both ways for the bases they look at, the other
+	 * categories only add bases.
+	 * 
+	 * @param mask
+	 *            a cleared mask of at least one bit per base
+	 */
+	void selectBases(SAMRecord s, ReferenceTracks t, long[] mask) {
+		int readLength = s.getReadLength();
+		int alStart = s.getAlignmentStart();
+		List<CigarElement> cigarElements = s.getCigar().getCigarElements();
+		for (int c = 0; c < baseCategories.length; c++) {
+			int param = baseCategoryParams[c];
+			int pos;
+			int refPos;
+			switch (baseCategories[c]) {
+			case FLANKING_DELETION:
+				pos = 0;
+				for (CigarElement ce : cigarElements) {
+					if (ce.getOperator() == CigarOperator.D) {
+						if (pos < readLength)
+							set(mask, pos);
+						if (pos + 1 < readLength)
+							set(mask, pos + 1);
+					}
+					pos += ce.getOperator().consumesReadBases() ? ce.getLength() : 0;
+				}
+				break;
+			case MATCH:
+			case MISMATCH:
+				boolean selectMatches = baseCategories[c] == BaseCategoryType.MATCH;
+				byte[] bases = s.getReadBases();
+				pos = 0;
+				refPos = alStart;
+				for (CigarElement ce : cigarElements) {
+					if (ce.getOperator().consumesReadBases()) {
+						for (int i = 0; i < ce.getLength(); i++)
+							assign(mask, pos + i, (bases[pos + i] == t.baseAt(refPos + i)) == selectMatches);
+						pos += ce.getLength();
+					}
+					refPos += ce.getOperator().consumesReferenceBases() ? ce.getLength() : 0;
+				}
+				break;
+			case INSERTION:
+				pos = 0;
+				for (CigarElement ce : cigarElements) {
+					if (ce.getOperator() == CigarOperator.I)
+						for (int i = 0; i < ce.getLength(); i++)
+							set(mask, pos + i);
+					pos += ce.getOperator().consumesReadBases() ? ce.getLength() : 0;
+				}
+				break;
+			case LOWER_COVERAGE:
+				pos = 0;
+				refPos = alStart;
+				for (CigarElement ce : cigarElements) {
+					switch (ce.getOperator()) {
+					case M:
+					case EQ:
+					case X:
+						for (int i = 0; i < ce.getLength(); i++)
+							assign(mask, pos + i, t.coverageAt(refPos + i) < param);
+						break;
+					default:
+						break;
+					}
+					pos += ce.getOperator().consumesReadBases() ? ce.getLength() : 0;
+					refPos += ce.getOperator().consumesReferenceBases() ? ce.getLength() : 0;
+				}
+				break;
+			case PILEUP:
+				for (int i = 0; i < readLength; i++)
+					if (t.mismatchesAt(alStart + i) > param)
+						set(mask, i);
+				break;
+
+			default:
+				break;
+			}
+		}
+	}
+
+	private static void set(long[] mask, int index) {
+		mask[index >>> 6] |= 1L << index;
+	}
+
+	private static void assign(long[] mask, int index, boolean value) {
+		if (value)
+			mask[index >>> 6] |= 1L << index;
+		else
+			mask[index >>> 6] &= ~(1L << index);
+	}
+}
@@ -15,8 +15,6 @@
  ******************************************************************************/
 package htsjdk.samtools.cram.lossy;
 
-import htsjdk.samtools.CigarElement;
-import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.cram.encoding.read_features.BaseQualityScore;
 import htsjdk.samtools.cram.encoding.read_features.ReadFeature;
@@ -27,22 +25,45 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
 public class QualityScorePreservation {
 	private String specification;
 	private List<PreservationPolicy> policyList;
+	private CompiledPreservationPolicy[] compiledPolicies;
+	// the policies compiledPolicies were compiled from:
+	private List<PreservationPolicy> compiledFrom;
+	private long[] mask = new long[4];
 
 	public QualityScorePreservation(String specification) {
 		this.specification = specification;
 		policyList = parsePolicies(specification);
 	}
 
+	/**
+	 * @return the policies, which may be changed to change the treatment of
+	 *         the reads added next
+	 */
 	public List<PreservationPolicy> getPreservationPolicies() {
 		return policyList;
 	}
 
+	/**
+	 * Compile the policies again if policies have been added to or removed
+	 * from the list since they were last compiled.
+	 */
+	private CompiledPreservationPolicy[] getCompiledPolicies() {
+		if (!policyList.equals(compiledFrom)) {
+			compiledFrom = new ArrayList<PreservationPolicy>(policyList);
+			compiledPolicies = new CompiledPreservationPolicy[compiledFrom.size()];
+			for (int i = 0; i < compiledPolicies.length; i++)
+				compiledPolicies[i] = new CompiledPreservationPolicy(compiledFrom.get(i));
+		}
+		return compiledPolicies;
+	}
+
 	private static final int readParam(LinkedList<Character> list) {
 		int value = 0;
 
@@ -184,9 +205,19 @@ public class QualityScorePreservation {
 				+ t.type.name());
 	}
 
+	/**
+	 * Sets the quality scores of the CRAM record from the SAM record according
+	 * to the preservation policies. Not thread safe, the instance keeps a
+	 * buffer for selecting bases.
+	 * 
+	 * @param t
+	 *            reference tracks covering the read, only used by policies
+	 *            with base categories
+	 */
 	public void addQualityScores(SAMRecord s, CramCompressionRecord r,
 			ReferenceTracks t) {
-		if (s.getBaseQualities() == SAMRecord.NULL_QUALS) {
+		byte[] qs = s.getBaseQualities();
+		if (qs == SAMRecord.NULL_QUALS) {
 			r.qualityScores = SAMRecord.NULL_QUALS;
 			r.setForcePreserveQualityScores(false);
 			return;
@@ -194,30 +225,48 @@ public class QualityScorePreservation {
 
 		byte[] scores = new byte[s.getReadLength()];
 		Arrays.fill(scores, (byte) -1);
-		for (PreservationPolicy p : policyList)
-			addQS(s, r, scores, t, p);
-
-		if (!r.isForcePreserveQualityScores()) {
-			for (int i = 0; i < scores.length; i++) {
-				if (scores[i] > -1) {
-					if (r.readFeatures == null)
-						r.readFeatures = new LinkedList<ReadFeature>();
-					r.readFeatures.add(new BaseQualityScore(i + 1, scores[i]));
-				}
-			}
-			if (r.readFeatures != null)
-				Collections.sort(r.readFeatures, readFeaturePositionComparator);
-		}
+		for (CompiledPreservationPolicy p : getCompiledPolicies())
+			addQS(s, r, qs, scores, t, p);
+
+		if (!r.isForcePreserveQualityScores())
+			addBaseQualityScores(r, scores);
 		r.qualityScores = scores;
 	}
 
-	private static final Comparator<ReadFeature> readFeaturePositionComparator = new Comparator<ReadFeature>() {
+	/**
+	 * Merges quality score read features for all scores kept into the
+	 * position ordered read features of the record.
+	 */
+	private static void addBaseQualityScores(CramCompressionRecord r,
+			byte[] scores) {
+		int count = 0;
+		for (int i = 0; i < scores.length; i++)
+			if (scores[i] > -1)
+				count++;
+		if (count == 0)
+			return;
 
-		@Override
-		public int compare(ReadFeature o1, ReadFeature o2) {
-			return o1.getPosition() - o2.getPosition();
+		List<ReadFeature> features = r.readFeatures == null ? Collections
+				.<ReadFeature> emptyList() : r.readFeatures;
+		List<ReadFeature> merged = new ArrayList<ReadFeature>(features.size()
+				+ count);
+		Iterator<ReadFeature> iterator = features.iterator();
+		ReadFeature next = iterator.hasNext() ? iterator.next() : null;
+		for (int i = 0; i < scores.length; i++) {
+			if (scores[i] < 0)
+				continue;
+			while (next != null && next.getPosition() <= i + 1) {
+				merged.add(next);
+				next = iterator.hasNext() ? iterator.next() : null;
+			}
+			merged.add(new BaseQualityScore(i + 1, scores[i]));
 		}
-	};
+		while (next != null) {
+			merged.add(next);
+			next = iterator.hasNext() ? iterator.next() : null;
+		}
+		r.readFeatures = merged;
+	}
 
 	public boolean areReferenceTracksRequired() {
 		if (policyList == null || policyList.isEmpty()) return false ;
@@ -239,51 +288,18 @@ public class QualityScorePreservation {
 
 	}
 
-	private static final void addQS(SAMRecord s, CramCompressionRecord r,
-			byte[] scores, ReferenceTracks t, PreservationPolicy p) {
-		int alSpan = s.getAlignmentEnd() - s.getAlignmentStart();
-		byte[] qs = s.getBaseQualities();
-
+	private void addQS(SAMRecord s, CramCompressionRecord r, byte[] qs,
+			byte[] scores, ReferenceTracks t, CompiledPreservationPolicy p) {
 		// check if read is falling into the read category:
-		if (p.readCategory != null) {
-			boolean properRead = false;
-			switch (p.readCategory.type) {
-			case ALL:
-				properRead = true;
-				break;
-			case UNPLACED:
-				properRead = s.getReadUnmappedFlag();
-				break;
-			case LOWER_MAPPING_SCORE:
-				properRead = s.getMappingQuality() < p.readCategory.param;
-				break;
-			case HIGHER_MAPPING_SCORE:
-				properRead = s.getMappingQuality() > p.readCategory.param;
-				break;
-
-			default:
-				throw new RuntimeException("Unknown read category: "
-						+ p.readCategory.type.name());
-			}
-
-			if (!properRead) // nothing to do here:
-				return;
-		}
+		if (!p.appliesTo(s))
+			return;
 
 		// apply treamtent if there is no per-base policy:
-		if (p.baseCategories == null || p.baseCategories.isEmpty()) {
-			switch (p.treatment.type) {
+		if (!p.hasBaseCategories()) {
+			switch (p.treatment) {
 			case BIN:
-				if (r.qualityScores == null)
-					r.qualityScores = s.getBaseQualities();
-				System.arraycopy(s.getBaseQualities(), 0, scores, 0,
-						scores.length);
-				applyBinning(scores);
-				r.setForcePreserveQualityScores(true);
-				break;
 			case PRESERVE:
-				System.arraycopy(s.getBaseQualities(), 0, scores, 0,
-						scores.length);
+				p.applyToAll(qs, scores);
 				r.setForcePreserveQualityScores(true);
 				break;
 			case DROP:
@@ -294,116 +310,26 @@ public class QualityScorePreservation {
 			default:
 				throw new RuntimeException(
 						"Unknown quality score treatment type: "
-								+ p.treatment.type.name());
+								+ p.treatment.name());
 			}
 
 			// nothing else to do here:
 			return;
 		}
 
-		// here we go, scan all bases to check if the policy applies:
-		boolean[] mask = new boolean[qs.length];
-
 		int alStart = s.getAlignmentStart();
 		// must be a mapped read at this point:
 		if (alStart == SAMRecord.NO_ALIGNMENT_START)
 			return;
-		t.ensureRange(alStart, alSpan);
-
-		for (BaseCategory c : p.baseCategories) {
-			int pos;
-			int refPos;
-			switch (c.type) {
-			case FLANKING_DELETION:
-				pos = 0;
-				for (CigarElement ce : s.getCigar().getCigarElements()) {
-					if (ce.getOperator() == CigarOperator.D) {
-						// if (pos > 0)
-						mask[pos] = true;
-						if (pos + 1 < mask.length)
-							mask[pos + 1] = true;
-					}
-
-					pos += ce.getOperator().consumesReadBases() ? ce
-							.getLength() : 0;
-				}
-				break;
-			case MATCH:
-			case MISMATCH:
-				pos = 0;
-				refPos = s.getAlignmentStart();
-				for (CigarElement ce : s.getCigar().getCigarElements()) {
-					if (ce.getOperator().consumesReadBases()) {
-						for (int i = 0; i < ce.getLength(); i++) {
-							boolean match = s.getReadBases()[pos + i] == t
-									.baseAt(refPos + i);
-							if ((c.type == BaseCategoryType.MATCH && match)
-									|| (c.type == BaseCategoryType.MISMATCH && !match)) {
-								mask[pos + i] = true;
-							} else
-								mask[pos + i] = false;
-						}
-						pos += ce.getLength();
-					}
-					refPos += ce.getOperator().consumesReferenceBases() ? ce
-							.getLength() : 0;
-				}
-				break;
-			case INSERTION:
-				pos = 0;
-				for (CigarElement ce : s.getCigar().getCigarElements()) {
-					switch (ce.getOperator()) {
-					case I:
-						for (int i = 0; i < ce.getLength(); i++)
-							mask[pos + i] = true;
-						break;
-					default:
-						break;
-					}
-
-					pos += ce.getOperator().consumesReadBases() ? ce
-							.getLength() : 0;
-				}
-				break;
-			case LOWER_COVERAGE:
-				pos = 1;
-				refPos = s.getAlignmentStart();
-				for (CigarElement ce : s.getCigar().getCigarElements()) {
-					switch (ce.getOperator()) {
-					case M:
-					case EQ:
-					case X:
-						for (int i = 0; i < ce.getLength(); i++)
-							mask[pos + i - 1] = t.coverageAt(refPos + i) < c.param;
-						break;
-					default:
-						break;
-					}
-
-					pos += ce.getOperator().consumesReadBases() ? ce
-							.getLength() : 0;
-					refPos += ce.getOperator().consumesReferenceBases() ? ce
-							.getLength() : 0;
-				}
-				break;
-			case PILEUP:
-				for (int i = 0; i < qs.length; i++)
-					if (t.mismatchesAt(alStart + i) > c.param)
-						mask[i] = true;
-				break;
-
-			default:
-				break;
-			}
-
-		}
-
-		int maskedCount = 0;
-		for (int i = 0; i < mask.length; i++)
-			if (mask[i]) {
-				scores[i] = applyTreatment(qs[i], p.treatment);
-				maskedCount++;
-			}
+		t.ensureRange(alStart, s.getAlignmentEnd() - alStart);
+
+		// here we go, select the bases the policy applies to:
+		int words = (scores.length + 63) >>> 6;
+		if (mask.length < words)
+			mask = new long[words];
+		Arrays.fill(mask, 0, words, 0L);
+		p.selectBases(s, t, mask);
+		int maskedCount = p.applyToMasked(qs, scores, mask, words);
 
 		// safety latch, store all qs if there are too many individual score
 		// to store:
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.AlignmentBlock;
+import htsjdk.samtools.SAMRecord;
+
+import java.util.List;
+
+/**
+ * Builds a reference for a stretch of alignments from the alignments
+ * themselves: the most frequent aligned base at every position, or 'N' where
+ * no read has an aligned base. Used instead of a real reference when writing
+ * CRAM without one.
+ */
+public class ConsensusReference {
+	private static final byte[] BASES = new byte[] { 'A', 'C', 'G', 'T' };
+
+	/**
+	 * @param records
+	 *            alignments to one reference sequence
+	 * @param start
+	 *            1-based first position of the consensus
+	 * @param end
+	 *            1-based last position of the consensus, inclusive
+	 * @return the consensus bases from start to end
+	 */
+	public static byte[] build(List<SAMRecord> records, int start, int end) {
+		int length = end - start + 1;
+		int[] counts = new int[length * 4];
+
+		for (SAMRecord record : records) {
+			if (record.getReadUnmappedFlag()
+					|| record.getAlignmentStart() == SAMRecord.NO_ALIGNMENT_START)
+				continue;
+			byte[] bases = record.getReadBases();
+			if (bases.length == 0)
+				continue;
+
+			for (AlignmentBlock block : record.getAlignmentBlocks()) {
+				int readPos = block.getReadStart() - 1;
+				int refPos = block.getReferenceStart() - start;
+				for (int i = 0; i < block.getLength(); i++) {
+					int pos = refPos + i;
+					if (pos < 0 || pos >= length)
+						continue;
+					int code = baseCode(bases[readPos + i]);
+					if (code >= 0)
+						counts[pos * 4 + code]++;
+				}
+			}
+		}
+
+		byte[] consensus = new byte[length];
+		for (int pos = 0; pos < length; pos++) {
+			int best = -1;
+			int bestCount = 0;
+			for (int code = 0; code < 4; code++) {
+				if (counts[pos * 4 + code] > bestCount) {
+					best = code;
+					bestCount = counts[pos * 4 + code];
+				}
+			}
+			consensus[pos] = best < 0 ? (byte) 'N' : BASES[best];
+		}
+		return consensus;
+	}
+
+	private static int baseCode(byte base) {
+		switch (base) {
+		case 'A':
+		case 'a':
+			return 0;
+		case 'C':
+		case 'c':
+			return 1;
+		case 'G':
+		case 'g':
+			return 2;
+		case 'T':
+		case 't':
+			return 3;
+		default:
+			return -1;
+		}
+	}
+}
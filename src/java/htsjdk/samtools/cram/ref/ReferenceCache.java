@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.Defaults;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe LRU cache of reference bases bounded by the total number of
+ * bytes held rather than by the number of entries. The same array may be
+ * stored under several keys (for example a sequence name and its MD5), in
+ * which case it is accounted for only once.
+ *
+ * A single process-wide instance is available via {@link #getSharedCache()}
+ * so that all CRAM readers and writers can reuse the reference sequences
+ * already loaded by each other.
+ */
+public class ReferenceCache {
+	private static ReferenceCache sharedCache;
+
+	private final long maxBytes;
+	private long bytes = 0;
+
+	private final LinkedHashMap<String, byte[]> map = new LinkedHashMap<String, byte[]>(
+			16, 0.75f, true);
+	private final IdentityHashMap<byte[], Integer> keyCounts = new IdentityHashMap<byte[], Integer>();
+
+	/**
+	 * @param maxBytes
+	 *            the maximum total length of all cached sequences, in bytes
+	 */
+	public ReferenceCache(long maxBytes) {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("Negative cache size: "
+					+ maxBytes);
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the process-wide cache, sized by
+	 *         {@link Defaults#REFERENCE_CACHE_SIZE} or a quarter of the maximum
+	 *         heap if that is not set
+	 */
+	public static synchronized ReferenceCache getSharedCache() {
+		if (sharedCache == null) {
+			long size = Defaults.REFERENCE_CACHE_SIZE;
+			if (size < 0)
+				size = Runtime.getRuntime().maxMemory() / 4;
+			sharedCache = new ReferenceCache(size);
+		}
+		return sharedCache;
+	}
+
+	public synchronized byte[] get(String key) {
+		return map.get(key);
+	}
+
+	/**
+	 * Put the bases into the cache, evicting least recently used sequences
+	 * until the cache fits into its byte budget. Sequences larger than the
+	 * whole budget are not cached.
+	 */
+	public synchronized void put(String key, byte[] bases) {
+		if (bases.length > maxBytes)
+			return;
+
+		byte[] previous = map.put(key, bases);
+		if (previous == bases)
+			return;
+		if (previous != null)
+			release(previous);
+		retain(bases);
+
+		Iterator<Map.Entry<String, byte[]>> iterator = map.entrySet()
+				.iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, byte[]> eldest = iterator.next();
+			if (eldest.getValue() == bases)
+				continue;
+			iterator.remove();
+			release(eldest.getValue());
+		}
+	}
+
+	public synchronized void remove(String key) {
+		byte[] bases = map.remove(key);
+		if (bases != null)
+			release(bases);
+	}
+
+	public synchronized void clear() {
+		map.clear();
+		keyCounts.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return the number of keys in the cache
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return the total length of all distinct cached sequences, in bytes
+	 */
+	public synchronized long getSizeInBytes() {
+		return bytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	private void retain(byte[] bases) {
+		Integer count = keyCounts.get(bases);
+		if (count == null) {
+			keyCounts.put(bases, 1);
+			bytes += bases.length;
+		} else
+			keyCounts.put(bases, count + 1);
+	}
+
+	private void release(byte[] bases) {
+		Integer count = keyCounts.get(bases);
+		if (count == null)
+			return;
+		if (count == 1) {
+			keyCounts.remove(bases);
+			bytes -= bases.length;
+		} else
+			keyCounts.put(bases, count - 1);
+	}
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A local on-disk cache of reference sequences keyed by their MD5 checksums,
+ * compatible with the samtools REF_CACHE layout. Each sequence is stored
+ * uppercased, without line breaks or headers, in its own file so that it can
+ * be memory-mapped on subsequent runs.
+ *
+ * The file path is built from a pattern where each <code>%Ns</code>
+ * placeholder is replaced by the next N characters of the MD5 and a plain
+ * <code>%s</code> by the rest of it, e.g.
+ * <code>/data/ref_cache/%2s/%2s/%s</code>.
+ */
+public class ReferenceDiskCache {
+	private static Log log = Log.getInstance(ReferenceDiskCache.class);
+
+	private final String pathPattern;
+
+	/**
+	 * @param pathPattern
+	 *            a path pattern or a directory, in which case the default
+	 *            <code>%2s/%2s/%s</code> layout is used inside it
+	 */
+	public ReferenceDiskCache(String pathPattern) {
+		if (pathPattern == null)
+			throw new IllegalArgumentException("Cache path pattern is null.");
+		if (!pathPattern.contains("%"))
+			pathPattern = new File(pathPattern, "%2s/%2s/%s").getPath();
+		this.pathPattern = pathPattern;
+	}
+
+	public ReferenceDiskCache(File directory) {
+		this(directory.getPath());
+	}
+
+	public String getPathPattern() {
+		return pathPattern;
+	}
+
+	/**
+	 * @return the cache file location for the sequence with the given MD5
+	 *         checksum
+	 */
+	public File getFile(String md5) {
+		StringBuilder sb = new StringBuilder();
+		int md5Pos = 0;
+		for (int i = 0; i < pathPattern.length(); i++) {
+			char c = pathPattern.charAt(i);
+			if (c != '%' || i + 1 == pathPattern.length()) {
+				sb.append(c);
+				continue;
+			}
+
+			int j = i + 1;
+			while (j < pathPattern.length()
+					&& Character.isDigit(pathPattern.charAt(j)))
+				j++;
+			if (j == pathPattern.length() || pathPattern.charAt(j) != 's') {
+				sb.append(c);
+				continue;
+			}
+
+			int len = j == i + 1 ? md5.length() - md5Pos : Integer
+					.parseInt(pathPattern.substring(i + 1, j));
+			len = Math.min(len, md5.length() - md5Pos);
+			sb.append(md5, md5Pos, md5Pos + len);
+			md5Pos += len;
+			i = j;
+		}
+		return new File(sb.toString());
+	}
+
+	/**
+	 * Read the cached sequence for the MD5 checksum by mapping its cache file
+	 * into memory.
+	 *
+	 * @return the cached bases or null if the sequence is not in the cache
+	 */
+	public byte[] get(String md5) throws IOException {
+		File file = getFile(md5);
+		if (!file.isFile())
+			return null;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Cached sequence is too large: " + file);
+
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, size);
+			byte[] bases = new byte[(int) size];
+			buffer.get(bases);
+			return bases;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Store the bases in the cache unless they are already there. The file
+	 * is written under a temporary name and then renamed so that concurrent
+	 * readers never observe partially written sequences.
+	 *
+	 * @param bases
+	 *            uppercased sequence bases whose MD5 has already been verified
+	 */
+	public void put(String md5, byte[] bases) throws IOException {
+		File file = getFile(md5);
+		if (file.exists())
+			return;
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+			throw new IOException("Failed to create cache directory: " + dir);
+
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			FileOutputStream fos = new FileOutputStream(tmp);
+			try {
+				fos.write(bases);
+			} finally {
+				fos.close();
+			}
+			if (!tmp.renameTo(file) && !file.exists())
+				throw new IOException("Failed to rename " + tmp + " to "
+						+ file);
+			log.debug("Cached reference sequence " + md5 + " in " + file);
+		} finally {
+			if (tmp.exists())
+				tmp.delete();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.ref;
+
+/**
+ * A stretch of reference bases: {@link #bases}[0] is the base at the 0-based
+ * position {@link #offset} of the reference sequence. A region starting at
+ * offset 0 may hold the whole sequence.
+ */
+public class ReferenceRegion {
+	public final byte[] bases;
+	public final int offset;
+
+	/**
+	 * True if the region reaches the end of the reference sequence, so that
+	 * positions beyond it do not exist rather than not being loaded.
+	 */
+	public final boolean toSequenceEnd;
+
+	public ReferenceRegion(byte[] bases, int offset, boolean toSequenceEnd) {
+		this.bases = bases;
+		this.offset = offset;
+		this.toSequenceEnd = toSequenceEnd;
+	}
+
+	/**
+	 * @param start
+	 *            1-based first position
+	 * @param end
+	 *            1-based last position, inclusive
+	 * @return true if all the existing reference bases between the two
+	 *         positions are in this region
+	 */
+	public boolean contains(int start, int end) {
+		return start - 1 >= offset
+				&& (toSequenceEnd || end <= offset + bases.length);
+	}
+}
@@ -17,6 +17,7 @@ package htsjdk.samtools.cram.ref;
 
 import htsjdk.samtools.Defaults;
 import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.cram.io.ByteBufferUtils;
 import htsjdk.samtools.reference.FastaSequenceIndex;
@@ -29,14 +30,14 @@ import htsjdk.samtools.util.SequenceUtil;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 public class ReferenceSource {
@@ -45,9 +46,21 @@ public class ReferenceSource {
 	private FastaSequenceIndex fastaSequenceIndex;
 	private int downloadTriesBeforeFailing = 2;
 
-	private Map<String, WeakReference<byte[]>> cacheW = new HashMap<String, WeakReference<byte[]>>();
+	private ReferenceCache cache = ReferenceCache.getSharedCache();
+	private ReferenceDiskCache diskCache = Defaults.REF_CACHE == null ? null
+			: new ReferenceDiskCache(Defaults.REF_CACHE);
+
+	private static final AtomicInteger sourceCounter = new AtomicInteger();
+
+	/**
+	 * Distinguishes sequences fetched by name from this source from
+	 * same-named sequences of other references in the shared cache.
+	 */
+	private String namePrefix;
+	private final Set<String> cachedKeys = new HashSet<String>();
 
 	public ReferenceSource() {
+		namePrefix = "name:" + sourceCounter.incrementAndGet() + ":";
 	}
 
 	public ReferenceSource(File file) {
@@ -58,32 +71,66 @@ public class ReferenceSource {
 			File indexFile = new File(file.getAbsoluteFile() + ".fai");
 			if (indexFile.exists())
 				fastaSequenceIndex = new FastaSequenceIndex(indexFile);
-		}
+			namePrefix = "name:" + file.getAbsolutePath() + ":";
+		} else
+			namePrefix = "name:" + sourceCounter.incrementAndGet() + ":";
 	}
 
 	public ReferenceSource(ReferenceSequenceFile rsFile) {
 		this.rsFile = rsFile;
+		namePrefix = "name:" + sourceCounter.incrementAndGet() + ":";
 	}
 
-	public void clearCache() {
-		cacheW.clear();
+	/**
+	 * Remove the sequences cached by this source from the memory cache. The
+	 * disk cache is left intact.
+	 */
+	public synchronized void clearCache() {
+		for (String key : cachedKeys)
+			cache.remove(key);
+		cachedKeys.clear();
 	}
 
-	private byte[] findInCache(String name) {
-		WeakReference<byte[]> r = cacheW.get(name);
-		if (r != null) {
-			byte[] bytes = r.get();
-			if (bytes != null)
-				return bytes;
-		}
-		return null;
+	public ReferenceCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Use a different memory cache, for example a private one instead of the
+	 * {@link ReferenceCache#getSharedCache() shared} one.
+	 */
+	public synchronized void setCache(ReferenceCache cache) {
+		this.cache = cache;
+		cachedKeys.clear();
+	}
+
+	public ReferenceDiskCache getDiskCache() {
+		return diskCache;
+	}
+
+	/**
+	 * @param diskCache
+	 *            a local MD5 keyed cache to look up sequences in before
+	 *            reading them from the reference file, or null to disable it
+	 */
+	public synchronized void setDiskCache(ReferenceDiskCache diskCache) {
+		this.diskCache = diskCache;
+	}
+
+	private void putInCache(String key, byte[] bases) {
+		cache.put(key, bases);
+		cachedKeys.add(key);
+	}
+
+	private static String md5Key(String md5) {
+		return "md5:" + md5;
 	}
 
 	public synchronized byte[] getReferenceBases(SAMSequenceRecord record,
 			boolean tryNameVariants) {
+		String nameKey = namePrefix + record.getSequenceName();
 		{ // check cache by sequence name:
-			String name = record.getSequenceName();
-			byte[] bases = findInCache(name);
+			byte[] bases = cache.get(nameKey);
 			if (bases != null)
 				return bases;
 		}
@@ -91,7 +138,7 @@ public class ReferenceSource {
 		String md5 = record.getAttribute(SAMSequenceRecord.MD5_TAG);
 		{ // check cache by md5:
 			if (md5 != null) {
-				byte[] bases = findInCache(md5);
+				byte[] bases = cache.get(md5Key(md5));
 				if (bases != null)
 					return bases;
 			}
@@ -99,12 +146,31 @@ public class ReferenceSource {
 
 		byte[] bases;
 
+		{ // check disk cache by md5:
+			if (md5 != null && diskCache != null) {
+				try {
+					bases = diskCache.get(md5);
+				} catch (IOException e) {
+					log.warn("Failed to read cached sequence " + md5 + ": "
+							+ e.getMessage());
+					bases = null;
+				}
+				if (bases != null) {
+					putInCache(md5Key(md5), bases);
+					return bases;
+				}
+			}
+		}
+
 		{ // try to fetch sequence by name:
 			bases = findBasesByName(record.getSequenceName(), tryNameVariants);
 			if (bases != null) {
 				SequenceUtil.upperCase(bases);
-				cacheW.put(record.getSequenceName(), new WeakReference<byte[]>(
-						bases));
+				putInCache(nameKey, bases);
+				if (md5 != null && diskCache != null
+						&& md5.equals(SequenceUtil.calculateMD5String(bases,
+								0, bases.length)))
+					storeInDiskCache(md5, bases);
 				return bases;
 			}
 		}
@@ -118,7 +184,9 @@ public class ReferenceSource {
 				}
 			if (bases != null) {
 				SequenceUtil.upperCase(bases);
-				cacheW.put(md5, new WeakReference<byte[]>(bases));
+				putInCache(md5Key(md5), bases);
+				if (diskCache != null)
+					storeInDiskCache(md5, bases);
 				return bases;
 			}
 		}
@@ -127,6 +195,94 @@ public class ReferenceSource {
 		return null;
 	}
 
+	/**
+	 * Get the reference bases between two positions of a sequence. A sequence
+	 * already held in memory is returned in full. Otherwise only the region
+	 * is read if the reference file is indexed and the sequence lengths are
+	 * known from its index or dictionary, falling back to
+	 * {@link #getReferenceBases(SAMSequenceRecord, boolean)} for the whole
+	 * sequence if not.
+	 * 
+	 * @param start
+	 *            1-based first position
+	 * @param end
+	 *            1-based last position, inclusive; clipped to the sequence
+	 *            length
+	 * @return a region covering at least the positions or null if the
+	 *         sequence could not be found
+	 */
+	public synchronized ReferenceRegion getReferenceRegion(
+			SAMSequenceRecord record, int start, int end,
+			boolean tryNameVariants) {
+		byte[] bases = cache.get(namePrefix + record.getSequenceName());
+		String md5 = record.getAttribute(SAMSequenceRecord.MD5_TAG);
+		if (bases == null && md5 != null)
+			bases = cache.get(md5Key(md5));
+		if (bases != null)
+			return new ReferenceRegion(bases, 0, true);
+
+		String name = findNameWithLength(record.getSequenceName(),
+				tryNameVariants);
+		if (name != null) {
+			int length = getSequenceLength(name);
+			end = Math.min(end, length);
+			if (start >= 1 && start <= end) {
+				bases = findRegion(name, start, end);
+				if (bases != null) {
+					SequenceUtil.upperCase(bases);
+					return new ReferenceRegion(bases, start - 1, end == length);
+				}
+			}
+		}
+
+		bases = getReferenceBases(record, tryNameVariants);
+		return bases == null ? null : new ReferenceRegion(bases, 0, true);
+	}
+
+	/**
+	 * @return the name or name variant under which the sequence length is
+	 *         known, or null if it is not or regions cannot be read
+	 */
+	private String findNameWithLength(String name, boolean tryVariants) {
+		if (rsFile == null || !rsFile.isIndexed())
+			return null;
+
+		if (getSequenceLength(name) >= 0)
+			return name;
+		if (tryVariants)
+			for (String variant : getVariants(name))
+				if (getSequenceLength(variant) >= 0)
+					return variant;
+		return null;
+	}
+
+	/**
+	 * @return the length of the sequence in the reference file or -1 if not
+	 *         known
+	 */
+	private int getSequenceLength(String name) {
+		if (fastaSequenceIndex != null)
+			return (int) fastaSequenceIndex.getSequenceLength(name);
+
+		SAMSequenceDictionary dictionary = rsFile.getSequenceDictionary();
+		if (dictionary == null || dictionary.getSequence(name) == null)
+			return -1;
+		return dictionary.getSequence(name).getSequenceLength();
+	}
+
+	private byte[] findRegion(String name, int start, int end) {
+		ReferenceSequence sequence = rsFile.getSubsequenceAt(name, start, end);
+		return sequence == null ? null : sequence.getBases();
+	}
+
+	private void storeInDiskCache(String md5, byte[] bases) {
+		try {
+			diskCache.put(md5, bases);
+		} catch (IOException e) {
+			log.warn("Failed to cache sequence " + md5 + ": " + e.getMessage());
+		}
+	}
+
 	protected byte[] findBasesByName(String name, boolean tryVariants) {
 		if (rsFile == null || !rsFile.isIndexed())
 			return null;
@@ -20,6 +20,8 @@ import java.util.Arrays;
 public class ReferenceTracks {
 	private int sequenceId;
 	private byte[] reference;
+	// the number of reference bases preceding reference[0]:
+	private final int referenceOffset;
 
 	private int position;
 
@@ -36,13 +38,26 @@ public class ReferenceTracks {
 	
 	public ReferenceTracks(int sequenceId, 
 			byte[] reference, int windowSize) {
+		this(sequenceId, reference, 0, windowSize);
+	}
+
+	/**
+	 * @param reference
+	 *            a part of the reference sequence
+	 * @param referenceOffset
+	 *            the number of reference bases preceding the part, so that
+	 *            reference[0] is at the 1-based position referenceOffset + 1
+	 */
+	public ReferenceTracks(int sequenceId, byte[] reference,
+			int referenceOffset, int windowSize) {
 		this.sequenceId = sequenceId;
 		this.reference = reference;
+		this.referenceOffset = referenceOffset;
 		
 		bases = new byte[Math.min(windowSize, reference.length)];
 		coverage = new short[Math.min(windowSize, reference.length)];
 		mismatches = new short[Math.min(windowSize, reference.length)];
-		position = 1;
+		position = referenceOffset + 1;
 
 		reset();
 	}
@@ -59,8 +74,11 @@ public class ReferenceTracks {
 		return bases.length;
 	}
 
+	/**
+	 * @return the 1-based position of the last reference base held
+	 */
 	public int getReferenceLength() {
-		return reference.length;
+		return referenceOffset + reference.length;
 	}
 
 	public void ensure(int start, int end) {
@@ -79,7 +97,8 @@ public class ReferenceTracks {
 	 *            position and smaller than reference length.
 	 */
 	public void moveForwardTo(int newPos) {
-		if (newPos - 1 >= reference.length)
+		int referenceEnd = referenceOffset + reference.length;
+		if (newPos - 1 >= referenceEnd)
 			throw new RuntimeException("New position is beyond the reference: "
 					+ newPos);
 
@@ -87,14 +106,14 @@ public class ReferenceTracks {
 			throw new RuntimeException(
 					"Cannot shift to smaller position on the reference.");
 
-		if (newPos > reference.length - bases.length + 1)
-			newPos = reference.length - bases.length + 1;
+		if (newPos > referenceEnd - bases.length + 1)
+			newPos = referenceEnd - bases.length + 1;
 
 		if (newPos == position)
 			return;
 
-		System.arraycopy(reference, newPos - 1, bases, 0,
-				Math.min(bases.length, reference.length - newPos + 1));
+		System.arraycopy(reference, newPos - 1 - referenceOffset, bases, 0,
+				Math.min(bases.length, referenceEnd - newPos + 1));
 
 		if (newPos > position && position + bases.length - newPos > 0) {
 			for (int i = 0; i < coverage.length; i++) {
@@ -115,8 +134,8 @@ public class ReferenceTracks {
 	}
 
 	public void reset() {
-		System.arraycopy(reference, position - 1, bases, 0,
-				Math.min(bases.length, reference.length - position + 1));
+		System.arraycopy(reference, position - 1 - referenceOffset, bases, 0,
+				Math.min(bases.length, referenceOffset + reference.length - position + 1));
 		Arrays.fill(coverage, (short) 0);
 		Arrays.fill(mismatches, (short) 0);
 	}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.SAMSequenceRecord;
+
+/**
+ * Supplies the reference bases for consecutive stretches of alignments, such
+ * as the slices of coordinate sorted CRAM containers, without loading whole
+ * reference sequences. A request not covered by the current window replaces
+ * it with a new one starting at the requested position and reading ahead by
+ * at least {@link #getReadAhead()} bases, so that memory use depends on the
+ * span of the alignments rather than on the length of the sequence.
+ * Sequences already held in memory in full are used as they are.
+ */
+public class ReferenceWindow {
+	public static final int DEFAULT_READ_AHEAD = 1024 * 1024;
+
+	private final ReferenceSource source;
+	private int readAhead = DEFAULT_READ_AHEAD;
+
+	private int sequenceIndex = -1;
+	private ReferenceRegion region;
+
+	public ReferenceWindow(ReferenceSource source) {
+		this.source = source;
+	}
+
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	public void setReadAhead(int readAhead) {
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * @param sequence
+	 *            the reference sequence
+	 * @param start
+	 *            1-based first position needed
+	 * @param end
+	 *            1-based last position needed, inclusive
+	 * @return a region covering the positions or null if the sequence could
+	 *         not be found
+	 */
+	public ReferenceRegion getRegion(SAMSequenceRecord sequence, int start,
+			int end) {
+		if (region != null && sequenceIndex == sequence.getSequenceIndex()
+				&& region.contains(start, end))
+			return region;
+
+		region = null;
+		start = Math.max(1, start);
+		region = source.getReferenceRegion(sequence, start,
+				Math.max(end, start + readAhead - 1), true);
+		sequenceIndex = sequence.getSequenceIndex();
+		return region;
+	}
+
+	/**
+	 * Release the current window.
+	 */
+	public void clear() {
+		region = null;
+		sequenceIndex = -1;
+	}
+}
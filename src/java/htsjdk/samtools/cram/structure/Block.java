@@ -16,6 +16,7 @@
 package htsjdk.samtools.cram.structure;
 
 import htsjdk.samtools.cram.io.ByteBufferUtils;
+import htsjdk.samtools.cram.io.RangeCoder;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -47,7 +48,7 @@ public class Block {
 
 	public Block(InputStream is, boolean readContent, boolean uncompress)
 			throws IOException {
-		method = BlockCompressionMethod.values()[is.read()];
+		method = BlockCompressionMethod.byId(is.read());
 
 		int contentTypeId = is.read();
 		contentType = BlockContentType.values()[contentTypeId];
@@ -135,6 +136,10 @@ public class Block {
 			}
 			compressedContentSize = compressedContent.length;
 			break;
+		case RANGE:
+			compressedContent = RangeCoder.compress(rawContent);
+			compressedContentSize = compressedContent.length;
+			break;
 		default:
 			break;
 		}
@@ -156,6 +161,9 @@ public class Block {
 				throw new RuntimeException("This should have never happned.", e);
 			}
 			break;
+		case RANGE:
+			rawContent = RangeCoder.uncompress(compressedContent);
+			break;
 		default:
 			throw new RuntimeException("Unknown block compression method: "
 					+ method.name());
@@ -168,7 +176,7 @@ public class Block {
 		if (!isUncompressed())
 			uncompress();
 
-		os.write(method.ordinal());
+		os.write(method.getId());
 		os.write(contentType.ordinal());
 		os.write(contentId);
 
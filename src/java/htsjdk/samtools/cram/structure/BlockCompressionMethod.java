@@ -15,6 +15,38 @@
  ******************************************************************************/
 package htsjdk.samtools.cram.structure;
 
+/**
+ * Block compression methods and the ids they are stored with. The ids of
+ * RAW and GZIP are those of the CRAM specification, which also assigns 2 to
+ * BZIP2, 3 to LZMA and 4 to RANS. RANGE is specific to this implementation,
+ * so its id is kept well clear of the ids the specification assigns.
+ */
 public enum BlockCompressionMethod {
-	RAW, GZIP ;
+	RAW(0), GZIP(1), RANGE(128);
+
+	private final int id;
+
+	private BlockCompressionMethod(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the id of the method in CRAM blocks
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the method stored with the given id
+	 * @throws RuntimeException
+	 *             if the method is not supported
+	 */
+	public static BlockCompressionMethod byId(int id) {
+		for (BlockCompressionMethod method : values())
+			if (method.id == id)
+				return method;
+		throw new RuntimeException("Unsupported block compression method: "
+				+ id);
+	}
 }
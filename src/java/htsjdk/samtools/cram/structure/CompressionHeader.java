@@ -15,11 +15,12 @@
  ******************************************************************************/
 package htsjdk.samtools.cram.structure;
 
+import htsjdk.samtools.cram.encoding.BitCodec;
+import htsjdk.samtools.cram.encoding.DataSeriesType;
 import htsjdk.samtools.cram.encoding.NullEncoding;
 import htsjdk.samtools.cram.io.ByteBufferUtils;
 import htsjdk.samtools.util.Log;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,6 +28,8 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -53,6 +56,13 @@ public class CompressionHeader {
 
 	public byte[][][] dictionary;
 
+	/**
+	 * Stateless codecs built for this header, shared by all slices of the
+	 * container.
+	 */
+	private final Map<DataSeriesType, Map<EncodingParams, BitCodec<?>>> sharedCodecs = new EnumMap<DataSeriesType, Map<EncodingParams, BitCodec<?>>>(
+			DataSeriesType.class);
+
 	public CompressionHeader() {
 	}
 
@@ -107,99 +117,126 @@ public class CompressionHeader {
 		return bytes;
 	}
 
+	/*
+	 * Codecs are shared under their data series type, which determines the
+	 * type of the values they decode, so the cast is safe:
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> BitCodec<T> getSharedCodec(DataSeriesType type,
+			EncodingParams params) {
+		Map<EncodingParams, BitCodec<?>> map = sharedCodecs.get(type);
+		return map == null ? null : (BitCodec<T>) map.get(params);
+	}
+
+	public synchronized void putSharedCodec(DataSeriesType type,
+			EncodingParams params, BitCodec<?> codec) {
+		Map<EncodingParams, BitCodec<?>> map = sharedCodecs.get(type);
+		if (map == null) {
+			map = new IdentityHashMap<EncodingParams, BitCodec<?>>();
+			sharedCodecs.put(type, map);
+		}
+		map.put(params, codec);
+	}
+
 	public byte[][] getTagIds(int id) {
 		return dictionary[id];
 	}
 
 	public void read(byte[] data) {
-		ByteArrayInputStream bais = new ByteArrayInputStream(data);
-		try {
-			read(bais);
-		} catch (IOException e) {
-			throw new RuntimeException("This should have never happened.");
-		}
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		readPreservationMap(nextMap(buf));
+		readEncodingMap(nextMap(buf));
+		readTagEncodingMap(nextMap(buf));
 	}
 
 	public void read(InputStream is) throws IOException {
-		{ // preservation map:
-			int byteSize = ByteBufferUtils.readUnsignedITF8(is);
-			byte[] bytes = new byte[byteSize];
-			ByteBufferUtils.readFully(bytes, is);
-			ByteBuffer buf = ByteBuffer.wrap(bytes);
-
-			int mapSize = ByteBufferUtils.readUnsignedITF8(buf);
-			for (int i = 0; i < mapSize; i++) {
-				String key = new String(new byte[] { buf.get(), buf.get() });
-				if (RN_readNamesIncluded.equals(key))
-					readNamesIncluded = buf.get() == 1 ? true : false;
-				else if (AP_alignmentPositionIsDelta.equals(key))
-					AP_seriesDelta = buf.get() == 1 ? true : false;
-				else if (RR_referenceRequired.equals(key))
-					referenceRequired = buf.get() == 1 ? true : false;
-				else if (TD_tagIdsDictionary.equals(key)) {
-					int size = ByteBufferUtils.readUnsignedITF8(buf);
-					byte[] dictionaryBytes = new byte[size];
-					buf.get(dictionaryBytes);
-					dictionary = parseDictionary(dictionaryBytes);
-				} else if (SM_substitutionMatrix.equals(key)) {
-					// parse subs matrix here:
-					byte[] matrixBytes = new byte[5] ;
-					buf.get(matrixBytes);
-					substitutionMatrix = new SubstitutionMatrix(matrixBytes) ;
-				} else
-					throw new RuntimeException("Unknown preservation map key: "
-							+ key);
-			}
+		readPreservationMap(nextMap(is));
+		readEncodingMap(nextMap(is));
+		readTagEncodingMap(nextMap(is));
+	}
+
+	/**
+	 * @return a view of the next length prefixed map in the buffer, the
+	 *         buffer is advanced past the map
+	 */
+	private static ByteBuffer nextMap(ByteBuffer buf) {
+		int byteSize = ByteBufferUtils.readUnsignedITF8(buf);
+		ByteBuffer map = buf.slice();
+		map.limit(byteSize);
+		buf.position(buf.position() + byteSize);
+		return map;
+	}
+
+	private static ByteBuffer nextMap(InputStream is) throws IOException {
+		int byteSize = ByteBufferUtils.readUnsignedITF8(is);
+		byte[] bytes = new byte[byteSize];
+		ByteBufferUtils.readFully(bytes, is);
+		return ByteBuffer.wrap(bytes);
+	}
+
+	private void readPreservationMap(ByteBuffer buf) {
+		int mapSize = ByteBufferUtils.readUnsignedITF8(buf);
+		for (int i = 0; i < mapSize; i++) {
+			String key = new String(new byte[] { buf.get(), buf.get() });
+			if (RN_readNamesIncluded.equals(key))
+				readNamesIncluded = buf.get() == 1 ? true : false;
+			else if (AP_alignmentPositionIsDelta.equals(key))
+				AP_seriesDelta = buf.get() == 1 ? true : false;
+			else if (RR_referenceRequired.equals(key))
+				referenceRequired = buf.get() == 1 ? true : false;
+			else if (TD_tagIdsDictionary.equals(key)) {
+				int size = ByteBufferUtils.readUnsignedITF8(buf);
+				byte[] dictionaryBytes = new byte[size];
+				buf.get(dictionaryBytes);
+				dictionary = parseDictionary(dictionaryBytes);
+			} else if (SM_substitutionMatrix.equals(key)) {
+				// parse subs matrix here:
+				byte[] matrixBytes = new byte[5] ;
+				buf.get(matrixBytes);
+				substitutionMatrix = new SubstitutionMatrix(matrixBytes) ;
+			} else
+				throw new RuntimeException("Unknown preservation map key: "
+						+ key);
 		}
+	}
 
-		{ // encoding map:
-			int byteSize = ByteBufferUtils.readUnsignedITF8(is);
-			byte[] bytes = new byte[byteSize];
-			ByteBufferUtils.readFully(bytes, is);
-			ByteBuffer buf = ByteBuffer.wrap(bytes);
-
-			int mapSize = ByteBufferUtils.readUnsignedITF8(buf);
-			eMap = new TreeMap<EncodingKey, EncodingParams>();
-			for (EncodingKey key : EncodingKey.values())
-				eMap.put(key, NullEncoding.toParam());
-
-			for (int i = 0; i < mapSize; i++) {
-				String key = new String(new byte[] { buf.get(), buf.get() });
-				EncodingKey eKey = EncodingKey.byFirstTwoChars(key);
-				if (eKey == null)
-					throw new RuntimeException("Unknown encoding key: " + key);
-
-				EncodingID id = EncodingID.values()[buf.get()];
-				int paramLen = ByteBufferUtils.readUnsignedITF8(buf);
-				byte[] paramBytes = new byte[paramLen];
-				buf.get(paramBytes);
-
-				eMap.put(eKey, new EncodingParams(id, paramBytes));
-
-				log.debug(String.format("FOUND ENCODING: %s, %s, %s.",
-						eKey.name(), id.name(),
-						Arrays.toString(Arrays.copyOf(paramBytes, 20))));
-			}
+	private void readEncodingMap(ByteBuffer buf) {
+		int mapSize = ByteBufferUtils.readUnsignedITF8(buf);
+		eMap = new TreeMap<EncodingKey, EncodingParams>();
+		for (EncodingKey key : EncodingKey.values())
+			eMap.put(key, NullEncoding.toParam());
+
+		for (int i = 0; i < mapSize; i++) {
+			String key = new String(new byte[] { buf.get(), buf.get() });
+			EncodingKey eKey = EncodingKey.byFirstTwoChars(key);
+			if (eKey == null)
+				throw new RuntimeException("Unknown encoding key: " + key);
+
+			EncodingID id = EncodingID.byId(buf.get() & 0xFF);
+			int paramLen = ByteBufferUtils.readUnsignedITF8(buf);
+			byte[] paramBytes = new byte[paramLen];
+			buf.get(paramBytes);
+
+			eMap.put(eKey, new EncodingParams(id, paramBytes));
+
+			log.debug(String.format("FOUND ENCODING: %s, %s, %s.",
+					eKey.name(), id.name(),
+					Arrays.toString(Arrays.copyOf(paramBytes, 20))));
 		}
+	}
 
-		{ // tag encoding map:
-			int byteSize = ByteBufferUtils.readUnsignedITF8(is);
-			byte[] bytes = new byte[byteSize];
-			ByteBufferUtils.readFully(bytes, is);
-			ByteBuffer buf = ByteBuffer.wrap(bytes);
-
-			int mapSize = ByteBufferUtils.readUnsignedITF8(buf);
-			tMap = new TreeMap<Integer, EncodingParams>();
-			for (int i = 0; i < mapSize; i++) {
-				int key = ByteBufferUtils.readUnsignedITF8(buf);
-
-				EncodingID id = EncodingID.values()[buf.get()];
-				int paramLen = ByteBufferUtils.readUnsignedITF8(buf);
-				byte[] paramBytes = new byte[paramLen];
-				buf.get(paramBytes);
-
-				tMap.put(key, new EncodingParams(id, paramBytes));
-			}
+	private void readTagEncodingMap(ByteBuffer buf) {
+		int mapSize = ByteBufferUtils.readUnsignedITF8(buf);
+		tMap = new TreeMap<Integer, EncodingParams>();
+		for (int i = 0; i < mapSize; i++) {
+			int key = ByteBufferUtils.readUnsignedITF8(buf);
+
+			EncodingID id = EncodingID.byId(buf.get() & 0xFF);
+			int paramLen = ByteBufferUtils.readUnsignedITF8(buf);
+			byte[] paramBytes = new byte[paramLen];
+			buf.get(paramBytes);
+
+			tMap.put(key, new EncodingParams(id, paramBytes));
 		}
 	}
 
@@ -259,7 +296,7 @@ public class CompressionHeader {
 				mapBuf.put((byte) eKey.name().charAt(1));
 
 				EncodingParams params = eMap.get(eKey);
-				mapBuf.put((byte) (0xFF & params.id.ordinal()));
+				mapBuf.put((byte) params.id.getId());
 				ByteBufferUtils.writeUnsignedITF8(params.params.length, mapBuf);
 				mapBuf.put(params.params);
 			}
@@ -278,7 +315,7 @@ public class CompressionHeader {
 				ByteBufferUtils.writeUnsignedITF8(eKey, mapBuf);
 
 				EncodingParams params = tMap.get(eKey);
-				mapBuf.put((byte) (0xFF & params.id.ordinal()));
+				mapBuf.put((byte) params.id.getId());
 				ByteBufferUtils.writeUnsignedITF8(params.params.length, mapBuf);
 				mapBuf.put(params.params);
 			}
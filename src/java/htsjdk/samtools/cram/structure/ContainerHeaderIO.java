@@ -18,39 +18,81 @@ package htsjdk.samtools.cram.structure;
 import htsjdk.samtools.cram.common.NullOutputStream;
 import htsjdk.samtools.cram.io.ByteBufferUtils;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class ContainerHeaderIO {
 
+	/**
+	 * The container header is not prefixed with its length, so it is copied
+	 * value by value into this buffer, reading each ITF8/LTF8 value with at
+	 * most two stream calls, and then parsed from memory. The buffer only
+	 * grows within an instance; CramIO creates an instance per header, so it
+	 * is small and short-lived rather than reused across containers.
+	 */
+	private byte[] buffer = new byte[64];
+	private int size;
+
 	public boolean readContainerHeader(Container c, InputStream is) throws IOException {
-		byte[] peek = new byte[4];
 		int ch = is.read();
 		if (ch == -1)
 			return false;
 
-		peek[0] = (byte) ch;
-		for (int i = 1; i < peek.length; i++) {
-			ch = is.read();
-			if (ch == -1)
-				throw new RuntimeException("Incomplete or broken stream.");
-			peek[i] = (byte) ch;
+		size = 0;
+		buffer[size++] = (byte) ch;
+		try {
+			ByteBufferUtils.readFully(buffer, 3, size, is);
+		} catch (EOFException e) {
+			throw new RuntimeException("Incomplete or broken stream.");
 		}
+		size += 3;
+
+		for (int i = 0; i < 4; i++)
+			copyValue(is, false);
+		copyValue(is, true);
+		copyValue(is, true);
+		copyValue(is, false);
 
-		c.containerByteSize = ByteBufferUtils.int32(peek);
-		c.sequenceId = ByteBufferUtils.readUnsignedITF8(is);
-		c.alignmentStart = ByteBufferUtils.readUnsignedITF8(is);
-		c.alignmentSpan = ByteBufferUtils.readUnsignedITF8(is);
-		c.nofRecords = ByteBufferUtils.readUnsignedITF8(is);
-		c.globalRecordCounter = ByteBufferUtils.readUnsignedLTF8(is);
-		c.bases = ByteBufferUtils.readUnsignedLTF8(is);
-		c.blockCount = ByteBufferUtils.readUnsignedITF8(is);
-		c.landmarks = ByteBufferUtils.array(is);
+		int landmarksStart = size;
+		copyValue(is, false);
+		int landmarkCount = ByteBufferUtils.readUnsignedITF8(ByteBuffer.wrap(buffer, landmarksStart,
+				size - landmarksStart));
+		for (int i = 0; i < landmarkCount; i++)
+			copyValue(is, false);
+
+		ByteBuffer buf = ByteBuffer.wrap(buffer, 0, size);
+		c.containerByteSize = ByteBufferUtils.int32(buf);
+		c.sequenceId = ByteBufferUtils.readUnsignedITF8(buf);
+		c.alignmentStart = ByteBufferUtils.readUnsignedITF8(buf);
+		c.alignmentSpan = ByteBufferUtils.readUnsignedITF8(buf);
+		c.nofRecords = ByteBufferUtils.readUnsignedITF8(buf);
+		c.globalRecordCounter = ByteBufferUtils.readUnsignedLTF8(buf);
+		c.bases = ByteBufferUtils.readUnsignedLTF8(buf);
+		c.blockCount = ByteBufferUtils.readUnsignedITF8(buf);
+		c.landmarks = ByteBufferUtils.array(buf);
 
 		return true;
 	}
 
+	private void copyValue(InputStream is, boolean ltf8) throws IOException {
+		int b1 = is.read();
+		if (b1 == -1)
+			throw new EOFException();
+
+		int length = ltf8 ? ByteBufferUtils.sizeOfLTF8(b1) : ByteBufferUtils.sizeOfITF8(b1);
+		if (size + length > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+		buffer[size++] = (byte) b1;
+		if (length > 1) {
+			ByteBufferUtils.readFully(buffer, length - 1, size, is);
+			size += length - 1;
+		}
+	}
+
 	public int writeContainerHeader(Container c, OutputStream os) throws IOException {
 		int len = ByteBufferUtils.writeInt32(c.containerByteSize, os);
 		len += ByteBufferUtils.writeUnsignedITF8(c.sequenceId, os);
@@ -36,6 +36,7 @@ public class CramCompressionRecord {
     public static final int SECONDARY_ALIGNMENT_FLAG = 0x100;
     public static final int VENDOR_FILTERED_FLAG = 0x200;
     public static final int DUPLICATE_FLAG = 0x400;
+    public static final int SUPPLEMENTARY_FLAG = 0x800;
 
     public static final int MATE_NEG_STRAND_FLAG = 0x1;
     public static final int MATE_UNMAPPED_FLAG = 0x2;
@@ -88,6 +89,40 @@ public class CramCompressionRecord {
 
     public int sliceIndex = 0;
 
+    /**
+     * Restore the state of a newly created record so that the object can be
+     * reused for decoding another read. The {@link #readBases} and
+     * {@link #qualityScores} arrays are kept as buffers that may be
+     * overwritten when the next read has the same length.
+     */
+    public void reset() {
+        index = 0;
+        alignmentStart = 0;
+        alignmentDelta = 0;
+        alignmentEnd = -1;
+        alignmentSpan = -1;
+        readLength = 0;
+        recordsToNextFragment = -1;
+        readFeatures = null;
+        readGroupID = 0;
+        flags = 0;
+        mateFlags = 0;
+        compressionFlags = 0;
+        next = null;
+        previous = null;
+        mateSequenceID = -1;
+        mateAlignmentStart = 0;
+        mappingQuality = 0;
+        sequenceName = null;
+        sequenceId = 0;
+        readName = null;
+        templateSize = 0;
+        tags = null;
+        tagIds = null;
+        tagIdsIndex = null;
+        sliceIndex = 0;
+    }
+
     public byte getMateFlags() {
         return (byte) (0xFF & mateFlags);
     }
@@ -263,6 +298,15 @@ public class CramCompressionRecord {
                 & ~SECONDARY_ALIGNMENT_FLAG;
     }
 
+    public boolean isSupplementary() {
+        return (flags & SUPPLEMENTARY_FLAG) != 0;
+    }
+
+    public void setSupplementary(boolean supplementary) {
+        flags = supplementary ? flags | SUPPLEMENTARY_FLAG : flags
+                & ~SUPPLEMENTARY_FLAG;
+    }
+
     public boolean isVendorFiltered() {
         return (flags & VENDOR_FILTERED_FLAG) != 0;
     }
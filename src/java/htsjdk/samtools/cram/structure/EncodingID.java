@@ -15,6 +15,39 @@
  ******************************************************************************/
 package htsjdk.samtools.cram.structure;
 
+/**
+ * Encodings and the ids they are stored with. The ids up to GAMMA are those
+ * of the CRAM specification, which assigns further ids sequentially.
+ * NAME_TOKENISER is specific to this implementation, so its id is kept well
+ * clear of them.
+ */
 public enum EncodingID {
-	NULL, EXTERNAL, GOLOMB, HUFFMAN, BYTE_ARRAY_LEN, BYTE_ARRAY_STOP, BETA, SUBEXP, GOLOMB_RICE, GAMMA;
+	NULL(0), EXTERNAL(1), GOLOMB(2), HUFFMAN(3), BYTE_ARRAY_LEN(4),
+	BYTE_ARRAY_STOP(5), BETA(6), SUBEXP(7), GOLOMB_RICE(8), GAMMA(9),
+	NAME_TOKENISER(128);
+
+	private final int id;
+
+	private EncodingID(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the id of the encoding in CRAM compression headers
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the encoding stored with the given id
+	 * @throws RuntimeException
+	 *             if the encoding is not supported
+	 */
+	public static EncodingID byId(int id) {
+		for (EncodingID encoding : values())
+			if (encoding.id == id)
+				return encoding;
+		throw new RuntimeException("Unsupported encoding: " + id);
+	}
 }
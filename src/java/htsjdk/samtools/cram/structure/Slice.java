@@ -59,20 +59,23 @@ public class Slice {
 
 	/**
 	 * @param ref
+	 * @param refOffset
+	 *            0-based reference position of the first base in ref
 	 * @return true if the slice is completely within the reference and false if
 	 *         the slice's end is beyond the reference.
 	 */
-	private boolean alignmentBordersSanityCheck(byte[] ref) {
+	private boolean alignmentBordersSanityCheck(byte[] ref, int refOffset) {
 		if (alignmentStart > 0 && sequenceId >= 0 && ref == null)
 			throw new NullPointerException("Mapped slice reference is null.");
 
-		if (alignmentStart > ref.length) {
+		int refEnd = refOffset + ref.length;
+		if (alignmentStart > refEnd) {
 			log.error(String.format("Slice mapped outside of reference: seqid=%d, alstart=%d, counter=%d.", sequenceId,
 					alignmentStart, globalRecordCounter));
 			throw new RuntimeException("Slice mapped outside of the reference.");
 		}
 
-		if (alignmentStart - 1 + alignmentSpan > ref.length) {
+		if (alignmentStart - 1 + alignmentSpan > refEnd) {
 			log.warn(String.format(
 					"Slice partially mapped outside of reference: seqid=%d, alstart=%d, alspan=%d, counter=%d.",
 					sequenceId, alignmentStart, alignmentSpan, globalRecordCounter));
@@ -83,12 +86,23 @@ public class Slice {
 	}
 
 	public boolean validateRefMD5(byte[] ref) throws NoSuchAlgorithmException {
-		alignmentBordersSanityCheck(ref);
+		return validateRefMD5(ref, 0);
+	}
+
+	/**
+	 * @param ref
+	 *            reference bases covering the slice
+	 * @param refOffset
+	 *            0-based reference position of the first base in ref
+	 */
+	public boolean validateRefMD5(byte[] ref, int refOffset) throws NoSuchAlgorithmException {
+		alignmentBordersSanityCheck(ref, refOffset);
 
-		if (!validateRefMD5(ref, alignmentStart, alignmentSpan, refMD5)) {
-			String excerpt = getBrief(alignmentStart, alignmentSpan, ref, shoulder, null);
+		int start = alignmentStart - refOffset;
+		if (!validateRefMD5(ref, start, alignmentSpan, refMD5)) {
+			String excerpt = getBrief(start, alignmentSpan, ref, shoulder, null);
 
-			if (validateRefMD5(ref, alignmentStart, alignmentSpan - 1, refMD5)) {
+			if (validateRefMD5(ref, start, alignmentSpan - 1, refMD5)) {
 				log.warn(String.format("Reference MD5 matches partially for slice %d:%d-%d, %s", sequenceId,
 						alignmentStart, alignmentStart + alignmentSpan - 1, excerpt));
 				return true;
@@ -220,7 +234,65 @@ public class Slice {
 	}
 
 	public void setRefMD5(byte[] ref) {
-		alignmentBordersSanityCheck(ref);
+		setRefMD5(ref, 0);
+	}
+
+	/**
+	 * Store the reference bases spanned by the slice in an external block of
+	 * the slice, so that the slice can be decoded without a reference.
+	 * 
+	 * @param ref
+	 *            reference bases covering the slice
+	 * @param refOffset
+	 *            0-based reference position of the first base in ref
+	 * @param contentId
+	 *            a content id not used by any other block of the slice
+	 */
+	public void setEmbeddedReference(byte[] ref, int refOffset, int contentId) {
+		int from = alignmentStart - 1 - refOffset;
+		int to = Math.min(from + alignmentSpan, ref.length);
+
+		Block block = new Block();
+		block.contentType = BlockContentType.EXTERNAL;
+		block.method = BlockCompressionMethod.GZIP;
+		block.contentId = contentId;
+		block.setRawContent(Arrays.copyOfRange(ref, from, to));
+
+		embeddedRefBlock = block;
+		embeddedRefBlockContentID = contentId;
+		external.put(contentId, block);
+	}
+
+	/**
+	 * @return the reference bases embedded in the slice, starting at the
+	 *         slice's alignment start, or null if there are none
+	 */
+	public byte[] getEmbeddedReference() {
+		return embeddedRefBlock == null ? null : embeddedRefBlock.getRawContent();
+	}
+
+	/**
+	 * @return true if the reference MD5 is not set, for example because the
+	 *         embedded reference is a consensus of the reads rather than a
+	 *         real reference
+	 */
+	public boolean isRefMD5Empty() {
+		if (refMD5 == null)
+			return true;
+		for (byte b : refMD5)
+			if (b != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param ref
+	 *            reference bases covering the slice
+	 * @param refOffset
+	 *            0-based reference position of the first base in ref
+	 */
+	public void setRefMD5(byte[] ref, int refOffset) {
+		alignmentBordersSanityCheck(ref, refOffset);
 
 		if (sequenceId < 0 && alignmentStart < 1) {
 			refMD5 = new byte[16];
@@ -229,18 +301,19 @@ public class Slice {
 			log.debug("Empty slice ref md5 is set.");
 		} else {
 
-			int span = Math.min(alignmentSpan, ref.length - alignmentStart + 1);
+			int start = alignmentStart - refOffset;
+			int span = Math.min(alignmentSpan, ref.length - start + 1);
 
-			if (alignmentStart + span > ref.length + 1)
+			if (start + span > ref.length + 1)
 				throw new RuntimeException("Invalid alignment boundaries.");
 
-			refMD5 = SequenceUtil.calculateMD5(ref, alignmentStart - 1, span);
+			refMD5 = SequenceUtil.calculateMD5(ref, start - 1, span);
 
 			StringBuffer sb = new StringBuffer();
 			int shoulder = 10;
-			sb.append(new String(Arrays.copyOfRange(ref, alignmentStart - 1, alignmentStart + shoulder)));
+			sb.append(new String(Arrays.copyOfRange(ref, start - 1, start + shoulder)));
 			sb.append("...");
-			sb.append(new String(Arrays.copyOfRange(ref, alignmentStart - 1 + span - shoulder, alignmentStart + span)));
+			sb.append(new String(Arrays.copyOfRange(ref, Math.max(0, start - 1 + span - shoulder), start + span)));
 
 			log.debug(String.format("Slice md5: %s for %d:%d-%d, %s",
 					String.format("%032x", new BigInteger(1, refMD5)), sequenceId, alignmentStart, alignmentStart
@@ -17,11 +17,11 @@ package htsjdk.samtools.cram.structure;
 
 import htsjdk.samtools.cram.io.ByteBufferUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 
 public class SliceIO {
@@ -32,20 +32,19 @@ public class SliceIO {
 	}
 
 	public void parseSliceHeaderBlock(Slice s) throws IOException {
-		InputStream is = new ByteArrayInputStream(s.headerBlock.getRawContent());
-		// is = new DebuggingInputStream (is) ;
-
-		s.sequenceId = ByteBufferUtils.readUnsignedITF8(is);
-		s.alignmentStart = ByteBufferUtils.readUnsignedITF8(is);
-		s.alignmentSpan = ByteBufferUtils.readUnsignedITF8(is);
-		s.nofRecords = ByteBufferUtils.readUnsignedITF8(is);
-		s.globalRecordCounter = ByteBufferUtils.readUnsignedLTF8(is);
-		s.nofBlocks = ByteBufferUtils.readUnsignedITF8(is);
-
-		s.contentIDs = ByteBufferUtils.array(is);
-		s.embeddedRefBlockContentID = ByteBufferUtils.readUnsignedITF8(is);
+		ByteBuffer buf = ByteBuffer.wrap(s.headerBlock.getRawContent());
+
+		s.sequenceId = ByteBufferUtils.readUnsignedITF8(buf);
+		s.alignmentStart = ByteBufferUtils.readUnsignedITF8(buf);
+		s.alignmentSpan = ByteBufferUtils.readUnsignedITF8(buf);
+		s.nofRecords = ByteBufferUtils.readUnsignedITF8(buf);
+		s.globalRecordCounter = ByteBufferUtils.readUnsignedLTF8(buf);
+		s.nofBlocks = ByteBufferUtils.readUnsignedITF8(buf);
+
+		s.contentIDs = ByteBufferUtils.array(buf);
+		s.embeddedRefBlockContentID = ByteBufferUtils.readUnsignedITF8(buf);
 		s.refMD5 = new byte[16];
-		ByteBufferUtils.readFully(s.refMD5, is);
+		buf.get(s.refMD5);
 	}
 
 	public byte[] createSliceHeaderBlockContent(Slice s) throws IOException {
@@ -103,8 +102,10 @@ public class SliceIO {
 
 	public void write(Slice s, OutputStream os) throws IOException {
 
-		s.nofBlocks = 1 + s.external.size() + (s.embeddedRefBlock == null ? 0
-				: 1);
+		// the embedded reference is one of the external blocks:
+		if (s.embeddedRefBlock != null)
+			s.external.put(s.embeddedRefBlockContentID, s.embeddedRefBlock);
+		s.nofBlocks = 1 + s.external.size();
 
 		{
 			s.contentIDs = new int[s.external.size()];
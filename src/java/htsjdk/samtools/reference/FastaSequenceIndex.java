@@ -169,6 +169,16 @@ public class FastaSequenceIndex implements Iterable<FastaSequenceIndexEntry> {
         return sequenceEntries.get(contigName);
     }
 
+    /**
+     * Retrieve the length of the given contig.
+     * @param contigName Name of the contig for which to search.
+     * @return Number of bases in the contig, -1 if the contig is not in the index.
+     */
+    public long getSequenceLength( String contigName ) {
+        final FastaSequenceIndexEntry entry = sequenceEntries.get(contigName);
+        return entry == null ? -1 : entry.getSize();
+    }
+
     /**
      * Creates an iterator which can iterate through all entries in a fasta index.
      * @return iterator over all fasta index entries.
@@ -24,43 +24,48 @@
 
 package htsjdk.samtools.seekablestream;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * A wrapper class to provide buffered read access to a SeekableStream.  Just wrapping such a stream with
- * a BufferedInputStream will not work as it does not support seeking.  In this implementation a
- * seek call is delegated to the wrapped stream, and the buffer reset.
+ * a BufferedInputStream will not work as it does not support seeking.  In this implementation a seek only
+ * moves the position: reads at positions within the buffered window are served from the buffer, so short
+ * forward and backward seeks, e.g. between nearby chunks of an index query, don't re-read data.  The wrapped
+ * stream is only seeked when the buffer has to be refilled elsewhere.
+ *
+ * The number of bytes read into the buffer adapts to the access pattern: it doubles, up to
+ * {@link #MAX_BUFFER_SIZE_FACTOR} times the requested buffer size, every time the buffer is refilled right
+ * after the previous fill, and halves, down to 1/{@link #MIN_BUFFER_SIZE_FACTOR} of the requested buffer size,
+ * every time it is refilled after a seek outside of it.
  */
 public class SeekableBufferedStream extends SeekableStream {
 
-    /** Little extension to buffered input stream to give access to the available bytes in the buffer. */
-    private class ExtBufferedInputStream extends BufferedInputStream {
-        private ExtBufferedInputStream(final InputStream inputStream, final int i) {
-            super(inputStream, i);
-        }
-
-        /** Returns the number of bytes that can be read from the buffer without reading more into the buffer. */
-        int getBytesInBufferAvailable() {
-            if (this.count == this.pos) return 0; // documented test for "is buffer empty"
-            else return this.buf.length - this.pos;
-        }
-    }
-
-
     public static final int DEFAULT_BUFFER_SIZE = 512000;
+    public static final int MAX_BUFFER_SIZE_FACTOR = 4;
+    public static final int MIN_BUFFER_SIZE_FACTOR = 16;
 
     final private int bufferSize;
     final SeekableStream wrappedStream;
-    ExtBufferedInputStream bufferedStream;
     long position;
 
+    private byte[] buffer;
+    // the position in the wrapped stream of the first byte of the buffer, and the number of valid bytes
+    private long bufferStart = 0;
+    private int bufferCount = 0;
+    // the number of bytes to read when the buffer is next filled
+    private int fillSize;
+    private long wrappedPosition;
+
+    private long bytesRead = 0;
+    private long bytesConsumed = 0;
+
     public SeekableBufferedStream(final SeekableStream stream, final int bufferSize) {
         this.bufferSize = bufferSize;
         this.wrappedStream = stream;
         this.position = 0;
-        bufferedStream = new ExtBufferedInputStream(wrappedStream, bufferSize);
+        this.wrappedPosition = 0;
+        this.fillSize = bufferSize;
+        this.buffer = new byte[bufferSize];
     }
 
     public SeekableBufferedStream(final SeekableStream stream) {
@@ -73,43 +78,103 @@ public class SeekableBufferedStream extends SeekableStream {
 
     @Override
     public long skip(final long skipLength) throws IOException {
-        if (skipLength < this.bufferedStream.getBytesInBufferAvailable()) {
-            final long retval = this.bufferedStream.skip(skipLength);
-            this.position += retval;
-            return retval;
-        } else {
-            final long position = this.position + skipLength;
-            seek(position);
-            return skipLength;
-        }
+        if (skipLength <= 0) return 0;
+        seek(this.position + skipLength);
+        return skipLength;
     }
 
     public void seek(final long position) throws IOException {
         this.position = position;
-        wrappedStream.seek(position);
-        bufferedStream = new ExtBufferedInputStream(wrappedStream, bufferSize);
     }
 
     public int read() throws IOException {
-        int b = bufferedStream.read();
+        if (!isBuffered(position) && fill() <= 0) return -1;
+        final int b = buffer[(int) (position - bufferStart)] & 0xFF;
         position++;
+        bytesConsumed++;
         return b;
     }
 
     public int read(final byte[] buffer, final int offset, final int length) throws IOException {
-        int nBytesRead = bufferedStream.read(buffer, offset, length);
-        if (nBytesRead > 0) {
-            //if we can't read as many bytes as we are asking for then attempt another read to reset the buffer.
-            if (nBytesRead < length) {
-                final int additionalBytesRead = bufferedStream.read(buffer, nBytesRead + offset, length - nBytesRead);
-                //if there were additional bytes read then update nBytesRead
-                if (additionalBytesRead > 0) {
-                    nBytesRead += additionalBytesRead;
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IndexOutOfBoundsException("Offset=" + offset + ",len=" + length + ",buflen=" + buffer.length);
+        }
+        int nBytesRead = 0;
+        while (nBytesRead < length) {
+            if (!isBuffered(position)) {
+                final int remaining = length - nBytesRead;
+                if (remaining >= fillSize) {
+                    // too large to be worth buffering
+                    final int n = readWrapped(buffer, offset + nBytesRead, remaining);
+                    if (n <= 0) break;
+                    nBytesRead += n;
+                    position += n;
+                    continue;
                 }
+                if (fill() <= 0) break;
             }
-            position += nBytesRead;
+            final int bufferOffset = (int) (position - bufferStart);
+            final int n = Math.min(length - nBytesRead, bufferCount - bufferOffset);
+            System.arraycopy(this.buffer, bufferOffset, buffer, offset + nBytesRead, n);
+            nBytesRead += n;
+            position += n;
         }
-        return nBytesRead;
+        bytesConsumed += nBytesRead;
+        return nBytesRead == 0 && length > 0 ? -1 : nBytesRead;
+    }
+
+    private boolean isBuffered(final long position) {
+        return position >= bufferStart && position < bufferStart + bufferCount;
+    }
+
+    /**
+     * Fill the buffer starting at the current position, adapting the number of bytes read to the access pattern.
+     *
+     * @return the number of bytes in the buffer, 0 or -1 at the end of the wrapped stream
+     */
+    private int fill() throws IOException {
+        if (bufferCount > 0 && position == bufferStart + bufferCount) {
+            fillSize = Math.min(fillSize * 2, bufferSize * MAX_BUFFER_SIZE_FACTOR);
+        } else if (bufferCount > 0) {
+            fillSize = Math.max(fillSize / 2, Math.max(1, bufferSize / MIN_BUFFER_SIZE_FACTOR));
+        }
+        if (buffer.length < fillSize) {
+            buffer = new byte[fillSize];
+        }
+        bufferStart = position;
+        bufferCount = 0;
+        final int n = readWrapped(buffer, 0, fillSize);
+        if (n > 0) bufferCount = n;
+        return n;
+    }
+
+    private int readWrapped(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (wrappedPosition != position) {
+            wrappedStream.seek(position);
+            wrappedPosition = position;
+        }
+        final int n = wrappedStream.read(buffer, offset, length);
+        if (n > 0) {
+            wrappedPosition += n;
+            bytesRead += n;
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of bytes read from the wrapped stream
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of bytes returned by reads of this stream, which can be more than the number of bytes
+     * read from the wrapped stream if data in the buffer is read again after seeking back, or less if buffered
+     * data is skipped
+     */
+    public long getBytesConsumed() {
+        return bytesConsumed;
     }
 
     public void close() throws IOException {
@@ -0,0 +1,371 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.seekablestream;
+
+import htsjdk.samtools.util.HttpUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link SeekableStream} over HTTP that reads the resource in fixed size blocks, aligned to multiples of the block
+ * size, and keeps them in a least recently used cache bounded by a number of bytes.  A read that misses the cache
+ * fetches all the blocks it needs with a single range request.  While the stream is read sequentially it fetches
+ * the following blocks in the background, doubling the number of blocks read ahead with every sequential block up
+ * to a maximum; a seek elsewhere resets the read-ahead.
+ *
+ * A stream is meant to be used by one thread at a time, like other streams.
+ */
+public class SeekableCachingHTTPStream extends SeekableStream {
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    public static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_MAX_READ_AHEAD_BLOCKS = 32;
+
+    private static final ExecutorService PREFETCHER = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "SeekableCachingHTTPStream-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final URL url;
+    private final Proxy proxy;
+    private final int blockSize;
+    private final long cacheSize;
+    private final int maxReadAheadBlocks;
+    private volatile long contentLength = -1;
+    private long position = 0;
+
+    // the cached blocks in access order, and the total number of bytes held, guarded by lock
+    private final LinkedHashMap<Long, byte[]> blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+    private long cachedBytes = 0;
+    // blocks being fetched in the background, guarded by lock
+    private final Map<Long, Future<Void>> pending = new HashMap<Long, Future<Void>>();
+    private final Object lock = new Object();
+
+    // the position following the last read, and the last block it read from
+    private long endOfLastRead = -1;
+    private long lastBlock = -1;
+    private int readAheadBlocks = 0;
+    private int requests = 0;
+
+    public SeekableCachingHTTPStream(final URL url) {
+        this(url, null);
+    }
+
+    public SeekableCachingHTTPStream(final URL url, final Proxy proxy) {
+        this(url, proxy, DEFAULT_BLOCK_SIZE, DEFAULT_CACHE_SIZE, DEFAULT_MAX_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * @param blockSize          the size of the blocks fetched and cached
+     * @param cacheSize          the maximum number of bytes of blocks kept in the cache
+     * @param maxReadAheadBlocks the maximum number of blocks fetched ahead of a sequential read, 0 for none
+     */
+    public SeekableCachingHTTPStream(final URL url, final Proxy proxy, final int blockSize, final long cacheSize,
+                                     final int maxReadAheadBlocks) {
+        if (blockSize <= 0) throw new IllegalArgumentException("Invalid block size " + blockSize);
+        if (maxReadAheadBlocks < 0) throw new IllegalArgumentException("Invalid read-ahead " + maxReadAheadBlocks);
+        this.url = url;
+        this.proxy = proxy;
+        this.blockSize = blockSize;
+        this.cacheSize = cacheSize;
+        this.maxReadAheadBlocks = maxReadAheadBlocks;
+
+        // Note: This also sets setDefaultUseCaches(false), which is important
+        final String contentLengthString = HttpUtils.getHeaderField(url, "Content-Length");
+        if (contentLengthString != null) {
+            try {
+                contentLength = Long.parseLong(contentLengthString);
+            }
+            catch (NumberFormatException ignored) {
+                System.err.println("WARNING: Invalid content length (" + contentLengthString + "  for: " + url);
+                contentLength = -1;
+            }
+        }
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public long length() {
+        return contentLength;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long bytesToSkip = contentLength < 0 ? Math.max(n, 0) : Math.max(0, Math.min(n, contentLength - position));
+        position += bytesToSkip;
+        return bytesToSkip;
+    }
+
+    public boolean eof() throws IOException {
+        return contentLength > 0 && position >= contentLength;
+    }
+
+    public void seek(final long position) {
+        this.position = position;
+    }
+
+    public int read(final byte[] buffer, final int offset, final int len) throws IOException {
+        if (offset < 0 || len < 0 || (offset + len) > buffer.length) {
+            throw new IndexOutOfBoundsException("Offset="+offset+",len="+len+",buflen="+buffer.length);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (eof()) {
+            return -1;
+        }
+
+        final long firstBlock = position / blockSize;
+        final long lastBlockNeeded = (position + len - 1) / blockSize;
+        updateReadAhead(lastBlockNeeded);
+
+        int n = 0;
+        for (long block = firstBlock; block <= lastBlockNeeded && n < len; block++) {
+            final byte[] data = getBlock(block, lastBlockNeeded);
+            final int blockOffset = (int) (position - block * blockSize);
+            if (data == null || blockOffset >= data.length) break;
+            final int count = Math.min(len - n, data.length - blockOffset);
+            System.arraycopy(data, blockOffset, buffer, offset + n, count);
+            n += count;
+            position += count;
+            if (data.length < blockSize) break; // the last block
+        }
+        if (n > 0) {
+            endOfLastRead = position;
+            lastBlock = (position - 1) / blockSize;
+            prefetch(lastBlock + 1);
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    public int read() throws IOException {
+        final byte[] tmp = new byte[1];
+        return read(tmp, 0, 1) == 1 ? (int) tmp[0] & 0xFF : -1;
+    }
+
+    /**
+     * Read ahead more the longer the stream is read sequentially, and not at all after a seek.
+     *
+     * @param lastBlockNeeded the last block the current read needs
+     */
+    private void updateReadAhead(final long lastBlockNeeded) {
+        if (position != endOfLastRead) {
+            readAheadBlocks = 0;
+        } else if (lastBlockNeeded > lastBlock) {
+            readAheadBlocks = Math.min(maxReadAheadBlocks, Math.max(1, 2 * readAheadBlocks));
+        }
+    }
+
+    /**
+     * @return the data of the given block, fetching it with all missing blocks up to {@code lastBlockNeeded} if
+     * it is not cached, or null if the block is past the end of the resource
+     */
+    private byte[] getBlock(final long block, final long lastBlockNeeded) throws IOException {
+        Future<Void> fetch;
+        synchronized (lock) {
+            final byte[] data = blocks.get(block);
+            if (data != null) return data;
+            fetch = pending.get(block);
+        }
+        if (fetch != null) {
+            try {
+                fetch.get();
+            } catch (final InterruptedException e) {
+                throw new IOException("Interrupted while fetching " + url, e);
+            } catch (final ExecutionException ignored) {
+                // fetched again below, so that the error is reported to the reader
+            }
+            synchronized (lock) {
+                final byte[] data = blocks.get(block);
+                if (data != null) return data;
+            }
+        }
+
+        long last = block;
+        synchronized (lock) {
+            while (last < lastBlockNeeded && !blocks.containsKey(last + 1) && !pending.containsKey(last + 1)) last++;
+        }
+        return fetch(block, last);
+    }
+
+    /**
+     * Fetch the blocks following a sequential read in the background.
+     */
+    private void prefetch(final long firstBlock) {
+        if (readAheadBlocks == 0) return;
+        final long endBlock = contentLength < 0 ? Long.MAX_VALUE : (contentLength + blockSize - 1) / blockSize;
+        synchronized (lock) {
+            long first = firstBlock;
+            while (first < endBlock && (blocks.containsKey(first) || pending.containsKey(first))) first++;
+            // wait until at most half of the read-ahead is left, then fetch a whole read-ahead with one request
+            if (first >= endBlock || first - firstBlock > readAheadBlocks / 2) return;
+            final long limit = Math.min(first + readAheadBlocks, endBlock);
+            long last = first;
+            while (last + 1 < limit && !blocks.containsKey(last + 1) && !pending.containsKey(last + 1)) last++;
+
+            final long from = first;
+            final long to = last;
+            final FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    try {
+                        fetch(from, to);
+                    } finally {
+                        synchronized (lock) {
+                            for (long block = from; block <= to; block++) pending.remove(block);
+                        }
+                    }
+                    return null;
+                }
+            });
+            for (long block = from; block <= to; block++) pending.put(block, task);
+            PREFETCHER.execute(task);
+        }
+    }
+
+    /**
+     * Fetch a range of blocks with one request and cache them.
+     *
+     * @return the data of the first block, or null if it is past the end of the resource
+     */
+    private byte[] fetch(final long firstBlock, final long lastBlock) throws IOException {
+        final long start = firstBlock * blockSize;
+        long end = (lastBlock + 1) * blockSize - 1;
+        if (contentLength > 0) {
+            if (start >= contentLength) return null;
+            end = Math.min(end, contentLength - 1);
+        }
+        final byte[] data = new byte[(int) (end - start + 1)];
+        int n = 0;
+
+        HttpURLConnection connection = null;
+        InputStream is = null;
+        try {
+            connection = proxy == null ?
+                    (HttpURLConnection) url.openConnection() :
+                    (HttpURLConnection) url.openConnection(proxy);
+            connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+            synchronized (lock) {
+                requests++;
+            }
+
+            is = connection.getInputStream();
+            // a server that ignores the range sends the whole resource
+            if (connection.getResponseCode() == HttpURLConnection.HTTP_OK && start > 0) {
+                long skipped = 0;
+                while (skipped < start) {
+                    final long count = is.skip(start - skipped);
+                    if (count > 0) skipped += count;
+                    else if (is.read() >= 0) skipped++;
+                    else break;
+                }
+            }
+            while (n < data.length) {
+                final int count = is.read(data, n, data.length - n);
+                if (count < 0) break;
+                n += count;
+            }
+        } catch (final IOException e) {
+            // As in SeekableHTTPStream, a range past the end of the resource is reported as an IOException with
+            // the 416 code in the message, or as an EOFException
+            if (e.getMessage() == null || !(e.getMessage().contains("416") || e instanceof EOFException)) {
+                throw e;
+            }
+        } finally {
+            if (is != null) {
+                is.close();
+            }
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        if (n < data.length) {
+            // we reached the end of the resource
+            contentLength = start + n;
+        }
+        if (n == 0) return null;
+
+        byte[] first = null;
+        synchronized (lock) {
+            for (int offset = 0; offset < n; offset += blockSize) {
+                final byte[] block = new byte[Math.min(blockSize, n - offset)];
+                System.arraycopy(data, offset, block, 0, block.length);
+                if (first == null) first = block;
+                final byte[] old = blocks.put(firstBlock + offset / blockSize, block);
+                cachedBytes += block.length - (old == null ? 0 : old.length);
+            }
+            final Iterator<byte[]> oldest = blocks.values().iterator();
+            while (cachedBytes > cacheSize && oldest.hasNext()) {
+                cachedBytes -= oldest.next().length;
+                oldest.remove();
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @return the number of HTTP requests made to read the resource, for testing
+     */
+    int getRequestCount() {
+        synchronized (lock) {
+            return requests;
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized (lock) {
+            for (final Future<Void> fetch : pending.values()) fetch.cancel(true);
+            pending.clear();
+            blocks.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    @Override
+    public String getSource() {
+        return url.toString();
+    }
+}
@@ -73,7 +73,7 @@ public class SeekableStreamFactory{
 
             if (path.startsWith("http:") || path.startsWith("https:")) {
                 final URL url = new URL(path);
-                return new SeekableHTTPStream(url);
+                return new SeekableCachingHTTPStream(url);
             } else if (path.startsWith("ftp:")) {
                 return new SeekableFTPStream(new URL(path));
             } else {
@@ -27,8 +27,8 @@ package htsjdk.samtools.util;
 import htsjdk.samtools.FileTruncatedException;
 import htsjdk.samtools.SAMException;
 import htsjdk.samtools.seekablestream.SeekableBufferedStream;
+import htsjdk.samtools.seekablestream.SeekableCachingHTTPStream;
 import htsjdk.samtools.seekablestream.SeekableFileStream;
-import htsjdk.samtools.seekablestream.SeekableHTTPStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
 
 import java.io.ByteArrayOutputStream;
@@ -92,7 +92,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     }
 
     public BlockCompressedInputStream(final URL url) {
-        mFile = new SeekableBufferedStream(new SeekableHTTPStream(url));
+        mFile = new SeekableBufferedStream(new SeekableCachingHTTPStream(url));
         mStream = null;
     }
 
@@ -27,8 +27,8 @@ package htsjdk.samtools.util;
 import htsjdk.samtools.Defaults;
 import htsjdk.samtools.SAMException;
 import htsjdk.samtools.seekablestream.SeekableBufferedStream;
+import htsjdk.samtools.seekablestream.SeekableCachingHTTPStream;
 import htsjdk.samtools.seekablestream.SeekableFileStream;
-import htsjdk.samtools.seekablestream.SeekableHTTPStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
 
 import java.io.BufferedInputStream;
@@ -151,7 +151,7 @@ public class IOUtil {
     }
 
     public static SeekableStream maybeBufferedSeekableStream(final URL url) {
-        return maybeBufferedSeekableStream(new SeekableHTTPStream(url));
+        return maybeBufferedSeekableStream(new SeekableCachingHTTPStream(url));
     }
 
     /**
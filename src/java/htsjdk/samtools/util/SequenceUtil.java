@@ -857,13 +857,24 @@ public class SequenceUtil {
      */
     public static void calculateMdAndNmTags(final SAMRecord record, final byte[] ref,
                                             final boolean calcMD, final boolean calcNM) {
+        calculateMdAndNmTags(record, ref, 0, calcMD, calcNM);
+    }
+
+    /**
+     * Same as {@link #calculateMdAndNmTags(SAMRecord, byte[], boolean, boolean)} for a part of the reference.
+     *
+     * @param ref       reference bases covering the alignment
+     * @param refOffset 0-based reference position of the first base in ref
+     */
+    public static void calculateMdAndNmTags(final SAMRecord record, final byte[] ref, final int refOffset,
+                                            final boolean calcMD, final boolean calcNM) {
         if (!calcMD && !calcNM)
             return;
 
         final Cigar cigar = record.getCigar();
         final List<CigarElement> cigarElements = cigar.getCigarElements();
         final byte[] seq = record.getReadBases();
-        final int start = record.getAlignmentStart() - 1;
+        final int start = record.getAlignmentStart() - 1 - refOffset;
         int i, x, y, u = 0;
         int nm = 0;
         final StringBuilder str = new StringBuilder();
@@ -18,17 +18,29 @@
 
 package htsjdk.tribble;
 
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.tribble.index.Index;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.readers.PositionalBufferedStream;
 import htsjdk.tribble.util.ParsingUtils;
 import htsjdk.tribble.util.TabixUtils;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
 
 /**
  * jrobinso
@@ -49,6 +61,9 @@ public abstract class AbstractFeatureReader<T extends Feature, SOURCE> implement
 
     private static ComponentMethods methods = new ComponentMethods();
 
+    private int decodingThreads = 1;
+    private Callable<? extends AsciiFeatureCodec<T>> decodingCodecFactory = null;
+
     public static final Set<String> BLOCK_COMPRESSED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(".gz", ".gzip", ".bgz", ".bgzf")));
 
     /**
@@ -128,6 +143,75 @@ public abstract class AbstractFeatureReader<T extends Feature, SOURCE> implement
         return false;
     }
 
+    /**
+     * Decode the lines of an ASCII file on the given number of threads when iterating over the whole file, for codecs
+     * that decode each line independently of the lines before it. Each thread decodes batches of lines with its own
+     * codec, a new instance of the codec class created with its no-argument constructor and initialised by reading
+     * the header of the file. The features are returned in file order.
+     *
+     * @param threads the number of decoding threads, 1 to decode on the iterating thread
+     */
+    public void setDecodingThreads(final int threads) {
+        setDecodingThreads(threads, null);
+    }
+
+    /**
+     * @param threads the number of decoding threads, 1 to decode on the iterating thread
+     * @param codecFactory creates the codecs of the decoding threads, configured like the codec of this reader
+     * @see #setDecodingThreads(int)
+     */
+    public void setDecodingThreads(final int threads, final Callable<? extends AsciiFeatureCodec<T>> codecFactory) {
+        if (threads < 1) throw new IllegalArgumentException("At least one decoding thread is required: " + threads);
+        this.decodingThreads = threads;
+        this.decodingCodecFactory = codecFactory;
+    }
+
+    public int getDecodingThreads() {
+        return decodingThreads;
+    }
+
+    /**
+     * @return true if iterating over the whole file should decode lines in parallel
+     */
+    protected boolean isParallelDecoding() {
+        return decodingThreads > 1 && codec instanceof AsciiFeatureCodec;
+    }
+
+    /**
+     * Decode the given lines on the decoding threads.
+     *
+     * @param lines lines of the file, either including or following the header
+     * @return an iterator over the decoded features in the order of the lines
+     */
+    protected CloseableTribbleIterator<T> decodeInParallel(final LineIterator lines) throws IOException {
+        final List<AsciiFeatureCodec<T>> codecs = new ArrayList<AsciiFeatureCodec<T>>(decodingThreads);
+        for (int i = 0; i < decodingThreads; i++)
+            codecs.add(createDecodingCodec());
+        return new DecodingIterator<T>(lines, codecs, path);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AsciiFeatureCodec<T> createDecodingCodec() throws IOException {
+        final AsciiFeatureCodec<T> decodingCodec;
+        try {
+            decodingCodec = decodingCodecFactory != null ? decodingCodecFactory.call()
+                    : (AsciiFeatureCodec<T>) codec.getClass().newInstance();
+        } catch (final Exception e) {
+            throw new TribbleException("Unable to create a codec for parallel decoding: " + e.getMessage(), e);
+        }
+
+        InputStream is = ParsingUtils.openInputStream(path);
+        if (path.endsWith("gz") || hasBlockCompressedExtension(path))
+            is = new GZIPInputStream(new BufferedInputStream(is));
+        final LineIterator source = decodingCodec.makeSourceFromStream(new PositionalBufferedStream(is));
+        try {
+            decodingCodec.readHeader(source);
+        } finally {
+            decodingCodec.close(source);
+        }
+        return decodingCodec;
+    }
+
     public static void setComponentMethods(ComponentMethods methods){
         AbstractFeatureReader.methods = methods;
     }
@@ -163,6 +247,144 @@ public abstract class AbstractFeatureReader<T extends Feature, SOURCE> implement
         return header.getHeaderValue();
     }
 
+    /**
+     * Query many intervals at once. The intervals of a contig must be consecutive and sorted by start. The parts of the
+     * file indexed for the intervals of a contig are merged and read once, and each feature is returned for every
+     * interval it overlaps, so overlapping and nearby intervals do not read and decode the same features repeatedly.
+     *
+     * @param intervals the query intervals, 1-based and closed like features
+     * @return an iterator over the features overlapping each interval, one list per interval in the given order
+     * @throws IOException
+     */
+    public CloseableIterator<List<T>> query(final List<? extends Feature> intervals) throws IOException {
+        return new MultiIntervalIterator<T>(this, intervals);
+    }
+
+    /**
+     * Return an iterator over the features of one contig that overlap the span of the given intervals, for
+     * {@link #query(List)}. Readers with an index should override this to read only the parts of the file indexed for
+     * the intervals themselves.
+     *
+     * @param chr the contig of the intervals
+     * @param intervals non-empty list of intervals on the contig, sorted by start
+     * @return an iterator over features sorted by start, which may include features overlapping none of the intervals
+     * @throws IOException
+     */
+    protected CloseableTribbleIterator<T> queryContig(final String chr, final List<? extends Feature> intervals) throws IOException {
+        return query(chr, intervals.get(0).getStart(), maxEnd(intervals));
+    }
+
+    static int maxEnd(final List<? extends Feature> intervals) {
+        int end = 0;
+        for (final Feature interval : intervals) {
+            end = Math.max(end, interval.getEnd());
+        }
+        return end;
+    }
+
+    /**
+     * Queries the intervals of one contig at a time with {@link #queryContig(String, List)} and routes each feature to
+     * the lists of the intervals it overlaps. A list is returned as soon as a feature starting after the end of its
+     * interval has been read, so only the features of intervals that are still open are kept in memory.
+     */
+    static class MultiIntervalIterator<T extends Feature> implements CloseableIterator<List<T>> {
+        private final AbstractFeatureReader<T, ?> reader;
+        private final List<? extends Feature> intervals;
+        /** the index of the first interval of the next contig */
+        private int nextContig = 0;
+
+        private List<? extends Feature> contigIntervals = Collections.emptyList();
+        private final List<List<T>> contigFeatures = new ArrayList<List<T>>();
+        /** the index of the next interval of the contig to return */
+        private int nextInterval = 0;
+        private CloseableTribbleIterator<T> features;
+        private int lastFeatureStart = 0;
+
+        MultiIntervalIterator(final AbstractFeatureReader<T, ?> reader, final List<? extends Feature> intervals) {
+            this.reader = reader;
+            this.intervals = intervals;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextInterval < contigIntervals.size() || nextContig < intervals.size();
+        }
+
+        @Override
+        public List<T> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            if (nextInterval == contigIntervals.size()) startContig();
+
+            while (features != null && lastFeatureStart <= contigIntervals.get(nextInterval).getEnd()) {
+                if (!features.hasNext()) {
+                    closeFeatures();
+                    break;
+                }
+                route(features.next());
+            }
+
+            final List<T> result = contigFeatures.get(nextInterval);
+            contigFeatures.set(nextInterval++, null);
+            return result == null ? Collections.<T>emptyList() : result;
+        }
+
+        private void startContig() {
+            final String chr = intervals.get(nextContig).getContig();
+            int end = nextContig + 1;
+            while (end < intervals.size() && intervals.get(end).getContig().equals(chr)) {
+                if (intervals.get(end).getStart() < intervals.get(end - 1).getStart())
+                    throw new IllegalArgumentException("Query intervals are not sorted by start: " + intervals.get(end - 1) +
+                            " is followed by " + intervals.get(end));
+                end++;
+            }
+            contigIntervals = intervals.subList(nextContig, end);
+            nextContig = end;
+            nextInterval = 0;
+            lastFeatureStart = 0;
+            contigFeatures.clear();
+            contigFeatures.addAll(Collections.<List<T>>nCopies(contigIntervals.size(), null));
+            try {
+                features = reader.queryContig(chr, contigIntervals);
+            } catch (final IOException e) {
+                throw new RuntimeIOException("Unable to query " + chr + " in " + reader.path, e);
+            }
+        }
+
+        private void route(final T feature) {
+            lastFeatureStart = feature.getStart();
+            for (int i = nextInterval; i < contigIntervals.size(); i++) {
+                final Feature interval = contigIntervals.get(i);
+                if (interval.getStart() > feature.getEnd()) break;
+                if (interval.getEnd() >= feature.getStart()) {
+                    List<T> list = contigFeatures.get(i);
+                    if (list == null) {
+                        list = new ArrayList<T>();
+                        contigFeatures.set(i, list);
+                    }
+                    list.add(feature);
+                }
+            }
+        }
+
+        private void closeFeatures() {
+            features.close();
+            features = null;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove is not supported in Iterators");
+        }
+
+        @Override
+        public void close() {
+            if (features != null) closeFeatures();
+            nextContig = intervals.size();
+            contigIntervals = Collections.emptyList();
+            nextInterval = 0;
+        }
+    }
+
     static class EmptyIterator<T extends Feature> implements CloseableTribbleIterator<T> {
         public Iterator iterator() { return this; }
         public boolean hasNext() { return false; }
@@ -171,6 +393,87 @@ public abstract class AbstractFeatureReader<T extends Feature, SOURCE> implement
         @Override public void close() { }
     }
 
+    /**
+     * Iterates over the features decoded from the lines of a file by a {@link DecodingPipeline}.
+     */
+    static class DecodingIterator<T extends Feature> extends DecodingPipeline<AsciiFeatureCodec<T>, List<String>, List<T>>
+            implements CloseableTribbleIterator<T> {
+        private final LineIterator lines;
+        private Iterator<T> batch = Collections.<T>emptyList().iterator();
+        private T currentRecord;
+
+        DecodingIterator(final LineIterator lines, final List<AsciiFeatureCodec<T>> codecs, final String path) {
+            super(codecs, path, "FeatureDecoder");
+            this.lines = lines;
+            readNextRecord();
+        }
+
+        private void readNextRecord() {
+            while (!batch.hasNext()) {
+                final List<T> next = nextBatch();
+                if (next == null) {
+                    currentRecord = null;
+                    return;
+                }
+                batch = next.iterator();
+            }
+            currentRecord = batch.next();
+        }
+
+        @Override
+        protected List<String> readBatch() {
+            if (!lines.hasNext()) return null;
+            final List<String> batchLines = new ArrayList<String>(BATCH_SIZE);
+            while (batchLines.size() < BATCH_SIZE && lines.hasNext())
+                batchLines.add(lines.next());
+            return batchLines;
+        }
+
+        @Override
+        protected List<T> decodeBatch(final AsciiFeatureCodec<T> decodingCodec, final List<String> batchLines) {
+            final List<T> features = new ArrayList<T>(batchLines.size());
+            for (final String line : batchLines) {
+                final T f;
+                try {
+                    f = decodingCodec.decode(line);
+                } catch (final NumberFormatException e) {
+                    throw new TribbleException.MalformedFeatureFile("Error parsing line: " + line, getPath(), e);
+                }
+                if (f != null)
+                    features.add(f);
+            }
+            return features;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return currentRecord != null;
+        }
+
+        @Override
+        public T next() {
+            final T ret = currentRecord;
+            readNextRecord();
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove is not supported in Iterators");
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            CloserUtil.close(lines);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return this;
+        }
+    }
+
     public static class ComponentMethods{
 
         public boolean isTabix(String resourcePath, String indexPath) throws IOException{
@@ -82,6 +82,34 @@ public abstract class AsciiFeatureCodec<T extends Feature> extends AbstractFeatu
     /** @see AsciiFeatureCodec#decode(htsjdk.tribble.readers.LineIterator) */
     public abstract T decode(String s);
 
+    /**
+     * Decodes the next line with {@link #decodeLoc(String)}, so that codecs able to find the location of a
+     * feature without decoding all of it are fast to index.
+     */
+    @Override
+    public Feature decodeLoc(final LineIterator lineIterator) {
+        return decodeLoc(lineIterator.next());
+    }
+
+    /**
+     * Decode the location of the feature on a line.  By default this decodes the whole feature; codecs override
+     * it when they can find the location more cheaply, e.g. with a {@link htsjdk.tribble.util.ColumnLocationParser}.
+     *
+     * @return a feature with the location of the feature on the line, or null if {@link #decode(String)} would
+     * return null for it
+     */
+    public Feature decodeLoc(final String line) {
+        return decode(line);
+    }
+
+    /**
+     * @return true if {@link #decodeLoc(String)} is much cheaper than {@link #decode(String)}, so that readers
+     * can use it to skip lines outside of a query before decoding them
+     */
+    public boolean isDecodeLocFast() {
+        return false;
+    }
+
     @Override
     public FeatureCodecHeader readHeader(final LineIterator lineIterator) throws IOException {
         // TODO: Track header end here, rather than assuming there isn't one.
@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads batches of input on the calling thread and decodes them on a thread pool, keeping a few batches per thread in
+ * flight, and returns the decoded batches in input order.  Each decoding thread borrows one of the codecs for a whole
+ * batch, so no codec is used by two threads at once.
+ *
+ * @param <CODEC> the type of the codecs, one per decoding thread
+ * @param <IN>    the type of the batches read from the input
+ * @param <OUT>   the type of the decoded batches
+ */
+public abstract class DecodingPipeline<CODEC, IN, OUT> {
+    /** the number of lines in a batch */
+    public static final int BATCH_SIZE = 1000;
+
+    private final String path;
+    private final BlockingQueue<CODEC> codecs;
+    private final ExecutorService executor;
+    private final int maxPendingBatches;
+    private final Deque<Future<OUT>> pending = new ArrayDeque<Future<OUT>>();
+
+    /**
+     * @param codecs     distinct instances of the same codec, one per decoding thread
+     * @param path       the path of the input, reported with decoding errors
+     * @param threadName the name of the decoding threads
+     */
+    protected DecodingPipeline(final List<? extends CODEC> codecs, final String path, final String threadName) {
+        this.path = path;
+        this.codecs = new LinkedBlockingQueue<CODEC>(codecs);
+        this.maxPendingBatches = 2 * codecs.size();
+        this.executor = Executors.newFixedThreadPool(codecs.size(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Read the next batch of input, on the calling thread.
+     *
+     * @return the batch, or null if there is no more input
+     */
+    protected abstract IN readBatch();
+
+    /**
+     * Decode a batch, on one of the decoding threads.
+     *
+     * @param codec the codec borrowed for this batch
+     * @param batch a batch returned by {@link #readBatch()}
+     */
+    protected abstract OUT decodeBatch(CODEC codec, IN batch) throws Exception;
+
+    /**
+     * @return the path of the input
+     */
+    protected String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the next decoded batch, or null once all input has been decoded, in which case the pipeline is closed
+     */
+    protected OUT nextBatch() {
+        submitBatches();
+        if (pending.isEmpty()) {
+            close();
+            return null;
+        }
+        return takeBatch();
+    }
+
+    private void submitBatches() {
+        while (pending.size() < maxPendingBatches) {
+            final IN batch = readBatch();
+            if (batch == null) return;
+            pending.add(executor.submit(new Callable<OUT>() {
+                @Override
+                public OUT call() throws Exception {
+                    final CODEC codec = codecs.take();
+                    try {
+                        return decodeBatch(codec, batch);
+                    } finally {
+                        codecs.add(codec);
+                    }
+                }
+            }));
+        }
+    }
+
+    private OUT takeBatch() {
+        try {
+            return pending.poll().get();
+        } catch (final InterruptedException e) {
+            close();
+            throw new TribbleException("Decoding interrupted.", e);
+        } catch (final ExecutionException e) {
+            close();
+            final Throwable cause = e.getCause();
+            if (cause instanceof TribbleException) {
+                ((TribbleException) cause).setSource(path);
+                throw (TribbleException) cause;
+            }
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new TribbleException("Exception encountered in decoding thread.", cause);
+        }
+    }
+
+    /**
+     * Stop the decoding threads and drop the batches in flight.
+     */
+    public void close() {
+        executor.shutdownNow();
+        pending.clear();
+    }
+}
@@ -25,6 +25,7 @@ package htsjdk.tribble;
 
 import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.tribble.readers.LineIteratorImpl;
 import htsjdk.tribble.readers.LineReader;
 import htsjdk.tribble.readers.LineReaderUtil;
 import htsjdk.tribble.readers.PositionalBufferedStream;
@@ -125,10 +126,30 @@ public class TabixFeatureReader<T extends Feature, SOURCE> extends AbstractFeatu
         return new FeatureIterator<T>(lineReader, start - 1, end);
     }
 
+    /**
+     * Read the merged tabix chunks of the intervals.
+     */
+    @Override
+    protected CloseableTribbleIterator<T> queryContig(final String chr, final List<? extends Feature> intervals) throws IOException {
+        if (!getSequenceNames().contains(chr)) {
+            return new EmptyIterator<T>();
+        }
+        final int[] begs = new int[intervals.size()];
+        final int[] ends = new int[intervals.size()];
+        for (int i = 0; i < begs.length; i++) {
+            begs[i] = intervals.get(i).getStart() - 1;
+            ends[i] = intervals.get(i).getEnd();
+        }
+        final TabixIteratorLineReader lineReader = new TabixIteratorLineReader(tabixReader.query(tabixReader.chr2tid(chr), begs, ends));
+        return new FeatureIterator<T>(lineReader, begs[0], maxEnd(intervals));
+    }
+
     public CloseableTribbleIterator<T> iterator() throws IOException {
         final InputStream is = new BlockCompressedInputStream(ParsingUtils.openInputStream(path));
         final PositionalBufferedStream stream = new PositionalBufferedStream(is);
         final LineReader reader = LineReaderUtil.fromBufferedStream(stream, LineReaderUtil.LineReaderOption.SYNCHRONOUS);
+        if (isParallelDecoding())
+            return decodeInParallel(new LineIteratorImpl(reader));
         return new FeatureIterator<T>(reader, 0, Integer.MAX_VALUE);
     }
 
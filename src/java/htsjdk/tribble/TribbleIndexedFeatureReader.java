@@ -28,7 +28,8 @@ import htsjdk.samtools.seekablestream.SeekableStreamFactory;
 import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.tribble.index.Block;
 import htsjdk.tribble.index.Index;
-import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.IndexCache;
+import htsjdk.tribble.readers.LineIterator;
 import htsjdk.tribble.readers.PositionalBufferedStream;
 import htsjdk.tribble.util.ParsingUtils;
 
@@ -36,6 +37,8 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
@@ -102,7 +105,7 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
     public TribbleIndexedFeatureReader(final String featureFile, final String indexFile, final FeatureCodec<T, SOURCE> codec, final boolean requireIndex) throws IOException {
         this(featureFile, codec, false); // required to read the header
         if (indexFile != null && ParsingUtils.resourceExists(indexFile)) {
-            index = IndexFactory.loadIndex(indexFile);
+            index = IndexCache.getSharedCache().getIndex(indexFile);
             this.needCheckForIndex = false;
         } else {
             if (requireIndex) {
@@ -135,12 +138,12 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
     private void loadIndex() throws IOException{
         String indexFile = Tribble.indexFile(this.path);
         if (ParsingUtils.resourceExists(indexFile)) {
-            index = IndexFactory.loadIndex(indexFile);
+            index = IndexCache.getSharedCache().getIndex(indexFile);
         } else {
             // See if the index itself is gzipped
             indexFile = ParsingUtils.appendToPath(indexFile, ".gz");
             if (ParsingUtils.resourceExists(indexFile)) {
-                index = IndexFactory.loadIndex(indexFile);
+                index = IndexCache.getSharedCache().getIndex(indexFile);
             }
         }
         this.needCheckForIndex = false;
@@ -263,6 +266,52 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
     }
 
 
+    /**
+     * Read the union of the index blocks of the intervals, merging blocks that overlap or touch so that each byte range
+     * is read once.
+     */
+    @Override
+    protected CloseableTribbleIterator<T> queryContig(final String chr, final List<? extends Feature> intervals) throws IOException {
+
+        if (!this.hasIndex()) {
+            throw new TribbleException("Index not found for: " + path);
+        }
+
+        if (!index.containsChromosome(chr)) {
+            return new EmptyIterator<T>();
+        }
+        final List<Block> blocks = new ArrayList<Block>();
+        for (final Feature interval : intervals) {
+            blocks.addAll(index.getBlocks(chr, interval.getStart() - 1, interval.getEnd()));
+        }
+        return new QueryIterator(chr, intervals.get(0).getStart(), maxEnd(intervals), mergeBlocks(blocks));
+    }
+
+    /**
+     * @return the non-empty byte ranges covered by the blocks, sorted and merged where they overlap or touch
+     */
+    static List<Block> mergeBlocks(final List<Block> blocks) {
+        final List<Block> sorted = new ArrayList<Block>(blocks);
+        Collections.sort(sorted, new Comparator<Block>() {
+            @Override
+            public int compare(final Block b1, final Block b2) {
+                return b1.getStartPosition() < b2.getStartPosition() ? -1 : (b1.getStartPosition() == b2.getStartPosition() ? 0 : 1);
+            }
+        });
+        final List<Block> merged = new ArrayList<Block>();
+        Block last = null;
+        for (final Block block : sorted) {
+            if (block.getSize() <= 0) continue;
+            if (last != null && block.getStartPosition() <= last.getEndPosition()) {
+                if (block.getEndPosition() > last.getEndPosition()) last.setEndPosition(block.getEndPosition());
+            } else {
+                last = new Block(block.getStartPosition(), block.getSize());
+                merged.add(last);
+            }
+        }
+        return merged;
+    }
+
     /**
      * @return Return an iterator to iterate over the entire file
      * @throws IOException
@@ -277,6 +326,7 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
     class WFIterator implements CloseableTribbleIterator<T> {
         private T currentRecord;
         private SOURCE source;
+        private CloseableTribbleIterator<T> pipeline;
 
         /**
          * Constructor for iterating over the entire file (seekableStream).
@@ -301,6 +351,8 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
              */
             pbs.skip(header.getHeaderEnd());
             source = codec.makeSourceFromStream(pbs);
+            if (isParallelDecoding())
+                pipeline = decodeInParallel((LineIterator) source);
             readNextRecord();
         }
 
@@ -330,6 +382,12 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
         private void readNextRecord() throws IOException {
             currentRecord = null;
 
+            if (pipeline != null) {
+                if (pipeline.hasNext())
+                    currentRecord = pipeline.next();
+                return;
+            }
+
             while (!codec.isDone(source)) {
                 final T f;
                 try {
@@ -359,6 +417,8 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
 
         @Override
         public void close() {
+            if (pipeline != null)
+                pipeline.close();
             codec.close(source);
         }
 
@@ -379,11 +439,15 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
         private SOURCE source;
         private SeekableStream mySeekableStream;
         private Iterator<Block> blockIterator;
+        // set for codecs that find locations cheaply, to skip lines ending before the query without decoding them
+        private final AsciiFeatureCodec<?> locationCodec;
 
 
         public QueryIterator(final String chr, final int start, final int end, final List<Block> blocks) throws IOException {
             this.start = start;
             this.end = end;
+            locationCodec = codec instanceof AsciiFeatureCodec && ((AsciiFeatureCodec<?>) codec).isDecodeLocFast() ?
+                    (AsciiFeatureCodec<?>) codec : null;
             mySeekableStream = getSeekableStream();
             blockIterator = blocks.iterator();
             advanceBlock();
@@ -447,6 +511,9 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
                 while (!codec.isDone(source)) {  // Loop through current block
                     final T f;
                     try {
+                        if (locationCodec != null && skipLineBeforeStart((LineIterator) source)) {
+                            continue;   // Skip
+                        }
                         f = codec.decode(source);
                         if (f == null) {
                             continue;   // Skip
@@ -483,6 +550,21 @@ public class TribbleIndexedFeatureReader<T extends Feature, SOURCE> extends Abst
         }
 
 
+        /**
+         * Skip the next line if the location of its feature shows that the feature ends before the query start.
+         *
+         * @return true if the line was skipped
+         */
+        private boolean skipLineBeforeStart(final LineIterator lines) {
+            final Feature location = locationCodec.decodeLoc(lines.peek());
+            if (location == null || location.getEnd() >= start ||
+                    (chrAlias != null && !location.getContig().equals(chrAlias))) {
+                return false;
+            }
+            lines.next();
+            return true;
+        }
+
         public void remove() {
             throw new UnsupportedOperationException("Remove is not supported.");
         }
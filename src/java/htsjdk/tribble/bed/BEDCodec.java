@@ -24,8 +24,10 @@
 package htsjdk.tribble.bed;
 
 import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
 import htsjdk.tribble.annotation.Strand;
 import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.util.ColumnLocationParser;
 import htsjdk.tribble.util.ParsingUtils;
 
 import java.util.regex.Pattern;
@@ -41,6 +43,7 @@ public class BEDCodec extends AsciiFeatureCodec<BEDFeature> {
 
     private static final Pattern SPLIT_PATTERN = Pattern.compile("\\t|( +)");
     private final int startOffsetValue;
+    private final ColumnLocationParser locationParser;
 
     /**
      * Calls {@link #BEDCodec(StartOffset)} with an argument
@@ -58,27 +61,44 @@ public class BEDCodec extends AsciiFeatureCodec<BEDFeature> {
     public BEDCodec(final StartOffset startOffset) {
         super(BEDFeature.class);
         this.startOffsetValue = startOffset.value();
+        this.locationParser = new ColumnLocationParser(0, 1, 2, startOffsetValue, false);
     }
 
 
-    public BEDFeature decodeLoc(String line) {
-        return decode(line);
+    @Override
+    public Feature decodeLoc(String line) {
+        return isFeatureLine(line) ? locationParser.parse(line) : null;
+    }
+
+    @Override
+    public boolean isDecodeLocFast() {
+        return true;
     }
 
     @Override
     public BEDFeature decode(String line) {
 
-        if (line.trim().length() == 0) {
+        if (!isFeatureLine(line)) {
             return null;
         }
 
+        String[] tokens = SPLIT_PATTERN.split(line, -1);
+        return decode(tokens);
+    }
+
+    /**
+     * @return false for empty lines and header lines, which are passed to {@link #readHeaderLine(String)}
+     */
+    private boolean isFeatureLine(String line) {
+        if (line.trim().length() == 0) {
+            return false;
+        }
+
         if (line.startsWith("#") || line.startsWith("track") || line.startsWith("browser")) {
             this.readHeaderLine(line);
-            return null;
+            return false;
         }
-
-        String[] tokens = SPLIT_PATTERN.split(line, -1);
-        return decode(tokens);
+        return true;
     }
 
     @Override
@@ -28,6 +28,7 @@ import htsjdk.tribble.AsciiFeatureCodec;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.exception.CodecLineParsingException;
 import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.util.ColumnLocationParser;
 
 import java.util.Arrays;
 
@@ -53,12 +54,23 @@ import java.util.Arrays;
  */
 @Deprecated
 public class GeliTextCodec extends AsciiFeatureCodec<GeliTextFeature> {
+    private final ColumnLocationParser locationParser = new ColumnLocationParser(0, 1, -1, 0, true);
+
     public GeliTextCodec() {
         super(GeliTextFeature.class);
     }
 
+    @Override
     public Feature decodeLoc(final String line) {
-        return decode(line);
+        // clean out header lines and comments
+        if (line.startsWith("#") || line.startsWith("@"))
+            return null;
+        return locationParser.parse(line);
+    }
+
+    @Override
+    public boolean isDecodeLocFast() {
+        return true;
     }
 
     @Override
@@ -24,9 +24,15 @@ import htsjdk.tribble.util.LittleEndianInputStream;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -92,6 +98,14 @@ public abstract class AbstractIndex implements MutableIndex {
      */
     protected LinkedHashMap<String, ChrIndex> chrIndices;
 
+    /**
+     * The serialized chromosome indexes of an index read from a stream, and the offset of each chromosome's entry,
+     * in file order.  Chromosome indexes are only deserialized into {@link #chrIndices} when first used; both fields
+     * are cleared once all of them have been loaded.  Access to {@link #chrIndices} is synchronized while they are set.
+     */
+    private byte[] chrIndexBytes;
+    private volatile LinkedHashMap<String, Integer> chrIndexOffsets;
+
     /**
      * Any flags we're using
      */
@@ -109,6 +123,8 @@ public abstract class AbstractIndex implements MutableIndex {
         }
 
         final AbstractIndex other = (AbstractIndex) obj;
+        loadAllChrIndices();
+        other.loadAllChrIndices();
 
         if (version != other.version) {
             System.err.printf("equals version: this %d != other %d%n", version, other.version);
@@ -227,7 +243,8 @@ public abstract class AbstractIndex implements MutableIndex {
     }
 
     public boolean containsChromosome(final String chr) {
-        return chrIndices.containsKey(chr);
+        final Map<String, Integer> offsets = chrIndexOffsets;
+        return offsets != null ? offsets.containsKey(chr) : chrIndices.containsKey(chr);
     }
 
     public void finalizeIndex() {
@@ -307,7 +324,8 @@ public abstract class AbstractIndex implements MutableIndex {
     }
 
     public List<String> getSequenceNames() {
-        return new ArrayList<String>(chrIndices.keySet());
+        final Map<String, Integer> offsets = chrIndexOffsets;
+        return new ArrayList<String>(offsets != null ? offsets.keySet() : chrIndices.keySet());
     }
 
     public List<Block> getBlocks(final String chr, final int start, final int end) {
@@ -324,7 +342,14 @@ public abstract class AbstractIndex implements MutableIndex {
      * @throws IllegalArgumentException if {@code chr} not found
      */
     private final ChrIndex getChrIndex(final String chr) {
-        final ChrIndex chrIdx = chrIndices.get(chr);
+        final ChrIndex chrIdx;
+        if (chrIndexOffsets != null) {
+            synchronized (this) {
+                chrIdx = loadChrIndex(chr);
+            }
+        } else {
+            chrIdx = chrIndices.get(chr);
+        }
         if (chrIdx == null) {
             throw new IllegalArgumentException("getBlocks() called with of unknown contig " + chr);
         } else {
@@ -332,7 +357,39 @@ public abstract class AbstractIndex implements MutableIndex {
         }
     }
 
+    /**
+     * Deserialize the chromosome index for {@code chr} if that has not been done yet.  Must be called while
+     * holding the lock on this index.
+     *
+     * @return the chromosome index, or null if there is none for {@code chr}
+     */
+    private ChrIndex loadChrIndex(final String chr) {
+        ChrIndex chrIdx = chrIndices.get(chr);
+        if (chrIdx == null && chrIndexOffsets != null && chrIndexOffsets.containsKey(chr)) {
+            chrIdx = readChrIndex(new LittleEndianInputStream(new ByteArrayInputStream(chrIndexBytes,
+                    chrIndexOffsets.get(chr), chrIndexBytes.length)));
+            chrIndices.put(chr, chrIdx);
+        }
+        return chrIdx;
+    }
+
+    /**
+     * Deserialize all chromosome indexes that have not been used yet, so that {@link #chrIndices} holds the
+     * complete index in file order.  Subclasses must call this before iterating over {@link #chrIndices}.
+     */
+    protected synchronized void loadAllChrIndices() {
+        if (chrIndexOffsets == null) return;
+        final LinkedHashMap<String, ChrIndex> loaded = new LinkedHashMap<String, ChrIndex>(chrIndexOffsets.size());
+        for (final String chr : chrIndexOffsets.keySet()) {
+            loaded.put(chr, loadChrIndex(chr));
+        }
+        chrIndices = loaded;
+        chrIndexBytes = null;
+        chrIndexOffsets = null;
+    }
+
     public void write(final LittleEndianOutputStream stream) throws IOException {
+        loadAllChrIndices();
         writeHeader(stream);
 
         //# of chromosomes
@@ -352,6 +409,11 @@ public abstract class AbstractIndex implements MutableIndex {
 
     }
 
+    /**
+     * Read the index.  The header is parsed immediately, but if the index type can locate the entries of its
+     * chromosome indexes with {@link #skipChrIndex(ByteBuffer)}, those are only kept in serialized form and each
+     * one is deserialized when first queried.
+     */
     public void read(final LittleEndianInputStream dis) throws IOException {
         try {
             readHeader(dis);
@@ -359,24 +421,90 @@ public abstract class AbstractIndex implements MutableIndex {
             int nChromosomes = dis.readInt();
             chrIndices = new LinkedHashMap<String, ChrIndex>(nChromosomes);
 
-            while (nChromosomes-- > 0) {
-                final ChrIndex chrIdx = (ChrIndex) getChrIndexClass().newInstance();
-                chrIdx.read(dis);
-                chrIndices.put(chrIdx.getName(), chrIdx);
+            final byte[] bytes = readFully(dis);
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            final LinkedHashMap<String, Integer> offsets = new LinkedHashMap<String, Integer>(nChromosomes);
+            try {
+                while (nChromosomes > 0) {
+                    final int offset = buffer.position();
+                    final String name = skipChrIndex(buffer);
+                    if (name == null) break;
+                    offsets.put(name, offset);
+                    nChromosomes--;
+                }
+            } catch (final BufferUnderflowException e) {
+                throw new EOFException();
+            } catch (final IllegalArgumentException e) {
+                throw new EOFException();
             }
 
+            if (nChromosomes == 0) {
+                chrIndexBytes = bytes;
+                chrIndexOffsets = offsets;
+            } else {
+                // this index type can't skip its chromosome indexes, so read them all now
+                final LittleEndianInputStream chrStream = new LittleEndianInputStream(new ByteArrayInputStream(bytes));
+                while (nChromosomes-- > 0) {
+                    final ChrIndex chrIdx = readChrIndex(chrStream);
+                    chrIndices.put(chrIdx.getName(), chrIdx);
+                }
+            }
+        } finally {
+            dis.close();
+        }
+
+        //printIndexInfo();
+    }
+
+    private ChrIndex readChrIndex(final LittleEndianInputStream dis) {
+        try {
+            final ChrIndex chrIdx = (ChrIndex) getChrIndexClass().newInstance();
+            chrIdx.read(dis);
+            return chrIdx;
         } catch (final InstantiationException e) {
             throw new TribbleException.UnableToCreateCorrectIndexType("Unable to create class " + getChrIndexClass(), e);
         } catch (final IllegalAccessException e) {
             throw new TribbleException.UnableToCreateCorrectIndexType("Unable to create class " + getChrIndexClass(), e);
-        } finally {
-            dis.close();
+        } catch (final IOException e) {
+            throw new TribbleException("Unable to read the index of a chromosome", e);
+        }
+    }
+
+    private static byte[] readFully(final LittleEndianInputStream dis) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        final byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = dis.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
         }
+        return bytes.toByteArray();
+    }
 
-        //printIndexInfo();
+    /**
+     * Move the position of {@code buffer} past the serialized chromosome index that starts there, without
+     * deserializing it.  Index types that support this have their chromosome indexes loaded on demand.
+     *
+     * @param buffer little endian buffer positioned at the start of a chromosome index written by
+     *               {@link ChrIndex#write(LittleEndianOutputStream)}
+     * @return the name of the chromosome, or null, without moving the buffer, if this index type can't skip its
+     * chromosome indexes
+     * @throws BufferUnderflowException if the chromosome index extends beyond the end of the buffer
+     */
+    protected String skipChrIndex(final ByteBuffer buffer) {
+        return null;
+    }
+
+    /**
+     * Read a null terminated string, in the format of {@link LittleEndianInputStream#readString()}.
+     */
+    protected static String readString(final ByteBuffer buffer) {
+        final int start = buffer.position();
+        while (buffer.get() != 0) ;
+        return new String(buffer.array(), buffer.arrayOffset() + start, buffer.position() - start - 1);
     }
 
     protected void printIndexInfo() {
+        loadAllChrIndices();
         System.out.println(String.format("Index for %s with %d indices", indexedFile, chrIndices.size()));
         final BlockStats stats = getBlockStats(true);
         System.out.println(String.format("  total blocks %d", stats.total));
@@ -388,6 +516,7 @@ public abstract class AbstractIndex implements MutableIndex {
     }
 
     protected BlockStats getBlockStats(final boolean logDetails) {
+        loadAllChrIndices();
         final BlockStats stats = new BlockStats();
         for (final Map.Entry<String, ChrIndex> elt : chrIndices.entrySet()) {
             final List<Block> blocks = elt.getValue().getBlocks();
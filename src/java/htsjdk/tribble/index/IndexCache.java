@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble.index;
+
+import htsjdk.samtools.Defaults;
+import htsjdk.samtools.seekablestream.SeekableStreamFactory;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe LRU cache of loaded indexes, so that readers opening the same indexed resources over and over share one
+ * copy of each index instead of loading it every time. Local index files are keyed by path, modification time and
+ * length, so an index rewritten on disk is loaded again; other resources are keyed by path only.
+ *
+ * The cache is bounded by the total uncompressed size of the cached index files, which is close to the memory taken by
+ * the primitive-array representations of linear and interval tree indexes. Indexes are shared, so they must not be
+ * modified once obtained from the cache.
+ */
+public class IndexCache {
+    private static IndexCache sharedCache;
+
+    private final long maxBytes;
+    private long bytes = 0;
+
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private static class Entry {
+        final String key;
+        final Index index;
+        final long size;
+
+        Entry(final String key, final Index index, final long size) {
+            this.key = key;
+            this.index = index;
+            this.size = size;
+        }
+    }
+
+    /**
+     * @param maxBytes the maximum total uncompressed size of the cached index files, in bytes
+     */
+    public IndexCache(final long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("Negative cache size: " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the process-wide cache, sized by {@link Defaults#INDEX_CACHE_SIZE}
+     */
+    public static synchronized IndexCache getSharedCache() {
+        if (sharedCache == null) {
+            sharedCache = new IndexCache(Defaults.INDEX_CACHE_SIZE);
+        }
+        return sharedCache;
+    }
+
+    /**
+     * Return the cached index for the path, loading it with {@link IndexFactory#loadIndex(String)} if it is not cached
+     * or the file has changed since it was cached. Indexes larger than the whole cache are loaded but not cached.
+     *
+     * @param indexFile the path or URL of the index
+     * @return the index
+     */
+    public Index getIndex(final String indexFile) {
+        final String key = key(indexFile);
+        synchronized (this) {
+            final Entry entry = map.get(indexFile);
+            if (entry != null && entry.key.equals(key)) return entry.index;
+        }
+
+        final long[] size = new long[1];
+        final Index index = IndexFactory.loadIndex(indexFile, size);
+        put(indexFile, new Entry(key, index, size[0]));
+        return index;
+    }
+
+    private synchronized void put(final String indexFile, final Entry entry) {
+        final Entry previous = map.remove(indexFile);
+        if (previous != null) bytes -= previous.size;
+        if (entry.size > maxBytes) return;
+
+        map.put(indexFile, entry);
+        bytes += entry.size;
+        final Iterator<Map.Entry<String, Entry>> iterator = map.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            final Entry eldest = iterator.next().getValue();
+            if (eldest == entry) continue;
+            iterator.remove();
+            bytes -= eldest.size;
+        }
+    }
+
+    private static String key(final String indexFile) {
+        if (SeekableStreamFactory.isFilePath(indexFile)) {
+            final File file = new File(indexFile);
+            return indexFile + "\t" + file.lastModified() + "\t" + file.length();
+        }
+        return indexFile;
+    }
+
+    public synchronized void remove(final String indexFile) {
+        final Entry entry = map.remove(indexFile);
+        if (entry != null) bytes -= entry.size;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return the number of cached indexes
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * @return the total uncompressed size of the cached index files, in bytes
+     */
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
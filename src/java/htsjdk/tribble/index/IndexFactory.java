@@ -39,6 +39,9 @@ import htsjdk.tribble.index.linear.LinearIndexCreator;
 import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.index.tabix.TabixIndex;
 import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
+import htsjdk.tribble.readers.LineIterator;
 import htsjdk.tribble.readers.PositionalBufferedStream;
 import htsjdk.tribble.util.LittleEndianInputStream;
 import htsjdk.tribble.util.LittleEndianOutputStream;
@@ -51,12 +54,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -165,6 +173,14 @@ public class IndexFactory {
      * @param indexFile from which to load the index
      */
     public static Index loadIndex(final String indexFile) {
+        return loadIndex(indexFile, null);
+    }
+
+    /**
+     * @param bytesRead if not null, its first element receives the number of uncompressed bytes of the index read
+     * @see #loadIndex(String)
+     */
+    static Index loadIndex(final String indexFile, final long[] bytesRead) {
         final Index idx = null;
         BufferedInputStream bufferedInputStream = null;
         final LittleEndianInputStream dis = null;
@@ -176,6 +192,23 @@ public class IndexFactory {
             else if (indexFile.endsWith(TabixUtils.STANDARD_INDEX_EXTENSION)) {
                 inputStream = new BlockCompressedInputStream(inputStream);
             }
+            if (bytesRead != null) {
+                inputStream = new FilterInputStream(inputStream) {
+                    @Override
+                    public int read() throws IOException {
+                        final int b = super.read();
+                        if (b >= 0) bytesRead[0]++;
+                        return b;
+                    }
+
+                    @Override
+                    public int read(final byte[] b, final int off, final int len) throws IOException {
+                        final int n = super.read(b, off, len);
+                        if (n > 0) bytesRead[0] += n;
+                        return n;
+                    }
+                };
+            }
             // Must be buffered, because getIndexType uses mark and reset
             bufferedInputStream = new BufferedInputStream(inputStream, Defaults.NON_ZERO_BUFFER_SIZE);
             final Class indexClass = IndexType.getIndexType(bufferedInputStream).getIndexType();
@@ -278,6 +311,31 @@ public class IndexFactory {
         throw new IllegalArgumentException("Unrecognized IndexType " + type);
     }
 
+    /**
+     * Create an index of the specified type with default binning parameters, decoding the locations of the features
+     * of an ASCII file on several threads.  The lines are read, and the index is built, in file order on the calling
+     * thread.
+     *
+     * @param inputFile    the input file to load features from
+     * @param codecFactory creates a codec for each decoding thread; each codec is initialised by reading the header
+     * @param type         the type of index to create
+     * @param threads      the number of decoding threads
+     */
+    public static <FEATURE_TYPE extends Feature> Index createIndex(final File inputFile,
+                                                                   final Callable<? extends AsciiFeatureCodec<FEATURE_TYPE>> codecFactory,
+                                                                   final IndexType type,
+                                                                   final int threads) {
+        final IndexCreator indexCreator;
+        switch (type) {
+            case INTERVAL_TREE: indexCreator = new IntervalIndexCreator(inputFile); break;
+            case LINEAR:        indexCreator = new LinearIndexCreator(inputFile); break;
+            // Tabix index initialization requires additional information, so this construction method won't work.
+            case TABIX:         throw new UnsupportedOperationException("Tabix indices cannot be created through a generic interface");
+            default:            throw new IllegalArgumentException("Unrecognized IndexType " + type);
+        }
+        return createIndex(inputFile, createFeatureIterator(inputFile, codecFactory, threads), indexCreator);
+    }
+
     /**
      * Write the index to a file; little endian.
      * @param idx
@@ -329,6 +387,36 @@ public class IndexFactory {
 
 
 
+    /**
+     * Create a tabix index, decoding the locations of the features of an ASCII file on several threads.
+     *
+     * @param codecFactory creates a codec for each decoding thread; each codec is initialised by reading the header
+     * @param threads      the number of decoding threads
+     * @see #createTabixIndex(File, FeatureCodec, TabixFormat, SAMSequenceDictionary)
+     */
+    public static <FEATURE_TYPE extends Feature> TabixIndex createTabixIndex(final File inputFile,
+                                                                             final Callable<? extends AsciiFeatureCodec<FEATURE_TYPE>> codecFactory,
+                                                                             final TabixFormat tabixFormat,
+                                                                             final SAMSequenceDictionary sequenceDictionary,
+                                                                             final int threads) {
+        final TabixIndexCreator indexCreator = new TabixIndexCreator(sequenceDictionary, tabixFormat);
+        return (TabixIndex)createIndex(inputFile, createFeatureIterator(inputFile, codecFactory, threads), indexCreator);
+    }
+
+    private static <FEATURE_TYPE extends Feature> FeatureIterator<FEATURE_TYPE, LineIterator> createFeatureIterator(
+            final File inputFile, final Callable<? extends AsciiFeatureCodec<FEATURE_TYPE>> codecFactory, final int threads) {
+        if (threads < 1) throw new IllegalArgumentException("At least one decoding thread is required: " + threads);
+        final List<AsciiFeatureCodec<FEATURE_TYPE>> codecs = new ArrayList<AsciiFeatureCodec<FEATURE_TYPE>>(threads);
+        for (int i = 0; i < threads; i++) {
+            try {
+                codecs.add(codecFactory.call());
+            } catch (final Exception e) {
+                throw new TribbleException("Unable to create a codec for parallel decoding: " + e.getMessage(), e);
+            }
+        }
+        return FeatureIterator.create(inputFile, codecs);
+    }
+
     private static Index createIndex(final File inputFile, final FeatureIterator iterator, final IndexCreator creator) {
         Feature lastFeature = null;
         Feature currentFeature;
@@ -390,27 +478,55 @@ public class IndexFactory {
         // we also need cache our position
         private long cachedPosition;
 
+        // decodes the locations of lines read from source on several threads, if not null
+        private final LocationDecoder<FEATURE_TYPE> locationDecoder;
+
         /**
          *
          * @param inputFile The file from which to read. Stream for reading is opened on construction.
          * @param codec
          */
         public FeatureIterator(final File inputFile, final FeatureCodec<FEATURE_TYPE, SOURCE> codec) {
+            this(inputFile, codec, (SOURCE) codec.makeIndexableSourceFromStream(
+                    initStream(inputFile, readHeader(inputFile, codec).getHeaderEnd())), null);
+        }
+
+        private FeatureIterator(final File inputFile, final FeatureCodec<FEATURE_TYPE, SOURCE> codec, final SOURCE source,
+                                final LocationDecoder<FEATURE_TYPE> locationDecoder) {
             this.codec = codec;
             this.inputFile = inputFile;
-            final FeatureCodecHeader header = readHeader();
-            source = (SOURCE) codec.makeIndexableSourceFromStream(initStream(inputFile, header.getHeaderEnd()));
+            this.source = source;
+            this.locationDecoder = locationDecoder;
             readNextFeature();
         }
 
+        /**
+         * Decode the locations of the lines of an ASCII file with the given codecs, each on its own thread.
+         *
+         * @param inputFile The file from which to read. Stream for reading is opened on construction.
+         * @param codecs    distinct instances of the same codec, one per decoding thread
+         */
+        static <FEATURE_TYPE extends Feature> FeatureIterator<FEATURE_TYPE, LineIterator> create(
+                final File inputFile, final List<? extends AsciiFeatureCodec<FEATURE_TYPE>> codecs) {
+            FeatureCodecHeader header = null;
+            for (final AsciiFeatureCodec<FEATURE_TYPE> decodingCodec : codecs) {
+                header = readHeader(inputFile, decodingCodec);
+            }
+            final AsciiLineReaderIterator source =
+                    new AsciiLineReaderIterator(new AsciiLineReader(initStream(inputFile, header.getHeaderEnd())));
+            final LocationDecoder<FEATURE_TYPE> locationDecoder = codecs.size() > 1 ?
+                    new LocationDecoder<FEATURE_TYPE>(source, codecs, inputFile.getAbsolutePath()) : null;
+            return new FeatureIterator<FEATURE_TYPE, LineIterator>(inputFile, codecs.get(0), source, locationDecoder);
+        }
+
         /**
          * Some codecs,  e.g. VCF files,  need the header to decode features.  This is a rather poor design,
          * the internal header is set as a side-affect of reading it, but we have to live with it for now.
          */
-        private FeatureCodecHeader readHeader() {
+        private static <SOURCE> FeatureCodecHeader readHeader(final File inputFile, final FeatureCodec<?, SOURCE> codec) {
             try {
-                final SOURCE source = this.codec.makeSourceFromStream(initStream(inputFile, 0));
-                final FeatureCodecHeader header = this.codec.readHeader(source);
+                final SOURCE source = codec.makeSourceFromStream(initStream(inputFile, 0));
+                final FeatureCodecHeader header = codec.readHeader(source);
                 codec.close(source);
                 return header;
             } catch (final IOException e) {
@@ -418,7 +534,7 @@ public class IndexFactory {
             }
         }
 
-        private PositionalBufferedStream initStream(final File inputFile, final long skip) {
+        private static PositionalBufferedStream initStream(final File inputFile, final long skip) {
             try {
                 final FileInputStream fileStream = new FileInputStream(inputFile);
                 final InputStream is;
@@ -487,6 +603,7 @@ public class IndexFactory {
 
         @Override
         public void close() {
+            if (locationDecoder != null) locationDecoder.close();
             codec.close(source);
         }
 
@@ -495,6 +612,11 @@ public class IndexFactory {
          * @throws TribbleException.MalformedFeatureFile
          */
         private void readNextFeature() {
+            if (locationDecoder != null) {
+                nextFeature = locationDecoder.next();
+                cachedPosition = locationDecoder.getPosition();
+                return;
+            }
             cachedPosition = ((LocationAware) source).getPosition();
             try {
                 nextFeature = null;
@@ -506,4 +628,107 @@ public class IndexFactory {
             }
         }
     }
+
+    /**
+     * Decodes the locations of the lines of an ASCII file in batches on a thread pool.  The lines are read on the
+     * calling thread, which keeps track of the position at which each feature starts, and the features are returned
+     * in file order.
+     */
+    static class LocationDecoder<FEATURE_TYPE extends Feature>
+            extends DecodingPipeline<AsciiFeatureCodec<FEATURE_TYPE>, LocationDecoder.Batch, LocationDecoder.Batch> {
+        private final AsciiLineReaderIterator lines;
+        private Batch batch = null;
+        private int nextLine = 0;
+        // the position of the line following the last feature returned, where the next feature starts
+        private long nextPosition;
+        private long position;
+
+        LocationDecoder(final AsciiLineReaderIterator lines, final List<? extends AsciiFeatureCodec<FEATURE_TYPE>> codecs,
+                        final String path) {
+            super(codecs, path, "FeatureLocationDecoder");
+            this.lines = lines;
+            this.nextPosition = lines.getPosition();
+        }
+
+        /**
+         * @return the next feature, or null if there are no more
+         */
+        Feature next() {
+            position = nextPosition;
+            while (true) {
+                if (batch == null || nextLine == batch.size) {
+                    batch = nextBatch();
+                    if (batch == null) return null;
+                    nextLine = 0;
+                }
+                while (nextLine < batch.size) {
+                    final Feature feature = batch.features[nextLine];
+                    nextPosition = batch.ends[nextLine++];
+                    if (feature != null) return feature;
+                }
+            }
+        }
+
+        /**
+         * @return the position at which the feature last returned by {@link #next()} starts
+         */
+        long getPosition() {
+            return position;
+        }
+
+        @Override
+        protected Batch readBatch() {
+            if (!lines.hasNext()) return null;
+            final Batch next = new Batch();
+            while (next.size < BATCH_SIZE && lines.hasNext()) {
+                next.lines[next.size] = lines.next();
+                next.ends[next.size++] = lines.getPosition();
+            }
+            return next;
+        }
+
+        @Override
+        protected Batch decodeBatch(final AsciiFeatureCodec<FEATURE_TYPE> codec, final Batch next) {
+            while (next.current < next.size) {
+                final int line = next.current;
+                next.features[line] = codec.decodeLoc(next);
+                // always move on, even if the codec did not consume the line
+                if (next.current == line) next.current++;
+            }
+            return next;
+        }
+
+        /**
+         * A batch of lines, the position following each one, and the feature decoded from each one, if any.  The
+         * batch is the source from which its codec decodes.
+         */
+        static class Batch implements LineIterator {
+            final String[] lines = new String[BATCH_SIZE];
+            final long[] ends = new long[BATCH_SIZE];
+            final Feature[] features = new Feature[BATCH_SIZE];
+            int size = 0;
+            private int current = 0;
+
+            @Override
+            public String peek() {
+                return current < size ? lines[current] : null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return current < size;
+            }
+
+            @Override
+            public String next() {
+                if (current == size) throw new NoSuchElementException();
+                return lines[current++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Remove is not supported in Iterators");
+            }
+        }
+    }
 }
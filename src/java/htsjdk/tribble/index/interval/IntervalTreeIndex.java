@@ -25,13 +25,15 @@ import htsjdk.tribble.util.LittleEndianOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
 /**
- * Index based on an interval tree
+ * Index based on an interval tree, held per chromosome in primitive arrays
  *
  * @author jrobinso
  * @date Jul 9, 2010
@@ -92,7 +94,17 @@ public class IntervalTreeIndex extends AbstractIndex {
         }
     }
 
+    @Override
+    protected String skipChrIndex(final ByteBuffer buffer) {
+        // see ChrIndex.write: the name, the number of intervals, and start, end, position and size of each
+        final String name = readString(buffer);
+        final int size = buffer.getInt();
+        buffer.position(buffer.position() + 20 * size);
+        return name;
+    }
+
     public void printTree() {
+        loadAllChrIndices();
 
         for (final String chr : chrIndices.keySet()) {
             System.out.println(chr + ":");
@@ -102,10 +114,22 @@ public class IntervalTreeIndex extends AbstractIndex {
         }
     }
 
+    /**
+     * The intervals of one chromosome, stored in primitive arrays sorted by start and end rather than as a tree of
+     * objects. The arrays form an implicit interval tree: the element in the middle of each power-of-two aligned
+     * range is the root of the subtree covering that range, and {@code maxEnds} holds the largest end in each subtree.
+     */
     public static class ChrIndex implements htsjdk.tribble.index.ChrIndex {
 
-        IntervalTree tree;
         String name;
+        private int size = 0;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private long[] positions = new long[16];
+        private int[] sizes = new int[16];
+        private int[] maxEnds;
+        private int maxLevel;
+        private volatile boolean indexed = false;
 
         /**
          * Default constructor needed for factory methods -- DO NOT REMOVE
@@ -116,15 +140,32 @@ public class IntervalTreeIndex extends AbstractIndex {
 
         public ChrIndex(final String name) {
             this.name = name;
-            tree = new IntervalTree();
         }
 
         public String getName() {
             return name;
         }
 
-        public void insert(final Interval iv) {
-            tree.insert(iv);
+        public synchronized void insert(final Interval iv) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+                sizes = Arrays.copyOf(sizes, size * 2);
+            }
+            starts[size] = iv.start;
+            ends[size] = iv.end;
+            positions[size] = iv.getBlock().getStartPosition();
+            sizes[size] = (int) iv.getBlock().getSize();
+            size++;
+            indexed = false;
+        }
+
+        /**
+         * @return the number of intervals
+         */
+        public int size() {
+            return size;
         }
 
         public List<Block> getBlocks() {
@@ -133,35 +174,30 @@ public class IntervalTreeIndex extends AbstractIndex {
 
 
         public List<Block> getBlocks(final int start, final int end) {
+            ensureIndexed();
 
-            // Get intervals and build blocks list
-            final List<Interval> intervals = tree.findOverlapping(new Interval(start, end));
+            // Get the blocks of the overlapping intervals
+            final List<Block> blocks = new ArrayList<Block>();
+            findOverlapping(start, end, blocks);
 
             // save time (and save throwing an exception) if the blocks are empty, return now
-            if (intervals == null || intervals.size() == 0) return new ArrayList<Block>();
-
-            final Block[] blocks = new Block[intervals.size()];
-            int idx = 0;
-            for (final Interval iv : intervals) {
-                blocks[idx++] = iv.getBlock();
-            }
+            if (blocks.isEmpty()) return blocks;
 
             // Sort blocks by start position
-            Arrays.sort(blocks, new Comparator<Block>() {
+            Collections.sort(blocks, new Comparator<Block>() {
                 public int compare(final Block b1, final Block b2) {
-                    // this is a little cryptic because the normal method (b1.getStartPosition() - b2.getStartPosition()) wraps in int space and we incorrectly sort the blocks in extreme cases
-                    return b1.getStartPosition() - b2.getStartPosition() < 1 ? -1 : (b1.getStartPosition() - b2.getStartPosition() > 1 ? 1 : 0);
+                    return b1.getStartPosition() < b2.getStartPosition() ? -1 : (b1.getStartPosition() == b2.getStartPosition() ? 0 : 1);
                 }
             });
 
             // Consolidate blocks  that are close together
-            final List<Block> consolidatedBlocks = new ArrayList<Block>(blocks.length);
-            Block lastBlock = blocks[0];
+            final List<Block> consolidatedBlocks = new ArrayList<Block>(blocks.size());
+            Block lastBlock = blocks.get(0);
             consolidatedBlocks.add(lastBlock);
-            for (int i = 1; i < blocks.length; i++) {
-                final Block block = blocks[i];
+            for (int i = 1; i < blocks.size(); i++) {
+                final Block block = blocks.get(i);
                 if (block.getStartPosition() < (lastBlock.getEndPosition() + 1000)) {
-                    lastBlock.setEndPosition(block.getEndPosition());
+                    lastBlock.setEndPosition(Math.max(lastBlock.getEndPosition(), block.getEndPosition()));
                 } else {
                     lastBlock = block;
                     consolidatedBlocks.add(lastBlock);
@@ -171,42 +207,144 @@ public class IntervalTreeIndex extends AbstractIndex {
             return consolidatedBlocks;
         }
 
+        /**
+         * Add a new block for each interval overlapping [start, end], walking the implicit tree with an explicit stack.
+         */
+        private void findOverlapping(final int start, final int end, final List<Block> blocks) {
+            if (size == 0) return;
+            // each stack entry holds a node, its level, and whether its left subtree has been visited:
+            final int[] stackNodes = new int[64];
+            final int[] stackLevels = new int[64];
+            final boolean[] stackVisited = new boolean[64];
+            int t = 0;
+            stackNodes[t] = (1 << maxLevel) - 1;
+            stackLevels[t] = maxLevel;
+            stackVisited[t++] = false;
+            while (t > 0) {
+                final int x = stackNodes[--t];
+                final int k = stackLevels[t];
+                final boolean visited = stackVisited[t];
+                if (k <= 3) {
+                    // small subtree: scan its range
+                    final int i0 = x >> k << k;
+                    final int i1 = Math.min(i0 + (1 << (k + 1)) - 1, size);
+                    for (int i = i0; i < i1 && starts[i] <= end; i++) {
+                        if (start <= ends[i]) blocks.add(new Block(positions[i], sizes[i]));
+                    }
+                } else if (!visited) {
+                    // come back to this node after its left subtree, which may not exist if the node is out of range
+                    final int y = x - (1 << (k - 1));
+                    stackNodes[t] = x;
+                    stackLevels[t] = k;
+                    stackVisited[t++] = true;
+                    if (y >= size || maxEnds[y] >= start) {
+                        stackNodes[t] = y;
+                        stackLevels[t] = k - 1;
+                        stackVisited[t++] = false;
+                    }
+                } else if (x < size && starts[x] <= end) {
+                    if (start <= ends[x]) blocks.add(new Block(positions[x], sizes[x]));
+                    stackNodes[t] = x + (1 << (k - 1));
+                    stackLevels[t] = k - 1;
+                    stackVisited[t++] = false;
+                }
+            }
+        }
+
+        /**
+         * Sort the intervals and compute the largest end in each subtree of the implicit tree.
+         */
+        private synchronized void ensureIndexed() {
+            if (indexed) return;
+
+            final Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(final Integer i1, final Integer i2) {
+                    if (starts[i1] != starts[i2]) return starts[i1] < starts[i2] ? -1 : 1;
+                    return ends[i1] < ends[i2] ? -1 : (ends[i1] == ends[i2] ? 0 : 1);
+                }
+            });
+            final int[] sortedStarts = new int[size];
+            final int[] sortedEnds = new int[size];
+            final long[] sortedPositions = new long[size];
+            final int[] sortedSizes = new int[size];
+            for (int i = 0; i < size; i++) {
+                sortedStarts[i] = starts[order[i]];
+                sortedEnds[i] = ends[order[i]];
+                sortedPositions[i] = positions[order[i]];
+                sortedSizes[i] = sizes[order[i]];
+            }
+            starts = sortedStarts;
+            ends = sortedEnds;
+            positions = sortedPositions;
+            sizes = sortedSizes;
+
+            maxEnds = new int[size];
+            if (size > 0) {
+                // leaves are at even indices; each level up, the nodes are 2^k - 1 + j * 2^(k+1)
+                int lastIndex = 0;
+                int last = 0;
+                for (int i = 0; i < size; i += 2) {
+                    lastIndex = i;
+                    last = maxEnds[i] = ends[i];
+                }
+                int k;
+                for (k = 1; 1 << k <= size; k++) {
+                    final int x = 1 << (k - 1);
+                    for (int i = (x << 1) - 1; i < size; i += x << 2) {
+                        final int leftMax = maxEnds[i - x];
+                        final int rightMax = i + x < size ? maxEnds[i + x] : last;
+                        maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+                    }
+                    // the rightmost node at this level may have a right subtree extending past the end:
+                    lastIndex = (lastIndex >> k & 1) != 0 ? lastIndex - x : lastIndex + x;
+                    if (lastIndex < size && maxEnds[lastIndex] > last) last = maxEnds[lastIndex];
+                }
+                maxLevel = k - 1;
+            }
+            indexed = true;
+        }
+
         public void printTree() {
-            System.out.println(tree.toString());
+            ensureIndexed();
+            final StringBuilder buf = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                buf.append("Interval[").append(starts[i]).append(", ").append(ends[i]).append("]\n");
+            }
+            System.out.println(buf.toString());
         }
 
         public void write(final LittleEndianOutputStream dos) throws IOException {
+            ensureIndexed();
 
             dos.writeString(name);
-            final List<Interval> intervals = tree.getIntervals();
-
-            dos.writeInt(intervals.size());
-            for (final Interval interval : intervals) {
-                dos.writeInt(interval.start);
-                dos.writeInt(interval.end);
-                dos.writeLong(interval.getBlock().getStartPosition());
-                dos.writeInt((int) interval.getBlock().getSize());
+            dos.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                dos.writeInt(starts[i]);
+                dos.writeInt(ends[i]);
+                dos.writeLong(positions[i]);
+                dos.writeInt(sizes[i]);
             }
 
         }
 
         public void read(final LittleEndianInputStream dis) throws IOException {
 
-            tree = new IntervalTree();
-
             name = dis.readString();
-            int nIntervals = dis.readInt();
-            while (nIntervals-- > 0) {
-
-                final int start = dis.readInt();
-                final int end = dis.readInt();
-                final long pos = dis.readLong();
-                final int size = dis.readInt();
-
-                final Interval iv = new Interval(start, end, new Block(pos, size));
-                tree.insert(iv);
+            size = dis.readInt();
+            starts = new int[Math.max(size, 1)];
+            ends = new int[starts.length];
+            positions = new long[starts.length];
+            sizes = new int[starts.length];
+            for (int i = 0; i < size; i++) {
+                starts[i] = dis.readInt();
+                ends[i] = dis.readInt();
+                positions[i] = dis.readLong();
+                sizes[i] = dis.readInt();
             }
-
+            indexed = false;
+            ensureIndexed();
 
         }
 
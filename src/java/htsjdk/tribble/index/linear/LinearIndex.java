@@ -28,6 +28,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -66,6 +68,9 @@ public class LinearIndex extends AbstractIndex {
 
     public static boolean enableAdaptiveIndexing = true;
 
+    // set when a chromosome index that has not been loaded yet is an old style V3 index
+    private boolean hasOldV3ChrIndex = false;
+
     /**
      * Initialize using the specified {@code indices}
      * @param indices
@@ -105,6 +110,7 @@ public class LinearIndex extends AbstractIndex {
         if (!super.isCurrentVersion()) return false;
 
         // todo fixme nasty hack to determine if this is an old style V3 linear index (without nFeaturesPerBin)
+        if (hasOldV3ChrIndex) return false;
         for (final htsjdk.tribble.index.ChrIndex chrIndex : chrIndices.values())
             if (((ChrIndex) chrIndex).OLD_V3_INDEX)
                 return false;
@@ -119,7 +125,20 @@ public class LinearIndex extends AbstractIndex {
 
     public List<String> getSequenceNames() {
         return (chrIndices == null ? Collections.EMPTY_LIST :
-                Collections.unmodifiableList(new ArrayList<String>(chrIndices.keySet())));
+                Collections.unmodifiableList(super.getSequenceNames()));
+    }
+
+    @Override
+    protected String skipChrIndex(final ByteBuffer buffer) {
+        // see ChrIndex.write
+        final String name = readString(buffer);
+        buffer.getInt(); // binWidth
+        final int nBins = buffer.getInt();
+        buffer.getInt(); // longestFeature
+        if (buffer.getInt() > 0) hasOldV3ChrIndex = true;
+        buffer.getInt(); // nFeatures
+        buffer.position(buffer.position() + 8 * (nBins + 1));
+        return name;
     }
 
     @Override
@@ -153,7 +172,15 @@ public class LinearIndex extends AbstractIndex {
         private int binWidth;
         private int longestFeature;
         private int nFeatures;
-        private List<Block> blocks;
+        /**
+         * The blocks are stored in primitive arrays rather than as Block objects. Blocks are normally adjacent, so
+         * only their start positions and the end of the last block are kept; the end of each block is only stored
+         * separately if a block is added that does not start where the previous one ended.
+         */
+        private long[] starts;
+        private long[] ends = null;
+        private long lastEnd = 0;
+        private int nBlocks = 0;
 
         private boolean OLD_V3_INDEX = false;
 
@@ -167,7 +194,7 @@ public class LinearIndex extends AbstractIndex {
         ChrIndex(final String name, final int binWidth) {
             this.name = name;
             this.binWidth = binWidth;
-            this.blocks = new ArrayList<Block>(100);
+            this.starts = new long[100];
             this.longestFeature = 0;
             //this.largestBlockSize = 0;
             this.nFeatures = 0;
@@ -178,35 +205,65 @@ public class LinearIndex extends AbstractIndex {
         }
 
         void addBlock(final Block block) {
-            blocks.add(block);
+            if (nBlocks == starts.length) {
+                starts = Arrays.copyOf(starts, Math.max(2 * nBlocks, 16));
+                if (ends != null) ends = Arrays.copyOf(ends, starts.length);
+            }
+            if (ends == null && nBlocks > 0 && block.getStartPosition() != lastEnd) {
+                ends = new long[starts.length];
+                for (int i = 0; i < nBlocks; i++) ends[i] = getEndPosition(i);
+            }
+            starts[nBlocks] = block.getStartPosition();
+            if (ends != null) ends[nBlocks] = block.getEndPosition();
+            lastEnd = block.getEndPosition();
+            nBlocks++;
             //largestBlockSize = Math.max(largestBlockSize, block.getSize());
         }
 
+        private long getEndPosition(final int i) {
+            if (ends != null) return ends[i];
+            return i + 1 < nBlocks ? starts[i + 1] : lastEnd;
+        }
+
         public int getNBlocks() {
-            return blocks.size();
+            return nBlocks;
         }
 
+        /**
+         * @return an unmodifiable view of the blocks, creating a Block object for each block accessed
+         */
         public List<Block> getBlocks() {
-            return blocks;
+            return new AbstractList<Block>() {
+                @Override
+                public Block get(final int i) {
+                    if (i < 0 || i >= nBlocks) throw new IndexOutOfBoundsException("Block " + i + " of " + nBlocks);
+                    return new Block(starts[i], getEndPosition(i) - starts[i]);
+                }
+
+                @Override
+                public int size() {
+                    return nBlocks;
+                }
+            };
         }
 
         public List<Block> getBlocks(final int start, final int end) {
-            if (blocks.isEmpty()) {
+            if (nBlocks == 0) {
                 return Collections.emptyList();
             } else {
                 // Adjust position for the longest feature in this chromosome.  This insures we get
                 // features that start before the bin but extend into it
                 final int adjustedPosition = Math.max(start - longestFeature, 0);
                 final int startBinNumber = adjustedPosition / binWidth;
-                if (startBinNumber >= blocks.size()) // are we off the end of the bin list, so return nothing
+                if (startBinNumber >= nBlocks) // are we off the end of the bin list, so return nothing
                     return Collections.emptyList();
                 else {
-                    final int endBinNumber = Math.min((end - 1) / binWidth, blocks.size() - 1);
+                    final int endBinNumber = Math.min((end - 1) / binWidth, nBlocks - 1);
 
                     // By definition blocks are adjacent for the liner index.  Combine them into one merged block
 
-                    final long startPos = blocks.get(startBinNumber).getStartPosition();
-                    final long endPos = blocks.get(endBinNumber).getStartPosition() + blocks.get(endBinNumber).getSize();
+                    final long startPos = starts[startBinNumber];
+                    final long endPos = getEndPosition(endBinNumber);
                     final long size = endPos - startPos;
                     if (size == 0) {
                         return Collections.EMPTY_LIST;
@@ -236,21 +293,17 @@ public class LinearIndex extends AbstractIndex {
             // Chr name, binSize,  # bins,  longest feature
             dos.writeString(name);
             dos.writeInt(binWidth);
-            dos.writeInt(blocks.size());
+            dos.writeInt(nBlocks);
             dos.writeInt(longestFeature);
             dos.writeInt(0);    // no longer used
             //dos.writeInt(largestBlockSize);
             dos.writeInt(nFeatures);
 
-            long pos = 0;
-            long size = 0;
-            for (final Block block : blocks) {
-                pos = block.getStartPosition();
-                size = block.getSize();
-                dos.writeLong(pos);
+            for (int i = 0; i < nBlocks; i++) {
+                dos.writeLong(starts[i]);
             }
             // End of last block for this chromosome
-            dos.writeLong(pos + size);
+            dos.writeLong(nBlocks == 0 ? 0 : getEndPosition(nBlocks - 1));
         }
 
         public void read(final LittleEndianInputStream dis) throws IOException {
@@ -264,15 +317,13 @@ public class LinearIndex extends AbstractIndex {
             OLD_V3_INDEX = dis.readInt() > 0;
             nFeatures = dis.readInt();
 
-            // note the code below accounts for > 60% of the total time to read an index
-            blocks = new ArrayList<Block>(nBins);
-            long pos = dis.readLong();
+            starts = new long[nBins];
+            ends = null;
+            nBlocks = nBins;
             for (int binNumber = 0; binNumber < nBins; binNumber++) {
-                final long nextPos = dis.readLong();
-                final long size = nextPos - pos;
-                blocks.add(new Block(pos, size));
-                pos = nextPos;
+                starts[binNumber] = dis.readLong();
             }
+            lastEnd = dis.readLong();
         }
 
         public boolean equals(final Object obj) {
@@ -284,7 +335,15 @@ public class LinearIndex extends AbstractIndex {
                     //&& largestBlockSize == other.largestBlockSize
                     && nFeatures == other.nFeatures
                     && name.equals(other.name)
-                    && blocks.equals(other.blocks);
+                    && sameBlocks(other);
+        }
+
+        private boolean sameBlocks(final ChrIndex other) {
+            if (nBlocks != other.nBlocks) return false;
+            for (int i = 0; i < nBlocks; i++) {
+                if (starts[i] != other.starts[i] || getEndPosition(i) != other.getEndPosition(i)) return false;
+            }
+            return true;
         }
 
         /**
@@ -292,8 +351,8 @@ public class LinearIndex extends AbstractIndex {
          */
         public long getTotalSize() {
             long n = 0;
-            for (final Block b : getBlocks())
-                n += b.getSize();
+            for (int i = 0; i < nBlocks; i++)
+                n += getEndPosition(i) - starts[i];
             return n;
         }
 
@@ -307,8 +366,8 @@ public class LinearIndex extends AbstractIndex {
 
         private double getNFeaturesOfMostDenseBlock(final double featureSize) {
             double m = -1;
-            for (final Block b : getBlocks()) {
-                final double n = b.getSize() / featureSize;
+            for (int i = 0; i < nBlocks; i++) {
+                final double n = (getEndPosition(i) - starts[i]) / featureSize;
                 if (m == -1 || n > m) m = n;
             }
             return m;
@@ -392,6 +451,7 @@ public class LinearIndex extends AbstractIndex {
      */
     public Index optimize(final double threshold) {
         if (enableAdaptiveIndexing) {
+            loadAllChrIndices();
 
             final List<ChrIndex> newIndices = new ArrayList<ChrIndex>(this.chrIndices.size());
             for (final String name : chrIndices.keySet()) {
@@ -415,6 +475,7 @@ public class LinearIndex extends AbstractIndex {
      */
     public void writeTable(final PrintStream out) {
         out.printf("chr binWidth avg.feature.size nFeatures.total block.id start.pos size nFeatures%n");
+        loadAllChrIndices();
         for (final String name : chrIndices.keySet()) {
             final LinearIndex.ChrIndex chrIdx = (LinearIndex.ChrIndex) chrIndices.get(name);
             int blockCount = 0;
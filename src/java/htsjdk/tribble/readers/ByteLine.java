@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble.readers;
+
+import java.nio.charset.Charset;
+
+/**
+ * A line of ASCII text viewed in place in the buffer of a {@link ByteLineReader}. The view is reused for the next
+ * line, so its content is only valid until the reader advances; call {@link #toString()} to keep a line.
+ *
+ * The helpers {@link #indexOf(char, int)}, {@link #split(char, int[])} and {@link #parseInt(int, int)} allow a codec
+ * to tokenise a line without creating a {@link String} per line or per field.
+ */
+public final class ByteLine implements CharSequence {
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    private long position;
+
+    ByteLine() {
+    }
+
+    ByteLine(final byte[] bytes, final int offset, final int length, final long position) {
+        set(bytes, offset, length, position);
+    }
+
+    void set(final byte[] bytes, final int offset, final int length, final long position) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.position = position;
+    }
+
+    /**
+     * @return the buffer holding the line, starting at {@link #getOffset()}
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the position of the first byte of the line in the stream
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Index " + index + " of " + length);
+        return (char) (bytes[offset + index] & 0xFF);
+    }
+
+    /**
+     * @return a view of part of this line, valid as long as this line is
+     */
+    @Override
+    public ByteLine subSequence(final int start, final int end) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("Range " + start + "-" + end + " of " + length);
+        return new ByteLine(bytes, offset + start, end - start, position + start);
+    }
+
+    /**
+     * @return the index of the first occurrence of the character at or after fromIndex, or -1 if there is none
+     */
+    public int indexOf(final char c, final int fromIndex) {
+        final int end = offset + length;
+        for (int i = offset + Math.max(fromIndex, 0); i < end; i++) {
+            if (bytes[i] == (byte) c) return i - offset;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the fields of the line separated by the delimiter. Field i spans from index {@code i == 0 ? 0 : ends[i - 1] + 1}
+     * to {@code ends[i]}; fields beyond the capacity of the array are left out.
+     *
+     * @param delim the field delimiter
+     * @param ends receives the exclusive end index of each field
+     * @return the number of fields found
+     */
+    public int split(final char delim, final int[] ends) {
+        final byte d = (byte) delim;
+        final int end = offset + length;
+        int n = 0;
+        for (int i = offset; i < end && n < ends.length; i++) {
+            if (bytes[i] == d) ends[n++] = i - offset;
+        }
+        if (n < ends.length) ends[n++] = length;
+        return n;
+    }
+
+    /**
+     * Parse a decimal integer, with an optional sign, between the given indices.
+     *
+     * @throws NumberFormatException if the range does not hold an integer
+     */
+    public int parseInt(final int start, final int end) {
+        return parseInt(bytes, offset + start, offset + end);
+    }
+
+    /**
+     * Parse a decimal integer, with an optional sign, from ASCII bytes, like {@link Integer#parseInt(String)}.
+     *
+     * @param start index of the first byte of the integer
+     * @param end   index following the last byte of the integer
+     * @throws NumberFormatException if the range does not hold an integer or the integer does not fit in an int
+     */
+    public static int parseInt(final byte[] bytes, final int start, final int end) {
+        if (start >= end) throw new NumberFormatException("Empty integer field");
+        int i = start;
+        final boolean negative = bytes[i] == '-';
+        if (negative || bytes[i] == '+') {
+            if (++i == end) throw new NumberFormatException("Not an integer: " + toString(bytes, start, end));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            final int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("Not an integer: " + toString(bytes, start, end));
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) throw new NumberFormatException("Integer out of range: " + toString(bytes, start, end));
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) throw new NumberFormatException("Integer out of range: " + toString(bytes, start, end));
+        return (int) value;
+    }
+
+    private static String toString(final byte[] bytes, final int start, final int end) {
+        return new String(bytes, start, end - start, LATIN1);
+    }
+
+    public String substring(final int start, final int end) {
+        return toString(bytes, offset + start, offset + end);
+    }
+
+    @Override
+    public String toString() {
+        return toString(bytes, offset, offset + length);
+    }
+}
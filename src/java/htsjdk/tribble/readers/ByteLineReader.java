@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble.readers;
+
+import htsjdk.samtools.util.LocationAware;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A line reader for ASCII text that reads large blocks of bytes and scans them for line terminators in bulk, instead of
+ * reading one byte at a time like {@link AsciiLineReader} or decoding characters like {@link LongLineBufferedReader}.
+ *
+ * {@link #readByteLine()} returns each line as a {@link ByteLine} view into the buffer without copying, so a
+ * {@link String} is only created when the caller asks for it, e.g. by {@link #readLine()}. A line is terminated by '\n',
+ * '\r' or "\r\n", as in {@link AsciiLineReader}, and {@link #getPosition()} is the position in the stream after the
+ * most recently read line.
+ */
+public class ByteLineReader implements LineReader, LocationAware {
+    private static final int DEFAULT_BUFFER_SIZE = 512000;
+    private static final byte LINEFEED = (byte) '\n';
+    private static final byte CARRIAGE_RETURN = (byte) '\r';
+
+    private final InputStream is;
+    private byte[] buffer;
+    /** index of the first unread byte in the buffer */
+    private int start = 0;
+    /** index after the last valid byte in the buffer */
+    private int end = 0;
+    /** position in the stream of the first byte in the buffer */
+    private long bufferPosition = 0;
+    private boolean eof = false;
+    private final ByteLine line = new ByteLine();
+
+    public ByteLineReader(final InputStream is) {
+        this(is, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ByteLineReader(final InputStream is, final int bufferSize) {
+        if (bufferSize < 1) throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        this.is = is;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return the position in the stream after the most recently read line
+     */
+    @Override
+    public long getPosition() {
+        return bufferPosition + start;
+    }
+
+    /**
+     * Read the next line as a view into the buffer, valid until the next read.
+     *
+     * @return the line without its terminator, or null at the end of the stream
+     */
+    public ByteLine readByteLine() throws IOException {
+        // the number of bytes of the line already scanned, kept relative to the line start because filling the
+        // buffer moves the line to the front:
+        int scanned = 0;
+        while (true) {
+            final byte[] b = buffer;
+            final int limit = end;
+            int i = start + scanned;
+            while (i < limit && b[i] != LINEFEED && b[i] != CARRIAGE_RETURN) i++;
+
+            if (i < limit) {
+                final int length = i - start;
+                if (b[i] == CARRIAGE_RETURN && i + 1 == limit && !eof) {
+                    // look for the '\n' of "\r\n" in the next block:
+                    fill();
+                    i = start + length;
+                }
+                final int terminatorLength = buffer[i] == CARRIAGE_RETURN && i + 1 < end && buffer[i + 1] == LINEFEED ? 2 : 1;
+                line.set(buffer, start, length, bufferPosition + start);
+                start = i + terminatorLength;
+                return line;
+            }
+
+            scanned = limit - start;
+            if (eof || !fill()) {
+                if (scanned == 0) return null;
+                // the last line has no terminator:
+                line.set(buffer, start, scanned, bufferPosition + start);
+                start = end;
+                return line;
+            }
+        }
+    }
+
+    /**
+     * Move the unread bytes to the front of the buffer, growing it if it is full, and read more bytes after them.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            bufferPosition += start;
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            final byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, end);
+            buffer = grown;
+        }
+        final int n = is.read(buffer, end, buffer.length - end);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        end += n;
+        return true;
+    }
+
+    /**
+     * @return the next line as a String, or null at the end of the stream
+     */
+    @Override
+    public String readLine() throws IOException {
+        final ByteLine next = readByteLine();
+        return next == null ? null : next.toString();
+    }
+
+    @Override
+    public void close() {
+        try {
+            is.close();
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        }
+        buffer = null;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final File testFile = new File(args[0]);
+        final int iterations = Integer.valueOf(args[1]);
+
+        System.out.printf("Testing %s%n", args[0]);
+        for (int i = 0; i < iterations; i++) {
+            final BufferedReader bufferedReader = new BufferedReader(new FileReader(testFile));
+            long t0 = System.currentTimeMillis();
+            long lineCount = 0;
+            while (bufferedReader.readLine() != null) lineCount++;
+            printStatus("BufferedReader", lineCount, System.currentTimeMillis() - t0);
+            bufferedReader.close();
+
+            final AsciiLineReader asciiLineReader = new AsciiLineReader(new FileInputStream(testFile));
+            t0 = System.currentTimeMillis();
+            lineCount = 0;
+            while (asciiLineReader.readLine() != null) lineCount++;
+            printStatus("AsciiLineReader", lineCount, System.currentTimeMillis() - t0);
+            asciiLineReader.close();
+
+            ByteLineReader byteLineReader = new ByteLineReader(new FileInputStream(testFile));
+            t0 = System.currentTimeMillis();
+            lineCount = 0;
+            while (byteLineReader.readLine() != null) lineCount++;
+            printStatus("ByteLineReader.readLine", lineCount, System.currentTimeMillis() - t0);
+            byteLineReader.close();
+
+            byteLineReader = new ByteLineReader(new FileInputStream(testFile));
+            t0 = System.currentTimeMillis();
+            lineCount = 0;
+            while (byteLineReader.readByteLine() != null) lineCount++;
+            printStatus("ByteLineReader.readByteLine", lineCount, System.currentTimeMillis() - t0);
+            byteLineReader.close();
+        }
+    }
+
+    private static void printStatus(final String name, final long lineCount, final long dt) {
+        System.out.printf("%30s: %d lines read.  Rate = %.2e lines per second.  DT = %d%n", name, lineCount,
+                lineCount * 1000.0 / Math.max(dt, 1), dt);
+        System.out.flush();
+    }
+}
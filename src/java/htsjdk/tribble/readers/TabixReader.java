@@ -27,6 +27,7 @@ import htsjdk.samtools.seekablestream.ISeekableStreamFactory;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.seekablestream.SeekableStreamFactory;
 import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.StringUtil;
 import htsjdk.tribble.util.ParsingUtils;
 import htsjdk.tribble.util.TabixUtils;
 
@@ -62,31 +63,33 @@ public class TabixReader {
     //private static int TAD_MIN_CHUNK_GAP = 32768; (not used)
     private static int TAD_LIDX_SHIFT = 14;
 
-    protected static class TPair64 implements Comparable<TPair64> {
-        long u, v;
-
-        public TPair64(final long _u, final long _v) {
-            u = _u;
-            v = _v;
-        }
+    /**
+     * The index of one sequence. The bins are sorted so that they can be found by binary search, and the chunks of
+     * bin binIds[i] are held in binChunks[i] as pairs of start and end virtual file offsets.
+     */
+    protected static class TIndex {
+        int[] binIds; // binning index
+        long[][] binChunks;
+        long[] l; // linear index
 
-        public TPair64(final TPair64 p) {
-            u = p.u;
-            v = p.v;
+        /** @return the chunks of the bin, or null if the bin is empty */
+        long[] getChunks(final int bin) {
+            final int i = Arrays.binarySearch(binIds, bin);
+            return i >= 0 ? binChunks[i] : null;
         }
 
-        public int compareTo(final TPair64 p) {
-            return u == p.u ? 0 : ((u < p.u) ^ (u < 0) ^ (p.u < 0)) ? -1 : 1; // unsigned 64-bit comparison
+        /** @return the smallest file offset of the lines that may overlap a region beginning at beg */
+        long getMinOffset(final int beg) {
+            if (l.length == 0) return 0;
+            return (beg >> TAD_LIDX_SHIFT >= l.length) ? l[l.length - 1] : l[beg >> TAD_LIDX_SHIFT];
         }
     }
 
-    protected static class TIndex {
-        HashMap<Integer, TPair64[]> b; // binning index
-        long[] l; // linear index
-    }
-
     protected TIndex[] mIndex;
 
+    /** the last column needed to compute the interval of a line */
+    private int mLastCol;
+
     private static class TIntv {
         int tid, beg, end;
     }
@@ -214,22 +217,35 @@ public class TabixReader {
             // the binning index
             int n_bin = readInt(is);
             mIndex[i] = new TIndex();
-            mIndex[i].b = new HashMap<Integer, TPair64[]>(n_bin);
+            int[] binIds = new int[n_bin];
+            long[][] binChunks = new long[n_bin][];
             for (j = 0; j < n_bin; ++j) {
-                int bin = readInt(is);
-                TPair64[] chunks = new TPair64[readInt(is)];
-                for (k = 0; k < chunks.length; ++k) {
-                    long u = readLong(is);
-                    long v = readLong(is);
-                    chunks[k] = new TPair64(u, v); // in C, this is inefficient
-                }
-                mIndex[i].b.put(bin, chunks);
+                binIds[j] = readInt(is);
+                long[] chunks = new long[2 * readInt(is)];
+                for (k = 0; k < chunks.length; ++k)
+                    chunks[k] = readLong(is);
+                binChunks[j] = chunks;
+            }
+            // sort the bins, which are stored in hash order
+            final long[] order = new long[n_bin];
+            for (j = 0; j < n_bin; ++j) order[j] = (long) binIds[j] << 32 | j;
+            Arrays.sort(order);
+            mIndex[i].binIds = new int[n_bin];
+            mIndex[i].binChunks = new long[n_bin][];
+            for (j = 0; j < n_bin; ++j) {
+                mIndex[i].binIds[j] = (int) (order[j] >> 32);
+                mIndex[i].binChunks[j] = binChunks[(int) order[j]];
             }
             // the linear index
             mIndex[i].l = new long[readInt(is)];
             for (k = 0; k < mIndex[i].l.length; ++k)
                 mIndex[i].l[k] = readLong(is);
         }
+        switch (mPreset & 0xffff) {
+            case 0: mLastCol = Math.max(mSc, Math.max(mBc, mEc)); break; // generic
+            case 1: mLastCol = Math.max(mSc, Math.max(mBc, 6)); break; // SAM
+            default: mLastCol = Math.max(mSc, Math.max(mBc, 8)); // VCF
+        }
         // close
         is.close();
     }
@@ -281,15 +297,37 @@ public class TabixReader {
         return ret;
     }
 
-    private TIntv getIntv(final String s) {
-        TIntv intv = new TIntv();
-        int col = 0, end = 0, beg = 0;
-        while ((end = s.indexOf('\t', beg)) >= 0 || end == -1) {
+    /**
+     * @return the offset of pattern in s[beg, end), or -1
+     */
+    private static int indexOf(final byte[] s, final int beg, final int end, final byte[] pattern) {
+        outer:
+        for (int i = beg; i <= end - pattern.length; ++i) {
+            for (int j = 0; j < pattern.length; ++j)
+                if (s[i + j] != pattern[j]) continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    private static final byte[] END_TAG = {'E', 'N', 'D', '='};
+    private static final byte[] INFO_END_TAG = {';', 'E', 'N', 'D', '='};
+
+    /**
+     * Compute the interval of the line held in s[0, len) without creating Strings. The sequence name is only compared
+     * with the queried one: intv.tid is set to tid if the line is on the sequence named seqName, and -1 otherwise.
+     */
+    private void getIntv(final byte[] s, final int len, final int tid, final byte[] seqName, final TIntv intv) {
+        intv.tid = -1;
+        intv.beg = intv.end = 0;
+        int col = 0, end, beg = 0;
+        while (col < mLastCol && beg <= len) {
+            for (end = beg; end < len && s[end] != '\t'; ++end) ;
             ++col;
             if (col == mSc) {
-                intv.tid = chr2tid(end != -1 ? s.substring(beg, end) : s.substring(beg));
+                if (end - beg == seqName.length && indexOf(s, beg, end, seqName) == beg) intv.tid = tid;
             } else if (col == mBc) {
-                intv.beg = intv.end = Integer.parseInt(end != -1 ? s.substring(beg, end) : s.substring(beg));
+                intv.beg = intv.end = ByteLine.parseInt(s, beg, end);
                 if ((mPreset & 0x10000) != 0) ++intv.end;
                 else --intv.beg;
                 if (intv.beg < 0) intv.beg = 0;
@@ -297,44 +335,39 @@ public class TabixReader {
             } else { // FIXME: SAM supports are not tested yet
                 if ((mPreset & 0xffff) == 0) { // generic
                     if (col == mEc)
-                        intv.end = Integer.parseInt(end != -1 ? s.substring(beg, end) : s.substring(beg));
+                        intv.end = ByteLine.parseInt(s, beg, end);
                 } else if ((mPreset & 0xffff) == 1) { // SAM
                     if (col == 6) { // CIGAR
                         int l = 0, i, j;
-                        String cigar = s.substring(beg, end);
-                        for (i = j = 0; i < cigar.length(); ++i) {
-                            if (cigar.charAt(i) > '9') {
-                                int op = cigar.charAt(i);
+                        for (i = j = beg; i < end; ++i) {
+                            if (s[i] > '9') {
+                                int op = s[i];
                                 if (op == 'M' || op == 'D' || op == 'N')
-                                    l += Integer.parseInt(cigar.substring(j, i));
+                                    l += ByteLine.parseInt(s, j, i);
                                 j = i + 1;
                             }
                         }
                         intv.end = intv.beg + l;
                     }
                 } else if ((mPreset & 0xffff) == 2) { // VCF
-                    String alt;
-                    alt = end >= 0 ? s.substring(beg, end) : s.substring(beg);
                     if (col == 4) { // REF
-                        if (alt.length() > 0) intv.end = intv.beg + alt.length();
+                        if (end > beg) intv.end = intv.beg + end - beg;
                     } else if (col == 8) { // INFO
-                        int e_off = -1, i = alt.indexOf("END=");
-                        if (i == 0) e_off = 4;
-                        else if (i > 0) {
-                            i = alt.indexOf(";END=");
+                        int e_off = -1, i = indexOf(s, beg, end, END_TAG);
+                        if (i == beg) e_off = beg + 4;
+                        else if (i > beg) {
+                            i = indexOf(s, beg, end, INFO_END_TAG);
                             if (i >= 0) e_off = i + 5;
                         }
                         if (e_off > 0) {
-                            i = alt.indexOf(";", e_off);
-                            intv.end = Integer.parseInt(i > e_off ? alt.substring(e_off, i) : alt.substring(e_off));
+                            for (i = e_off; i < end && s[i] != ';'; ++i) ;
+                            intv.end = ByteLine.parseInt(s, e_off, i);
                         }
                     }
                 }
             }
-            if (end == -1) break;
             beg = end + 1;
         }
-        return intv;
     }
 
     public interface Iterator
@@ -343,24 +376,55 @@ public class TabixReader {
         public String next() throws IOException;
         }
 
+    /**
+     * Iterator that can also read lines without creating a String, for codecs that parse the bytes of a line
+     * themselves.
+     */
+    public interface ByteLineIterator extends Iterator
+        {
+        /**
+         * Read the next line into the line buffer.
+         *
+         * @return the length of the line, which is held at the start of {@link #getLineBuffer()}, or -1 when there is
+         *         no more data to read
+         */
+        public int nextLine() throws IOException;
+
+        /** return the buffer holding the line last read by {@link #nextLine()}; it may be replaced by the next call */
+        public byte[] getLineBuffer();
+        }
+
     /** iterator returned instead of null when there is no more data */
-    private static final Iterator EOF_ITERATOR=new Iterator()  {
+    private static final ByteLineIterator EOF_ITERATOR=new ByteLineIterator()  {
         @Override
         public String next() throws IOException {
             return null;
             }
+
+        @Override
+        public int nextLine() throws IOException {
+            return -1;
+            }
+
+        @Override
+        public byte[] getLineBuffer() {
+            return new byte[0];
+            }
         };
 
     /** default implementation of Iterator */
-    private class IteratorImpl implements Iterator {
+    private class IteratorImpl implements ByteLineIterator {
         private int i;
         //private int n_seeks;
         private int tid, beg, end;
-        private TPair64[] off;
+        private final byte[] seqName;
+        private long[] off; // start and end offsets of the chunks
         private long curr_off;
         private boolean iseof;
+        private byte[] line = new byte[256];
+        private final TIntv intv = new TIntv();
 
-        private IteratorImpl(final int _tid, final int _beg, final int _end, final TPair64[] _off) {
+        private IteratorImpl(final int _tid, final int _beg, final int _end, final long[] _off) {
             i = -1;
             //n_seeks = 0;
             curr_off = 0;
@@ -369,35 +433,59 @@ public class TabixReader {
             tid = _tid;
             beg = _beg;
             end = _end;
+            seqName = mSeq[tid].getBytes();
         }
 
         @Override
         public String next() throws IOException {
-            if (iseof) return null;
+            final int len = nextLine();
+            return len < 0 ? null : StringUtil.bytesToString(line, 0, len);
+        }
+
+        @Override
+        public byte[] getLineBuffer() {
+            return line;
+        }
+
+        @Override
+        public int nextLine() throws IOException {
+            if (iseof) return -1;
             for (; ;) {
-                if (curr_off == 0 || !less64(curr_off, off[i].v)) { // then jump to the next chunk
-                    if (i == off.length - 1) break; // no more chunks
-                    if (i >= 0) assert (curr_off == off[i].v); // otherwise bug
-                    if (i < 0 || off[i].v != off[i + 1].u) { // not adjacent chunks; then seek
-                        mFp.seek(off[i + 1].u);
+                if (curr_off == 0 || !less64(curr_off, off[2 * i + 1])) { // then jump to the next chunk
+                    if (2 * i + 2 == off.length) break; // no more chunks
+                    if (i >= 0) assert (curr_off == off[2 * i + 1]); // otherwise bug
+                    if (i < 0 || off[2 * i + 1] != off[2 * i + 2]) { // not adjacent chunks; then seek
+                        mFp.seek(off[2 * i + 2]);
                         curr_off = mFp.getFilePointer();
                         //++n_seeks;
                     }
                     ++i;
                 }
-                String s;
-                if ((s = readLine(mFp)) != null) {
-                    TIntv intv;
-                    char[] str = s.toCharArray();
+                final int len = readLineBytes();
+                if (len >= 0) {
                     curr_off = mFp.getFilePointer();
-                    if (str.length == 0 || str[0] == mMeta) continue;
-                    intv = getIntv(s);
+                    if (len == 0 || line[0] == mMeta) continue;
+                    getIntv(line, len, tid, seqName, intv);
                     if (intv.tid != tid || intv.beg >= end) break; // no need to proceed
-                    else if (intv.end > beg && intv.beg < end) return s; // overlap; return
+                    else if (intv.end > beg && intv.beg < end) return len; // overlap; return
                 } else break; // end of file
             }
             iseof = true;
-            return null;
+            return -1;
+        }
+
+        /**
+         * Read a line into the line buffer, like {@link TabixReader#readLine(InputStream)}.
+         *
+         * @return the length of the line, or -1 at the end of the file
+         */
+        private int readLineBytes() throws IOException {
+            int len = 0, c;
+            while ((c = mFp.read()) >= 0 && c != '\n') {
+                if (len == line.length) line = Arrays.copyOf(line, 2 * len);
+                line[len++] = (byte) c;
+            }
+            return c < 0 ? -1 : len;
         }
     }
 
@@ -409,57 +497,125 @@ public class TabixReader {
      * @return an iterator over the lines within the specified interval
      */
     public Iterator query(final int tid, final int beg, final int end) {
-        TPair64[] off, chunks;
+        return queryLines(tid, beg, end);
+    }
+
+    /**
+     * Like {@link #query(int, int, int)}, but the lines can also be read without creating a String per line.
+     */
+    public ByteLineIterator queryLines(final int tid, final int beg, final int end) {
+        return queryLines(tid, new int[]{beg}, new int[]{end});
+    }
+
+    /**
+     * Query several intervals of one sequence at once. The chunks of all intervals are merged so that each part of the
+     * file is read once, and lines are returned once even if they overlap several intervals.
+     *
+     * @param tid Sequence id
+     * @param begs beginnings of the intervals, genomic coords
+     * @param ends ends of the intervals, genomic coords
+     * @return an iterator over the lines within the span of the intervals that are in the chunks of any of the intervals
+     */
+    public Iterator query(final int tid, final int[] begs, final int[] ends) {
+        return queryLines(tid, begs, ends);
+    }
+
+    /**
+     * Like {@link #query(int, int[], int[])}, but the lines can also be read without creating a String per line.
+     */
+    public ByteLineIterator queryLines(final int tid, final int[] begs, final int[] ends) {
+        long[] chunks;
         long min_off;
-        if(tid< 0 || tid>=this.mIndex.length) return EOF_ITERATOR;
+        if(tid< 0 || tid>=this.mIndex.length || begs.length == 0) return EOF_ITERATOR;
         TIndex idx = mIndex[tid];
-        int[] bins = new int[MAX_BIN];
-        int i, l, n_off, n_bins = reg2bins(beg, end, bins);
-        if (idx.l.length > 0)
-            min_off = (beg >> TAD_LIDX_SHIFT >= idx.l.length) ? idx.l[idx.l.length - 1] : idx.l[beg >> TAD_LIDX_SHIFT];
-        else min_off = 0;
-        for (i = n_off = 0; i < n_bins; ++i) {
-            if ((chunks = idx.b.get(bins[i])) != null)
-                n_off += chunks.length;
+        final int[] bins = new int[MAX_BIN];
+        long[] off = new long[64];
+        int i, n_off = 0, n_bins;
+        int beg = Integer.MAX_VALUE, end = 0;
+        for (int k = 0; k < begs.length; ++k) {
+            n_bins = reg2bins(begs[k], ends[k], bins);
+            // lines before the linear index offset of the beginning end before it
+            min_off = idx.getMinOffset(begs[k]);
+            for (i = 0; i < n_bins; ++i) {
+                if ((chunks = idx.getChunks(bins[i])) == null) continue;
+                for (int j = 0; j < chunks.length; j += 2) {
+                    if (!less64(min_off, chunks[j + 1])) continue;
+                    if (2 * n_off + 2 > off.length) off = Arrays.copyOf(off, 2 * off.length);
+                    off[2 * n_off] = less64(chunks[j], min_off) ? min_off : chunks[j];
+                    off[2 * n_off + 1] = chunks[j + 1];
+                    ++n_off;
+                }
+            }
+            beg = Math.min(beg, begs[k]);
+            end = Math.max(end, ends[k]);
         }
         if (n_off == 0) return EOF_ITERATOR;
-        off = new TPair64[n_off];
-        for (i = n_off = 0; i < n_bins; ++i)
-            if ((chunks = idx.b.get(bins[i])) != null)
-                for (int j = 0; j < chunks.length; ++j)
-                    if (less64(min_off, chunks[j].v))
-                        off[n_off++] = new TPair64(chunks[j]);
-        Arrays.sort(off, 0, n_off);
+        n_off = mergeChunks(off, n_off);
+        return new TabixReader.IteratorImpl(tid, beg, end, Arrays.copyOf(off, 2 * n_off));
+    }
+
+    /**
+     * Sort the first n chunks of off, and merge the ones that overlap or that end and start in the same block.
+     *
+     * @param off start and end offsets of the chunks
+     * @return the number of chunks left at the start of off
+     */
+    static int mergeChunks(final long[] off, int n_off) {
+        int i, l;
+        sortChunks(off, n_off);
         // resolve completely contained adjacent blocks
         for (i = 1, l = 0; i < n_off; ++i) {
-            if (less64(off[l].v, off[i].v)) {
+            if (less64(off[2 * l + 1], off[2 * i + 1])) {
                 ++l;
-                off[l].u = off[i].u;
-                off[l].v = off[i].v;
+                off[2 * l] = off[2 * i];
+                off[2 * l + 1] = off[2 * i + 1];
             }
         }
         n_off = l + 1;
         // resolve overlaps between adjacent blocks; this may happen due to the merge in indexing
         for (i = 1; i < n_off; ++i)
-            if (!less64(off[i - 1].v, off[i].u)) off[i - 1].v = off[i].u;
+            if (!less64(off[2 * i - 1], off[2 * i])) off[2 * i - 1] = off[2 * i];
         // merge adjacent blocks
         for (i = 1, l = 0; i < n_off; ++i) {
-            if (off[l].v >> 16 == off[i].u >> 16) off[l].v = off[i].v;
+            if (off[2 * l + 1] >> 16 == off[2 * i] >> 16) off[2 * l + 1] = off[2 * i + 1];
             else {
                 ++l;
-                off[l].u = off[i].u;
-                off[l].v = off[i].v;
+                off[2 * l] = off[2 * i];
+                off[2 * l + 1] = off[2 * i + 1];
             }
         }
-        n_off = l + 1;
-        // return
-        TPair64[] ret = new TPair64[n_off];
-        for (i = 0; i < n_off; ++i) {
-            if (off[i] != null) ret[i] = new TPair64(off[i].u, off[i].v); // in C, this is inefficient
+        return l + 1;
+    }
+
+    /**
+     * Heap sort of the first n chunks of off by start, then end offset, in place.
+     */
+    private static void sortChunks(final long[] off, final int n) {
+        for (int i = n / 2 - 1; i >= 0; --i) siftDown(off, i, n);
+        for (int last = n - 1; last > 0; --last) {
+            swapChunks(off, 0, last);
+            siftDown(off, 0, last);
+        }
+    }
+
+    private static void siftDown(final long[] off, int i, final int n) {
+        for (int child; (child = 2 * i + 1) < n; i = child) {
+            if (child + 1 < n && lessChunk(off, child, child + 1)) ++child;
+            if (!lessChunk(off, i, child)) return;
+            swapChunks(off, i, child);
+        }
+    }
+
+    private static boolean lessChunk(final long[] off, final int a, final int b) {
+        return off[2 * a] != off[2 * b] ? less64(off[2 * a], off[2 * b]) : less64(off[2 * a + 1], off[2 * b + 1]);
+    }
+
+    private static void swapChunks(final long[] off, final int a, final int b) {
+        for (int k = 0; k < 2; ++k) {
+            final long tmp = off[2 * a + k];
+            off[2 * a + k] = off[2 * b + k];
+            off[2 * b + k] = tmp;
         }
-        if (ret.length == 0 || (ret.length == 1 && ret[0] == null))
-            return EOF_ITERATOR;
-        return new TabixReader.IteratorImpl(tid, beg, end, ret);
     }
 
     /**
@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.tribble.util;
+
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.readers.ByteLine;
+
+import java.nio.charset.Charset;
+
+/**
+ * Finds the location of the feature on a line of a column based text format from the columns holding its
+ * chromosome, start and end, without splitting the line or decoding the other columns.  The columns are found and
+ * the coordinates parsed straight from the bytes of the line.  Codecs use this to implement a cheap
+ * {@link htsjdk.tribble.AsciiFeatureCodec#decodeLoc(String)}.
+ *
+ * Not thread safe: the chromosome name of the previous line is reused when the next line has the same one, and
+ * {@link String} lines are copied into a buffer of the parser.
+ */
+public class ColumnLocationParser {
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    private final int chrColumn;
+    private final int startColumn;
+    private final int endColumn;
+    private final int startOffset;
+    private final boolean splitOnWhitespace;
+    private final int lastColumn;
+
+    private final int[] columnStarts;
+    private final int[] columnEnds;
+    private byte[] lineBytes = new byte[256];
+    private String lastChr = null;
+
+    /**
+     * @param chrColumn         0-based column of the chromosome
+     * @param startColumn       0-based column of the start
+     * @param endColumn         0-based column of the end, or -1 if features end where they start.  Features of lines
+     *                          without this column also end where they start.
+     * @param startOffset       added to the start, e.g. 1 for formats with 0-based starts
+     * @param splitOnWhitespace if true, columns are separated by runs of any whitespace and leading whitespace is
+     *                          ignored, like {@code line.trim().split("\\s+")}; otherwise they are separated by a tab
+     *                          or a run of spaces, like {@code line.split("\\t|( +)")}
+     */
+    public ColumnLocationParser(final int chrColumn, final int startColumn, final int endColumn, final int startOffset,
+                                final boolean splitOnWhitespace) {
+        if (chrColumn < 0 || startColumn < 0 || endColumn < -1)
+            throw new IllegalArgumentException("Invalid column numbers " + chrColumn + ", " + startColumn + ", " + endColumn);
+        this.chrColumn = chrColumn;
+        this.startColumn = startColumn;
+        this.endColumn = endColumn;
+        this.startOffset = startOffset;
+        this.splitOnWhitespace = splitOnWhitespace;
+        this.lastColumn = Math.max(Math.max(chrColumn, startColumn), endColumn);
+        this.columnStarts = new int[lastColumn + 1];
+        this.columnEnds = new int[lastColumn + 1];
+    }
+
+    /**
+     * @return the location of the feature on the line, or null if the line has no chromosome or start column
+     * @throws NumberFormatException if the start or end is not an integer
+     */
+    public Feature parse(final String line) {
+        final int length = line.length();
+        if (length > lineBytes.length) lineBytes = new byte[Math.max(length, 2 * lineBytes.length)];
+        for (int i = 0; i < length; i++) lineBytes[i] = (byte) line.charAt(i);
+        return parse(lineBytes, 0, length);
+    }
+
+    /**
+     * @return the location of the feature on the line, or null if the line has no chromosome or start column
+     * @throws NumberFormatException if the start or end is not an integer
+     */
+    public Feature parse(final ByteLine line) {
+        return parse(line.getBytes(), line.getOffset(), line.length());
+    }
+
+    /**
+     * @param bytes  the ASCII bytes of the line
+     * @param offset index of the first byte of the line
+     * @param length the length of the line, without its terminator
+     * @return the location of the feature on the line, or null if the line has no chromosome or start column
+     * @throws NumberFormatException if the start or end is not an integer
+     */
+    public Feature parse(final byte[] bytes, final int offset, final int length) {
+        final int nColumns = findColumns(bytes, offset, offset + length);
+        if (nColumns <= chrColumn || nColumns <= startColumn) return null;
+
+        final int start = ByteLine.parseInt(bytes, columnStarts[startColumn], columnEnds[startColumn]) + startOffset;
+        final int end = endColumn >= 0 && nColumns > endColumn ?
+                ByteLine.parseInt(bytes, columnStarts[endColumn], columnEnds[endColumn]) : start;
+        return new SimpleFeature(getChr(bytes, columnStarts[chrColumn], columnEnds[chrColumn]), start, end);
+    }
+
+    /**
+     * Record the bounds of the columns up to the last one needed.
+     *
+     * @return the number of columns found
+     */
+    private int findColumns(final byte[] bytes, final int offset, final int end) {
+        int i = offset;
+        if (splitOnWhitespace) {
+            while (i < end && isWhitespace(bytes[i])) i++;
+            if (i == end) return 0;
+        }
+        int column = 0;
+        while (column <= lastColumn) {
+            columnStarts[column] = i;
+            while (i < end && !isSeparator(bytes[i])) i++;
+            columnEnds[column++] = i;
+            if (i == end) break;
+
+            // skip the separator
+            final byte separator = bytes[i++];
+            if (splitOnWhitespace) {
+                while (i < end && isWhitespace(bytes[i])) i++;
+                if (i == end) break;
+            } else if (separator == ' ') {
+                while (i < end && bytes[i] == ' ') i++;
+            }
+        }
+        return column;
+    }
+
+    private boolean isSeparator(final byte b) {
+        return splitOnWhitespace ? isWhitespace(b) : b == '\t' || b == ' ';
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return Character.isWhitespace((char) (b & 0xFF));
+    }
+
+    private String getChr(final byte[] bytes, final int start, final int end) {
+        final int length = end - start;
+        if (lastChr == null || lastChr.length() != length || !regionMatches(bytes, start, lastChr))
+            lastChr = new String(bytes, start, length, LATIN1);
+        return lastChr;
+    }
+
+    private static boolean regionMatches(final byte[] bytes, final int start, final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if ((bytes[start + i] & 0xFF) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+}
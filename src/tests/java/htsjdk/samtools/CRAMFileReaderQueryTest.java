@@ -0,0 +1,243 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.cram.build.CramIO;
+import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CoordMath;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.SequenceUtil;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class CRAMFileReaderQueryTest {
+    private static final int CHROMOSOME_LENGTH = 100000;
+
+    private InMemoryReferenceSequenceFile rsf;
+    private List<SAMRecord> samRecords;
+    private byte[] cramBytes;
+
+    @BeforeClass
+    public void initClass() throws Exception {
+        Log.setGlobalLogLevel(Log.LogLevel.ERROR);
+
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate, true,
+                CHROMOSOME_LENGTH);
+        builder.setReadLength(50);
+        int name = 0;
+        for (int contig = 0; contig < 3; contig++) {
+            for (int start = 1; start < 60000; start += 13)
+                builder.addPair(Integer.toString(name++), contig, start, start + 200);
+        }
+        final SAMFileHeader header = builder.getHeader();
+
+        final byte[] refBases = new byte[CHROMOSOME_LENGTH];
+        Arrays.fill(refBases, (byte) 'A');
+        rsf = new InMemoryReferenceSequenceFile();
+        for (final SAMSequenceRecord sequence : header.getSequenceDictionary().getSequences())
+            rsf.add(sequence.getSequenceName(), refBases);
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final CRAMFileWriter writer = new CRAMFileWriter(os, new ReferenceSource(rsf), header, null);
+        samRecords = new ArrayList<SAMRecord>();
+        for (final SAMRecord record : builder) {
+            samRecords.add(record);
+            writer.writeAlignment(record);
+        }
+        writer.finish();
+        writer.close();
+        cramBytes = os.toByteArray();
+    }
+
+    @DataProvider(name = "intervals")
+    public Object[][] intervals() {
+        return new Object[][]{
+                {new QueryInterval[]{new QueryInterval(0, 1000, 1100)}, false},
+                {new QueryInterval[]{new QueryInterval(0, 1000, 1100)}, true},
+                {new QueryInterval[]{new QueryInterval(2, 50000, 0), new QueryInterval(0, 59990, 70000)}, false},
+                {new QueryInterval[]{new QueryInterval(1, 20000, 20500), new QueryInterval(1, 20400, 21000),
+                        new QueryInterval(2, 100, 150)}, false},
+                {new QueryInterval[]{new QueryInterval(1, 80000, 90000)}, false},
+        };
+    }
+
+    @Test(dataProvider = "intervals")
+    public void testQueryWithoutIndex(final QueryInterval[] intervals, final boolean contained) throws Exception {
+        final CRAMFileReader reader = new CRAMFileReader(writeTempFile(cramBytes), (InputStream) null,
+                new ReferenceSource(rsf));
+        final CloseableIterator<SAMRecord> iterator = reader.query(intervals, contained);
+        final List<String> found = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            final SAMRecord record = iterator.next();
+            found.add(record.getReadName() + record.getFlags());
+        }
+        reader.close();
+
+        final List<String> expected = new ArrayList<String>();
+        for (final SAMRecord record : samRecords) {
+            if (matches(record, intervals, contained))
+                expected.add(record.getReadName() + record.getFlags());
+        }
+        Assert.assertEquals(found, expected);
+    }
+
+    @Test
+    public void testSliceHeadersMatchFullContainers() throws Exception {
+        final InputStream full = new ByteArrayInputStream(cramBytes);
+        final InputStream headers = new ByteArrayInputStream(cramBytes);
+        CramIO.readCramHeader(full);
+        CramIO.readCramHeader(headers);
+
+        int containers = 0;
+        while (true) {
+            final Container expected = CramIO.readContainer(full);
+            final Container actual = CramIO.readContainerSliceHeaders(headers);
+            if (expected == null) {
+                Assert.assertNull(actual);
+                break;
+            }
+            Assert.assertEquals(actual.sequenceId, expected.sequenceId);
+            Assert.assertEquals(actual.slices.length, expected.slices.length);
+            for (int i = 0; i < expected.slices.length; i++) {
+                Assert.assertEquals(actual.slices[i].alignmentStart, expected.slices[i].alignmentStart);
+                Assert.assertEquals(actual.slices[i].alignmentSpan, expected.slices[i].alignmentSpan);
+                Assert.assertEquals(actual.slices[i].nofRecords, expected.slices[i].nofRecords);
+                Assert.assertEquals(actual.slices[i].offset, expected.slices[i].offset);
+                Assert.assertEquals(actual.slices[i].size, expected.slices[i].size);
+            }
+            containers++;
+        }
+        Assert.assertTrue(containers > 3);
+    }
+
+    @Test
+    public void testQueryWithRegionalReference() throws Exception {
+        // a random reference in an indexed FASTA file, read region by region:
+        final Random random = new Random(0);
+        final byte[] refBases = new byte[CHROMOSOME_LENGTH];
+        for (int i = 0; i < refBases.length; i++)
+            refBases[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        final File fasta = File.createTempFile("query", ".fa");
+        final File fai = new File(fasta.getAbsolutePath() + ".fai");
+        fasta.deleteOnExit();
+        fai.deleteOnExit();
+        final FileOutputStream fastaStream = new FileOutputStream(fasta);
+        final FileOutputStream faiStream = new FileOutputStream(fai);
+        final SAMFileHeader header = samRecords.get(0).getHeader();
+        long location = 0;
+        for (final SAMSequenceRecord sequence : header.getSequenceDictionary().getSequences()) {
+            final byte[] name = (">" + sequence.getSequenceName() + "\n").getBytes();
+            fastaStream.write(name);
+            location += name.length;
+            faiStream.write((sequence.getSequenceName() + "\t" + refBases.length + "\t" + location + "\t100\t101\n")
+                    .getBytes());
+            for (int i = 0; i < refBases.length; i += 100) {
+                fastaStream.write(refBases, i, 100);
+                fastaStream.write('\n');
+            }
+            location += refBases.length / 100 * 101;
+        }
+        fastaStream.close();
+        faiStream.close();
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final CRAMFileWriter writer = new CRAMFileWriter(os, new ReferenceSource(fasta), header, null);
+        for (final SAMRecord record : samRecords)
+            writer.writeAlignment(record);
+        writer.finish();
+        writer.close();
+
+        final QueryInterval[] intervals = new QueryInterval[]{new QueryInterval(0, 59990, 70000),
+                new QueryInterval(2, 30000, 30100)};
+        final CRAMFileReader reader = new CRAMFileReader(writeTempFile(os.toByteArray()), (InputStream) null,
+                new ReferenceSource(fasta));
+        final CloseableIterator<SAMRecord> iterator = reader.query(intervals, false);
+        final List<String> found = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            final SAMRecord record = iterator.next();
+            found.add(record.getReadName() + record.getFlags() + record.getReadString() + record.getAttribute("NM"));
+        }
+        reader.close();
+
+        final List<String> expected = new ArrayList<String>();
+        for (final SAMRecord record : samRecords) {
+            if (!matches(record, intervals, false))
+                continue;
+            final SAMRecord copy = (SAMRecord) record.clone();
+            SequenceUtil.calculateMdAndNmTags(copy, refBases, false, true);
+            expected.add(copy.getReadName() + copy.getFlags() + copy.getReadString() + copy.getAttribute("NM"));
+        }
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(found, expected);
+    }
+
+    @Test
+    public void testQueryStates() throws Exception {
+        final QueryInterval[] intervals = new QueryInterval[]{new QueryInterval(0, 1000, 1100)};
+        final CRAMFileReader reader = new CRAMFileReader(writeTempFile(cramBytes), (InputStream) null,
+                new ReferenceSource(rsf));
+        final SAMRecordIterator iterator = reader.getIterator();
+        try {
+            reader.query(intervals, false);
+            Assert.fail("Expecting a query during iteration to fail");
+        } catch (final IllegalStateException e) {
+        }
+        iterator.close();
+
+        CloseableIterator<SAMRecord> queryIterator = reader.query(intervals, false);
+        Assert.assertTrue(queryIterator.hasNext());
+        queryIterator.close();
+        queryIterator = reader.query(intervals, false);
+        Assert.assertTrue(queryIterator.hasNext());
+        queryIterator.close();
+
+        reader.close();
+        try {
+            reader.query(intervals, false);
+            Assert.fail("Expecting a query of a closed reader to fail");
+        } catch (final IllegalStateException e) {
+        }
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testQueryOfStreamFails() throws Exception {
+        final CRAMFileReader reader = new CRAMFileReader(null, new ByteArrayInputStream(cramBytes),
+                new ReferenceSource(rsf));
+        reader.query(new QueryInterval[]{new QueryInterval(0, 1000, 1100)}, false);
+    }
+
+    private static File writeTempFile(final byte[] bytes) throws IOException {
+        final File file = File.createTempFile("query", ".cram");
+        file.deleteOnExit();
+        final FileOutputStream fos = new FileOutputStream(file);
+        fos.write(bytes);
+        fos.close();
+        return file;
+    }
+
+    private static boolean matches(final SAMRecord record, final QueryInterval[] intervals, final boolean contained) {
+        for (final QueryInterval interval : intervals) {
+            if (interval.referenceIndex != record.getReferenceIndex())
+                continue;
+            final int end = interval.end <= 0 ? Integer.MAX_VALUE : interval.end;
+            if (contained ? CoordMath.encloses(interval.start, end, record.getAlignmentStart(), record.getAlignmentEnd())
+                    : CoordMath.overlaps(interval.start, end, record.getAlignmentStart(), record.getAlignmentEnd()))
+                return true;
+        }
+        return false;
+    }
+}
@@ -23,23 +23,34 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.cram.build.ContainerSizePolicy;
+import htsjdk.samtools.cram.build.CramIO;
+import htsjdk.samtools.cram.lossy.PreservationPolicy;
+import htsjdk.samtools.cram.lossy.QualityScorePreservation;
 import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.cram.structure.Block;
+import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.cram.structure.Slice;
 import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.Log.LogLevel;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 public class CramFileWriterTest {
+	private static final String READ_GROUP = "1";
 
 	@BeforeClass
 	public void initClass() {
@@ -94,6 +105,270 @@ public class CramFileWriterTest {
 		cReader.close();
 	}
 
+	@Test(description = "Records read from several containers must stay intact while the decoder reuses its buffers.")
+	public void retained_records_across_containers() throws Exception {
+		InMemoryReferenceSequenceFile rsf = createReference(null);
+		List<SAMRecord> samRecords = createRecords(25000, READ_GROUP);
+		List<SAMRecord> readBack = writeAndReadBack(samRecords,
+				new ReferenceSource(rsf), new ReferenceSource(rsf), null);
+
+		Assert.assertEquals(readBack.size(), samRecords.size());
+		for (int i = 0; i < readBack.size(); i++) {
+			SAMRecord r1 = readBack.get(i);
+			SAMRecord r2 = samRecords.get(i);
+			Assert.assertEquals(r1.getReadName(), r2.getReadName());
+			Assert.assertEquals(r1.getAlignmentStart(), r2.getAlignmentStart());
+			Assert.assertEquals(r1.getReadBases(), r2.getReadBases());
+			Assert.assertEquals(r1.getBaseQualities(), r2.getBaseQualities());
+		}
+	}
+
+	@Test(description = "Tokenised read names must be restored exactly.")
+	public void tokenised_read_names() throws Exception {
+		InMemoryReferenceSequenceFile rsf = createReference(null);
+		List<SAMRecord> samRecords = createRecords(30000, READ_GROUP);
+		for (int i = 0; i < samRecords.size(); i++)
+			samRecords.get(i).setReadName(
+					"HWI-ST1213:151:C1DTLACXX:2:" + (1101 + i / 10000) + ":"
+							+ (1000 + i / 2 % 1900) + ":0" + i / 2);
+		List<SAMRecord> readBack = writeAndReadBack(samRecords,
+				new ReferenceSource(rsf), new ReferenceSource(rsf),
+				new WriterSetup() {
+					@Override
+					public void setup(CRAMFileWriter writer) {
+						writer.setTokeniseReadNames(true);
+					}
+				});
+
+		Assert.assertEquals(readBack.size(), samRecords.size());
+		for (int i = 0; i < readBack.size(); i++)
+			Assert.assertEquals(readBack.get(i).getReadName(),
+					samRecords.get(i).getReadName());
+	}
+
+	@Test(description = "Range coded external blocks must decode exactly.")
+	public void range_coding() throws Exception {
+		InMemoryReferenceSequenceFile rsf = createReference(null);
+		List<SAMRecord> samRecords = createRecords(25000, READ_GROUP);
+		Random random = new Random(1);
+		for (SAMRecord record : samRecords) {
+			byte[] scores = record.getBaseQualities();
+			for (int i = 0; i < scores.length; i++)
+				scores[i] = (byte) (10 + random.nextInt(30));
+			record.setBaseQualities(scores);
+		}
+		List<SAMRecord> readBack = writeAndReadBack(samRecords,
+				new ReferenceSource(rsf), new ReferenceSource(rsf),
+				new WriterSetup() {
+					@Override
+					public void setup(CRAMFileWriter writer) {
+						writer.setRangeCoding(true);
+					}
+				});
+
+		Assert.assertEquals(readBack.size(), samRecords.size());
+		for (int i = 0; i < readBack.size(); i++) {
+			SAMRecord r = readBack.get(i);
+			SAMRecord record = samRecords.get(i);
+			Assert.assertEquals(r.getReadName(), record.getReadName());
+			Assert.assertEquals(r.getAlignmentStart(), record.getAlignmentStart());
+			Assert.assertEquals(r.getReadString(), record.getReadString());
+			Assert.assertEquals(r.getBaseQualityString(), record.getBaseQualityString());
+		}
+	}
+
+	@DataProvider(name = "embeddedReferenceModes")
+	public Object[][] embeddedReferenceModes() {
+		return new Object[][] { { false }, { true } };
+	}
+
+	@Test(dataProvider = "embeddedReferenceModes", description = "Slices with embedded reference or consensus must decode without a reference.")
+	public void embedded_reference(final boolean referenceless) throws Exception {
+		InMemoryReferenceSequenceFile rsf = createReference(new Random(0));
+		List<SAMRecord> samRecords = createRecords(25000, READ_GROUP);
+		// no reference available for reading:
+		List<SAMRecord> readBack = writeAndReadBack(samRecords,
+				referenceless ? new ReferenceSource() : new ReferenceSource(rsf),
+				new ReferenceSource(), new WriterSetup() {
+					@Override
+					public void setup(CRAMFileWriter writer) {
+						if (referenceless)
+							writer.setReferenceless(true);
+						else
+							writer.setEmbedReference(true);
+					}
+				});
+
+		Assert.assertEquals(readBack.size(), samRecords.size());
+		for (int i = 0; i < readBack.size(); i++) {
+			SAMRecord r = readBack.get(i);
+			SAMRecord record = samRecords.get(i);
+			Assert.assertEquals(r.getReadName(), record.getReadName());
+			Assert.assertEquals(r.getAlignmentStart(), record.getAlignmentStart());
+			Assert.assertEquals(r.getCigarString(), record.getCigarString());
+			Assert.assertEquals(r.getReadString(), record.getReadString());
+			Assert.assertEquals(r.getBaseQualityString(), record.getBaseQualityString());
+			if (referenceless)
+				Assert.assertNull(r.getAttribute("NM"));
+			else
+				Assert.assertNotNull(r.getAttribute("NM"));
+		}
+	}
+
+	@Test(description = "Quality score policies needing reference tracks must work on a consensus of each container.")
+	public void referenceless_with_reference_tracks() throws Exception {
+		List<SAMRecord> samRecords = createRecords(25000, READ_GROUP);
+		List<SAMRecord> readBack = writeAndReadBack(samRecords,
+				new ReferenceSource(), new ReferenceSource(), new WriterSetup() {
+					@Override
+					public void setup(CRAMFileWriter writer) {
+						writer.setReferenceless(true);
+						writer.setContainerSizePolicy(new ContainerSizePolicy(1000, 0, 5000, 3));
+						List<PreservationPolicy> policies = writer.getPreservationPolicies();
+						policies.clear();
+						// keep the scores of bases covered by less than 1000 reads, that is all of them:
+						policies.addAll(new QualityScorePreservation("X1000_40").getPreservationPolicies());
+					}
+				});
+
+		Assert.assertEquals(readBack.size(), samRecords.size());
+		for (int i = 0; i < readBack.size(); i++) {
+			SAMRecord r = readBack.get(i);
+			SAMRecord record = samRecords.get(i);
+			Assert.assertEquals(r.getReadName(), record.getReadName());
+			Assert.assertEquals(r.getAlignmentStart(), record.getAlignmentStart());
+			Assert.assertEquals(r.getReadString(), record.getReadString());
+			Assert.assertEquals(r.getBaseQualityString(), record.getBaseQualityString());
+		}
+	}
+
+	@DataProvider(name = "containerSizePolicies")
+	public Object[][] containerSizePolicies() {
+		return new Object[][] { { ContainerSizePolicy.DEFAULT },
+				{ ContainerSizePolicy.RANDOM_ACCESS },
+				{ ContainerSizePolicy.ARCHIVAL },
+				{ new ContainerSizePolicy(1000, 0, 5000, 3) },
+				{ new ContainerSizePolicy(10000, 20000, 0, 2) } };
+	}
+
+	@Test(dataProvider = "containerSizePolicies", description = "Slices and containers must respect the size policy.")
+	public void container_size_policy(final ContainerSizePolicy policy)
+			throws Exception {
+		InMemoryReferenceSequenceFile rsf = createReference(null);
+		List<SAMRecord> samRecords = createRecords(25000, READ_GROUP);
+		byte[] cram = write(samRecords, new ReferenceSource(rsf),
+				new WriterSetup() {
+					@Override
+					public void setup(CRAMFileWriter writer) {
+						writer.setContainerSizePolicy(policy);
+					}
+				});
+
+		InputStream is = new ByteArrayInputStream(cram);
+		CramIO.readCramHeader(is);
+		int records = 0;
+		Container c;
+		while ((c = CramIO.readContainer(is)) != null && !c.isEOF()) {
+			Assert.assertTrue(c.slices.length <= policy.getSlicesPerContainer());
+			for (Slice slice : c.slices) {
+				Assert.assertTrue(slice.nofRecords <= policy.getMaxRecordsPerSlice());
+				if (policy.getMaxSliceSpan() > 0)
+					Assert.assertTrue(slice.alignmentSpan <= policy.getMaxSliceSpan());
+				if (policy.getMaxSliceBytes() > 0) {
+					long bytes = slice.coreBlock.getRawContentSize();
+					for (Block block : slice.external.values())
+						bytes += block.getRawContentSize();
+					// the record that reaches the limit still goes into the slice:
+					Assert.assertTrue(bytes - bytes / slice.nofRecords < policy.getMaxSliceBytes(),
+							bytes + " bytes in a slice of " + slice.nofRecords + " records");
+				}
+				records += slice.nofRecords;
+			}
+		}
+		Assert.assertEquals(records, samRecords.size());
+
+		List<SAMRecord> readBack = readBack(cram, new ReferenceSource(rsf));
+		Assert.assertEquals(readBack.size(), samRecords.size());
+		for (int i = 0; i < readBack.size(); i++) {
+			SAMRecord r = readBack.get(i);
+			SAMRecord record = samRecords.get(i);
+			Assert.assertEquals(r.getReadName(), record.getReadName());
+			Assert.assertEquals(r.getFlags(), record.getFlags());
+			Assert.assertEquals(r.getAlignmentStart(), record.getAlignmentStart());
+			Assert.assertEquals(r.getMateAlignmentStart(), record.getMateAlignmentStart());
+			Assert.assertEquals(r.getReadString(), record.getReadString());
+		}
+	}
+
+	/**
+	 * Configures a writer before any record is written to it.
+	 */
+	private interface WriterSetup {
+		void setup(CRAMFileWriter writer);
+	}
+
+	/**
+	 * @param random
+	 *            the source of random reference bases, or null for a
+	 *            reference of 'A's only
+	 * @return a reference with a single 1 Mb sequence named chr1
+	 */
+	private static InMemoryReferenceSequenceFile createReference(Random random) {
+		byte[] refBases = new byte[1024 * 1024];
+		if (random == null)
+			Arrays.fill(refBases, (byte) 'A');
+		else
+			for (int i = 0; i < refBases.length; i++)
+				refBases[i] = (byte) "ACGT".charAt(random.nextInt(4));
+		InMemoryReferenceSequenceFile rsf = new InMemoryReferenceSequenceFile();
+		rsf.add("chr1", refBases);
+		return rsf;
+	}
+
+	/**
+	 * Write the records into an in-memory CRAM file with a header of one
+	 * 1 Mb sequence, chr1, and of the read group {@link #READ_GROUP}.
+	 * 
+	 * @param setup
+	 *            configures the writer, may be null
+	 */
+	private static byte[] write(List<SAMRecord> records, ReferenceSource source, WriterSetup setup) {
+		final SAMFileHeader header = new SAMFileHeader();
+		header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+		header.addSequence(new SAMSequenceRecord("chr1", 1024 * 1024));
+		header.addReadGroup(new SAMReadGroupRecord(READ_GROUP));
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		CRAMFileWriter writer = new CRAMFileWriter(os, source, header, null);
+		if (setup != null)
+			setup.setup(writer);
+		for (SAMRecord record : records)
+			writer.writeAlignment(record);
+		writer.finish();
+		writer.close();
+		return os.toByteArray();
+	}
+
+	/**
+	 * @return all the records of the CRAM file, all kept at once
+	 */
+	private static List<SAMRecord> readBack(byte[] cram, ReferenceSource source) {
+		CRAMFileReader cReader = new CRAMFileReader(null,
+				new ByteArrayInputStream(cram), source);
+		List<SAMRecord> records = new ArrayList<SAMRecord>();
+		SAMRecordIterator iterator = cReader.iterator();
+		while (iterator.hasNext())
+			records.add(iterator.next());
+		cReader.close();
+		return records;
+	}
+
+	private static List<SAMRecord> writeAndReadBack(List<SAMRecord> records,
+			ReferenceSource writeSource, ReferenceSource readSource,
+			WriterSetup setup) {
+		return readBack(write(records, writeSource, setup), readSource);
+	}
+
 	private List<SAMRecord> createRecords(int count, String rg) {
 		List<SAMRecord> list = new ArrayList<SAMRecord>(count);
 		final SAMRecordSetBuilder builder = new SAMRecordSetBuilder();
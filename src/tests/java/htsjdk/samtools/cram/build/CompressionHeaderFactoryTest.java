@@ -0,0 +1,93 @@
+package htsjdk.samtools.cram.build;
+
+import htsjdk.samtools.cram.encoding.huffman.HuffmanCode;
+import htsjdk.samtools.cram.encoding.huffman.HuffmanTree;
+import htsjdk.samtools.cram.structure.CompressionHeader;
+import htsjdk.samtools.cram.structure.CramCompressionRecord;
+import htsjdk.samtools.cram.structure.EncodingKey;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class CompressionHeaderFactoryTest {
+
+    @Test
+    public void testCodeLengthsAreOptimal() {
+        final Random random = new Random(3);
+        for (int n = 1; n < 40; n++) {
+            final int[] freqs = new int[n];
+            final Integer[] symbols = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                freqs[i] = 1 + random.nextInt(i % 2 == 0 ? 10 : 10000);
+                symbols[i] = i;
+            }
+
+            final HuffmanTree<Integer> tree = HuffmanCode.buildTree(freqs, symbols);
+            final List<Integer> values = new ArrayList<Integer>();
+            final List<Integer> lens = new ArrayList<Integer>();
+            HuffmanCode.getValuesAndBitLengths(values, lens, tree);
+            long expectedBits = 0;
+            for (int i = 0; i < values.size(); i++)
+                expectedBits += (long) freqs[values.get(i)] * lens.get(i);
+
+            final int[] codeLengths = HuffmanCode.codeLengths(freqs);
+            long bits = 0;
+            double kraft = 0;
+            for (int i = 0; i < n; i++) {
+                bits += (long) freqs[i] * codeLengths[i];
+                kraft += Math.pow(2, -codeLengths[i]);
+            }
+            Assert.assertEquals(bits, expectedBits);
+            if (n > 1)
+                Assert.assertEquals(kraft, 1.0, 1e-9);
+        }
+    }
+
+    @Test
+    public void testSampledValuesAreAllEncodable() {
+        final CompressionHeaderFactory.HuffmanParamsCalculator calculator = new CompressionHeaderFactory.HuffmanParamsCalculator();
+        calculator.add(1, 100);
+        calculator.add(2, 0);
+        calculator.add(1, 0);
+        calculator.calculate();
+        Assert.assertEquals(Arrays.toString(calculator.values()), "[1, 2]");
+        Assert.assertEquals(Arrays.toString(calculator.bitLens()), "[1, 1]");
+    }
+
+    @Test
+    public void testEncodingsReusedWhileStable() {
+        final CompressionHeaderFactory factory = new CompressionHeaderFactory();
+        factory.setReuseEncodings(true);
+        factory.setSamplingStep(3);
+
+        final CompressionHeader first = factory.build(createRecords(1000, 50), null);
+        final CompressionHeader second = factory.build(createRecords(1200, 50), null);
+        Assert.assertSame(second.eMap.get(EncodingKey.RL_ReadLength), first.eMap.get(EncodingKey.RL_ReadLength));
+        Assert.assertSame(second.eMap.get(EncodingKey.MQ_MappingQualityScore),
+                first.eMap.get(EncodingKey.MQ_MappingQualityScore));
+
+        // new read lengths require a new encoding:
+        final CompressionHeader third = factory.build(createRecords(1000, 70), null);
+        Assert.assertNotSame(third.eMap.get(EncodingKey.RL_ReadLength), first.eMap.get(EncodingKey.RL_ReadLength));
+        Assert.assertSame(third.eMap.get(EncodingKey.MQ_MappingQualityScore),
+                first.eMap.get(EncodingKey.MQ_MappingQualityScore));
+    }
+
+    private static List<CramCompressionRecord> createRecords(final int count, final int maxReadLength) {
+        final List<CramCompressionRecord> records = new ArrayList<CramCompressionRecord>();
+        for (int i = 0; i < count; i++) {
+            final CramCompressionRecord r = new CramCompressionRecord();
+            r.readName = "read" + i;
+            r.readLength = maxReadLength - i % 3;
+            r.mappingQuality = i % 4 == 0 ? 0 : 60;
+            r.alignmentStart = 1 + i;
+            r.alignmentDelta = 1;
+            records.add(r);
+        }
+        return records;
+    }
+}
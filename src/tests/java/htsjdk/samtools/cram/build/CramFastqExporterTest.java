@@ -0,0 +1,177 @@
+package htsjdk.samtools.cram.build;
+
+import htsjdk.samtools.CRAMFileWriter;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.SequenceUtil;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class CramFastqExporterTest {
+    private static final int CHROMOSOME_LENGTH = 100000;
+
+    private InMemoryReferenceSequenceFile rsf;
+    private byte[] cramBytes;
+    private final Map<String, String> expectedPairs = new HashMap<String, String>();
+    private final List<String> expectedUnpaired = new ArrayList<String>();
+
+    @BeforeClass
+    public void initClass() throws Exception {
+        Log.setGlobalLogLevel(Log.LogLevel.ERROR);
+
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate, true,
+                CHROMOSOME_LENGTH);
+        builder.setReadLength(50);
+        int name = 0;
+        for (int start = 1; start < 40000; start += 7)
+            builder.addPair(Integer.toString(name++), 0, start, start + 200);
+        for (int start = 1; start < 10000; start += 101)
+            builder.addPair(Integer.toString(name++), 0, 1, start, start + 90000, false, false, "50M", "50M", false,
+                    true, false, false, 30);
+        for (int start = 1; start < 10000; start += 31)
+            builder.addFrag(Integer.toString(name++), 1, start, start % 2 == 0);
+        for (int i = 0; i < 100; i++) {
+            builder.addUnmappedPair(Integer.toString(name++));
+            builder.addUnmappedFragment(Integer.toString(name++));
+        }
+        final SAMFileHeader header = builder.getHeader();
+
+        final Random random = new Random(0);
+        rsf = new InMemoryReferenceSequenceFile();
+        for (final SAMSequenceRecord sequence : header.getSequenceDictionary().getSequences()) {
+            final byte[] refBases = new byte[CHROMOSOME_LENGTH];
+            for (int i = 0; i < refBases.length; i++)
+                refBases[i] = (byte) "ACGT".charAt(random.nextInt(4));
+            rsf.add(sequence.getSequenceName(), refBases);
+        }
+
+        // secondary and supplementary alignments of some reads, which must not make reads of their own:
+        final List<SAMRecord> records = new ArrayList<SAMRecord>();
+        for (final SAMRecord record : builder)
+            records.add(record);
+        for (int i = 0; i < 200; i += 3) {
+            final SAMRecord copy = (SAMRecord) records.get(i).clone();
+            copy.setAlignmentStart(copy.getAlignmentStart() + 1000);
+            if (i % 2 == 0)
+                copy.setSupplementaryAlignmentFlag(true);
+            else
+                copy.setNotPrimaryAlignmentFlag(true);
+            records.add(copy);
+        }
+        Collections.sort(records, new SAMRecordCoordinateComparator());
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final CRAMFileWriter writer = new CRAMFileWriter(os, new ReferenceSource(rsf), header, null);
+        for (final SAMRecord record : records) {
+            writer.addAlignment(record);
+            if (record.isSecondaryOrSupplementary())
+                continue;
+            final String fastq = toFastq(record);
+            if (!record.getReadPairedFlag())
+                expectedUnpaired.add(fastq);
+            else if (record.getFirstOfPairFlag())
+                expectedPairs.put(record.getReadName(), fastq + (expectedPairs.containsKey(record.getReadName()) ?
+                        expectedPairs.get(record.getReadName()) : ""));
+            else
+                expectedPairs.put(record.getReadName(), (expectedPairs.containsKey(record.getReadName()) ?
+                        expectedPairs.get(record.getReadName()) : "") + fastq);
+        }
+        writer.close();
+        cramBytes = os.toByteArray();
+    }
+
+    private static String toFastq(final SAMRecord record) {
+        String bases = record.getReadString();
+        String scores = record.getBaseQualityString();
+        if (record.getReadNegativeStrandFlag()) {
+            bases = SequenceUtil.reverseComplement(bases);
+            scores = new StringBuilder(scores).reverse().toString();
+        }
+        final String suffix = record.getReadPairedFlag() ? (record.getFirstOfPairFlag() ? "/1" : "/2") : "";
+        return "@" + record.getReadName() + suffix + "\n" + bases + "\n+\n" + scores + "\n";
+    }
+
+    private static List<String> split(final byte[] fastq) {
+        final List<String> reads = new ArrayList<String>();
+        final String[] lines = new String(fastq).split("\n");
+        for (int i = 0; i + 3 < lines.length; i += 4)
+            reads.add(lines[i] + "\n" + lines[i + 1] + "\n" + lines[i + 2] + "\n" + lines[i + 3] + "\n");
+        return reads;
+    }
+
+    @DataProvider(name = "threads")
+    public Object[][] threads() {
+        return new Object[][]{{1}, {4}};
+    }
+
+    @Test(dataProvider = "threads")
+    public void testSplitOutput(final int threads) throws Exception {
+        final CramFastqExporter exporter = new CramFastqExporter(new ByteArrayInputStream(cramBytes),
+                new ReferenceSource(rsf));
+        exporter.setThreads(threads);
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+        final ByteArrayOutputStream unpaired = new ByteArrayOutputStream();
+        exporter.export(first, second, unpaired);
+
+        final List<String> firstReads = split(first.toByteArray());
+        final List<String> secondReads = split(second.toByteArray());
+        Assert.assertEquals(firstReads.size(), expectedPairs.size());
+        Assert.assertEquals(secondReads.size(), expectedPairs.size());
+        for (int i = 0; i < firstReads.size(); i++) {
+            final String readName = firstReads.get(i).substring(1, firstReads.get(i).indexOf("/1\n"));
+            Assert.assertEquals(firstReads.get(i) + secondReads.get(i), expectedPairs.get(readName));
+        }
+
+        final List<String> unpairedReads = split(unpaired.toByteArray());
+        final List<String> expected = new ArrayList<String>(expectedUnpaired);
+        Collections.sort(unpairedReads);
+        Collections.sort(expected);
+        Assert.assertEquals(unpairedReads, expected);
+        Assert.assertEquals(exporter.getReadCount(), 2 * expectedPairs.size() + expectedUnpaired.size());
+    }
+
+    @Test
+    public void testInterleavedOutput() throws Exception {
+        final CramFastqExporter exporter = new CramFastqExporter(new ByteArrayInputStream(cramBytes),
+                new ReferenceSource(rsf));
+        exporter.setThreads(2);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        exporter.export(os);
+
+        final List<String> reads = split(os.toByteArray());
+        int pairs = 0;
+        int unpaired = 0;
+        for (int i = 0; i < reads.size(); i++) {
+            final String read = reads.get(i);
+            final int end = read.indexOf('\n');
+            if (read.substring(0, end).endsWith("/1")) {
+                final String readName = read.substring(1, end - 2);
+                Assert.assertEquals(read + reads.get(++i), expectedPairs.get(readName));
+                pairs++;
+            } else {
+                Assert.assertTrue(expectedUnpaired.contains(read), read);
+                unpaired++;
+            }
+        }
+        Assert.assertEquals(pairs, expectedPairs.size());
+        Assert.assertEquals(unpaired, expectedUnpaired.size());
+    }
+}
@@ -0,0 +1,63 @@
+package htsjdk.samtools.cram.encoding;
+
+import htsjdk.samtools.cram.io.ExposedByteArrayOutputStream;
+import htsjdk.samtools.cram.structure.EncodingParams;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ReadNameTokenEncodingTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            final String name = "HWI-ST1213:151:C1DTLACXX:2:" + (1101 + i / 300) + ":" + (1000 + i * 7 % 1900) + ":"
+                    + (2000 + i * 3);
+            names.add(name);
+            if (i % 5 == 0)
+                names.add(name);
+        }
+        names.add("");
+        names.add("read007");
+        names.add("read008");
+        names.add("read8");
+        names.add("read12345678901234");
+        names.add("read12345678901235");
+        names.add("read9:5");
+        names.add("read2:5:7");
+        names.add("0:0");
+        names.add("999999999x");
+        names.add("1000000000x");
+
+        final EncodingParams params = ReadNameTokenEncoding.toParam(3, 5, 7, 11);
+        final ReadNameTokenEncoding encoding = new ReadNameTokenEncoding();
+        encoding.fromByteArray(params.params);
+
+        final Map<Integer, ExposedByteArrayOutputStream> outputMap = new HashMap<Integer, ExposedByteArrayOutputStream>();
+        for (final int id : new int[]{3, 5, 7, 11})
+            outputMap.put(id, new ExposedByteArrayOutputStream());
+        final BitCodec<byte[]> writer = encoding.buildCodec(null, outputMap);
+        for (final String name : names)
+            writer.write(null, name.getBytes());
+
+        final Map<Integer, InputStream> inputMap = new HashMap<Integer, InputStream>();
+        for (final Map.Entry<Integer, ExposedByteArrayOutputStream> entry : outputMap.entrySet())
+            inputMap.put(entry.getKey(), new ByteArrayInputStream(entry.getValue().toByteArray()));
+        final BitCodec<byte[]> reader = encoding.buildCodec(inputMap, null);
+        for (final String name : names)
+            Assert.assertEquals(new String(reader.read(null)), name);
+
+        for (final InputStream is : inputMap.values())
+            Assert.assertEquals(is.read(), -1);
+
+        // most tokens of consecutive names match, so the literal strings are few:
+        Assert.assertTrue(outputMap.get(11).size() < 500, "string block size: " + outputMap.get(11).size());
+    }
+}
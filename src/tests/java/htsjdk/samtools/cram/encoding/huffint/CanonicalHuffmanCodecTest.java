@@ -0,0 +1,71 @@
+package htsjdk.samtools.cram.encoding.huffint;
+
+import htsjdk.samtools.cram.io.BitInputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitInputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitOutputStream;
+import htsjdk.samtools.cram.io.DefaultBitInputStream;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+public class CanonicalHuffmanCodecTest {
+
+    @DataProvider(name = "alphabets")
+    public Object[][] alphabets() {
+        // a skewed code with lengths 1..15, longer than the lookup table:
+        final int[] skewedValues = new int[16];
+        final int[] skewedLengths = new int[16];
+        for (int i = 0; i < 16; i++) {
+            skewedValues[i] = 1000 - 7 * i;
+            skewedLengths[i] = Math.min(i + 1, 15);
+        }
+
+        return new Object[][]{
+                {new int[]{42}, new int[]{0}},
+                {new int[]{0, 1, 2, 3}, new int[]{2, 2, 2, 2}},
+                {new int[]{-5, 100, 7}, new int[]{1, 2, 2}},
+                {skewedValues, skewedLengths},
+        };
+    }
+
+    @Test(dataProvider = "alphabets")
+    public void testIntegerRoundTrip(final int[] values, final int[] bitLengths) throws Exception {
+        final CanonicalHuffmanIntegerCodec2 codec = new CanonicalHuffmanIntegerCodec2(values, bitLengths);
+        final Random random = new Random(values.length);
+        final int[] symbols = new int[5000];
+        final ByteArrayBitOutputStream bos = new ByteArrayBitOutputStream();
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = values[random.nextInt(values.length)];
+            codec.write(bos, symbols[i]);
+        }
+        final byte[] data = bos.toByteArray();
+
+        final BitInputStream fast = new ByteArrayBitInputStream(data);
+        final BitInputStream slow = new DefaultBitInputStream(new ByteArrayInputStream(data));
+        for (final int symbol : symbols) {
+            Assert.assertEquals(codec.readInt(fast), symbol);
+            Assert.assertEquals(codec.read(slow).intValue(), symbol);
+        }
+    }
+
+    @Test
+    public void testByteRoundTrip() throws Exception {
+        final byte[] values = new byte[]{(byte) 'A', (byte) 'C', (byte) 'G', (byte) 'T', (byte) 'N'};
+        final int[] bitLengths = new int[]{2, 2, 2, 3, 3};
+        final CanonicalHuffmanByteCodec2 codec = new CanonicalHuffmanByteCodec2(values, bitLengths);
+        final Random random = new Random(0);
+        final byte[] symbols = new byte[5000];
+        final ByteArrayBitOutputStream bos = new ByteArrayBitOutputStream();
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = values[random.nextInt(values.length)];
+            codec.write(bos, symbols[i]);
+        }
+
+        final ByteArrayBitInputStream bis = new ByteArrayBitInputStream(bos.toByteArray());
+        for (final byte symbol : symbols)
+            Assert.assertEquals(codec.readByte(bis), symbol);
+    }
+}
@@ -0,0 +1,119 @@
+package htsjdk.samtools.cram.index;
+
+import htsjdk.samtools.CRAMFileWriter;
+import htsjdk.samtools.CRAMIterator;
+import htsjdk.samtools.CRAMIndexer;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.build.CramIO;
+import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.cram.structure.Slice;
+import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
+import htsjdk.samtools.util.Log;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class BaiIndexerTest {
+
+    /**
+     * Puts records of several references into the same containers.
+     */
+    private static class MultiRefWriter extends CRAMFileWriter {
+        MultiRefWriter(final ByteArrayOutputStream os, final ReferenceSource source, final SAMFileHeader header) {
+            super(os, source, header, null);
+        }
+
+        @Override
+        protected boolean shouldFlushContainer(final SAMRecord nextRecord) {
+            return false;
+        }
+    }
+
+    private static InMemoryReferenceSequenceFile rsf;
+
+    private static byte[] createMultiRefCram() throws Exception {
+        Log.setGlobalLogLevel(Log.LogLevel.ERROR);
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate, true,
+                100000);
+        builder.setReadLength(50);
+        int name = 0;
+        for (int contig = 0; contig < 3; contig++)
+            for (int i = 0; i < 50; i++)
+                builder.addPair(Integer.toString(name++), contig, 1000 * (contig + 1) + i, 1000 * (contig + 1) + 100 + i);
+        final SAMFileHeader header = builder.getHeader();
+
+        final byte[] refBases = new byte[100000];
+        Arrays.fill(refBases, (byte) 'A');
+        rsf = new InMemoryReferenceSequenceFile();
+        for (final SAMSequenceRecord sequence : header.getSequenceDictionary().getSequences())
+            rsf.add(sequence.getSequenceName(), refBases);
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final CRAMFileWriter writer = new MultiRefWriter(os, new ReferenceSource(rsf), header);
+        for (final SAMRecord record : builder)
+            writer.addAlignment(record);
+        writer.close();
+        return os.toByteArray();
+    }
+
+    private static File index(final byte[] cram, final int threads) throws Exception {
+        final File bai = File.createTempFile("index", ".bai");
+        bai.deleteOnExit();
+        final BaiIndexer indexer = new BaiIndexer(new ByteArrayInputStream(cram), bai);
+        indexer.setThreads(threads);
+        indexer.run();
+        return bai;
+    }
+
+    private static byte[] readAll(final File file) throws Exception {
+        final InputStream is = new FileInputStream(file);
+        final byte[] bytes = new byte[(int) file.length()];
+        Assert.assertEquals(is.read(bytes), bytes.length);
+        is.close();
+        return bytes;
+    }
+
+    @Test
+    public void testMultiRefSlices() throws Exception {
+        final byte[] cram = createMultiRefCram();
+
+        final InputStream is = new ByteArrayInputStream(cram);
+        final SAMFileHeader header = CramIO.readCramHeader(is).getSamFileHeader();
+        final long offset = cram.length - is.available();
+        final Container container = CramIO.readContainerHeader(is);
+        Assert.assertEquals(container.sequenceId, Slice.MUTLIREF);
+
+        final File bai = index(cram, 1);
+        Assert.assertEquals(readAll(index(cram, 3)), readAll(bai));
+
+        final File text = File.createTempFile("index", ".bai.txt");
+        text.deleteOnExit();
+        CRAMIndexer.createAndWriteIndex(bai, text, true);
+        final String content = new String(readAll(text));
+        final long pointer = offset << 16;
+        for (int contig = 0; contig < 3; contig++)
+            Assert.assertTrue(content.contains("  Ref " + contig + " ioffset for 0 is " + pointer + "\n"), content);
+        Assert.assertTrue(content.contains("Reference 3 has n_bin=0"), content);
+
+        // the multi-reference slices read back:
+        final CRAMIterator iterator = new CRAMIterator(new ByteArrayInputStream(cram), new ReferenceSource(rsf));
+        int count = 0;
+        while (iterator.hasNext()) {
+            final SAMRecord record = iterator.next();
+            Assert.assertEquals(record.getAlignmentStart() / 1000, record.getReferenceIndex() + 1);
+            count++;
+        }
+        iterator.close();
+        Assert.assertEquals(count, 300);
+    }
+}
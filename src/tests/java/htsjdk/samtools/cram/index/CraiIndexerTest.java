@@ -0,0 +1,100 @@
+package htsjdk.samtools.cram.index;
+
+import htsjdk.samtools.CRAMFileWriter;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
+import htsjdk.samtools.util.Log;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CraiIndexerTest {
+
+    static byte[] createCram(final int pairs, final int contigs) throws Exception {
+        Log.setGlobalLogLevel(Log.LogLevel.ERROR);
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate, true,
+                100000);
+        builder.setReadLength(50);
+        int name = 0;
+        for (int contig = 0; contig < contigs; contig++)
+            for (int i = 0; i < pairs; i++)
+                builder.addPair(Integer.toString(name++), contig, 1 + 3 * i, 100 + 3 * i);
+        final SAMFileHeader header = builder.getHeader();
+
+        final byte[] refBases = new byte[100000];
+        Arrays.fill(refBases, (byte) 'A');
+        final InMemoryReferenceSequenceFile rsf = new InMemoryReferenceSequenceFile();
+        for (final SAMSequenceRecord sequence : header.getSequenceDictionary().getSequences())
+            rsf.add(sequence.getSequenceName(), refBases);
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final CRAMFileWriter writer = new CRAMFileWriter(os, new ReferenceSource(rsf), header, null);
+        for (final SAMRecord record : builder)
+            writer.addAlignment(record);
+        writer.close();
+        return os.toByteArray();
+    }
+
+    static File write(final byte[] bytes, final int length, final String suffix) throws Exception {
+        final File file = File.createTempFile("index", suffix);
+        file.deleteOnExit();
+        final FileOutputStream fos = new FileOutputStream(file);
+        fos.write(bytes, 0, length);
+        fos.close();
+        return file;
+    }
+
+    private static List<String> readIndex(final File crai) throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        for (final CramIndex.Entry e : CramIndex.readIndexFromCraiFile(crai))
+            lines.add(e.toString());
+        return lines;
+    }
+
+    @Test
+    public void testUpdateAppendsNewContainers() throws Exception {
+        final byte[] cramBytes = createCram(20000, 1);
+        final File cram = write(cramBytes, cramBytes.length, ".cram");
+        final File fullIndex = File.createTempFile("full", ".crai");
+        fullIndex.deleteOnExit();
+        new CraiIndexer(new FileInputStream(cram), fullIndex).run();
+        final List<String> expected = readIndex(fullIndex);
+
+        // index the file as it was after the first two containers:
+        final List<CramIndex.Entry> entries = CramIndex.readIndexFromCraiFile(fullIndex);
+        long cut = -1;
+        int containers = 0;
+        for (final CramIndex.Entry e : entries) {
+            if (e.containerStartOffset > cut) {
+                containers++;
+                cut = e.containerStartOffset;
+            }
+            if (containers == 3)
+                break;
+        }
+        Assert.assertEquals(containers, 3);
+        final File truncated = write(cramBytes, (int) cut, ".cram");
+        final File index = File.createTempFile("updated", ".crai");
+        index.deleteOnExit();
+        new CraiIndexer(new FileInputStream(truncated), index).run();
+        Assert.assertTrue(readIndex(index).size() < expected.size());
+
+        CraiIndexer.update(cram, index);
+        Assert.assertEquals(readIndex(index), expected);
+
+        // nothing to add:
+        CraiIndexer.update(cram, index);
+        Assert.assertEquals(readIndex(index), expected);
+    }
+}
@@ -0,0 +1,74 @@
+package htsjdk.samtools.cram.io;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.util.Random;
+
+public class ByteArrayBitStreamTest {
+
+    @Test
+    public void testCompatibleWithDefaultStreams() throws Exception {
+        final Random random = new Random(1);
+        final int[] lengths = new int[10000];
+        final long[] values = new long[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = 1 + random.nextInt(64);
+            values[i] = random.nextLong() & (lengths[i] == 64 ? -1L : (1L << lengths[i]) - 1);
+        }
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DefaultBitOutputStream defaultOut = new DefaultBitOutputStream(baos);
+        final ByteArrayBitOutputStream out = new ByteArrayBitOutputStream(16);
+        for (int i = 0; i < lengths.length; i++) {
+            defaultOut.write(values[i], lengths[i]);
+            out.write(values[i], lengths[i]);
+        }
+        defaultOut.close();
+        final byte[] data = out.toByteArray();
+        Assert.assertEquals(data, baos.toByteArray());
+
+        final DefaultBitInputStream defaultIn = new DefaultBitInputStream(new ByteArrayInputStream(data));
+        final ByteArrayBitInputStream in = new ByteArrayBitInputStream(data);
+        for (int i = 0; i < lengths.length; i++) {
+            Assert.assertEquals(in.readLongBits(lengths[i]), values[i]);
+            Assert.assertEquals(defaultIn.readLongBits(lengths[i]), values[i]);
+        }
+    }
+
+    @Test
+    public void testMixedReads() throws Exception {
+        final ByteArrayBitOutputStream out = new ByteArrayBitOutputStream();
+        out.write(true);
+        out.write(5, 3);
+        out.write((byte) 0x7F, 7);
+        out.write(false, 40);
+        out.alignToByte();
+        out.write(new byte[]{1, 2, 3});
+        out.write(0xABCDE, 20);
+
+        final ByteArrayBitInputStream in = new ByteArrayBitInputStream(out.toByteArray());
+        Assert.assertTrue(in.readBit());
+        Assert.assertEquals(in.peekBits(3), 5);
+        in.skipBits(3);
+        Assert.assertEquals(in.readBits(7), 0x7F);
+        Assert.assertEquals(in.readLongBits(40), 0L);
+        in.alignToByte();
+        final byte[] bytes = new byte[3];
+        in.readAlignedBytes(bytes);
+        Assert.assertEquals(bytes, new byte[]{1, 2, 3});
+        Assert.assertEquals(in.readBits(20), 0xABCDE);
+        in.readBits(4);
+        Assert.assertTrue(in.endOfStream());
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testEOF() throws Exception {
+        final ByteArrayBitInputStream in = new ByteArrayBitInputStream(new byte[]{1, 2});
+        in.readBits(12);
+        in.readBits(5);
+    }
+}
@@ -0,0 +1,88 @@
+package htsjdk.samtools.cram.io;
+
+import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.cram.structure.ContainerHeaderIO;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ByteBufferUtilsTest {
+
+    @Test
+    public void testBufferDecodingMatchesStreamDecoding() throws Exception {
+        final Random random = new Random(5);
+        final int[] ints = new int[10000];
+        final long[] longs = new long[ints.length];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = random.nextInt() >> random.nextInt(32);
+            longs[i] = (random.nextLong() >>> 8) >>> random.nextInt(56);
+        }
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < ints.length; i++) {
+            ByteBufferUtils.writeUnsignedITF8(ints[i], baos);
+            ByteBufferUtils.writeUnsignedLTF8(longs[i], baos);
+        }
+        ByteBufferUtils.write(ints, baos);
+        final byte[] data = baos.toByteArray();
+
+        final ByteArrayInputStream is = new ByteArrayInputStream(data);
+        final ByteBuffer buf = ByteBuffer.wrap(data);
+        for (int i = 0; i < ints.length; i++) {
+            int position = buf.position();
+            Assert.assertEquals(ByteBufferUtils.readUnsignedITF8(buf), ints[i]);
+            Assert.assertEquals(ByteBufferUtils.sizeOfITF8(data[position]), buf.position() - position);
+            Assert.assertEquals(ByteBufferUtils.readUnsignedITF8(is), ints[i]);
+
+            position = buf.position();
+            Assert.assertEquals(ByteBufferUtils.readUnsignedLTF8(buf), longs[i]);
+            Assert.assertEquals(ByteBufferUtils.sizeOfLTF8(data[position]), buf.position() - position);
+            Assert.assertEquals(ByteBufferUtils.readUnsignedLTF8(is), longs[i]);
+        }
+        Assert.assertTrue(Arrays.equals(ByteBufferUtils.array(buf), ints));
+        Assert.assertTrue(Arrays.equals(ByteBufferUtils.array(is), ints));
+        Assert.assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    public void testContainerHeaderRoundTrip() throws Exception {
+        final Container c = new Container();
+        c.containerByteSize = 0x12345678;
+        c.sequenceId = -1;
+        c.alignmentStart = 1 << 20;
+        c.alignmentSpan = 300;
+        c.nofRecords = 10000;
+        c.globalRecordCounter = 1L << 40;
+        c.bases = 1000000;
+        c.blockCount = 7;
+        c.landmarks = new int[200];
+        for (int i = 0; i < c.landmarks.length; i++)
+            c.landmarks[i] = i * 1000;
+
+        final ContainerHeaderIO chio = new ContainerHeaderIO();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        chio.writeContainerHeader(c, baos);
+        chio.writeContainerHeader(c, baos);
+        final ByteArrayInputStream is = new ByteArrayInputStream(baos.toByteArray());
+
+        for (int n = 0; n < 2; n++) {
+            final Container read = new Container();
+            Assert.assertTrue(chio.readContainerHeader(read, is));
+            Assert.assertEquals(read.containerByteSize, c.containerByteSize);
+            Assert.assertEquals(read.sequenceId, c.sequenceId);
+            Assert.assertEquals(read.alignmentStart, c.alignmentStart);
+            Assert.assertEquals(read.alignmentSpan, c.alignmentSpan);
+            Assert.assertEquals(read.nofRecords, c.nofRecords);
+            Assert.assertEquals(read.globalRecordCounter, c.globalRecordCounter);
+            Assert.assertEquals(read.bases, c.bases);
+            Assert.assertEquals(read.blockCount, c.blockCount);
+            Assert.assertTrue(Arrays.equals(read.landmarks, c.landmarks));
+        }
+        Assert.assertFalse(chio.readContainerHeader(new Container(), is));
+    }
+}
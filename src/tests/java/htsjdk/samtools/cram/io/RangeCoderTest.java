@@ -0,0 +1,63 @@
+package htsjdk.samtools.cram.io;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RangeCoderTest {
+
+    @DataProvider(name = "data")
+    public Object[][] data() {
+        final Random random = new Random(2);
+        final byte[] uniform = new byte[100000];
+        random.nextBytes(uniform);
+
+        final byte[] skewed = new byte[100000];
+        for (int i = 0; i < skewed.length; i++)
+            skewed[i] = (byte) (random.nextInt(10) == 0 ? random.nextInt(256) : 'A' + random.nextInt(4));
+
+        final byte[] constant = new byte[1000];
+        Arrays.fill(constant, (byte) 7);
+
+        return new Object[][]{{new byte[0]}, {new byte[]{-1}}, {constant}, {new byte[]{0, -128}}, {uniform},
+                {skewed}, {"ACGTTGCAACGT".getBytes()}};
+    }
+
+    @Test(dataProvider = "data")
+    public void testRoundTrip(final byte[] data) {
+        for (int order = 0; order < 2; order++) {
+            final byte[] compressed = RangeCoder.compress(data, order);
+            Assert.assertEquals(RangeCoder.uncompress(compressed), data);
+        }
+        Assert.assertEquals(RangeCoder.uncompress(RangeCoder.compress(data)), data);
+    }
+
+    @Test
+    public void testContextModels() {
+        // a random walk over quality scores: each value depends on the previous one
+        final Random random = new Random(3);
+        final byte[] data = new byte[200000];
+        int q = 30;
+        for (int i = 0; i < data.length; i++) {
+            q = Math.max(2, Math.min(40, q + random.nextInt(5) - 2));
+            data[i] = (byte) (33 + q);
+        }
+
+        final byte[] order0 = RangeCoder.compress(data, 0);
+        final byte[] order1 = RangeCoder.compress(data, 1);
+        Assert.assertEquals(RangeCoder.uncompress(order0), data);
+        Assert.assertEquals(RangeCoder.uncompress(order1), data);
+        // 39 values need just over 5 bits each without context:
+        Assert.assertTrue(order0.length < data.length * 5.5 / 8);
+        Assert.assertTrue(order1.length < order0.length * 0.6);
+        Assert.assertEquals(RangeCoder.chooseOrder(data), 1);
+
+        final byte[] independent = new byte[200000];
+        for (int i = 0; i < independent.length; i++)
+            independent[i] = (byte) (33 + random.nextInt(40));
+        Assert.assertEquals(RangeCoder.chooseOrder(independent), 0);
+    }
+}
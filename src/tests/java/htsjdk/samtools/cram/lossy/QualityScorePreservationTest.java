@@ -0,0 +1,183 @@
+package htsjdk.samtools.cram.lossy;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.encoding.read_features.BaseQualityScore;
+import htsjdk.samtools.cram.encoding.read_features.ReadFeature;
+import htsjdk.samtools.cram.encoding.read_features.Substitution;
+import htsjdk.samtools.cram.ref.ReferenceTracks;
+import htsjdk.samtools.cram.structure.CramCompressionRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class QualityScorePreservationTest {
+    private static final byte[] REFERENCE = "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA".getBytes();
+
+    private static SAMRecord createRecord(final String bases, final String cigar) {
+        final SAMFileHeader header = new SAMFileHeader();
+        header.addSequence(new SAMSequenceRecord("chr1", REFERENCE.length));
+        final SAMRecord record = new SAMRecord(header);
+        record.setReadName("read");
+        record.setReferenceIndex(0);
+        record.setAlignmentStart(1);
+        record.setCigarString(cigar);
+        record.setReadBases(bases.getBytes());
+        final byte[] scores = new byte[bases.length()];
+        for (int i = 0; i < scores.length; i++)
+            scores[i] = (byte) (5 * i);
+        record.setBaseQualities(scores);
+        return record;
+    }
+
+    private static Substitution substitution(final int position) {
+        final Substitution substitution = new Substitution();
+        substitution.setPosition(position);
+        return substitution;
+    }
+
+    @Test
+    public void testBinAll() {
+        final SAMRecord record = createRecord("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA", "30M");
+        final CramCompressionRecord r = new CramCompressionRecord();
+        new QualityScorePreservation("*8").addQualityScores(record, r, null);
+
+        Assert.assertTrue(r.isForcePreserveQualityScores());
+        final byte[] expected = new byte[record.getReadLength()];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = Binning.Illumina_binning_matrix[Math.min(5 * i, Binning.Illumina_binning_matrix.length - 1)];
+        Assert.assertEquals(r.qualityScores, expected);
+        Assert.assertNull(r.readFeatures);
+    }
+
+    @Test
+    public void testDropAll() {
+        final SAMRecord record = createRecord("AAAAAAAAAA", "10M");
+        final CramCompressionRecord r = new CramCompressionRecord();
+        new QualityScorePreservation("*0").addQualityScores(record, r, null);
+
+        Assert.assertFalse(r.isForcePreserveQualityScores());
+        final byte[] expected = new byte[record.getReadLength()];
+        Arrays.fill(expected, (byte) -1);
+        Assert.assertEquals(r.qualityScores, expected);
+        Assert.assertNull(r.readFeatures);
+    }
+
+    @Test
+    public void testPreserveMismatches() {
+        final SAMRecord record = createRecord("AACAAAAAATAA", "12M");
+        final CramCompressionRecord r = new CramCompressionRecord();
+        r.readFeatures = new ArrayList<ReadFeature>();
+        r.readFeatures.add(substitution(3));
+        r.readFeatures.add(substitution(10));
+        final ReferenceTracks tracks = new ReferenceTracks(0, REFERENCE, 20);
+        new QualityScorePreservation("N40").addQualityScores(record, r, tracks);
+
+        Assert.assertFalse(r.isForcePreserveQualityScores());
+        final List<ReadFeature> expected = new ArrayList<ReadFeature>();
+        expected.add(substitution(3));
+        expected.add(new BaseQualityScore(3, (byte) 10));
+        expected.add(substitution(10));
+        expected.add(new BaseQualityScore(10, (byte) 45));
+        Assert.assertEquals(r.readFeatures.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(r.readFeatures.get(i).getOperator(), expected.get(i).getOperator());
+            Assert.assertEquals(r.readFeatures.get(i).getPosition(), expected.get(i).getPosition());
+        }
+        Assert.assertEquals(r.readFeatures.get(1), expected.get(1));
+        Assert.assertEquals(r.readFeatures.get(3), expected.get(3));
+    }
+
+    @Test
+    public void testBinMatchesPreserveMismatches() {
+        final SAMRecord record = createRecord("AACAAAAAATAA", "12M");
+        final CramCompressionRecord r = new CramCompressionRecord();
+        final ReferenceTracks tracks = new ReferenceTracks(0, REFERENCE, 20);
+        new QualityScorePreservation("R8-N40").addQualityScores(record, r, tracks);
+
+        // most scores are kept, so all are stored:
+        Assert.assertTrue(r.isForcePreserveQualityScores());
+        for (int i = 0; i < record.getReadLength(); i++) {
+            final byte score = record.getBaseQualities()[i];
+            final byte expected = i == 2 || i == 9 ? score : Binning.Illumina_binning_matrix[score];
+            Assert.assertEquals(r.qualityScores[i], expected);
+        }
+    }
+
+    @Test
+    public void testInsertionsAndLowCoverage() {
+        final SAMRecord record = createRecord("AAAAACCAAAAA", "5M2I5M");
+        final ReferenceTracks tracks = new ReferenceTracks(0, REFERENCE, 20);
+        for (int pos = 1; pos <= 7; pos++)
+            tracks.addCoverage(pos, 10);
+
+        CramCompressionRecord r = new CramCompressionRecord();
+        new QualityScorePreservation("I40").addQualityScores(record, r, tracks);
+        Assert.assertEquals(r.qualityScores, new byte[]{-1, -1, -1, -1, -1, 25, 30, -1, -1, -1, -1, -1});
+
+        // reference positions 8 to 10 are covered by the last 3 bases:
+        r = new CramCompressionRecord();
+        new QualityScorePreservation("X5").addQualityScores(record, r, tracks);
+        Assert.assertEquals(r.qualityScores, new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, -1, 45, 50, 55});
+    }
+
+    @Test
+    public void testReuseAcrossReadLengths() {
+        final byte[] reference = new byte[300];
+        Arrays.fill(reference, (byte) 'A');
+        final ReferenceTracks tracks = new ReferenceTracks(0, reference, 300);
+        final char[] longBases = new char[200];
+        Arrays.fill(longBases, 'A');
+        final SAMRecord longRecord = createRecord(new String(longBases), "100M50I50M");
+        final SAMRecord shortRecord = createRecord(new String(longBases, 0, 30), "30M");
+
+        // the mask left behind by the long read must not leak into the short one:
+        final QualityScorePreservation preservation = new QualityScorePreservation("I40");
+        CramCompressionRecord r = new CramCompressionRecord();
+        preservation.addQualityScores(longRecord, r, tracks);
+        Assert.assertEquals(r.qualityScores[100], longRecord.getBaseQualities()[100]);
+        Assert.assertEquals(r.qualityScores[99], -1);
+
+        r = new CramCompressionRecord();
+        preservation.addQualityScores(shortRecord, r, tracks);
+        final byte[] expected = new byte[30];
+        Arrays.fill(expected, (byte) -1);
+        Assert.assertEquals(r.qualityScores, expected);
+    }
+
+    @Test
+    public void testChangedPoliciesApply() {
+        final SAMRecord record = createRecord("AAAAAAAAAA", "10M");
+        final QualityScorePreservation preservation = new QualityScorePreservation("*40");
+        CramCompressionRecord r = new CramCompressionRecord();
+        preservation.addQualityScores(record, r, null);
+        Assert.assertEquals(r.qualityScores, record.getBaseQualities());
+
+        preservation.getPreservationPolicies().clear();
+        preservation.getPreservationPolicies().addAll(QualityScorePreservation.parsePolicies("*0"));
+        r = new CramCompressionRecord();
+        preservation.addQualityScores(record, r, null);
+        Assert.assertFalse(r.isForcePreserveQualityScores());
+        final byte[] expected = new byte[record.getReadLength()];
+        Arrays.fill(expected, (byte) -1);
+        Assert.assertEquals(r.qualityScores, expected);
+    }
+
+    @Test
+    public void testReadCategories() {
+        final SAMRecord record = createRecord("AAAAAAAAAA", "10M");
+        record.setMappingQuality(10);
+        CramCompressionRecord r = new CramCompressionRecord();
+        new QualityScorePreservation("m5_40").addQualityScores(record, r, null);
+        Assert.assertFalse(r.isForcePreserveQualityScores());
+
+        r = new CramCompressionRecord();
+        new QualityScorePreservation("m20_40").addQualityScores(record, r, null);
+        Assert.assertTrue(r.isForcePreserveQualityScores());
+        Assert.assertEquals(r.qualityScores, record.getBaseQualities());
+    }
+}
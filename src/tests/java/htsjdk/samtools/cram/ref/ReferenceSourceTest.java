@@ -0,0 +1,147 @@
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.SequenceUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+public class ReferenceSourceTest {
+
+    @Test
+    public void testCacheEvictsByBytes() {
+        final ReferenceCache cache = new ReferenceCache(100);
+        final byte[] a = new byte[40];
+        final byte[] b = new byte[40];
+        final byte[] c = new byte[40];
+        cache.put("a", a);
+        cache.put("b", b);
+        Assert.assertEquals(cache.getSizeInBytes(), 80);
+
+        // touch a so that b becomes the eldest entry:
+        Assert.assertSame(cache.get("a"), a);
+        cache.put("c", c);
+        Assert.assertNull(cache.get("b"));
+        Assert.assertSame(cache.get("a"), a);
+        Assert.assertSame(cache.get("c"), c);
+        Assert.assertEquals(cache.getSizeInBytes(), 80);
+
+        // too large to fit at all:
+        cache.put("d", new byte[101]);
+        Assert.assertNull(cache.get("d"));
+        Assert.assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void testCacheCountsSharedArraysOnce() {
+        final ReferenceCache cache = new ReferenceCache(100);
+        final byte[] bases = new byte[60];
+        cache.put("name", bases);
+        cache.put("md5", bases);
+        Assert.assertEquals(cache.getSizeInBytes(), 60);
+        cache.remove("name");
+        Assert.assertEquals(cache.getSizeInBytes(), 60);
+        cache.remove("md5");
+        Assert.assertEquals(cache.getSizeInBytes(), 0);
+    }
+
+    @Test
+    public void testDiskCachePathPattern() {
+        final ReferenceDiskCache diskCache = new ReferenceDiskCache("/cache/%2s/%2s/%s");
+        Assert.assertEquals(diskCache.getFile("0123456789abcdef").getPath(),
+                new File("/cache/01/23/456789abcdef").getPath());
+
+        Assert.assertEquals(new ReferenceDiskCache("/cache").getFile("0123456789").getPath(),
+                new File("/cache/01/23/456789").getPath());
+    }
+
+    @Test
+    public void testWindowReadsOnlyRegions() throws Exception {
+        final byte[] bases = new byte[10000];
+        for (int i = 0; i < bases.length; i++)
+            bases[i] = (byte) "acgt".charAt(i * 7 % 4);
+        final File fasta = File.createTempFile("ReferenceSourceTest", ".fa");
+        final File fai = new File(fasta.getAbsolutePath() + ".fai");
+        fasta.deleteOnExit();
+        fai.deleteOnExit();
+        final FileOutputStream fos = new FileOutputStream(fasta);
+        fos.write(">chr1\n".getBytes());
+        for (int i = 0; i < bases.length; i += 60) {
+            fos.write(bases, i, Math.min(60, bases.length - i));
+            fos.write('\n');
+        }
+        fos.close();
+        final FileOutputStream indexStream = new FileOutputStream(fai);
+        indexStream.write(("chr1\t" + bases.length + "\t6\t60\t61\n").getBytes());
+        indexStream.close();
+
+        final SAMSequenceRecord record = new SAMSequenceRecord("chr1", bases.length);
+        final ReferenceSource source = new ReferenceSource(fasta);
+        source.setCache(new ReferenceCache(1024 * 1024));
+
+        final ReferenceWindow window = new ReferenceWindow(source);
+        window.setReadAhead(1000);
+        final ReferenceRegion first = window.getRegion(record, 501, 600);
+        Assert.assertEquals(first.offset, 500);
+        Assert.assertEquals(first.bases.length, 1000);
+        Assert.assertFalse(first.toSequenceEnd);
+        Assert.assertEquals(new String(first.bases), new String(bases, 500, 1000).toUpperCase());
+
+        // covered by the read ahead:
+        Assert.assertSame(window.getRegion(record, 1000, 1499), first);
+
+        final ReferenceRegion last = window.getRegion(record, 9501, 9600);
+        Assert.assertEquals(last.offset, 9500);
+        Assert.assertEquals(last.bases.length, 500);
+        Assert.assertTrue(last.toSequenceEnd);
+        Assert.assertSame(window.getRegion(record, 9900, 10100), last);
+
+        // a whole sequence already in memory is used as it is:
+        source.getReferenceBases(record, false);
+        final ReferenceRegion whole = window.getRegion(record, 1, 100);
+        Assert.assertEquals(whole.offset, 0);
+        Assert.assertEquals(whole.bases.length, bases.length);
+
+        // without known sequence lengths the whole sequence is read:
+        final InMemoryReferenceSequenceFile rsf = new InMemoryReferenceSequenceFile();
+        rsf.add("chr1", bases.clone());
+        final ReferenceSource inMemory = new ReferenceSource(rsf);
+        inMemory.setCache(new ReferenceCache(1024 * 1024));
+        final ReferenceRegion region = inMemory.getReferenceRegion(record, 501, 600, false);
+        Assert.assertEquals(region.offset, 0);
+        Assert.assertEquals(region.bases.length, bases.length);
+    }
+
+    @Test
+    public void testDiskCacheIsPopulatedAndUsed() throws Exception {
+        final File dir = IOUtil.createTempDir("ReferenceSourceTest", ".tmp");
+        try {
+            final byte[] bases = "acgtACGTNN".getBytes();
+            final String md5 = SequenceUtil.calculateMD5String("ACGTACGTNN".getBytes());
+            final SAMSequenceRecord record = new SAMSequenceRecord("chr1", bases.length);
+            record.setAttribute(SAMSequenceRecord.MD5_TAG, md5);
+
+            final InMemoryReferenceSequenceFile rsf = new InMemoryReferenceSequenceFile();
+            rsf.add("chr1", bases);
+            final ReferenceSource source = new ReferenceSource(rsf);
+            source.setCache(new ReferenceCache(1024));
+            source.setDiskCache(new ReferenceDiskCache(dir));
+            Assert.assertEquals(new String(source.getReferenceBases(record, false)), "ACGTACGTNN");
+
+            final File cached = source.getDiskCache().getFile(md5);
+            Assert.assertTrue(cached.isFile());
+
+            // a source without the FASTA can now find the sequence by md5:
+            final ReferenceSource diskOnly = new ReferenceSource();
+            diskOnly.setCache(new ReferenceCache(1024));
+            diskOnly.setDiskCache(new ReferenceDiskCache(dir));
+            Assert.assertEquals(new String(diskOnly.getReferenceBases(record, false)), "ACGTACGTNN");
+        } finally {
+            IOUtil.deleteDirectoryTree(dir);
+        }
+    }
+}
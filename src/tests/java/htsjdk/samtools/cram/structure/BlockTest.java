@@ -0,0 +1,38 @@
+package htsjdk.samtools.cram.structure;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class BlockTest {
+
+    @DataProvider(name = "methods")
+    public Object[][] methods() {
+        return new Object[][]{{BlockCompressionMethod.RAW, 0}, {BlockCompressionMethod.GZIP, 1},
+                {BlockCompressionMethod.RANGE, 128}};
+    }
+
+    @Test(dataProvider = "methods")
+    public void testMethodIdRoundTrip(final BlockCompressionMethod method, final int id) throws IOException {
+        final byte[] content = "ACGTACGTTTTTAAAACCCCGGGG".getBytes();
+        final Block block = new Block(method, BlockContentType.EXTERNAL, 1, content, null);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        block.write(baos);
+        final byte[] bytes = baos.toByteArray();
+        Assert.assertEquals(bytes[0] & 0xFF, id);
+
+        final Block read = new Block(new ByteArrayInputStream(bytes), true, true);
+        Assert.assertEquals(read.method, method);
+        Assert.assertEquals(read.getRawContent(), content);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testBzip2IsNotRange() {
+        BlockCompressionMethod.byId(2);
+    }
+}
@@ -0,0 +1,20 @@
+package htsjdk.samtools.cram.structure;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class EncodingIDTest {
+
+    @Test
+    public void testIdRoundTrip() {
+        for (final EncodingID encoding : EncodingID.values())
+            Assert.assertEquals(EncodingID.byId(encoding.getId()), encoding);
+        Assert.assertEquals(EncodingID.GAMMA.getId(), 9);
+        Assert.assertEquals(EncodingID.NAME_TOKENISER.getId(), 128);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testNextSpecIdIsNotNameTokeniser() {
+        EncodingID.byId(10);
+    }
+}
@@ -30,6 +30,7 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Random;
 
 import static org.testng.Assert.assertEquals;
 
@@ -159,4 +160,52 @@ public class SeekableBufferedStreamTest {
         }
     }
 
+    @Test
+    public void testShortSeeksReuseBuffer() throws IOException {
+        final SeekableFileStream unbuffered = new SeekableFileStream(BAM_FILE);
+        final SeekableBufferedStream buffered = new SeekableBufferedStream(new SeekableFileStream(BAM_FILE), 64 * 1024);
+        for (final long position : new long[]{0, 5000, 20000, 100, 60000}) {
+            assertSameBytes(unbuffered, buffered, position, 1000);
+        }
+        Assert.assertEquals(buffered.getBytesRead(), 64 * 1024);
+        Assert.assertEquals(buffered.getBytesConsumed(), 5000);
+        unbuffered.close();
+        buffered.close();
+    }
+
+    @Test
+    public void testBufferSizeAdaptsToAccessPattern() throws IOException {
+        final int bufferSize = 1024;
+        final SeekableFileStream unbuffered = new SeekableFileStream(BAM_FILE);
+        final SeekableBufferedStream buffered = new SeekableBufferedStream(new SeekableFileStream(BAM_FILE), bufferSize);
+
+        // sequential reads grow the buffer, so much less than a buffer is read per read of a buffer's worth
+        final int reads = (int) Math.min(BAM_FILE.length() / bufferSize, 200);
+        for (int i = 0; i < reads; i++) {
+            assertSameBytes(unbuffered, buffered, i * 1000L, 1000);
+        }
+        Assert.assertTrue(buffered.getBytesRead() <= reads * 1000L + SeekableBufferedStream.MAX_BUFFER_SIZE_FACTOR * bufferSize);
+
+        // random reads shrink it, so less than a buffer is read per read
+        final Random random = new Random(7);
+        final long before = buffered.getBytesRead();
+        for (int i = 0; i < 100; i++) {
+            assertSameBytes(unbuffered, buffered, random.nextInt((int) BAM_FILE.length() - 10), 10);
+        }
+        Assert.assertTrue(buffered.getBytesRead() - before < 100 * bufferSize / 2, "read " + (buffered.getBytesRead() - before));
+        unbuffered.close();
+        buffered.close();
+    }
+
+    private void assertSameBytes(final SeekableStream expected, final SeekableBufferedStream actual, final long position,
+                                 final int length) throws IOException {
+        final byte[] expectedBytes = new byte[length];
+        final byte[] actualBytes = new byte[length];
+        expected.seek(position);
+        expected.readFully(expectedBytes);
+        actual.seek(position);
+        Assert.assertEquals(reallyRead(actualBytes, actual), length);
+        Assert.assertEquals(actualBytes, expectedBytes, "at " + position);
+        Assert.assertEquals(actual.position(), position + length);
+    }
 }
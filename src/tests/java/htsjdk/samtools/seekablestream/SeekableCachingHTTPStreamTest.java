@@ -0,0 +1,158 @@
+package htsjdk.samtools.seekablestream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SeekableCachingHTTPStreamTest {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final byte[] content = new byte[300000];
+    private HttpServer server;
+    private URL url;
+    private URL urlIgnoringRanges;
+
+    @BeforeClass
+    public void startServer() throws IOException {
+        new Random(5).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data", new RangeHandler(true));
+        server.createContext("/noranges", new RangeHandler(false));
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/data");
+        urlIgnoringRanges = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/noranges");
+    }
+
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private class RangeHandler implements HttpHandler {
+        private final boolean supportsRanges;
+
+        RangeHandler(final boolean supportsRanges) {
+            this.supportsRanges = supportsRanges;
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            int start = 0;
+            int end = content.length - 1;
+            int status = 200;
+            if (range != null && supportsRanges) {
+                final Matcher matcher = RANGE.matcher(range);
+                Assert.assertTrue(matcher.matches(), range);
+                start = Integer.parseInt(matcher.group(1));
+                end = Math.min(Integer.parseInt(matcher.group(2)), content.length - 1);
+                if (start >= content.length) {
+                    exchange.sendResponseHeaders(416, -1);
+                    exchange.close();
+                    return;
+                }
+                status = 206;
+            }
+            exchange.sendResponseHeaders(status, end - start + 1);
+            final OutputStream os = exchange.getResponseBody();
+            os.write(content, start, end - start + 1);
+            os.close();
+        }
+    }
+
+    @Test
+    public void testRandomReads() throws IOException {
+        final SeekableCachingHTTPStream stream = new SeekableCachingHTTPStream(url, null, 4096, 64 * 1024, 8);
+        Assert.assertEquals(stream.length(), content.length);
+        final Random random = new Random(1);
+        for (int i = 0; i < 300; i++) {
+            final int position = random.nextInt(content.length + 100);
+            final int length = 1 + random.nextInt(random.nextBoolean() ? 100 : 20000);
+            stream.seek(position);
+            final byte[] buffer = new byte[length];
+            final int n = stream.read(buffer, 0, length);
+            if (position >= content.length) {
+                Assert.assertEquals(n, -1);
+            } else {
+                final int expected = Math.min(length, content.length - position);
+                Assert.assertEquals(n, expected);
+                Assert.assertEquals(Arrays.copyOf(buffer, n), Arrays.copyOfRange(content, position, position + n));
+                Assert.assertEquals(stream.position(), position + n);
+            }
+        }
+        stream.close();
+    }
+
+    @Test
+    public void testRepeatedReadsAreCached() throws IOException {
+        final SeekableCachingHTTPStream stream = new SeekableCachingHTTPStream(url, null, 4096, 64 * 1024, 0);
+        final byte[] buffer = new byte[6000];
+        for (int i = 0; i < 5; i++) {
+            stream.seek(10000);
+            stream.readFully(buffer);
+            stream.seek(250000);
+            Assert.assertEquals(stream.read(), content[250000] & 0xFF);
+        }
+        Assert.assertEquals(stream.getRequestCount(), 2);
+        stream.close();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedBlocksAreEvicted() throws IOException {
+        final SeekableCachingHTTPStream stream = new SeekableCachingHTTPStream(url, null, 1000, 3000, 0);
+        for (final int position : new int[]{0, 1000, 2000, 0, 3000, 0, 1000}) {
+            stream.seek(position);
+            Assert.assertEquals(stream.read(), content[position] & 0xFF);
+        }
+        // 1000 was evicted when 3000 was read, 0 was not as it had been used again
+        Assert.assertEquals(stream.getRequestCount(), 5);
+        stream.close();
+    }
+
+    @Test
+    public void testSequentialReadsAreReadAhead() throws IOException {
+        final SeekableCachingHTTPStream stream = new SeekableCachingHTTPStream(url, null, 1000, 1000000, 16);
+        final byte[] buffer = new byte[content.length];
+        int n = 0;
+        while (n < buffer.length) {
+            final int count = stream.read(buffer, n, Math.min(700, buffer.length - n));
+            Assert.assertTrue(count > 0);
+            n += count;
+        }
+        Assert.assertEquals(stream.read(), -1);
+        Assert.assertTrue(stream.eof());
+        Assert.assertEquals(buffer, content);
+        Assert.assertTrue(stream.getRequestCount() < content.length / 1000 / 4, "requests: " + stream.getRequestCount());
+        stream.close();
+    }
+
+    @Test
+    public void testServerIgnoringRanges() throws IOException {
+        final SeekableCachingHTTPStream stream = new SeekableCachingHTTPStream(urlIgnoringRanges, null, 4096, 64 * 1024, 4);
+        final byte[] buffer = new byte[5000];
+        stream.seek(123456);
+        stream.readFully(buffer);
+        Assert.assertEquals(buffer, Arrays.copyOfRange(content, 123456, 128456));
+        stream.close();
+    }
+
+    @Test
+    public void testFactoryCreatesCachingStreams() throws IOException {
+        final SeekableStream stream = SeekableStreamFactory.getInstance().getStreamFor(url.toString());
+        Assert.assertTrue(stream instanceof SeekableCachingHTTPStream);
+        stream.close();
+    }
+}
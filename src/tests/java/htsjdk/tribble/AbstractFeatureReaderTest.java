@@ -6,9 +6,14 @@ import htsjdk.tribble.readers.LineIterator;
 import htsjdk.variant.VariantBaseTest;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.testng.Assert.*;
 
@@ -47,4 +52,45 @@ public class AbstractFeatureReaderTest {
             assertNotNull(feat);
         }
     }
+
+    @DataProvider(name = "parallelDecodingFiles")
+    public Object[][] parallelDecodingFiles() throws IOException {
+        final File bed = File.createTempFile("parallel", ".bed");
+        bed.deleteOnExit();
+        final FileWriter writer = new FileWriter(bed);
+        writer.write("track name=parallel\n");
+        for (int i = 0; i < 5432; i++)
+            writer.write("chr" + (1 + i / 2000) + "\t" + (i * 10) + "\t" + (i * 10 + 25) + "\tfeature" + i + "\n");
+        writer.close();
+
+        return new Object[][]{
+                {bed.getAbsolutePath(), new BEDCodec()},
+                {TestUtils.DATA_DIR + "test.tabix.bed.gz", new BEDCodec()},
+                {VariantBaseTest.variantTestDataRoot + "HiSeq.10000.vcf", new VCFCodec()},
+        };
+    }
+
+    @Test(dataProvider = "parallelDecodingFiles")
+    public <T extends Feature> void testParallelDecoding(final String path, final FeatureCodec<T, LineIterator> codec) throws IOException {
+        final AbstractFeatureReader<T, LineIterator> sequential = AbstractFeatureReader.getFeatureReader(path, codec, false);
+        final List<String> expected = new ArrayList<String>();
+        for (final T feature : sequential.iterator())
+            expected.add(describe(feature));
+        sequential.close();
+
+        final AbstractFeatureReader<T, LineIterator> parallel = AbstractFeatureReader.getFeatureReader(path, codec, false);
+        parallel.setDecodingThreads(3);
+        final List<String> found = new ArrayList<String>();
+        for (final T feature : parallel.iterator())
+            found.add(describe(feature));
+        parallel.close();
+
+        assertFalse(expected.isEmpty());
+        assertEquals(found, expected);
+    }
+
+    private static String describe(final Feature feature) {
+        final String location = feature.getContig() + ":" + feature.getStart() + "-" + feature.getEnd();
+        return location + " " + (feature instanceof BEDFeature ? ((BEDFeature) feature).getName() : feature.toString());
+    }
 }
@@ -1,9 +1,11 @@
 package htsjdk.tribble;
 
 import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.LocationAware;
 import htsjdk.tribble.bed.BEDCodec;
+import htsjdk.tribble.bed.BEDFeature;
 import htsjdk.tribble.example.ExampleBinaryCodec;
 import htsjdk.tribble.index.Block;
 import htsjdk.tribble.index.Index;
@@ -17,6 +19,7 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -96,6 +99,54 @@ public class FeatureReaderTest {
         reader.close();
     }
 
+    @Test(dataProvider = "indexProvider")
+    public void testMultiIntervalQuery(final File featureFile, final IndexFactory.IndexType indexType, final FeatureCodec<Feature, LocationAware> codec) throws IOException {
+        final AbstractFeatureReader<Feature, ?> reader = getReader(featureFile, indexType, codec);
+        final List<Feature> intervals = new ArrayList<Feature>();
+        for (final int[] interval : new int[][]{{1, 500}, {1, 200}, {1, 201}, {500, 600}, {100000, 100010}, {100000, 100000},
+                {100001, 100001}, {100005, 100006}, {100009, 100011}, {100010, 100010}, {100011, 100011}}) {
+            intervals.add(new SimpleFeature("chr1", interval[0], interval[1]));
+        }
+        intervals.add(new SimpleFeature("chr3", 1, 201));
+        intervals.add(new SimpleFeature("chr2", 1, 100));
+        intervals.add(new SimpleFeature("chr2", 1, 10));
+        intervals.add(new SimpleFeature("chr2", 15, 16));
+
+        final CloseableIterator<List<Feature>> batches = reader.query(intervals);
+        for (final Feature interval : intervals) {
+            Assert.assertTrue(batches.hasNext());
+            final List<Feature> batch = batches.next();
+            final Iterator<Feature> expected = reader.query(interval.getContig(), interval.getStart(), interval.getEnd());
+            for (final Feature feature : batch) {
+                final Feature expectedFeature = expected.next();
+                Assert.assertEquals(feature.getContig(), expectedFeature.getContig());
+                Assert.assertEquals(feature.getStart(), expectedFeature.getStart());
+                Assert.assertEquals(feature.getEnd(), expectedFeature.getEnd());
+            }
+            Assert.assertFalse(expected.hasNext(), "Missing features for " + interval);
+        }
+        Assert.assertFalse(batches.hasNext());
+        batches.close();
+        reader.close();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMultiIntervalQueryRequiresSortedIntervals() throws IOException {
+        final AbstractFeatureReader<BEDFeature, ?> reader = AbstractFeatureReader.getFeatureReader(tabixBedFile.getAbsolutePath(), new BEDCodec());
+        try {
+            reader.query(Arrays.asList(new SimpleFeature("chr1", 100, 200), new SimpleFeature("chr1", 1, 50))).next();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMergeBlocks() {
+        final List<Block> merged = TribbleIndexedFeatureReader.mergeBlocks(Arrays.asList(new Block(300, 100), new Block(0, 100),
+                new Block(50, 20), new Block(100, 10), new Block(500, 0), new Block(350, 100)));
+        Assert.assertEquals(merged, Arrays.asList(new Block(0, 110), new Block(300, 150)));
+    }
+
     private void testQuery(final AbstractFeatureReader<Feature, ?> reader, final String chr, final int start, final int stop, final int expectedNumRecords) throws IOException {
         final Iterator<Feature> iter = reader.query(chr, start, stop);
         int count = 0;
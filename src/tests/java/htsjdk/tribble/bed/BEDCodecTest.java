@@ -31,6 +31,7 @@ import htsjdk.tribble.annotation.Strand;
 import htsjdk.tribble.bed.FullBEDFeature.Exon;
 import htsjdk.tribble.index.IndexFactory;
 import htsjdk.tribble.index.linear.LinearIndex;
+import htsjdk.tribble.readers.AsciiLineReader;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -38,6 +39,7 @@ import org.testng.annotations.Test;
 import java.awt.*;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.List;
@@ -203,6 +205,30 @@ public class BEDCodecTest {
         reader.close();
     }
 
+    @Test
+    public void testDecodeLocMatchesDecode() throws IOException {
+        for (final String name : new String[]{"Unigene.sample.bed", "NA12878.deletions.10kbp.het.gq99.hand_curated.hg19_fixed.bed"}) {
+            final BEDCodec codec = new BEDCodec(BEDCodec.StartOffset.ZERO);
+            final AsciiLineReader reader = new AsciiLineReader(new FileInputStream(TestUtils.DATA_DIR + "bed/" + name));
+            String line;
+            int features = 0;
+            while ((line = reader.readLine()) != null) {
+                final Feature expected = codec.decode(line);
+                final Feature location = codec.decodeLoc(line);
+                if (expected == null) {
+                    Assert.assertNull(location, line);
+                } else {
+                    Assert.assertEquals(location.getContig(), expected.getContig(), line);
+                    Assert.assertEquals(location.getStart(), expected.getStart(), line);
+                    Assert.assertEquals(location.getEnd(), expected.getEnd(), line);
+                    features++;
+                }
+            }
+            reader.close();
+            Assert.assertTrue(features > 0);
+        }
+    }
+
     private void createIndex(File testFile, File idxFile) throws IOException {
         // Create an index if missing
         if (idxFile.exists()) {
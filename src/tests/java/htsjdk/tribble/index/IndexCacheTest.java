@@ -0,0 +1,69 @@
+package htsjdk.tribble.index;
+
+import htsjdk.tribble.TestUtils;
+import htsjdk.tribble.bed.BEDCodec;
+import htsjdk.tribble.index.interval.IntervalTreeIndex;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class IndexCacheTest {
+    private static final File BED_FILE = new File(TestUtils.DATA_DIR + "test.bed");
+
+    private static File writeIndex(final File idxFile, final IndexFactory.IndexType type) throws IOException {
+        IndexFactory.writeIndex(IndexFactory.createIndex(BED_FILE, new BEDCodec(), type), idxFile);
+        idxFile.deleteOnExit();
+        return idxFile;
+    }
+
+    @Test
+    public void testIndexesAreShared() throws IOException {
+        final File idxFile = writeIndex(File.createTempFile("IndexCacheTest", ".idx"), IndexFactory.IndexType.LINEAR);
+        final IndexCache cache = new IndexCache(1000000);
+
+        final Index index = cache.getIndex(idxFile.getAbsolutePath());
+        Assert.assertSame(cache.getIndex(idxFile.getAbsolutePath()), index);
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertEquals(cache.getSizeInBytes(), idxFile.length());
+        Assert.assertEquals(index.getBlocks("chr1", 1, 500), IndexFactory.loadIndex(idxFile.getAbsolutePath()).getBlocks("chr1", 1, 500));
+
+        // a different index written to the same path must be loaded again:
+        writeIndex(idxFile, IndexFactory.IndexType.INTERVAL_TREE);
+        final Index rewritten = cache.getIndex(idxFile.getAbsolutePath());
+        Assert.assertNotSame(rewritten, index);
+        Assert.assertTrue(rewritten instanceof IntervalTreeIndex);
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertEquals(cache.getSizeInBytes(), idxFile.length());
+
+        cache.remove(idxFile.getAbsolutePath());
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertEquals(cache.getSizeInBytes(), 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIndexesAreEvicted() throws IOException {
+        final File idx1 = writeIndex(File.createTempFile("IndexCacheTest", ".idx"), IndexFactory.IndexType.LINEAR);
+        final File idx2 = writeIndex(File.createTempFile("IndexCacheTest", ".idx"), IndexFactory.IndexType.LINEAR);
+        final File idx3 = writeIndex(File.createTempFile("IndexCacheTest", ".idx"), IndexFactory.IndexType.LINEAR);
+        final IndexCache cache = new IndexCache(idx1.length() + idx2.length());
+
+        final Index index1 = cache.getIndex(idx1.getAbsolutePath());
+        cache.getIndex(idx2.getAbsolutePath());
+        Assert.assertSame(cache.getIndex(idx1.getAbsolutePath()), index1);
+        cache.getIndex(idx3.getAbsolutePath());
+
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertTrue(cache.getSizeInBytes() <= cache.getMaxBytes());
+        Assert.assertSame(cache.getIndex(idx1.getAbsolutePath()), index1);
+    }
+
+    @Test
+    public void testEmptyCacheLoadsEveryTime() throws IOException {
+        final File idxFile = writeIndex(File.createTempFile("IndexCacheTest", ".idx"), IndexFactory.IndexType.LINEAR);
+        final IndexCache cache = new IndexCache(0);
+        Assert.assertNotSame(cache.getIndex(idxFile.getAbsolutePath()), cache.getIndex(idxFile.getAbsolutePath()));
+        Assert.assertEquals(cache.size(), 0);
+    }
+}
@@ -30,14 +30,18 @@ import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.bed.BEDCodec;
 import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.tribble.util.LittleEndianOutputStream;
 import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFFileReader;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * User: jacob
@@ -75,6 +79,51 @@ public class IndexFactoryTest {
         Index index = IndexFactory.createIndex(discontinuousFile, bedCodec, type);
     }
 
+    @Test(expectedExceptions = TribbleException.MalformedFeatureFile.class, dataProvider = "indexFactoryProvider")
+    public void testCreateIndexUnsortedInParallel(IndexFactory.IndexType type) throws Exception{
+        IndexFactory.createIndex(unsortedBedFile, new Callable<BEDCodec>() {
+            @Override
+            public BEDCodec call() {
+                return new BEDCodec();
+            }
+        }, type, 2);
+    }
+
+    @Test(dataProvider = "indexFactoryProvider")
+    public void testCreateIndexInParallel(IndexFactory.IndexType type) throws Exception {
+        final File vcf = new File("testdata/htsjdk/variant/HiSeq.10000.vcf");
+        final Callable<VCFCodec> codecFactory = new Callable<VCFCodec>() {
+            @Override
+            public VCFCodec call() {
+                return new VCFCodec();
+            }
+        };
+        final byte[] expected = toBytes(IndexFactory.createIndex(vcf, new VCFCodec(), type));
+        for (final int threads : new int[]{1, 2, 5}) {
+            Assert.assertEquals(toBytes(IndexFactory.createIndex(vcf, codecFactory, type, threads)), expected);
+        }
+    }
+
+    @Test
+    public void testCreateTabixIndexInParallel() throws Exception {
+        final File vcf = new File("testdata/htsjdk/tribble/tabix/testTabixIndex.vcf.gz");
+        final SAMSequenceDictionary dict = new VCFFileReader(vcf, false).getFileHeader().getSequenceDictionary();
+        final TabixIndex expected = IndexFactory.createTabixIndex(vcf, new VCFCodec(), TabixFormat.VCF, dict);
+        final TabixIndex index = IndexFactory.createTabixIndex(vcf, new Callable<VCFCodec>() {
+            @Override
+            public VCFCodec call() {
+                return new VCFCodec();
+            }
+        }, TabixFormat.VCF, dict, 3);
+        Assert.assertEquals(toBytes(index), toBytes(expected));
+    }
+
+    private static byte[] toBytes(final Index index) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new LittleEndianOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
     @DataProvider(name = "indexFactoryProvider")
     public Object[][] getIndexFactoryTypes(){
         return new Object[][] {
@@ -1,14 +1,20 @@
 package htsjdk.tribble.index;
 
 import htsjdk.tribble.TestUtils;
+import htsjdk.tribble.bed.BEDCodec;
+import htsjdk.tribble.index.interval.IntervalTreeIndex;
 import htsjdk.tribble.index.linear.LinearIndex;
+import htsjdk.tribble.util.LittleEndianOutputStream;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -47,4 +53,54 @@ public class IndexTest {
 
         Assert.assertTrue(allSize >= Math.max(leftSize,rightSize), "Expected size of joint query " + allSize + " to be at least >= max of left " + leftSize + " and right queries " + rightSize);
     }
+
+    @DataProvider(name = "IndexTypes")
+    public Object[][] makeIndexTypes() {
+        final File bedFile = new File(TestUtils.DATA_DIR + "test.bed");
+        return new Object[][]{
+                {IndexFactory.createLinearIndex(bedFile, new BEDCodec())},
+                {IndexFactory.createIntervalIndex(bedFile, new BEDCodec())}
+        };
+    }
+
+    @Test(dataProvider = "IndexTypes")
+    public void testChrIndicesAreLoadedOnDemand(final AbstractIndex index) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new LittleEndianOutputStream(bytes));
+
+        final AbstractIndex loaded = read(index, bytes.toByteArray());
+        Assert.assertEquals(loaded.getSequenceNames(), Arrays.asList("chr1", "chr2"));
+        Assert.assertTrue(loaded.containsChromosome("chr2"));
+        Assert.assertFalse(loaded.containsChromosome("chr3"));
+        Assert.assertEquals(toString(loaded.getBlocks("chr2", 1, 100000000)), toString(index.getBlocks("chr2", 1, 100000000)));
+        Assert.assertEquals(toString(loaded.getBlocks("chr1", 100, 200000)), toString(index.getBlocks("chr1", 100, 200000)));
+        Assert.assertEquals(loaded.getSequenceNames(), Arrays.asList("chr1", "chr2"));
+        if (index instanceof LinearIndex) {
+            Assert.assertTrue(loaded.equalsIgnoreProperties(index));
+        }
+
+        final ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+        read(index, bytes.toByteArray()).write(new LittleEndianOutputStream(rewritten));
+        Assert.assertEquals(rewritten.toByteArray(), bytes.toByteArray());
+    }
+
+    @Test(dataProvider = "IndexTypes", expectedExceptions = IOException.class)
+    public void testTruncatedIndexFailsOnLoad(final AbstractIndex index) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new LittleEndianOutputStream(bytes));
+        read(index, Arrays.copyOf(bytes.toByteArray(), bytes.size() - 4));
+    }
+
+    private static AbstractIndex read(final AbstractIndex index, final byte[] bytes) throws IOException {
+        return index instanceof LinearIndex ? new LinearIndex(new ByteArrayInputStream(bytes))
+                : new IntervalTreeIndex(new ByteArrayInputStream(bytes));
+    }
+
+    private static String toString(final List<Block> blocks) {
+        final StringBuilder s = new StringBuilder();
+        for (final Block block : blocks) {
+            s.append(block.getStartPosition()).append('+').append(block.getSize()).append(' ');
+        }
+        return s.toString();
+    }
 }
@@ -24,18 +24,25 @@ import htsjdk.tribble.FeatureReader;
 import htsjdk.tribble.TestUtils;
 import htsjdk.tribble.bed.BEDCodec;
 import htsjdk.tribble.bed.BEDFeature;
+import htsjdk.tribble.index.Block;
 import htsjdk.tribble.index.Index;
 import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.util.LittleEndianInputStream;
+import htsjdk.tribble.util.LittleEndianOutputStream;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -148,6 +155,39 @@ public class IntervalTreeTest {
 
     }
 
+    @Test
+    public void testChrIndexMatchesBruteForce() throws Exception {
+        final Random random = new Random(17);
+        for (final int n : new int[]{0, 1, 2, 7, 16, 100, 1000}) {
+            final IntervalTreeIndex.ChrIndex chrIndex = new IntervalTreeIndex.ChrIndex("chr1");
+            final int[][] intervals = new int[n][];
+            for (int i = 0; i < n; i++) {
+                final int start = random.nextInt(100000);
+                final int end = start + (i % 10 == 0 ? random.nextInt(20000) : random.nextInt(100));
+                intervals[i] = new int[]{start, end};
+                // blocks far enough apart not to be consolidated:
+                chrIndex.insert(new Interval(start, end, new Block(i * 10000L, 10)));
+            }
 
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            chrIndex.write(new LittleEndianOutputStream(bytes));
+            final IntervalTreeIndex.ChrIndex reread = new IntervalTreeIndex.ChrIndex();
+            reread.read(new LittleEndianInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            Assert.assertEquals(reread.size(), n);
+
+            for (int q = 0; q < 200; q++) {
+                final int start = random.nextInt(110000);
+                final int end = start + random.nextInt(q % 2 == 0 ? 100 : 10000);
+                final List<Long> expected = new ArrayList<Long>();
+                for (int i = 0; i < n; i++) {
+                    if (intervals[i][0] <= end && start <= intervals[i][1]) expected.add(i * 10000L);
+                }
+                for (final IntervalTreeIndex.ChrIndex index : Arrays.asList(chrIndex, reread)) {
+                    final List<Long> found = new ArrayList<Long>();
+                    for (final Block block : index.getBlocks(start, end)) found.add(block.getStartPosition());
+                    Assert.assertEquals(found, expected);
+                }
+            }
+        }
+    }
 }
-
@@ -0,0 +1,73 @@
+package htsjdk.tribble.readers;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+public class ByteLineReaderTest {
+
+    @DataProvider(name = "bufferSizes")
+    public Object[][] bufferSizes() {
+        return new Object[][]{{1}, {2}, {3}, {7}, {64}, {512000}};
+    }
+
+    @Test(dataProvider = "bufferSizes")
+    public void testLinesAndPositionsMatchAsciiLineReader(final int bufferSize) throws Exception {
+        final Random random = new Random(bufferSize);
+        final StringBuilder text = new StringBuilder();
+        final String[] terminators = {"\n", "\r", "\r\n", "\n\n", "\r\r\n"};
+        for (int i = 0; i < 500; i++) {
+            final int length = random.nextInt(i % 50 == 0 ? 1000 : 30);
+            for (int j = 0; j < length; j++)
+                text.append((char) ('\t' + random.nextInt(110)));
+            text.append(terminators[random.nextInt(terminators.length)]);
+        }
+        text.append("last line without terminator");
+        final byte[] bytes = text.toString().getBytes("ISO-8859-1");
+
+        final AsciiLineReader expected = new AsciiLineReader(new ByteArrayInputStream(bytes));
+        final ByteLineReader actual = new ByteLineReader(new ByteArrayInputStream(bytes), bufferSize);
+        int lines = 0;
+        while (true) {
+            final long position = expected.getPosition();
+            final String expectedLine = expected.readLine();
+            final ByteLine actualLine = actual.readByteLine();
+            if (expectedLine == null) {
+                Assert.assertNull(actualLine);
+                break;
+            }
+            Assert.assertEquals(actualLine.toString(), expectedLine);
+            Assert.assertEquals(actualLine.getPosition(), position);
+            Assert.assertEquals(actual.getPosition(), expected.getPosition());
+            lines++;
+        }
+        Assert.assertTrue(lines > 500);
+        actual.close();
+    }
+
+    @Test
+    public void testTokenise() throws Exception {
+        final ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream("chr1\t-100\t+2147483647\t\n".getBytes()));
+        final ByteLine line = reader.readByteLine();
+        final int[] ends = new int[10];
+        Assert.assertEquals(line.split('\t', ends), 4);
+        Assert.assertEquals(line.substring(0, ends[0]), "chr1");
+        Assert.assertEquals(line.parseInt(ends[0] + 1, ends[1]), -100);
+        Assert.assertEquals(line.parseInt(ends[1] + 1, ends[2]), Integer.MAX_VALUE);
+        Assert.assertEquals(ends[3], ends[2] + 1);
+        Assert.assertEquals(line.indexOf('\t', 5), 9);
+        Assert.assertEquals(line.subSequence(5, 9).toString(), "-100");
+        Assert.assertEquals(line.subSequence(5, 9).getPosition(), 5);
+        Assert.assertEquals(line.split('\t', new int[2]), 2);
+        Assert.assertNull(reader.readByteLine());
+    }
+
+    @Test(expectedExceptions = NumberFormatException.class)
+    public void testParseIntOverflow() throws Exception {
+        final ByteLine line = new ByteLineReader(new ByteArrayInputStream("2147483648".getBytes())).readByteLine();
+        line.parseInt(0, line.length());
+    }
+}
@@ -1,15 +1,25 @@
 package htsjdk.tribble.readers;
 
 
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.SimpleFeature;
 import htsjdk.tribble.TestUtils;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import static org.testng.AssertJUnit.assertTrue;
@@ -113,6 +123,98 @@ public class TabixReaderTest {
     
     
     
+    @Test
+    public void testMultiIntervalQueries() throws IOException {
+        // a bgzipped VCF spanning many blocks and linear index windows
+        final File vcf = File.createTempFile("TabixReaderTest", ".vcf.gz");
+        final File tbi = new File(vcf.getAbsolutePath() + ".tbi");
+        vcf.deleteOnExit();
+        tbi.deleteOnExit();
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader in = new BufferedReader(new FileReader("testdata/htsjdk/variant/HiSeq.10000.vcf"));
+        final BlockCompressedOutputStream out = new BlockCompressedOutputStream(vcf);
+        final TabixIndexCreator indexCreator = new TabixIndexCreator(TabixFormat.VCF);
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!line.startsWith("#")) {
+                final String[] fields = line.split("\t");
+                final int start = Integer.parseInt(fields[1]);
+                indexCreator.addFeature(new SimpleFeature(fields[0], start, start + fields[3].length() - 1),
+                        out.getFilePointer());
+                lines.add(line);
+            }
+            out.write((line + "\n").getBytes());
+        }
+        in.close();
+        out.flush();
+        ((TabixIndex) indexCreator.finalizeIndex(out.getFilePointer())).write(tbi);
+        out.close();
+
+        final TabixReader reader = new TabixReader(vcf.getAbsolutePath());
+        final int tid = reader.chr2tid("chr1");
+        final Random random = new Random(42);
+        for (int n = 0; n < 200; n++) {
+            final int[] begs = new int[1 + random.nextInt(3)];
+            final int[] ends = new int[begs.length];
+            for (int i = 0; i < begs.length; i++) {
+                begs[i] = random.nextInt(5300000);
+                ends[i] = begs[i] + 1 + random.nextInt(n % 2 == 0 ? 1000 : 100000);
+            }
+
+            // all lines overlapping an interval, and nothing outside the span of the intervals, in file order
+            final List<String> found = new ArrayList<String>();
+            final TabixReader.Iterator iterator = reader.query(tid, begs, ends);
+            while ((line = iterator.next()) != null) found.add(line);
+            int next = 0;
+            for (final String l : lines) {
+                final String[] fields = l.split("\t");
+                final int beg = Integer.parseInt(fields[1]) - 1;
+                final int end = beg + fields[3].length();
+                boolean inSpan = false, inInterval = false;
+                for (int i = 0; i < begs.length; i++) {
+                    for (int j = 0; j < begs.length; j++)
+                        inSpan |= beg < ends[i] && end > begs[j];
+                    inInterval |= beg < ends[i] && end > begs[i];
+                }
+                if (next < found.size() && found.get(next).equals(l)) {
+                    Assert.assertTrue(inSpan, l);
+                    next++;
+                } else {
+                    Assert.assertFalse(inInterval, "missing " + l);
+                }
+            }
+            Assert.assertEquals(next, found.size());
+
+            final List<String> slices = new ArrayList<String>();
+            final TabixReader.ByteLineIterator sliceIterator = reader.queryLines(tid, begs, ends);
+            int length;
+            while ((length = sliceIterator.nextLine()) >= 0)
+                slices.add(new String(sliceIterator.getLineBuffer(), 0, length));
+            Assert.assertEquals(slices, found);
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testMergeChunks() {
+        final long[] chunks = {
+                (5L << 16) | 10, (6L << 16) | 3,   // overlaps the next chunk
+                (1L << 16), (1L << 16) | 500,
+                (5L << 16) | 100, (8L << 16),
+                (2L << 16) | 600, (3L << 16),      // ends in the block the next chunk starts in
+                (3L << 16) | 50, (4L << 16),
+                (5L << 16) | 200, (7L << 16),      // contained in another chunk
+                (20L << 16), (21L << 16)
+        };
+        final int n = TabixReader.mergeChunks(chunks, chunks.length / 2);
+        Assert.assertEquals(Arrays.toString(Arrays.copyOf(chunks, 2 * n)), Arrays.toString(new long[]{
+                (1L << 16), (1L << 16) | 500,
+                (2L << 16) | 600, (4L << 16),
+                (5L << 16) | 10, (8L << 16),
+                (20L << 16), (21L << 16)
+        }));
+    }
+
     /**
      * Test reading a local tabix file
      *
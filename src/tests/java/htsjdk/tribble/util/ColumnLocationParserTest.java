@@ -0,0 +1,79 @@
+package htsjdk.tribble.util;
+
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.readers.ByteLine;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ColumnLocationParserTest {
+
+    @DataProvider(name = "lines")
+    public Object[][] lines() {
+        return new Object[][]{
+                // tab or spaces separated, BED style
+                {false, "chr1\t100\t200", "chr1:101-200"},
+                {false, "chr1 100   200 name", "chr1:101-200"},
+                {false, "chr1\t100", "chr1:101-101"},
+                {false, "chr1\t-5\t+7\tname\t0", "chr1:-4-7"},
+                {false, "chr1", null},
+                {false, "", null},
+                // whitespace separated
+                {true, "  22\t14438070 \t A 0 0", "22:14438071-14438071"},
+                {true, "22 14438070", "22:14438071-14438071"},
+                {true, "   ", null},
+        };
+    }
+
+    @Test(dataProvider = "lines")
+    public void testParse(final boolean splitOnWhitespace, final String line, final String expected) {
+        final ColumnLocationParser parser = new ColumnLocationParser(0, 1, splitOnWhitespace ? -1 : 2, 1, splitOnWhitespace);
+        final Feature location = parser.parse(line);
+        Assert.assertEquals(location == null ? null :
+                location.getContig() + ":" + location.getStart() + "-" + location.getEnd(), expected);
+    }
+
+    @Test
+    public void testColumnsInAnyOrder() {
+        final ColumnLocationParser parser = new ColumnLocationParser(3, 2, 0, 0, false);
+        final Feature location = parser.parse("200\tx\t100\tchr2\tmore");
+        Assert.assertEquals(location.getContig(), "chr2");
+        Assert.assertEquals(location.getStart(), 100);
+        Assert.assertEquals(location.getEnd(), 200);
+    }
+
+    @Test
+    public void testChromosomeNamesAreReused() {
+        final ColumnLocationParser parser = new ColumnLocationParser(0, 1, 2, 0, false);
+        final String chr = parser.parse("chr1\t1\t2").getContig();
+        Assert.assertSame(parser.parse("chr1\t5\t6").getContig(), chr);
+        Assert.assertEquals(parser.parse("chr10\t5\t6").getContig(), "chr10");
+        Assert.assertEquals(parser.parse("chr2\t5\t6").getContig(), "chr2");
+    }
+
+    @DataProvider(name = "badNumbers")
+    public Object[][] badNumbers() {
+        return new Object[][]{{""}, {"-"}, {"1x"}, {"2147483648"}, {"99999999999999999999"}, {"1.5"}};
+    }
+
+    @Test(dataProvider = "badNumbers", expectedExceptions = NumberFormatException.class)
+    public void testBadNumbers(final String number) {
+        new ColumnLocationParser(0, 1, 2, 0, false).parse("chr1\t" + number + "\t10");
+    }
+
+    @Test
+    public void testParseIntMatchesInteger() {
+        for (final String s : new String[]{"0", "-0", "+12", "2147483647", "-2147483648", "007"}) {
+            Assert.assertEquals(ByteLine.parseInt(s.getBytes(), 0, s.length()), Integer.parseInt(s), s);
+        }
+    }
+
+    @Test
+    public void testParseByteRange() {
+        final byte[] bytes = "xxchr3\t10\t20\tname\nchr4".getBytes();
+        final Feature location = new ColumnLocationParser(0, 1, 2, 1, false).parse(bytes, 2, 15);
+        Assert.assertEquals(location.getContig(), "chr3");
+        Assert.assertEquals(location.getStart(), 11);
+        Assert.assertEquals(location.getEnd(), 20);
+    }
+}